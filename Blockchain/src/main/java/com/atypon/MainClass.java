@@ -1,17 +1,38 @@
 package com.atypon;
 
 import com.atypon.gui.Login;
+import com.atypon.metrics.MetricRegistry;
+import com.atypon.metrics.MetricsReporter;
+import com.atypon.node.HeadlessNode;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main class that runs the whole 'user' project.
+ * If the system property "metrics.file" is set, the metrics are written to
+ * that file every "metrics.period" seconds (10 by default), they're always
+ * exposed through JMX.
+ * With "--headless" as the first argument, a node runs without the windows,
+ * configured by the rest of the arguments, see {@link HeadlessNode}.
  */
 public class MainClass {
     /**
      * The main function where the program starts.
      *
-     * @param args Not used it my code.
+     * @param args "--headless" followed by the flags of the node, or nothing for the windows.
+     * @throws Exception if the headless node can't be started.
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        String metricsFile = System.getProperty("metrics.file");
+        if (metricsFile != null)
+            new MetricsReporter(MetricRegistry.getDefault(), Paths.get(metricsFile),
+                    Long.getLong("metrics.period", 10), TimeUnit.SECONDS);
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessNode.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         // Run the login window.
         Login.runLogin();
     }
@@ -0,0 +1,29 @@
+package com.atypon.blockchain;
+
+import java.security.PublicKey;
+
+/**
+ * A list of blocks that already knows the heights where each account appears
+ * (like the list of a block store, which keeps that index on the disk), so a
+ * {@link ChainSnapshot} on top of it finds the history of an account without
+ * reading the blocks of the list.
+ */
+public interface AccountIndexedList {
+    /**
+     * Counts the blocks below the given height whose data concerns the account.
+     *
+     * @param account The public key of the account.
+     * @param height  The height to count below.
+     * @return The number of blocks.
+     */
+    int countAccountBlocks(PublicKey account, int height);
+
+    /**
+     * Gets the height of a block of the account.
+     *
+     * @param account The public key of the account.
+     * @param index   The index of the block among the blocks of the account, the oldest first.
+     * @return The height of the block.
+     */
+    int getAccountBlock(PublicKey account, int index);
+}
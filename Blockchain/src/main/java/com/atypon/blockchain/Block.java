@@ -4,6 +4,7 @@ import com.atypon.utility.BitManipulation;
 import com.atypon.utility.Hash;
 
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.util.Objects;
 
 /**
@@ -11,13 +12,20 @@ import java.util.Objects;
  * {@link Blockable} data as well as the hash of the previous block
  * in the chain and the 'nonce' which is added to balance the hash
  * and prove the work on this block.
+ * A block also carries the time it was mined at and the target its hash
+ * must meet, both hashed with it, see {@link Difficulty}. The blocks made
+ * before them (the legacy blocks) have neither, they're hashed and verified
+ * as they were, with the fixed leading zeros, so their hashes don't change.
  * Threadsafe one mined since only the `nonce` can be changed,
  * but is only changed while mining.
+ * The hash is cached with the nonce it was computed for.
  *
  * @param <T> The type of data used in the block.
  *            could be anything bounded by {@link Blockable}.
  */
 public final class Block<T extends Blockable> implements Serializable {
+    // Kept from before the timestamps, the legacy blocks are read without them.
+    private static final long serialVersionUID = 2074054090114880222L;
     // The number of leading zeros for the first block in the chain,
     // this would make it harder to make a new blockchain to replace
     // the already existing one since the first block need more zeros.
@@ -30,9 +38,15 @@ public final class Block<T extends Blockable> implements Serializable {
     private final T data;
     // The nonce used to balance the hash.
     private Long nonce;
+    // The time the block was mined at, in milliseconds since the epoch, 0 for a legacy block.
+    private final long timestamp;
+    // The largest hash the block may have, null for a legacy block.
+    private final BigInteger target;
+    // The last computed hash, null until computed, not serialized.
+    private transient volatile CachedHash cachedHash;
 
     /**
-     * Initialize a block.
+     * Initialize a legacy block, without a timestamp and a target.
      *
      * @param prvHash The hash of the previous block.
      * @param data    The blockable data.
@@ -42,6 +56,25 @@ public final class Block<T extends Blockable> implements Serializable {
         this.prvHash = prvHash;
         this.data = data;
         this.nonce = nonce;
+        this.timestamp = 0;
+        this.target = null;
+    }
+
+    /**
+     * Initialize a block.
+     *
+     * @param prvHash   The hash of the previous block.
+     * @param data      The blockable data.
+     * @param nonce     The nonce of the block.
+     * @param timestamp The time the block was mined at, in milliseconds since the epoch.
+     * @param target    The largest hash the block may have.
+     */
+    public Block(String prvHash, T data, Long nonce, long timestamp, BigInteger target) {
+        this.prvHash = prvHash;
+        this.data = data;
+        this.nonce = nonce;
+        this.timestamp = timestamp;
+        this.target = Objects.requireNonNull(target);
     }
 
     /**
@@ -61,8 +94,29 @@ public final class Block<T extends Blockable> implements Serializable {
         return verifyProofOfWork(nonce, numberOfLeadingZeros);
     }
 
+    /**
+     * Verifies that the block's hash given the nonce meets the target of the
+     * block, or has the fixed leading zeros if it's a legacy block.
+     *
+     * @param nonce The nonce to test.
+     * @return true if the hash meets the target, false otherwise.
+     */
+    public boolean verifyProofOfWork(Long nonce) {
+        if (target == null)
+            return verifyProofOfWork(nonce, NUMBER_OF_LEADING_ZEROS);
+        return Difficulty.meetsTarget(getHash(nonce), target);
+    }
+
+    /**
+     * Verifies the proof of work of the block, its target must be one a block
+     * that isn't the first may have, see {@link Difficulty#isValidTarget}.
+     *
+     * @return true if the proof of work is valid, false otherwise.
+     */
     public boolean verifyProofOfWork() {
-        return verifyProofOfWork(NUMBER_OF_LEADING_ZEROS);
+        if (target != null && !Difficulty.isValidTarget(target))
+            return false;
+        return verifyProofOfWork(nonce);
     }
 
     /**
@@ -72,7 +126,9 @@ public final class Block<T extends Blockable> implements Serializable {
      * @return true if the block is valid to be the first block, false otherwise.
      */
     public boolean verifyFirstBlock() {
-        return data.verifySignature() && verifyProofOfWork(FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS);
+        if (target == null)
+            return data.verifySignature() && verifyProofOfWork(FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS);
+        return data.verifySignature() && target.equals(Difficulty.FIRST_BLOCK_TARGET) && verifyProofOfWork(nonce);
     }
 
     /**
@@ -100,12 +156,37 @@ public final class Block<T extends Blockable> implements Serializable {
         return nonce;
     }
 
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public BigInteger getTarget() {
+        return target;
+    }
+
+    /**
+     * Checks whether the block was made before the timestamps and the targets.
+     *
+     * @return true if the block has no timestamp and no target, false otherwise.
+     */
+    public boolean isLegacy() {
+        return target == null;
+    }
+
     private String getHash(Long nonce) {
-        return Hash.hash(prvHash, nonce.toString(), data.hash());
+        if (target == null)
+            return Hash.hash(prvHash, nonce.toString(), data.hash());
+        return Hash.hash(prvHash, nonce.toString(), data.hash(), timestamp + ":" + target.toString(16));
     }
 
     public String getHash() {
-        return getHash(this.nonce);
+        Long nonce = this.nonce;
+        CachedHash cached = cachedHash;
+        if (cached != null && cached.nonce.equals(nonce))
+            return cached.hash;
+        String hash = getHash(nonce);
+        cachedHash = new CachedHash(nonce, hash);
+        return hash;
     }
 
     public String getDataId() {
@@ -127,12 +208,14 @@ public final class Block<T extends Blockable> implements Serializable {
         Block<?> block = (Block<?>) o;
         return Objects.equals(getPrvHash(), block.getPrvHash()) &&
                 Objects.equals(getData(), block.getData()) &&
-                Objects.equals(getNonce(), block.getNonce());
+                Objects.equals(getNonce(), block.getNonce()) &&
+                getTimestamp() == block.getTimestamp() &&
+                Objects.equals(getTarget(), block.getTarget());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getPrvHash(), getData(), getNonce());
+        return Objects.hash(getPrvHash(), getData(), getNonce(), getTimestamp(), getTarget());
     }
 
     @Override
@@ -141,7 +224,26 @@ public final class Block<T extends Blockable> implements Serializable {
                 "\tprvHash :" + prvHash + '\n' +
                 "\tdata    :" + data + '\n' +
                 "\tnonce   :" + nonce + '\n' +
+                "\ttime    :" + timestamp + '\n' +
+                "\ttarget  :" + (target == null ? null : target.toString(16)) + '\n' +
                 "\thash    :" + getHash() + '\n' +
                 '}';
     }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A hash with the nonce it was computed for.
+     */
+    private final static class CachedHash {
+        private final Long nonce;
+        private final String hash;
+
+        private CachedHash(Long nonce, String hash) {
+            this.nonce = nonce;
+            this.hash = hash;
+        }
+    }
 }
@@ -0,0 +1,48 @@
+package com.atypon.blockchain;
+
+import java.math.BigInteger;
+
+/**
+ * A list of blocks that already knows the hash of each block, the height of
+ * each block hash and data ID, and the cumulative work below each height (like
+ * the list of a block store, which keeps them in its index on the disk), so a
+ * {@link ChainSnapshot} on top of it finds them without reading the blocks of
+ * the list.
+ */
+public interface BlockIndexedList {
+    /**
+     * Gets the hash of the block at the given index.
+     *
+     * @param index The index of the block.
+     * @return The hash of the block.
+     * @throws IndexOutOfBoundsException if there's no block at this index.
+     */
+    String getHash(int index);
+
+    /**
+     * Finds the height of the block with the given hash among the blocks below a height.
+     *
+     * @param hash   The hash of the block.
+     * @param height The number of blocks to look in, from the first.
+     * @return The height of the block, or -1 if these blocks don't hold it.
+     */
+    int heightOfHash(String hash, int height);
+
+    /**
+     * Finds the height of the first block with the given data ID among the blocks below a height.
+     *
+     * @param id     The ID of the data.
+     * @param height The number of blocks to look in, from the first.
+     * @return The height of the block, or -1 if these blocks don't hold it.
+     */
+    int heightOfDataId(String id, int height);
+
+    /**
+     * Gets the cumulative work of the blocks below a height (see {@link Difficulty#work}).
+     *
+     * @param height The number of blocks, from the first.
+     * @return The sum of the work of the blocks, 0 for no blocks.
+     * @throws IndexOutOfBoundsException if the height is negative or above the size of the list.
+     */
+    BigInteger workBelow(int height);
+}
@@ -1,11 +1,15 @@
 package com.atypon.blockchain;
 
+import java.security.PublicKey;
+import java.util.Collection;
+
 /**
  * An interface to mark the data that can be used as a part of the blockchain block.
  * Guarantees that the existence of the functions:
  * - {@link Blockable#hash()}.
  * - {@link Blockable#verifySignature()}.
  * - {@link Blockable#getId()}.
+ * - {@link Blockable#getAccounts()}.
  */
 public interface Blockable {
     /**
@@ -28,4 +32,11 @@ public interface Blockable {
      * @return The ID of the data, which should be unique.
      */
     String getId();
+
+    /**
+     * Get the accounts the data concerns, used to index the history of each account.
+     *
+     * @return The public keys of the accounts, each key once.
+     */
+    Collection<PublicKey> getAccounts();
 }
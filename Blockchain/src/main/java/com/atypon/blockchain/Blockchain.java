@@ -2,109 +2,229 @@ package com.atypon.blockchain;
 
 import com.atypon.factory.BlockFactory;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Vector;
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * The implementation of the blockchain where it holds a vector
+ * The implementation of the blockchain where it holds a list
  * of {@link Block} holding {@link Blockable} data.
- * It's not thread safe.
+ * The blocks may be backed by a list that decodes them lazily
+ * (like the one of a block store), so loading a chain doesn't
+ * need to read all of its blocks.
+ * The blocks are held in an immutable {@link ChainSnapshot} that is replaced
+ * atomically by every change, so a reader takes the current snapshot without
+ * locking or copying and a clone shares it.
+ * The snapshots index their blocks by hash and by data ID, so a block is found
+ * by its hash, its height or its data ID in O(1), and they index the blocks of
+ * each account, so the history of an account is read a page at a time.
+ * Threadsafe.
  *
  * @param <T> The type of data used in the blockchain.
  *            could be anything bounded by {@link Blockable}.
  */
 public final class Blockchain<T extends Blockable> implements Serializable, Cloneable {
-    private Vector<Block<T>> blocks;
+    // The largest number of blocks a read chain allocates room for before they're read.
+    private final static int MAX_INITIAL_CAPACITY = 1024;
+    // Not serialized as it is, see writeObject and readObject.
+    private transient AtomicReference<ChainSnapshot<T>> snapshot;
 
     /**
-     * Constructor to initialize the vector 'blocks'.
+     * Constructor to initialize an empty chain.
      */
     public Blockchain() {
-        blocks = new Vector<>();
+        this.snapshot = new AtomicReference<>(ChainSnapshot.<T>empty());
+    }
+
+    /**
+     * Constructor to initialize the chain with the given blocks, the blocks
+     * aren't verified, use {@link #verifyChain()} to verify them.
+     * The list isn't copied, so it may decode the blocks lazily.
+     *
+     * @param blocks The blocks of the chain in order, the list must not change afterwards.
+     */
+    public Blockchain(List<Block<T>> blocks) {
+        this.snapshot = new AtomicReference<>(ChainSnapshot.of(blocks));
     }
 
     /**
      * Verifies that the chain is legit by:
      * - Making sure no two blocks has the same data ID.
      * - The blocks are legit.
+     * - The timestamps and the targets follow the {@link Difficulty} rules.
      * - The previous hash is equal to the previous block hash.
      *
      * @return true if the chain is legit, false otherwise.
      */
     public boolean verifyChain() {
-        HashSet<String> foundIds = new HashSet<>();
-        Block<T> prvBlock = null;
-        for (Block<T> block : blocks) {
-            // Check if the data ID is used more than once.
-            String id = block.getDataId();
-            if (foundIds.contains(id))
+        return verifyChain(0);
+    }
+
+    /**
+     * Verifies the chain like {@link #verifyChain()}, but the blocks below the
+     * given height are trusted: only their data IDs are checked against the
+     * rest of the chain, a chain trusted as a whole isn't checked at all.
+     * The trusted blocks are found by their hashes and data IDs, so they aren't
+     * decoded when the chain knows them (like a chain read from a store).
+     *
+     * @param trustedHeight The number of blocks, from the first, that were already verified.
+     * @return true if the chain is legit, false otherwise.
+     */
+    public boolean verifyChain(int trustedHeight) {
+        ChainSnapshot<T> blocks = snapshot.get();
+        if (trustedHeight < 0 || trustedHeight > blocks.size())
+            return false;
+        if (trustedHeight == blocks.size())
+            return true;
+        String prvHash = trustedHeight == 0 ? null : blocks.hashAt(trustedHeight - 1);
+        long now = System.currentTimeMillis();
+        for (int i = trustedHeight; i < blocks.size(); ++i) {
+            Block<T> block = blocks.get(i);
+            // Check if the data ID is used more than once, the index finds its first use.
+            if (blocks.heightOfDataId(block.getDataId()) != i)
                 return false;
-            foundIds.add(id);
 
             // Check if the block is legit.
             if (!block.verifyBlock())
                 return false;
 
+            // Check the timestamp and the target against the blocks below.
+            if (!Difficulty.verifyHeader(blocks.subList(0, i), block, now))
+                return false;
+
             // Check if previous hash is equal to the previous block hash.
-            if (prvBlock != null && !block.getPrvHash().equals(prvBlock.getHash()))
+            if (prvHash != null && !block.getPrvHash().equals(prvHash))
                 return false;
 
-            // Update previous block.
-            prvBlock = block;
+            // Update previous hash.
+            prvHash = block.getHash();
 
         }
         return true;
     }
 
+    /**
+     * The fork choice rule: the chain with the most cumulative work is preferred
+     * (see {@link Difficulty#work}), whatever its length, and between chains of
+     * the same work the one whose last block has the lower hash, so all the
+     * nodes settle on the same chain out of competing forks.
+     *
+     * @param chain The blocks of a chain.
+     * @param other The blocks of the other chain.
+     * @param <T>   The type of data used in the blocks.
+     * @return A positive number if the chain is preferred, a negative one if the
+     * other is, 0 if they end with the same block.
+     */
+    public static <T extends Blockable> int compareForks(ChainSnapshot<T> chain, ChainSnapshot<T> other) {
+        return compareForks(chain.totalWork(), chain.isEmpty() ? null : chain.last().getHash(),
+                other.totalWork(), other.isEmpty() ? null : other.last().getHash());
+    }
+
+    /**
+     * The fork choice rule of {@link #compareForks(ChainSnapshot, ChainSnapshot)},
+     * for chains known by their cumulative work and the hash of their last block.
+     *
+     * @param work      The cumulative work of a chain.
+     * @param tip       The hash of the last block of the chain, null if it's empty.
+     * @param otherWork The cumulative work of the other chain.
+     * @param otherTip  The hash of the last block of the other chain, null if it's empty.
+     * @return A positive number if the chain is preferred, a negative one if the
+     * other is, 0 if they end with the same block.
+     */
+    public static int compareForks(BigInteger work, String tip, BigInteger otherWork, String otherTip) {
+        int byWork = work.compareTo(otherWork);
+        if (byWork != 0 || Objects.equals(tip, otherTip))
+            return byWork;
+        // Same work, the lower hash wins, an empty chain loses.
+        if (tip == null || otherTip == null)
+            return tip == null ? -1 : 1;
+        return Integer.signum(otherTip.compareTo(tip));
+    }
+
     /**
      * Replaces the current blockchain with the given blockchain
-     * if the new blockchain is longer and is verified to be legit.
+     * if the new blockchain is preferred by {@link #compareForks} and is
+     * verified to be legit.
      *
      * @param newBlockchain The new blockchain to replace.
      * @return true of the replacement was successful, false otherwise.
      */
     public boolean replaceChain(Blockchain<T> newBlockchain) {
+        return replaceChain(newBlockchain, 0);
+    }
+
+    /**
+     * Replaces the current blockchain with the given blockchain if the new
+     * blockchain is preferred by {@link #compareForks} and is verified to be
+     * legit, the blocks of the new blockchain below the given height are trusted.
+     * The chains are compared before the verification, and the blocks the new
+     * blockchain has in common with this one are trusted too, so only the blocks
+     * above the fork are verified.
+     *
+     * @param newBlockchain The new blockchain to replace.
+     * @param trustedHeight The number of blocks of the new blockchain that were already verified.
+     * @return true of the replacement was successful, false otherwise.
+     * @see #verifyChain(int)
+     */
+    public boolean replaceChain(Blockchain<T> newBlockchain, int trustedHeight) {
         if (newBlockchain == null)
             return false;
         if (this == newBlockchain)
             return true;
-        if (newBlockchain.length() <= this.length())
+        // The new chain is verified through its own snapshot, which is the one taken.
+        Blockchain<T> verified = newBlockchain.clone();
+        ChainSnapshot<T> newSnapshot = verified.snapshot();
+        ChainSnapshot<T> current = snapshot.get();
+        if (compareForks(newSnapshot, current) <= 0)
             return false;
-        if (!newBlockchain.verifyChain())
+        int commonHeight = newSnapshot.commonHeight(current);
+        if (!verified.verifyChain(Math.max(trustedHeight, commonHeight)))
             return false;
-        this.blocks = new Vector<>(newBlockchain.blocks);
-        return true;
+        while (true) {
+            current = snapshot.get();
+            if (compareForks(newSnapshot, current) <= 0)
+                return false;
+            if (snapshot.compareAndSet(current, newSnapshot))
+                return true;
+        }
     }
 
     /**
-     * Add a block to the blockchain if legit.
+     * Add a block to the blockchain if legit, the blocks already
+     * in the chain are not verified again.
      *
      * @param block The new block to add.
      * @return true of the block is added, false otherwise.
      */
 
     public boolean addBlock(Block<T> block) {
-        if (blocks.isEmpty()) {
-            if (!block.verifyFirstBlock())
+        // Checked against the current snapshot, again if another block was added meanwhile.
+        while (true) {
+            ChainSnapshot<T> blocks = snapshot.get();
+            if (blocks.isEmpty()) {
+                if (!block.verifyFirstBlock())
+                    return false;
+            } else {
+                if (!block.verifyBlock())
+                    return false;
+                if (!block.getPrvHash().equals(blocks.last().getHash()))
+                    return false;
+            }
+            if (!Difficulty.verifyHeader(blocks, block, System.currentTimeMillis()))
                 return false;
-        } else {
-            if (!block.verifyBlock())
-                return false;
-            if (!block.getPrvHash().equals(lastBlock().getHash()))
-                return false;
-        }
 
-        blocks.add(block);
+            // To ensure no previous block had same ID
+            if (blocks.heightOfDataId(block.getDataId()) >= 0)
+                return false;
 
-        // To ensure no previous block had same ID
-        if (!verifyChain()) {
-            removeLastBlock();
-            return false;
+            if (snapshot.compareAndSet(blocks, blocks.append(block)))
+                return true;
         }
-
-        return true;
     }
 
     /**
@@ -114,9 +234,7 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
      * @return true if a block was added, false otherwise.
      */
     public boolean addBlock(T data) {
-        if (blocks.isEmpty())
-            return addBlock(BlockFactory.getFirstMinedInstance(data));
-        return addBlock(BlockFactory.getMinedInstance(lastBlock(), data));
+        return addBlock(BlockFactory.getNextMinedInstance(snapshot.get(), data));
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -130,7 +248,7 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
      * @throws IndexOutOfBoundsException if the blockchain is empty.
      */
     public Block<T> lastBlock() {
-        return blocks.elementAt(blocks.size() - 1);
+        return snapshot.get().last();
     }
 
     /**
@@ -140,7 +258,79 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
      * @throws IndexOutOfBoundsException if the blockchain is empty.
      */
     public Block<T> firstBlock() {
-        return blocks.elementAt(0);
+        return snapshot.get().get(0);
+    }
+
+    /**
+     * Finds the block at the given height.
+     *
+     * @param height The height of the block, starting from 0.
+     * @return The block, null if the chain has no block at this height.
+     */
+    public Block<T> getBlockByHeight(int height) {
+        ChainSnapshot<T> blocks = snapshot.get();
+        return height >= 0 && height < blocks.size() ? blocks.get(height) : null;
+    }
+
+    /**
+     * Finds the block with the given hash.
+     *
+     * @param hash The hash of the block.
+     * @return The block, null if the chain doesn't hold it.
+     */
+    public Block<T> getBlockByHash(String hash) {
+        ChainSnapshot<T> blocks = snapshot.get();
+        int height = blocks.heightOfHash(hash);
+        return height < 0 ? null : blocks.get(height);
+    }
+
+    /**
+     * Finds the height of the block with the given hash.
+     *
+     * @param hash The hash of the block.
+     * @return The height of the block, -1 if the chain doesn't hold it.
+     */
+    public int getHeight(String hash) {
+        return snapshot.get().heightOfHash(hash);
+    }
+
+    /**
+     * Checks whether a block of the chain holds data with the given ID.
+     *
+     * @param id The ID of the data.
+     * @return true if the ID is used in the chain, false otherwise.
+     */
+    public boolean containsDataId(String id) {
+        return snapshot.get().heightOfDataId(id) >= 0;
+    }
+
+    /**
+     * Finds a page of the blocks whose data concerns the given account, as
+     * sender, receiver or miner, the newest first.
+     *
+     * @param account The public key of the account.
+     * @param offset  The number of the newest blocks of the account to skip.
+     * @param limit   The maximum number of blocks to return.
+     * @return The blocks of the page, the newest first.
+     * @throws IllegalArgumentException if the offset or the limit is negative.
+     */
+    public List<Block<T>> getAccountHistory(PublicKey account, int offset, int limit) {
+        ChainSnapshot<T> blocks = snapshot.get();
+        List<Integer> heights = blocks.accountHistory(account, offset, limit);
+        ArrayList<Block<T>> history = new ArrayList<>(heights.size());
+        for (int height : heights)
+            history.add(blocks.get(height));
+        return history;
+    }
+
+    /**
+     * Counts the blocks whose data concerns the given account.
+     *
+     * @param account The public key of the account.
+     * @return The number of blocks of the account.
+     */
+    public int getAccountHistorySize(PublicKey account) {
+        return snapshot.get().accountHistorySize(account);
     }
 
     /**
@@ -149,7 +339,7 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
      * @return The length of the blockchain.
      */
     public int length() {
-        return blocks.size();
+        return snapshot.get().size();
     }
 
     /**
@@ -158,11 +348,26 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
      * @throws IndexOutOfBoundsException if the blockchain is empty.
      */
     public void removeLastBlock() {
-        blocks.removeElementAt(blocks.size() - 1);
+        snapshot.updateAndGet(ChainSnapshot::removeLast);
+    }
+
+    /**
+     * Get the blocks of the chain.
+     *
+     * @return A read-only view of the current snapshot of the blocks, in order.
+     */
+    public List<Block<T>> getBlocks() {
+        return Collections.unmodifiableList(snapshot.get());
     }
 
-    public Vector<Block<T>> getBlocks() {
-        return blocks;
+    /**
+     * Get the current snapshot of the blocks, it never changes, so the
+     * blocks are consistent however the chain is changed afterwards.
+     *
+     * @return The current snapshot.
+     */
+    public ChainSnapshot<T> snapshot() {
+        return snapshot.get();
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -171,9 +376,8 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
 
     @Override
     public Blockchain<T> clone() {
-        Blockchain<T> blockchain = new Blockchain<>();
-        blockchain.blocks = new Vector<>(this.blocks);
-        return blockchain;
+        // The snapshot is immutable, so it's shared.
+        return new Blockchain<>(snapshot.get());
     }
 
     @Override
@@ -192,12 +396,45 @@ public final class Blockchain<T extends Blockable> implements Serializable, Clon
     @Override
     public String toString() {
         StringBuilder ret = new StringBuilder();
-        for (Block<T> block : blocks)
+        for (Block<T> block : snapshot.get())
             ret.append(block.toString()).append('\n');
         return "Blockchain{\n" +
                 ret.toString() +
                 '}';
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Serialization /////////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the number of blocks followed by the blocks themselves,
+     * so lazily decoded blocks are sent as ordinary blocks.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        ChainSnapshot<T> blocks = snapshot.get();
+        out.writeInt(blocks.size());
+        for (Block<T> block : blocks)
+            out.writeObject(block);
+    }
+
+    /**
+     * Reads the blocks written by {@link #writeObject}. The number of blocks comes
+     * from the sender, so the list grows as the blocks are actually read rather
+     * than being allocated for that number up front.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int size = in.readInt();
+        if (size < 0)
+            throw new IOException("Invalid number of blocks: " + size);
+        ArrayList<Block<T>> blocks = new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < size; ++i)
+            blocks.add((Block<T>) in.readObject());
+        snapshot = new AtomicReference<>(ChainSnapshot.of(blocks));
+    }
+
 
 }
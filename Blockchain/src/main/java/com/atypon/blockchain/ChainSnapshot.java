@@ -0,0 +1,478 @@
+package com.atypon.blockchain;
+
+import com.atypon.utility.IntList;
+
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable version of the list of blocks held by a {@link Blockchain}.
+ * Appending a block or removing the last one makes a new version that shares
+ * the blocks of the old one, nothing is copied in the common case.
+ * The first blocks may come from a base list that is never changed (it may
+ * decode its blocks lazily, for example from a store on disk), the appended
+ * blocks are kept in a storage array shared by the versions. The last block
+ * appended to a version is held by the version itself, it claims its slot of the
+ * storage only when another block is appended on top of it, so a version that
+ * is dropped right away (like a candidate chain that fails its verification, or
+ * loses the race to be published) never holds a slot back. A version owns the
+ * slot only if no other version claimed it first, otherwise (after a removal, or
+ * when the storage is full) its blocks are copied to a new storage, so a version
+ * never sees the blocks appended to another version.
+ * The base and the storage each keep an index from block hashes and data IDs
+ * to positions, since a position never changes its block, a version finds its
+ * blocks by hash or by ID in O(1), ignoring the positions it doesn't hold.
+ * They also keep the positions of the blocks of each account, in order, so
+ * a page of the history of an account is found in O(size of the page).
+ * The indexes of the base are built on the first lookup, unless the base is an
+ * {@link AccountIndexedList} which already knows the blocks of each account, or
+ * a {@link BlockIndexedList} which already knows the hashes and the data IDs.
+ * Each position also has the cumulative work of the blocks up to it (see
+ * {@link Difficulty#work}), kept by the storage as the blocks are appended and
+ * summed for the base on the first lookup (or given by a {@link BlockIndexedList}),
+ * so the work of a version is found in O(1) and two versions are compared
+ * without going through their blocks. So a version on top of a store is looked
+ * up, weighed and verified up to a trusted height without decoding any block.
+ * Immutable thus threadsafe.
+ *
+ * @param <T> The type of data used in the blocks.
+ */
+public final class ChainSnapshot<T extends Blockable> extends AbstractList<Block<T>> implements RandomAccess {
+    private final static int INITIAL_CAPACITY = 16;
+
+    private final Base base;
+    // The number of blocks used from the base, may be less than its size after a removal.
+    private final int baseSize;
+    // The appended blocks but the pending one, null if none was appended.
+    private final Storage storage;
+    // The last appended block while it has no slot in the storage, null if it has one.
+    private final Block<T> pending;
+    private final int size;
+    // The storage holding the pending block as well, set when a block is appended on top of it.
+    private volatile Storage settled;
+
+    private ChainSnapshot(Base base, int baseSize, Storage storage, Block<T> pending, int size) {
+        this.base = base;
+        this.baseSize = baseSize;
+        this.storage = storage;
+        this.pending = pending;
+        this.size = size;
+    }
+
+    /**
+     * Gets the version with no blocks.
+     *
+     * @param <T> The type of data used in the blocks.
+     * @return An empty version.
+     */
+    public static <T extends Blockable> ChainSnapshot<T> empty() {
+        return of(Collections.<Block<T>>emptyList());
+    }
+
+    /**
+     * Makes a version on top of a base list, the base isn't copied.
+     *
+     * @param base The blocks in order, the list must not change afterwards.
+     * @param <T>  The type of data used in the blocks.
+     * @return The version holding the blocks of the base, the base itself if it's a version.
+     */
+    public static <T extends Blockable> ChainSnapshot<T> of(List<Block<T>> base) {
+        if (base instanceof ChainSnapshot)
+            return (ChainSnapshot<T>) base;
+        return new ChainSnapshot<>(new Base(base), base.size(), null, null, base.size());
+    }
+
+    /**
+     * Makes a new version with the block appended to the blocks of this version.
+     *
+     * @param block The block to append.
+     * @return The new version, this version isn't changed.
+     */
+    public ChainSnapshot<T> append(Block<T> block) {
+        // The block stays pending, the last block of this version takes its slot now.
+        return new ChainSnapshot<>(base, baseSize, settle(), block, size + 1);
+    }
+
+    /**
+     * Makes a new version without the last block of this version.
+     *
+     * @return The new version, this version isn't changed.
+     * @throws IndexOutOfBoundsException if this version is empty.
+     */
+    public ChainSnapshot<T> removeLast() {
+        if (size == 0)
+            throw new IndexOutOfBoundsException("The chain is empty.");
+        if (size > baseSize)
+            return new ChainSnapshot<>(base, baseSize, storage, null, size - 1);
+        return new ChainSnapshot<>(base, baseSize - 1, null, null, size - 1);
+    }
+
+    /**
+     * Returns the last block of this version.
+     *
+     * @return The last block.
+     * @throws IndexOutOfBoundsException if this version is empty.
+     */
+    public Block<T> last() {
+        return get(size - 1);
+    }
+
+    /**
+     * Finds the height of the block with the given hash.
+     *
+     * @param hash The hash of the block.
+     * @return The height of the block, or -1 if this version doesn't hold it.
+     */
+    public int heightOfHash(String hash) {
+        if (hash == null)
+            return -1;
+        return heightOf(base.heightOfHash(hash, baseSize), storage == null ? null : storage.byHash, hash,
+                pending == null ? null : pending.getHash());
+    }
+
+    /**
+     * Finds the height of the first block with the given data ID.
+     *
+     * @param id The ID of the data.
+     * @return The height of the block, or -1 if this version doesn't hold it.
+     */
+    public int heightOfDataId(String id) {
+        if (id == null)
+            return -1;
+        return heightOf(base.heightOfDataId(id, baseSize), storage == null ? null : storage.byId, id,
+                pending == null ? null : pending.getDataId());
+    }
+
+    /**
+     * Gets the hash of the block at a height, the block isn't decoded if
+     * the base knows its hash.
+     *
+     * @param height The height of the block.
+     * @return The hash of the block.
+     * @throws IndexOutOfBoundsException if there's no block at this height.
+     */
+    public String hashAt(int height) {
+        if (height >= 0 && height < baseSize)
+            return base.hashAt(height);
+        return get(height).getHash();
+    }
+
+    /**
+     * Counts the blocks whose data concerns the given account.
+     *
+     * @param account The public key of the account.
+     * @return The number of blocks of the account in this version.
+     */
+    public int accountHistorySize(PublicKey account) {
+        if (account == null)
+            return 0;
+        return base.countAccountBlocks(account, baseSize) + countSlots(account) + (isPendingOf(account) ? 1 : 0);
+    }
+
+    /**
+     * Finds a page of the heights of the blocks whose data concerns the given
+     * account, the newest first.
+     *
+     * @param account The public key of the account.
+     * @param offset  The number of the newest blocks of the account to skip.
+     * @param limit   The maximum number of heights to return.
+     * @return The heights of the blocks, the highest first.
+     * @throws IllegalArgumentException if the offset or the limit is negative.
+     */
+    public List<Integer> accountHistory(PublicKey account, int offset, int limit) {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("The offset and the limit must not be negative!");
+        if (account == null)
+            return Collections.emptyList();
+        int inBase = base.countAccountBlocks(account, baseSize);
+        IntList slots = storage == null ? null : storage.byAccount.get(account);
+        int inStorage = slots == null ? 0 : slots.countBelow(stored() - baseSize);
+        int count = inBase + inStorage + (isPendingOf(account) ? 1 : 0);
+        int first = count - 1 - offset;
+        ArrayList<Integer> heights = new ArrayList<>(Math.max(0, Math.min(limit, first + 1)));
+        for (int i = first; i >= 0 && heights.size() < limit; --i) {
+            if (i >= inBase + inStorage)
+                heights.add(size - 1);
+            else if (i >= inBase)
+                heights.add(baseSize + slots.get(i - inBase));
+            else
+                heights.add(base.getAccountBlock(account, i));
+        }
+        return heights;
+    }
+
+    /**
+     * Gets the cumulative work of the blocks below a height.
+     *
+     * @param height The number of blocks, from the first.
+     * @return The sum of the work of the blocks, 0 for no blocks.
+     * @throws IndexOutOfBoundsException if the height is negative or above the size of this version.
+     */
+    public BigInteger workBelow(int height) {
+        if (height < 0 || height > size)
+            throw new IndexOutOfBoundsException("Height: " + height + ", Size: " + size);
+        if (height <= baseSize)
+            return base.workBelow(height);
+        if (height > stored())
+            return workBelow(height - 1).add(Difficulty.work(pending));
+        return base.workBelow(baseSize).add(storage.work[height - baseSize - 1]);
+    }
+
+    /**
+     * Gets the cumulative work of the blocks of this version.
+     *
+     * @return The sum of the work of the blocks, 0 for no blocks.
+     */
+    public BigInteger totalWork() {
+        return workBelow(size);
+    }
+
+    /**
+     * Finds the number of blocks this version has in common with another, from the first.
+     * The blocks are chained by their hashes, so the versions are the same below
+     * the highest common block, only the blocks above the fork are gone through.
+     *
+     * @param other The other version.
+     * @return The height of the fork, the size of the shorter version if one extends the other.
+     */
+    public int commonHeight(List<Block<T>> other) {
+        int common = Math.min(size, other.size());
+        while (common > 0 && !get(common - 1).getHash().equals(other.get(common - 1).getHash()))
+            --common;
+        return common;
+    }
+
+    /**
+     * Gets the storage holding all the blocks of this version above the base,
+     * the pending block claims its slot, or the blocks are copied to a new
+     * storage if the slot was claimed by another version. Done once.
+     *
+     * @return The storage, null if this version has no block above the base.
+     */
+    private Storage settle() {
+        if (pending == null)
+            return storage;
+        Storage settled = this.settled;
+        if (settled != null)
+            return settled;
+        synchronized (this) {
+            if (this.settled != null)
+                return this.settled;
+            int slot = size - 1 - baseSize;
+            // Claim the slot, it fails if another version appended to this storage first.
+            if (storage != null && slot < storage.blocks.length && storage.claimed.compareAndSet(slot, slot + 1)) {
+                settled = storage;
+            } else {
+                settled = new Storage(Math.max(INITIAL_CAPACITY, slot * 2), slot + 1);
+                for (int i = 0; i < slot; ++i)
+                    settled.set(i, storage.blocks[i]);
+            }
+            settled.set(slot, pending);
+            this.settled = settled;
+            return settled;
+        }
+    }
+
+    /**
+     * Gets the number of blocks of this version in the base and the storage.
+     *
+     * @return The size, without the pending block.
+     */
+    private int stored() {
+        return pending == null ? size : size - 1;
+    }
+
+    private boolean isPendingOf(PublicKey account) {
+        return pending != null && pending.getData().getAccounts().contains(account);
+    }
+
+    private int countSlots(PublicKey account) {
+        if (storage == null)
+            return 0;
+        IntList slots = storage.byAccount.get(account);
+        return slots == null ? 0 : slots.countBelow(stored() - baseSize);
+    }
+
+    private int heightOf(int baseHeight, Map<String, Integer> storageIndex, String key, String pendingKey) {
+        if (baseHeight >= 0 && baseHeight < baseSize)
+            return baseHeight;
+        if (storageIndex != null) {
+            Integer slot = storageIndex.get(key);
+            if (slot != null && slot < stored() - baseSize)
+                return baseSize + slot;
+        }
+        return key.equals(pendingKey) ? size - 1 : -1;
+    }
+
+    /**
+     * Checks whether this version keeps its blocks above the base in the same
+     * storage as another version, rather than in a copy.
+     *
+     * @param other The other version.
+     * @return true if the storage is shared, false otherwise.
+     */
+    boolean sharesStorage(ChainSnapshot<T> other) {
+        return storage != null && storage == other.storage;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Block<T> get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (pending != null && index == size - 1)
+            return pending;
+        return (Block<T>) (index < baseSize ? base.blocks.get(index) : storage.blocks[index - baseSize]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The base list shared by the versions, with its indexes built on the first
+     * lookup, or taken from the list if it's a {@link BlockIndexedList}.
+     */
+    private final static class Base {
+        private final List<? extends Block<?>> blocks;
+        // The list itself if it has its own indexes, null otherwise.
+        private final BlockIndexedList indexed;
+        private volatile Map<String, Integer> byHash;
+        private volatile Map<String, Integer> byId;
+        // Not built if the base list has its own.
+        private volatile Map<PublicKey, IntList> byAccount;
+        // The cumulative work below each height, from 0 to the size of the list.
+        private volatile BigInteger[] work;
+
+        private Base(List<? extends Block<?>> blocks) {
+            this.blocks = blocks;
+            this.indexed = blocks instanceof BlockIndexedList ? (BlockIndexedList) blocks : null;
+            if (blocks.isEmpty()) {
+                this.byHash = Collections.emptyMap();
+                this.byId = Collections.emptyMap();
+                this.byAccount = Collections.emptyMap();
+                this.work = new BigInteger[]{BigInteger.ZERO};
+            }
+        }
+
+        private BigInteger workBelow(int height) {
+            if (indexed != null)
+                return indexed.workBelow(height);
+            if (work == null)
+                buildWork();
+            return work[height];
+        }
+
+        private synchronized void buildWork() {
+            if (work != null)
+                return;
+            BigInteger[] sums = new BigInteger[blocks.size() + 1];
+            sums[0] = BigInteger.ZERO;
+            for (int i = 0; i < blocks.size(); ++i)
+                sums[i + 1] = sums[i].add(Difficulty.work(blocks.get(i)));
+            work = sums;
+        }
+
+        private int countAccountBlocks(PublicKey account, int height) {
+            if (blocks instanceof AccountIndexedList)
+                return ((AccountIndexedList) blocks).countAccountBlocks(account, height);
+            IntList heights = getAccountIndex().get(account);
+            return heights == null ? 0 : heights.countBelow(height);
+        }
+
+        private int getAccountBlock(PublicKey account, int index) {
+            if (blocks instanceof AccountIndexedList)
+                return ((AccountIndexedList) blocks).getAccountBlock(account, index);
+            return getAccountIndex().get(account).get(index);
+        }
+
+        private Map<PublicKey, IntList> getAccountIndex() {
+            if (byAccount == null)
+                buildIndexes();
+            return byAccount;
+        }
+
+        private int heightOfHash(String hash, int height) {
+            if (indexed != null)
+                return indexed.heightOfHash(hash, height);
+            if (byHash == null)
+                buildIndexes();
+            return byHash.getOrDefault(hash, -1);
+        }
+
+        private int heightOfDataId(String id, int height) {
+            if (indexed != null)
+                return indexed.heightOfDataId(id, height);
+            if (byId == null)
+                buildIndexes();
+            return byId.getOrDefault(id, -1);
+        }
+
+        private String hashAt(int height) {
+            return indexed != null ? indexed.getHash(height) : blocks.get(height).getHash();
+        }
+
+        private synchronized void buildIndexes() {
+            if (byHash != null && byAccount != null)
+                return;
+            boolean indexAccounts = !(blocks instanceof AccountIndexedList);
+            HashMap<String, Integer> hashes = new HashMap<>();
+            HashMap<String, Integer> ids = new HashMap<>();
+            HashMap<PublicKey, IntList> accounts = new HashMap<>();
+            for (int i = 0; i < blocks.size(); ++i) {
+                Block<?> block = blocks.get(i);
+                hashes.putIfAbsent(block.getHash(), i);
+                ids.putIfAbsent(block.getDataId(), i);
+                if (indexAccounts)
+                    for (PublicKey account : block.getData().getAccounts())
+                        accounts.computeIfAbsent(account, key -> new IntList()).add(i);
+            }
+            byAccount = accounts;
+            byId = ids;
+            byHash = hashes;
+        }
+    }
+
+    /**
+     * The array of appended blocks shared by the versions, a slot is written
+     * once by the version that claimed it and never changed afterwards.
+     * The indexes keep the first slot of each hash and data ID, and the slots
+     * of each account in order. The slots are written one after the other (a
+     * slot is claimed only by a version holding the slot before it), so the
+     * lists of slots are only added to by one thread at a time. The work of a
+     * slot is the cumulative work of the slots up to it, for the same reason it's
+     * written before any version reading the slot from the storage is made.
+     */
+    private final static class Storage {
+        private final Object[] blocks;
+        private final BigInteger[] work;
+        private final AtomicInteger claimed;
+        private final ConcurrentHashMap<String, Integer> byHash = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Integer> byId = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<PublicKey, IntList> byAccount = new ConcurrentHashMap<>();
+
+        private Storage(int capacity, int claimed) {
+            this.blocks = new Object[capacity];
+            this.work = new BigInteger[capacity];
+            this.claimed = new AtomicInteger(claimed);
+        }
+
+        private void set(int slot, Object block) {
+            blocks[slot] = block;
+            BigInteger below = slot == 0 ? BigInteger.ZERO : work[slot - 1];
+            work[slot] = below.add(Difficulty.work((Block<?>) block));
+            byHash.putIfAbsent(((Block<?>) block).getHash(), slot);
+            byId.putIfAbsent(((Block<?>) block).getDataId(), slot);
+            for (PublicKey account : ((Block<?>) block).getData().getAccounts())
+                byAccount.computeIfAbsent(account, key -> new IntList()).add(slot);
+        }
+    }
+}
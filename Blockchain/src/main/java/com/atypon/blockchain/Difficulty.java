@@ -0,0 +1,167 @@
+package com.atypon.blockchain;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rules of the proof of work of the blocks that carry a timestamp and a
+ * target (see {@link Block}): the hash of a block, read as a 256 bits number,
+ * must not be above its target, so the difficulty is as fine as the target is.
+ * The target of a block is the one of its parent, except every
+ * {@link #RETARGET_WINDOW} blocks, where it's scaled by the time the last
+ * window took over the time it should've taken at {@link #TARGET_INTERVAL}
+ * per block, by at most {@link #MAX_ADJUSTMENT} times either way. So the chain
+ * holds its interval whatever the hashrate of the network.
+ * A timestamp must be above the median of the last {@link #MEDIAN_TIME_SPAN}
+ * timestamps and at most {@link #MAX_FUTURE_DRIFT} ahead of the clock of the
+ * verifier, so a miner can't move the window by much.
+ * The blocks made before the timestamps (the legacy blocks) keep the fixed
+ * leading zeros of {@link Block}, they may only be followed by more of them
+ * until the first timestamped block, the first window after them keeps the
+ * initial target.
+ * The work of a block is the expected number of hashes it took, 2^256 over
+ * its target plus one, the chains are compared by the sum of the work of
+ * their blocks (see {@link Blockchain#compareForks}).
+ */
+public final class Difficulty {
+    // The number of blocks between two retargets.
+    public final static int RETARGET_WINDOW = 10;
+    // The time a block should take, in milliseconds.
+    public final static long TARGET_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+    // The most a retarget may scale the target by, either way.
+    public final static int MAX_ADJUSTMENT = 4;
+    // The number of timestamps the median is taken from.
+    public final static int MEDIAN_TIME_SPAN = 11;
+    // The most a timestamp may be ahead of the clock of the verifier, in milliseconds.
+    public final static long MAX_FUTURE_DRIFT = TimeUnit.MINUTES.toMillis(2);
+    // The target of the first block, as hard as its fixed leading zeros.
+    public final static BigInteger FIRST_BLOCK_TARGET = targetOf(Block.FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS);
+    // The target of the other blocks until the first retarget, the easiest one allowed.
+    public final static BigInteger INITIAL_TARGET = targetOf(Block.NUMBER_OF_LEADING_ZEROS);
+    private final static BigInteger TWO_TO_256 = BigInteger.ONE.shiftLeft(256);
+
+    /**
+     * Gets the target demanding the given number of leading zero bits.
+     *
+     * @param numberOfLeadingZeros The number of leading zeros, from 0 to 256.
+     * @return The largest 256 bits number with the leading zeros.
+     */
+    public static BigInteger targetOf(int numberOfLeadingZeros) {
+        return BigInteger.ONE.shiftLeft(256 - numberOfLeadingZeros).subtract(BigInteger.ONE);
+    }
+
+    /**
+     * Checks whether a target may be the one of a block that isn't the first.
+     *
+     * @param target The target.
+     * @return true if the target is positive and not easier than the initial one.
+     */
+    public static boolean isValidTarget(BigInteger target) {
+        return target.signum() > 0 && target.compareTo(INITIAL_TARGET) <= 0;
+    }
+
+    /**
+     * Checks whether a hash meets a target.
+     *
+     * @param hash   The hash, in hexadecimal.
+     * @param target The target.
+     * @return true if the hash isn't above the target, false otherwise.
+     */
+    public static boolean meetsTarget(String hash, BigInteger target) {
+        return new BigInteger(hash, 16).compareTo(target) <= 0;
+    }
+
+    /**
+     * Gets the work of a block, the expected number of hashes tried to mine it.
+     * The legacy blocks count as hard as their fixed leading zeros.
+     *
+     * @param block The block.
+     * @return The work, positive.
+     */
+    public static BigInteger work(Block<?> block) {
+        BigInteger target = block.getTarget();
+        if (block.isLegacy()) {
+            boolean first = block.getPrvHash() == null || block.getPrvHash().isEmpty();
+            target = first ? FIRST_BLOCK_TARGET : INITIAL_TARGET;
+        }
+        return TWO_TO_256.divide(target.add(BigInteger.ONE));
+    }
+
+    /**
+     * Gets the target the next block of a chain must have.
+     *
+     * @param blocks The blocks of the chain, in order.
+     * @param <T>    The type of data used in the blocks.
+     * @return The target.
+     */
+    public static <T extends Blockable> BigInteger nextTarget(List<Block<T>> blocks) {
+        int height = blocks.size();
+        if (height == 0)
+            return FIRST_BLOCK_TARGET;
+        Block<T> parent = blocks.get(height - 1);
+        // The first block and the legacy blocks don't carry the target of the blocks after them.
+        BigInteger target = height == 1 || parent.isLegacy() ? INITIAL_TARGET : parent.getTarget();
+        if (height % RETARGET_WINDOW != 0)
+            return target;
+        Block<T> first = blocks.get(height - RETARGET_WINDOW);
+        if (first.isLegacy())
+            return target;
+
+        long expected = (RETARGET_WINDOW - 1) * TARGET_INTERVAL;
+        long actual = parent.getTimestamp() - first.getTimestamp();
+        actual = Math.max(expected / MAX_ADJUSTMENT, Math.min(expected * MAX_ADJUSTMENT, actual));
+        BigInteger next = target.multiply(BigInteger.valueOf(actual)).divide(BigInteger.valueOf(expected));
+        if (next.signum() <= 0)
+            return BigInteger.ONE;
+        return next.min(INITIAL_TARGET);
+    }
+
+    /**
+     * Gets the smallest timestamp the next block of a chain may have, one
+     * above the median of the last timestamps.
+     *
+     * @param blocks The blocks of the chain, in order.
+     * @param <T>    The type of data used in the blocks.
+     * @return The smallest timestamp, 0 if the chain has no timestamped block.
+     */
+    public static <T extends Blockable> long minimumTimestamp(List<Block<T>> blocks) {
+        long[] timestamps = new long[MEDIAN_TIME_SPAN];
+        int count = 0;
+        for (int i = blocks.size() - 1; i >= 0 && count < MEDIAN_TIME_SPAN; --i) {
+            Block<T> block = blocks.get(i);
+            if (block.isLegacy())
+                break;
+            timestamps[count++] = block.getTimestamp();
+        }
+        if (count == 0)
+            return 0;
+        Arrays.sort(timestamps, 0, count);
+        return timestamps[count / 2] + 1;
+    }
+
+    /**
+     * Verifies the timestamp and the target of a block against the chain it's
+     * appended to, its proof of work is verified by the block itself.
+     *
+     * @param blocks The blocks of the chain below the block, in order.
+     * @param block  The block.
+     * @param now    The current time of the verifier, in milliseconds.
+     * @param <T>    The type of data used in the blocks.
+     * @return true if the block follows the rules, false otherwise.
+     */
+    public static <T extends Blockable> boolean verifyHeader(List<Block<T>> blocks, Block<T> block, long now) {
+        if (block.isLegacy())
+            return blocks.isEmpty() || blocks.get(blocks.size() - 1).isLegacy();
+        if (!block.getTarget().equals(nextTarget(blocks)))
+            return false;
+        return block.getTimestamp() >= minimumTimestamp(blocks) && block.getTimestamp() <= now + MAX_FUTURE_DRIFT;
+    }
+
+    /**
+     * A private constructor to enforce non-instantiability.
+     */
+    private Difficulty() {
+    }
+}
@@ -5,6 +5,7 @@ import com.atypon.utility.Hash;
 
 import java.math.BigDecimal;
 import java.security.PublicKey;
+import java.util.Collection;
 import java.util.Objects;
 
 /**
@@ -13,6 +14,8 @@ import java.util.Objects;
  * Immutable thus threadsafe.
  */
 public final class MinedTransaction extends Transaction {
+    // The version of the class before the signature schemes, kept to read its transactions.
+    private static final long serialVersionUID = -300102936024962794L;
 
     private final PublicKey minerPublicKey;
     // The miningFee is the deducted part of the transaction amount
@@ -32,7 +35,7 @@ public final class MinedTransaction extends Transaction {
     public MinedTransaction(Transaction transaction,
                             PublicKey minerPublicKey, BigDecimal miningFee, BigDecimal miningReward) {
         super(transaction.getId(), transaction.getSenderPublicKey(), transaction.getReceiverPublicKey(),
-                transaction.getAmount(), transaction.getSignature());
+                transaction.getAmount(), transaction.getSignature(), transaction.getSignatureScheme());
         this.minerPublicKey = minerPublicKey;
         this.miningFee = miningFee;
         this.miningReward = miningReward;
@@ -46,10 +49,22 @@ public final class MinedTransaction extends Transaction {
      */
     @Override
     public String hash() {
-        return Hash.hash(super.hash(), super.getSignature(), getMinerPublicKeyString(),
+        return Hash.hash(super.hash(), super.getSignatureString(), getMinerPublicKeyString(),
                 miningFee.toString(), miningReward.toString());
     }
 
+    /**
+     * Overrides {@link Transaction#getAccounts()} to include the miner.
+     *
+     * @return The public keys of the accounts of the transaction.
+     */
+    @Override
+    public Collection<PublicKey> getAccounts() {
+        Collection<PublicKey> accounts = super.getAccounts();
+        accounts.add(minerPublicKey);
+        return accounts;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
     //////////////////// Setters and Getters ///////////////////////////////////////
     ////////////////////////////////////////////////////////////////////////////////
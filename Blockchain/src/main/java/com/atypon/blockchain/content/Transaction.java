@@ -1,27 +1,48 @@
 package com.atypon.blockchain.content;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.Signature;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 
 import com.atypon.blockchain.Blockable;
 import com.atypon.utility.BitManipulation;
 import com.atypon.utility.Hash;
+import com.atypon.utility.SignatureScheme;
 
 /**
  * Holds the transaction information, the sender, the receiver,
  * the id, the amount and the signature.
+ * The signature is kept as raw bytes along with the {@link SignatureScheme}
+ * that made it, so transactions signed by different schemes can live
+ * on the same chain.
+ * Transactions written by older versions, whose signature was a hexadecimal
+ * String always made by SHA1withRSA, are still read.
  * Immutable thus threadsafe.
  */
 public class Transaction implements Blockable, Serializable {
+    // The version of the class before the signature schemes, kept to read its transactions.
+    private static final long serialVersionUID = -1979057876157650476L;
+    // The number of successful signature verifications remembered by the node.
+    public final static int VERIFICATION_CACHE_CAPACITY = 1 << 16;
+    // Shared by all transactions, so a transaction verified once isn't verified again.
+    private final static VerificationCache VERIFICATION_CACHE = new VerificationCache(VERIFICATION_CACHE_CAPACITY);
 
-    private final String id;
-    private final PublicKey senderPublicKey, receiverPublicKey;
-    private final BigDecimal amount;
-    private final String signature;
+    // Not final, so readObject can set them, they never change afterwards.
+    private String id;
+    private PublicKey senderPublicKey, receiverPublicKey;
+    private BigDecimal amount;
+    private byte[] signature;
+    private SignatureScheme signatureScheme;
+    // The data never changes, so the hash is computed once (not serialized).
+    private transient volatile String cachedHash;
 
     /**
      * Initialize the transaction.
@@ -31,14 +52,16 @@ public class Transaction implements Blockable, Serializable {
      * @param receiverPublicKey The receiver Public Key.
      * @param amount            The amount transferred.
      * @param signature         The signature (by the sender private key) for the Transaction.
+     * @param signatureScheme   The scheme used to make the signature.
      */
     public Transaction(String id, PublicKey senderPublicKey, PublicKey receiverPublicKey, BigDecimal amount,
-                       String signature) {
+                       byte[] signature, SignatureScheme signatureScheme) {
         this.id = id;
         this.senderPublicKey = senderPublicKey;
         this.receiverPublicKey = receiverPublicKey;
         this.amount = amount;
-        this.signature = signature;
+        this.signature = signature.clone();
+        this.signatureScheme = signatureScheme;
     }
 
     /**
@@ -56,6 +79,7 @@ public class Transaction implements Blockable, Serializable {
         this.senderPublicKey = senderPublicKey;
         this.receiverPublicKey = receiverPublicKey;
         this.amount = amount;
+        this.signatureScheme = SignatureScheme.of(senderPrivateKey);
         this.signature = generateSignature(senderPrivateKey);
     }
 
@@ -76,51 +100,95 @@ public class Transaction implements Blockable, Serializable {
      * @return The hash of the data.
      */
     protected String getHash() {
-        return Hash.hash(id, getSenderPublicKeyString(), getReceiverPublicKeyString(), amount.toString());
+        String hash = cachedHash;
+        if (hash == null) {
+            hash = Hash.hash(id, getSenderPublicKeyString(), getReceiverPublicKeyString(), amount.toString());
+            cachedHash = hash;
+        }
+        return hash;
     }
 
     /**
      * Given a private key, the function finds the signature
-     * for the transactions using SHA1WithRSA algorithm.
+     * for the transactions using the scheme the key belongs to.
      *
      * @param privateKey Used to sign the transaction.
-     * @return A string representing the signature,
-     * or an empty string if an error occurs.
+     * @return The raw bytes of the signature,
+     * or an empty array if an error occurs.
      */
-    private String generateSignature(PrivateKey privateKey) {
+    private byte[] generateSignature(PrivateKey privateKey) {
         // Get the hash string that represents the data and convert to byte array
         byte[] data = BitManipulation.stringToByteArray(this.getHash());
         try {
-            Signature signature = Signature.getInstance("SHA1WithRSA");
-            signature.initSign(privateKey);
-            signature.update(data);
-            return BitManipulation.byteArrayToString(signature.sign());
+            return signatureScheme.sign(privateKey, data);
         } catch (Exception e) {
             e.printStackTrace();
-            return "";
+            return new byte[0];
         }
     }
 
     /**
      * Verifies that the data were signed with the private key
      * associated with the sender's public key.
+     * Successful verifications are remembered in the {@link VerificationCache},
+     * so verifying the same transaction again is a lookup.
      *
      * @return true if the signature is correct, false otherwise.
      */
     public boolean verifySignature() {
+        // The signature must be made by the scheme of the sender's key.
+        if (signatureScheme == null || !signatureScheme.supports(senderPublicKey))
+            return false;
+        String hash = this.getHash();
+        if (VERIFICATION_CACHE.isVerified(hash, signature))
+            return true;
         // Get the hash string that represents the data and convert to byte array
-        byte[] data = BitManipulation.stringToByteArray(this.getHash());
+        byte[] data = BitManipulation.stringToByteArray(hash);
         try {
-            Signature signature = Signature.getInstance("SHA1WithRSA");
-            signature.initVerify(senderPublicKey);
-            signature.update(data);
-            return signature.verify(BitManipulation.stringToByteArray(this.signature));
+            if (!signatureScheme.verify(senderPublicKey, data, signature))
+                return false;
+            VERIFICATION_CACHE.recordVerified(hash, signature);
+            return true;
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Reads a transaction, the signature of older versions is converted to bytes.
+     *
+     * @param in The stream to read from.
+     * @throws IOException            If the stream fails or the transaction has no signature.
+     * @throws ClassNotFoundException If a class of the fields isn't found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        id = (String) fields.get("id", null);
+        senderPublicKey = (PublicKey) fields.get("senderPublicKey", null);
+        receiverPublicKey = (PublicKey) fields.get("receiverPublicKey", null);
+        amount = (BigDecimal) fields.get("amount", null);
+        Object signature = fields.get("signature", null);
+        if (signature instanceof String) {
+            this.signature = BitManipulation.stringToByteArray((String) signature);
+            this.signatureScheme = SignatureScheme.SHA1_WITH_RSA;
+        } else if (signature instanceof byte[]) {
+            this.signature = ((byte[]) signature).clone();
+            this.signatureScheme = (SignatureScheme) fields.get("signatureScheme", null);
+        } else {
+            throw new InvalidObjectException("The transaction has no signature.");
+        }
+    }
+
+    /**
+     * Get the cache that holds the successful signature verifications.
+     *
+     * @return The verification cache shared by all transactions.
+     */
+    public static VerificationCache getVerificationCache() {
+        return VERIFICATION_CACHE;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
     //////////////////// Setters and Getters ///////////////////////////////////////
     ////////////////////////////////////////////////////////////////////////////////
@@ -148,6 +216,19 @@ public class Transaction implements Blockable, Serializable {
         return id;
     }
 
+    /**
+     * Gets the sender and the receiver, once if they're the same account.
+     *
+     * @return The public keys of the accounts of the transaction.
+     */
+    @Override
+    public Collection<PublicKey> getAccounts() {
+        LinkedHashSet<PublicKey> accounts = new LinkedHashSet<>();
+        accounts.add(senderPublicKey);
+        accounts.add(receiverPublicKey);
+        return accounts;
+    }
+
     public PublicKey getSenderPublicKey() {
         return senderPublicKey;
     }
@@ -160,8 +241,22 @@ public class Transaction implements Blockable, Serializable {
         return amount;
     }
 
-    public String getSignature() {
-        return signature;
+    public byte[] getSignature() {
+        return signature.clone();
+    }
+
+    /**
+     * Gets the signature as a hexadecimal String, this is the
+     * form used when hashing the signature as a part of a block.
+     *
+     * @return the signature.
+     */
+    public String getSignatureString() {
+        return BitManipulation.byteArrayToString(signature);
+    }
+
+    public SignatureScheme getSignatureScheme() {
+        return signatureScheme;
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -177,12 +272,14 @@ public class Transaction implements Blockable, Serializable {
                 Objects.equals(getSenderPublicKey(), that.getSenderPublicKey()) &&
                 Objects.equals(getReceiverPublicKey(), that.getReceiverPublicKey()) &&
                 Objects.equals(getAmount(), that.getAmount()) &&
-                Objects.equals(getSignature(), that.getSignature());
+                Arrays.equals(signature, that.signature) &&
+                getSignatureScheme() == that.getSignatureScheme();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getId(), getSenderPublicKey(), getReceiverPublicKey(), getAmount(), getSignature());
+        return Objects.hash(getId(), getSenderPublicKey(), getReceiverPublicKey(), getAmount(),
+                Arrays.hashCode(signature), getSignatureScheme());
     }
 
     @Override
@@ -192,7 +289,8 @@ public class Transaction implements Blockable, Serializable {
                 "\t\tsenderPublicKey   :" + getSenderPublicKeyString() + '\n' +
                 "\t\treceiverPublicKey :" + getReceiverPublicKeyString() + '\n' +
                 "\t\tamount            :" + amount + '\n' +
-                "\t\tsignature         :" + signature + '\n' +
+                "\t\tsignature         :" + getSignatureString() + '\n' +
+                "\t\tsignatureScheme   :" + signatureScheme + '\n' +
                 "\t}";
     }
 }
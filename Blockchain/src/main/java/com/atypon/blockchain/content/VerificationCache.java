@@ -0,0 +1,199 @@
+package com.atypon.blockchain.content;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache that remembers the signatures that were successfully
+ * verified, keyed by the (transaction hash, signature) pair, so verifying
+ * the same transaction again skips the signature math.
+ * Only successful verifications are recorded, a failed one is always re-checked.
+ * The entries are split over segments, each segment is an LRU map guarded by
+ * its own lock, so the eviction is least-recently-used per segment.
+ * Threadsafe.
+ */
+public final class VerificationCache {
+    private final static int DEFAULT_NUMBER_OF_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Initialize the cache with the default number of segments.
+     *
+     * @param capacity The maximum number of verifications to remember.
+     */
+    public VerificationCache(int capacity) {
+        this(capacity, Math.min(DEFAULT_NUMBER_OF_SEGMENTS, Math.max(1, capacity)));
+    }
+
+    /**
+     * Initialize the cache.
+     *
+     * @param capacity         The maximum number of verifications to remember.
+     * @param numberOfSegments The number of independently locked segments.
+     * @throws IllegalArgumentException if the capacity or the number of segments isn't positive.
+     */
+    public VerificationCache(int capacity, int numberOfSegments) {
+        if (capacity <= 0 || numberOfSegments <= 0)
+            throw new IllegalArgumentException("Capacity and number of segments must be positive!");
+        segments = new Segment[numberOfSegments];
+        int segmentCapacity = (capacity + numberOfSegments - 1) / numberOfSegments;
+        for (int i = 0; i < numberOfSegments; ++i)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    /**
+     * Checks whether the signature was verified before for the given hash,
+     * and counts the lookup as a hit or a miss.
+     *
+     * @param hash      The hash of the signed data.
+     * @param signature The raw bytes of the signature.
+     * @return true if the pair was recorded as verified, false otherwise.
+     */
+    public boolean isVerified(String hash, byte[] signature) {
+        Key key = new Key(hash, signature);
+        Segment segment = segmentFor(key);
+        boolean found;
+        synchronized (segment) {
+            found = segment.get(key) != null;
+        }
+        if (found)
+            hits.increment();
+        else
+            misses.increment();
+        return found;
+    }
+
+    /**
+     * Records that the signature was successfully verified for the given hash.
+     *
+     * @param hash      The hash of the signed data.
+     * @param signature The raw bytes of the signature, must not be changed afterwards.
+     */
+    public void recordVerified(String hash, byte[] signature) {
+        Key key = new Key(hash, signature);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Removes all the entries, the counters are kept.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        // Spread the bits so the low bits of similar hashes land on different segments.
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of verifications currently remembered.
+     *
+     * @return The number of entries in the cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "VerificationCache{" +
+                "size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                '}';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * An access-ordered map that drops its least recently used entry once full.
+     */
+    @SuppressWarnings("serial") // Never serialized.
+    private final class Segment extends LinkedHashMap<Key, Boolean> {
+        private final int capacity;
+
+        private Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+            if (size() <= capacity)
+                return false;
+            evictions.increment();
+            return true;
+        }
+    }
+
+    /**
+     * The (hash, signature) pair used as the key of the cache.
+     */
+    private final static class Key {
+        private final String hash;
+        private final byte[] signature;
+        private final int hashCode;
+
+        private Key(String hash, byte[] signature) {
+            this.hash = hash;
+            this.signature = signature;
+            this.hashCode = 31 * hash.hashCode() + Arrays.hashCode(signature);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode &&
+                    hash.equals(key.hash) &&
+                    Arrays.equals(signature, key.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * The creation of the block a miner works on: the signature of its data
+ * is verified and the block is made on top of the previous one.
+ */
+@Name("com.atypon.BlockTemplate")
+@Label("Block Template")
+@Category({"Blockchain", "Mining"})
+@Description("Creation of the block to mine, data signature verification included")
+@StackTrace(false)
+public final class BlockTemplateEvent extends Event {
+    @Label("Previous Hash")
+    public String prvHash;
+
+    @Label("Data ID")
+    public String dataId;
+
+    @Label("Valid Signature")
+    public boolean validSignature;
+}
@@ -0,0 +1,29 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * A user taking a received chain in place of its own, from the verification to the switch.
+ */
+@Name("com.atypon.ChainReplacement")
+@Label("Chain Replacement")
+@Category({"Blockchain", "Validation"})
+@Description("Replacement of the chain of a user by a received one, verification included")
+@StackTrace(false)
+public final class ChainReplacementEvent extends Event {
+    @Label("Port")
+    public int port;
+
+    @Label("Old Height")
+    public int oldHeight;
+
+    @Label("New Height")
+    public int newHeight;
+
+    @Label("Fork Depth")
+    @Description("The number of blocks of the old chain that were replaced")
+    public int forkDepth;
+
+    @Label("Replaced")
+    public boolean replaced;
+}
@@ -0,0 +1,37 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * The verification of a chain by a user, timed by phase: the replay of the
+ * balances, the rules of the rewards and the fees, and the blocks themselves
+ * (hashes, proofs of work and signatures).
+ */
+@Name("com.atypon.ChainValidation")
+@Label("Chain Validation")
+@Category({"Blockchain", "Validation"})
+@Description("Verification of a chain, with the time of each phase")
+@StackTrace(false)
+public final class ChainValidationEvent extends Event {
+    @Label("Height")
+    public int height;
+
+    @Label("Trusted Height")
+    @Description("The number of blocks covered by a checkpoint, not verified again")
+    public int trustedHeight;
+
+    @Label("Replay Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long replayTime;
+
+    @Label("Rules Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long rulesTime;
+
+    @Label("Blocks Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long blocksTime;
+
+    @Label("Valid")
+    public boolean valid;
+}
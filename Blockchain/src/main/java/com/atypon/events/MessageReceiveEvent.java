@@ -0,0 +1,27 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * A connection from another user, from its acceptance to the response,
+ * with the time spent decoding the message.
+ */
+@Name("com.atypon.MessageReceive")
+@Label("Message Receive")
+@Category({"Blockchain", "Network"})
+@Description("A message received from another user and handled")
+@StackTrace(false)
+public final class MessageReceiveEvent extends Event {
+    @Label("Port")
+    public int port;
+
+    @Label("Sender")
+    public String sender;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decodeTime;
+}
@@ -0,0 +1,25 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * A message sent to another user, from the connection to the response.
+ */
+@Name("com.atypon.MessageSend")
+@Label("Message Send")
+@Category({"Blockchain", "Network"})
+@Description("A message sent to another user, until its response")
+@StackTrace(false)
+public final class MessageSendEvent extends Event {
+    @Label("Port")
+    public int port;
+
+    @Label("Receiver")
+    public String receiver;
+
+    @Label("Message Type")
+    public String messageType;
+
+    @Label("Delivered")
+    public boolean delivered;
+}
@@ -0,0 +1,26 @@
+package com.atypon.events;
+
+import jdk.jfr.*;
+
+/**
+ * The search for the nonce of a block, it ends when the nonce is found or the mining is stopped.
+ */
+@Name("com.atypon.NonceSearch")
+@Label("Nonce Search")
+@Category({"Blockchain", "Mining"})
+@Description("Proof of work of a block, until the nonce is found or the mining is stopped")
+@StackTrace(false)
+public final class NonceSearchEvent extends Event {
+    @Label("Data ID")
+    public String dataId;
+
+    @Label("Leading Zeros")
+    public int numberOfZeros;
+
+    @Label("Attempts")
+    @Description("The number of nonces tried")
+    public long attempts;
+
+    @Label("Found")
+    public boolean found;
+}
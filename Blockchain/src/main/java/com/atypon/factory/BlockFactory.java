@@ -2,37 +2,91 @@ package com.atypon.factory;
 
 import com.atypon.blockchain.Block;
 import com.atypon.blockchain.Blockable;
+import com.atypon.blockchain.Difficulty;
+import com.atypon.events.BlockTemplateEvent;
+import com.atypon.events.NonceSearchEvent;
+import com.atypon.metrics.Meter;
+import com.atypon.metrics.MetricRegistry;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A factory class for {@link Block}.
  */
 public final class BlockFactory {
+    // The hash attempts of the miners of the process, marked in batches to keep them off the mining loop.
+    private final static Meter HASHES = MetricRegistry.getDefault().meter("mining.hashes");
+    private final static int HASHES_PER_MARK = 4096;
+    // Runs the searches of the nonce besides the one of the mining thread.
+    private final static ExecutorService MINING_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "block-miner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The number of threads searching the nonce of a block.
+    private static volatile int miningThreads = 1;
+
     /**
      * Creates a mined instance of the given data.
      *
+     * @param prvBlock  The previous block in the chain, null for the first block.
+     * @param data      The data of the current block.
+     * @param target    The largest hash the block may have.
+     * @param timestamp The time of the block, in milliseconds since the epoch.
+     * @param <T>       The type of the blockchain, which is bounded to {@link Blockable}.
+     * @return A mined instance of the given data, null if the mining was stopped.
+     * @throws RuntimeException if the proof of work is invalid or the signature is invalid.
+     */
+    public static <T extends Blockable> Block<T> getMinedInstance(Block<T> prvBlock, T data,
+                                                                  BigInteger target, long timestamp) {
+        BlockTemplateEvent event = new BlockTemplateEvent();
+        event.begin();
+        boolean validSignature = data.verifySignature();
+        Block<T> block = validSignature ?
+                new Block<>(prvBlock == null ? "" : prvBlock.getHash(), data, 0L, timestamp, target) : null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.prvHash = prvBlock == null ? "" : prvBlock.getHash();
+            event.dataId = data.getId();
+            event.validSignature = validSignature;
+            event.commit();
+        }
+        if (!validSignature)
+            throw new RuntimeException("Data signature is invalid!");
+        block = BlockFactory.mine(block);
+        if (block != null && !block.verifyProofOfWork(block.getNonce()))
+            throw new RuntimeException("Block is not proved to have been worked on!");
+        return block;
+    }
+
+    /**
+     * An overloaded version that takes the number of zeros needed
+     * to proof work instead of the target, timed now.
+     *
      * @param prvBlock      The previous block in the chain.
      * @param data          The data of the current block.
      * @param numberOfZeros The number of zeros needed to proof work.
      * @param <T>           The type of the blockchain, which is bounded to {@link Blockable}.
      * @return A mined instance of the given data.
-     * @throws RuntimeException if the proof of work is invalid or the signature is invalid.
      */
     public static <T extends Blockable> Block<T> getMinedInstance(Block<T> prvBlock, T data,
                                                                   int numberOfZeros) {
-        if (!data.verifySignature())
-            throw new RuntimeException("Data signature is invalid!");
-        Block<T> block = getInstance(prvBlock, data);
-        block = BlockFactory.mine(block, numberOfZeros);
-        if (block != null && !block.verifyProofOfWork())
-            throw new RuntimeException("Block is not proved to have been worked on!");
-        return block;
+        return getMinedInstance(prvBlock, data, Difficulty.targetOf(numberOfZeros), System.currentTimeMillis());
     }
 
     /**
-     * An overloaded version that skips the number of zeros
-     * and sends the default number of zeroes.
+     * An overloaded version that sends the initial target, timed now, the
+     * block is valid after the previous block until the chain is retargeted,
+     * use {@link #getNextMinedInstance} to follow the target of a chain.
      *
      * @param prvBlock The previous block in the chain.
      * @param data     The data of the current block.
@@ -40,24 +94,38 @@ public final class BlockFactory {
      * @return A mined instance of the given data.
      */
     public static <T extends Blockable> Block<T> getMinedInstance(Block<T> prvBlock, T data) {
-        return getMinedInstance(prvBlock, data, Block.NUMBER_OF_LEADING_ZEROS);
+        return getMinedInstance(prvBlock, data, Difficulty.INITIAL_TARGET, System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a mined instance of the given data as the next block of a chain,
+     * with the target the chain expects and a timestamp it accepts, see {@link Difficulty}.
+     *
+     * @param blocks The blocks of the chain, in order.
+     * @param data   The data of the next block.
+     * @param <T>    The type of the blockchain, which is bounded to {@link Blockable}.
+     * @return A mined instance of the given data, null if the mining was stopped.
+     */
+    public static <T extends Blockable> Block<T> getNextMinedInstance(List<Block<T>> blocks, T data) {
+        long timestamp = Math.max(System.currentTimeMillis(), Difficulty.minimumTimestamp(blocks));
+        Block<T> prvBlock = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        return getMinedInstance(prvBlock, data, Difficulty.nextTarget(blocks), timestamp);
     }
 
     /**
-     * An overloaded version that skips the number of zeros
-     * and the previous hash and sends the default number of
-     * zeroes since it is created for the first block in the blockchain
+     * An overloaded version that skips the previous hash and sends
+     * the target of the first block in the blockchain, timed now.
      *
      * @param data The data of the current block.
      * @param <T>  The type of the blockchain, which is bounded to {@link Blockable}.
      * @return A mined instance of the given data.
      */
     public static <T extends Blockable> Block<T> getFirstMinedInstance(T data) {
-        return getMinedInstance(null, data, Block.FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS);
+        return getMinedInstance(null, data, Difficulty.FIRST_BLOCK_TARGET, System.currentTimeMillis());
     }
 
     /**
-     * This is the version that actually creates the block.
+     * Creates an unmined legacy block, without a timestamp and a target.
      *
      * @param prvHash The hash of the previous block in the chain.
      * @param data    The data of the current block.
@@ -81,30 +149,128 @@ public final class BlockFactory {
     }
 
     /**
-     * A function that mines a given block to proof the work for a specific number of zeros.
+     * A function that mines a given block to proof the work for its target.
+     * The nonces are searched by the configured number of threads, see {@link #setMiningThreads}.
      *
-     * @param block         The block to mine.
-     * @param numberOfZeros The number of zeros needed to proof work.
-     * @param <T>           The type of the blockchain, which is bounded to {@link Blockable}.
-     * @return The block after being mined.
+     * @param block The block to mine.
+     * @param <T>   The type of the blockchain, which is bounded to {@link Blockable}.
+     * @return The block after being mined, null if the mining was stopped.
      */
-    private static <T extends Blockable> Block<T> mine(Block<T> block, int numberOfZeros) {
-        Block<T> newBlock = BlockFactory.getInstance(block.getPrvHash(), block.getData());
-        Long nonce = new Random().nextLong();
+    private static <T extends Blockable> Block<T> mine(Block<T> block) {
+        Block<T> newBlock = new Block<>(block.getPrvHash(), block.getData(), 0L, block.getTimestamp(),
+                block.getTarget());
+        long firstNonce = new Random().nextLong();
+        LongAdder attempts = new LongAdder();
+        Long nonce = null;
         synchronized (BlockFactory.class) {
             run();
-            do {
-                if (isStop())
-                    return null;
-                ++nonce;
-            } while (!newBlock.verifyProofOfWork(nonce, numberOfZeros));
+            NonceSearchEvent event = new NonceSearchEvent();
+            event.begin();
+            try {
+                int threads = miningThreads;
+                nonce = threads == 1 ? search(newBlock, firstNonce, 1, new AtomicBoolean(), attempts)
+                        : searchInParallel(newBlock, firstNonce, threads, attempts);
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.dataId = newBlock.getDataId();
+                    // The whole leading zeros the target demands.
+                    event.numberOfZeros = 256 - newBlock.getTarget().bitLength();
+                    event.attempts = attempts.sum();
+                    event.found = nonce != null;
+                    event.commit();
+                }
+            }
         }
+        if (nonce == null)
+            return null;
         newBlock.setNonce(nonce);
         return newBlock;
     }
 
+    /**
+     * Searches the nonces from the given one, every step-th nonce, until the proof of
+     * work is found, the mining is stopped or another search found it.
+     *
+     * @param block    The block to mine, it isn't changed.
+     * @param nonce    The nonce the search starts after.
+     * @param step     The distance between two nonces tried.
+     * @param done     Set once a search found the nonce, the others stop.
+     * @param attempts Counts the nonces tried.
+     * @return The nonce, null if the search was stopped.
+     */
+    private static <T extends Blockable> Long search(Block<T> block, long nonce, int step,
+                                                     AtomicBoolean done, LongAdder attempts) {
+        int hashes = 0;
+        try {
+            do {
+                if (isStop() || done.get())
+                    return null;
+                nonce += step;
+                if (++hashes == HASHES_PER_MARK) {
+                    HASHES.mark(hashes);
+                    attempts.add(hashes);
+                    hashes = 0;
+                }
+            } while (!block.verifyProofOfWork(nonce));
+            return done.compareAndSet(false, true) ? nonce : null;
+        } finally {
+            HASHES.mark(hashes);
+            attempts.add(hashes);
+        }
+    }
+
+    /**
+     * Searches the nonces with several threads, each tries every n-th nonce from its own
+     * offset, the calling thread is one of them.
+     *
+     * @return The nonce found first, null if the mining was stopped.
+     */
+    private static <T extends Blockable> Long searchInParallel(Block<T> block, long firstNonce,
+                                                               int threads, LongAdder attempts) {
+        AtomicBoolean done = new AtomicBoolean();
+        List<Future<Long>> others = new ArrayList<>(threads - 1);
+        for (int i = 1; i < threads; ++i) {
+            long offset = i;
+            others.add(MINING_EXECUTOR.submit(() ->
+                    search(block, firstNonce + offset, threads, done, attempts)));
+        }
+        Long nonce = search(block, firstNonce, threads, done, attempts);
+        for (Future<Long> other : others) {
+            try {
+                // The others stop right after one of them found the nonce.
+                Long found = other.get();
+                if (found != null)
+                    nonce = found;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                done.set(true);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        return nonce;
+    }
+
+    /**
+     * Sets the number of threads searching the nonce of a block, the mining of
+     * the process is still one block at a time.
+     *
+     * @param threads The number of threads.
+     * @throws IllegalArgumentException if the number isn't positive.
+     */
+    public static void setMiningThreads(int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("The number of mining threads must be positive!");
+        miningThreads = threads;
+    }
+
+    public static int getMiningThreads() {
+        return miningThreads;
+    }
+
     // A boolean indicating the running of a mining process.
-    private static boolean isRunning = true;
+    private static volatile boolean isRunning = true;
 
     /**
      * A static function to check if a block is being mined.
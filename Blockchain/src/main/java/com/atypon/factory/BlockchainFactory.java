@@ -4,6 +4,8 @@ import com.atypon.blockchain.Block;
 import com.atypon.blockchain.Blockable;
 import com.atypon.blockchain.Blockchain;
 
+import java.util.List;
+
 /**
  * A factory class for {@link Blockchain}.
  */
@@ -18,6 +20,16 @@ public final class BlockchainFactory {
         return new Blockchain<>();
     }
 
+    /**
+     * Creates a blockchain holding the given blocks without verifying or copying them.
+     * @param blocks The blocks of the chain in order, the list must not change afterwards.
+     * @param <T> The type of the blockchain, which is bounded to {@link Blockable}.
+     * @return a blockchain with the given blocks.
+     */
+    public static <T extends Blockable> Blockchain<T> getInstance(List<Block<T>> blocks) {
+        return new Blockchain<>(blocks);
+    }
+
     /**
      * Creates a blockchain with on block containing the given data.
      * @param data The data of the first block, which is a {@link Blockable} object.
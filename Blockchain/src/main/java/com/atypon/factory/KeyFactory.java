@@ -1,37 +1,59 @@
 package com.atypon.factory;
 
+import com.atypon.utility.SignatureScheme;
+
 import java.security.*;
+import java.util.EnumMap;
 import java.util.UUID;
 
 /**
  * A factory class that generates {@link KeyPair} and unique IDs.
  */
 public final class KeyFactory {
-    private final static int KEY_LENGTH = 1024;
-    private final static String ALGORITHM = "RSA";
-    private final static KeyPairGenerator KEY_PAIR_GENERATOR = createKeyPairGenerator();
+    // The generators are created when first used, a scheme the JVM doesn't support has none.
+    private final static EnumMap<SignatureScheme, KeyPairGenerator> KEY_PAIR_GENERATORS = new EnumMap<>(SignatureScheme.class);
 
-    private static KeyPairGenerator createKeyPairGenerator() {
+    /**
+     * Create a Public/Private key pair using the default signature scheme.
+     *
+     * @return The generated KeyPair.
+     */
+    public static KeyPair getKeyInstance() {
+        return getKeyInstance(SignatureScheme.DEFAULT);
+    }
+
+    /**
+     * Create a Public/Private key pair for the given signature scheme.
+     *
+     * @param scheme The signature scheme the keys will be used with.
+     * @return The generated KeyPair.
+     * @throws IllegalStateException if the scheme isn't supported by the running JVM.
+     */
+    public static KeyPair getKeyInstance(SignatureScheme scheme) {
+        KeyPairGenerator generator;
         try {
-            KeyPairGenerator instance = KeyPairGenerator.getInstance(ALGORITHM);
-            instance.initialize(KEY_LENGTH);
-            return instance;
+            generator = getGenerator(scheme);
         } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-            return null;
+            throw new IllegalStateException("Signature scheme " + scheme + " is not supported!", e);
+        }
+        synchronized (generator) {
+            return generator.generateKeyPair();
         }
     }
 
     /**
-     * Create a Public/Private key pair.
+     * Checks whether the running JVM can generate keys for the given scheme.
      *
-     * @return The generated KeyPair.
+     * @param scheme The signature scheme.
+     * @return true if the scheme is supported, false otherwise.
      */
-    public static KeyPair getKeyInstance() {
-        KeyPair keyPair = null;
-        if (KEY_PAIR_GENERATOR != null)
-            keyPair = KEY_PAIR_GENERATOR.generateKeyPair();
-        return keyPair;
+    public static boolean isSupported(SignatureScheme scheme) {
+        try {
+            getGenerator(scheme);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
     }
 
     /**
@@ -43,6 +65,17 @@ public final class KeyFactory {
         return UUID.randomUUID().toString() + '-' + UUID.randomUUID().toString();
     }
 
+    private static KeyPairGenerator getGenerator(SignatureScheme scheme) throws NoSuchAlgorithmException {
+        synchronized (KEY_PAIR_GENERATORS) {
+            KeyPairGenerator generator = KEY_PAIR_GENERATORS.get(scheme);
+            if (generator == null) {
+                generator = scheme.createKeyPairGenerator();
+                KEY_PAIR_GENERATORS.put(scheme, generator);
+            }
+            return generator;
+        }
+    }
+
     /**
      * A private constructor to enforce non-instantiability.
      */
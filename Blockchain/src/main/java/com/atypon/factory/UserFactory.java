@@ -1,15 +1,34 @@
 package com.atypon.factory;
 
 import com.atypon.ClientSocket;
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.storage.BlockStore;
+import com.atypon.storage.FsyncPolicy;
+import com.atypon.storage.LedgerSnapshotStore;
+import com.atypon.storage.NodeState;
+import com.atypon.userAPI.Checkpoint;
 import com.atypon.userAPI.User;
+import com.atypon.utility.FileUtility;
+import com.atypon.utility.SignatureScheme;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.KeyPair;
+import java.util.List;
 
 /**
  * A factory class for {@link User}.
  */
 public final class UserFactory {
+    // When the saved data is forced to the disk, once per save by default.
+    public final static FsyncPolicy FSYNC_POLICY = FsyncPolicy.ON_SYNC;
+    private final static String BLOCKS_DIRECTORY_NAME = "blocks";
+    private final static String NODE_STATE_FILE_NAME = "node.ser";
+    private final static String LEDGER_DIRECTORY_NAME = "ledger";
 
     /**
      * Create a user give the alias, ip address and port number.
@@ -19,7 +38,33 @@ public final class UserFactory {
      * @return An instance of a user with the given information.
      */
     public static User getInstance(String alias, String ipAddress, int port) {
-        KeyPair keyPair = KeyFactory.getKeyInstance();
+        return getInstance(alias, ipAddress, port, SignatureScheme.DEFAULT);
+    }
+
+    /**
+     * Create a user whose keys belong to the given signature scheme.
+     *
+     * @param alias     The user alias.
+     * @param ipAddress The user ip address.
+     * @param port      The user port.
+     * @param scheme    The signature scheme used to sign the user transactions.
+     * @return An instance of a user with the given information.
+     * @throws IllegalStateException if the scheme isn't supported by the running JVM.
+     */
+    public static User getInstance(String alias, String ipAddress, int port, SignatureScheme scheme) {
+        return getInstance(alias, ipAddress, port, KeyFactory.getKeyInstance(scheme));
+    }
+
+    /**
+     * Create a user with the given keys, like the keys of a node kept in a file.
+     *
+     * @param alias     The user alias.
+     * @param ipAddress The user ip address.
+     * @param port      The user port.
+     * @param keyPair   The keys of the user.
+     * @return An instance of a user with the given information.
+     */
+    public static User getInstance(String alias, String ipAddress, int port, KeyPair keyPair) {
         ClientSocket clientSocket = ClientFactory.getSocket(ipAddress, port, alias, keyPair.getPublic());
         return new User(clientSocket, keyPair.getPrivate());
     }
@@ -36,58 +81,159 @@ public final class UserFactory {
     }
 
     /**
-     * Save the user data to a file.
+     * Save the user data to a directory named after the file: the chain is
+     * appended to a {@link BlockStore} in the 'blocks' sub-directory (only the
+     * blocks that weren't saved before are written), the checkpoints of the chain
+     * are written as ledger snapshots to the 'ledger' sub-directory and the rest
+     * of the node state is written to '{@value #NODE_STATE_FILE_NAME}'.
      *
      * @param file The file name.
      * @param user The user to save.
      */
     public static void writeUser(String file, User user) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file + ".ser"))) {
-            out.writeObject(user);
+        Path directory = Paths.get(file);
+        try {
+            BlockStore blockStore = user.getBlockStore();
+            if (blockStore == null) {
+                blockStore = BlockStore.open(directory.resolve(BLOCKS_DIRECTORY_NAME), FSYNC_POLICY);
+                user.setBlockStore(blockStore);
+            }
+            // Taken before the blocks are saved, so they're never above the saved chain.
+            List<Checkpoint> checkpoints = user.getCheckpoints();
+            saveBlocks(blockStore, user.getBlockchain());
+            blockStore.sync();
+            LedgerSnapshotStore snapshotStore = getSnapshotStore(directory);
+            for (int i = checkpoints.size() - 1; i >= 0; --i)
+                snapshotStore.write(checkpoints.get(i));
+
+            NodeState nodeState;
+            synchronized (user.getTransactionPool()) {
+                nodeState = new NodeState(user.getClientSocket(), user.getPrivateKey(), user.getClients(),
+                        user.getTransactionPool(), user.isMiningOn());
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(nodeState);
+            }
+            FileUtility.writeAtomically(directory.resolve(NODE_STATE_FILE_NAME), bytes.toByteArray(),
+                    FSYNC_POLICY != FsyncPolicy.NEVER);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Load the user data from a file.
+     * Makes the store hold the same blocks as the chain, the blocks after the
+     * last block the store and the chain have in common are replaced, so
+     * normally only the new blocks are appended.
+     *
+     * @param blockStore The store to save to.
+     * @param blockchain The chain to save.
+     * @throws IOException if the store fails.
+     */
+    private static void saveBlocks(BlockStore blockStore, Blockchain<MinedTransaction> blockchain)
+            throws IOException {
+        // The snapshot doesn't change while it's saved.
+        List<Block<MinedTransaction>> blocks = blockchain.snapshot();
+        // Step back until the stored block is the same as the chain block.
+        int common = Math.min(blockStore.height(), blocks.size());
+        while (common > 0 && !blockStore.getHash(common - 1).equals(blocks.get(common - 1).getHash()))
+            --common;
+        blockStore.truncate(common);
+        for (Block<MinedTransaction> block : blocks.subList(common, blocks.size()))
+            blockStore.append(block);
+    }
+
+    /**
+     * Load the user data from the directory written by {@link #writeUser}.
+     * The '.ser' files of a whole serialized user, written by older versions,
+     * aren't read: the classes of the user changed since.
      *
      * @param file The file name.
      * @return The user read from the file, null if the user reading failed.
      */
     public static User readUser(String file) {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file + ".ser"))) {
-            User user = (User) in.readObject();
-
-            if (user.getBlockchain() == null)
-                return null;
-            if (!user.getBlockchain().verifyChain())
-                return null;
-
-            if (user.getClientSocket() == null)
-                return null;
-            if (user.getClientSocket().getPublicKey() == null)
-                return null;
-            if (user.getClientSocket().getAlias() == null)
-                return null;
-            if (user.getClientSocket().getIpAddress() == null)
-                return null;
-            if (!(user.getClientSocket().getPort() + "").equals(file))
-                return null;
-
-            if (user.getTransactionPool() == null)
-                return null;
-
-            if (user.getClient() == null)
-                return null;
-
-            if (user.getClients() == null)
-                return null;
-
-            return user;
+        Path directory = Paths.get(file);
+        if (!Files.isDirectory(directory))
+            return null;
+
+        BlockStore blockStore = null;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(directory.resolve(NODE_STATE_FILE_NAME))))) {
+            NodeState nodeState = (NodeState) in.readObject();
+            blockStore = BlockStore.open(directory.resolve(BLOCKS_DIRECTORY_NAME), FSYNC_POLICY);
+            // The blocks are decoded from the mapped store when they're accessed.
+            User user = new User(nodeState.getClientSocket(), nodeState.getPrivateKey(),
+                    BlockchainFactory.getInstance(blockStore.asList()), nodeState.getClients(),
+                    nodeState.getTransactionPool(), nodeState.isMiningOn());
+            user.setBlockStore(blockStore);
+            // The balances are recovered from the nearest snapshot.
+            user.setCheckpoints(getSnapshotStore(directory).readAll());
+            if (isValid(user, directory.getFileName().toString()))
+                return user;
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+        }
+        closeBlockStore(blockStore);
+        return null;
+    }
+
+    /**
+     * Checks that the loaded user is complete and belongs to the given port.
+     *
+     * @param user The loaded user.
+     * @param port The port the user was saved under.
+     * @return true if the user is valid, false otherwise.
+     */
+    private static boolean isValid(User user, String port) {
+        if (user.getBlockchain() == null)
+            return false;
+        // Only the blocks above the checkpoint of the user are verified.
+        if (!user.verifyBlockchain())
+            return false;
+
+        if (user.getClientSocket() == null)
+            return false;
+        if (user.getClientSocket().getPublicKey() == null)
+            return false;
+        if (user.getClientSocket().getAlias() == null)
+            return false;
+        if (user.getClientSocket().getIpAddress() == null)
+            return false;
+        if (!(user.getClientSocket().getPort() + "").equals(port))
+            return false;
+
+        if (user.getTransactionPool() == null)
+            return false;
+
+        if (user.getClient() == null)
+            return false;
+
+        return user.getClients() != null;
+    }
+
+    private static LedgerSnapshotStore getSnapshotStore(Path directory) {
+        return new LedgerSnapshotStore(directory.resolve(LEDGER_DIRECTORY_NAME), User.CHECKPOINTS_KEPT,
+                FSYNC_POLICY != FsyncPolicy.NEVER);
+    }
+
+    /**
+     * Closes the block store of the user, if any, after the user is saved for the last time.
+     *
+     * @param user The user.
+     */
+    public static void closeUser(User user) {
+        closeBlockStore(user.getBlockStore());
+        user.setBlockStore(null);
+    }
+
+    private static void closeBlockStore(BlockStore blockStore) {
+        if (blockStore == null)
+            return;
+        try {
+            blockStore.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -24,9 +24,7 @@ public class NewTransaction {
         this.thisFrame = thisFrame;
         this.prvFrame = prvFrame;
         this.user = user;
-        synchronized (user.getClients()) {
-            clients = user.getClients();
-        }
+        clients = user.getClients();
 
         // Initialize JFrame
         initFrame();
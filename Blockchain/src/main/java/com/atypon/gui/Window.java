@@ -87,6 +87,7 @@ public class Window {
             public void windowClosing(WindowEvent e) {
                 user.getClient().stopRunning();
                 UserFactory.writeUser(user.getPort() + "", user);
+                UserFactory.closeUser(user);
             }
 
             @Override
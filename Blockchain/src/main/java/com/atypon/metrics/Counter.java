@@ -0,0 +1,38 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count of events, like the messages received.
+ * Counting is cheap under contention, it only touches a cell of the thread.
+ * Threadsafe.
+ */
+public final class Counter implements Metric {
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Counts an event.
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Counts several events.
+     *
+     * @param events The number of events.
+     */
+    public void add(long events) {
+        count.add(events);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void report(String name, Map<String, Number> snapshot) {
+        snapshot.put(name, getCount());
+    }
+}
@@ -0,0 +1,30 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A value read when it's reported, like the size of a pool, so
+ * nothing is done on the path that changes the value.
+ */
+public final class Gauge implements Metric {
+    private final LongSupplier value;
+
+    /**
+     * Initialize a gauge reading the given value.
+     *
+     * @param value Reads the current value, it must be threadsafe.
+     */
+    public Gauge(LongSupplier value) {
+        this.value = value;
+    }
+
+    public long getValue() {
+        return value.getAsLong();
+    }
+
+    @Override
+    public void report(String name, Map<String, Number> snapshot) {
+        snapshot.put(name, getValue());
+    }
+}
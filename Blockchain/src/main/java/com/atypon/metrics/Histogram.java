@@ -0,0 +1,138 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The distribution of recorded values, like the durations of a verification.
+ * The values are counted in buckets, 16 per power of two, so a percentile is
+ * known within 1/16 of its value while recording a value is a few increments
+ * and the memory is fixed however many values are recorded.
+ * The values below 32 are counted exactly, negative values are recorded as 0.
+ * Threadsafe.
+ */
+public final class Histogram implements Metric {
+    // The bits of a value below its highest bit that choose its bucket.
+    private final static int SUB_BUCKET_BITS = 4;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    // The percentiles added to the snapshots.
+    private final static double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param value The value.
+     */
+    public void update(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long max;
+        while (value > (max = this.max.get()) && !this.max.compareAndSet(max, value)) {
+            // Another thread raised the maximum meanwhile, check against it.
+        }
+    }
+
+    /**
+     * Records the time since the given start in microseconds, for
+     * the histograms of durations.
+     *
+     * @param startNanos The start, from {@link System#nanoTime()}.
+     */
+    public void updateSince(long startNanos) {
+        update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return The mean, 0 if no value was recorded.
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    /**
+     * Gets a percentile of the recorded values, the highest value of the bucket
+     * holding it, so it's never less than the real one.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, 0 if no value was recorded.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("The percentile must be between 0 and 100!");
+        // The buckets are read once, the total is taken from them so it matches.
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+            total += counts[i] = buckets.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        for (int i = 0; i < BUCKETS; ++i) {
+            rank -= counts[i];
+            if (rank <= 0)
+                return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    @Override
+    public void report(String name, Map<String, Number> snapshot) {
+        snapshot.put(name + ".count", getCount());
+        snapshot.put(name + ".mean", getMean());
+        snapshot.put(name + ".max", getMax());
+        for (double percentile : REPORTED_PERCENTILES)
+            snapshot.put(name + ".p" + (percentile == (long) percentile
+                    ? String.valueOf((long) percentile) : String.valueOf(percentile)), getPercentile(percentile));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Finds the bucket of a value: the values below 2 * SUB_BUCKETS have a bucket each,
+     * the others share a bucket with the values of the same highest bit and the same
+     * SUB_BUCKET_BITS bits below it.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Finds the highest value of a bucket.
+     */
+    static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+}
@@ -0,0 +1,91 @@
+package com.atypon.metrics;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Exposes the metrics of a {@link MetricRegistry} as the read-only attributes
+ * of a single MBean, an attribute per value of the snapshot of the registry
+ * (like "mining.hashes.rate"), so JConsole or any JMX client reads them and
+ * the metrics created later show up without registering anything again.
+ */
+public final class JmxMetrics implements DynamicMBean {
+    public final static String DEFAULT_NAME = "com.atypon.blockchain:type=Metrics";
+
+    private final MetricRegistry registry;
+
+    private JmxMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Registers the metrics of a registry with the platform MBean server.
+     * A failure is printed and ignored, the metrics are still counted.
+     *
+     * @param registry   The registry.
+     * @param objectName The name of the MBean.
+     * @return true if the MBean was registered, false otherwise.
+     */
+    public static boolean register(MetricRegistry registry, String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(new JmxMetrics(registry), name);
+            return true;
+        } catch (JMException | SecurityException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        SortedMap<String, Number> snapshot = registry.snapshot();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = snapshot.get(attribute);
+            if (value != null)
+                list.add(new Attribute(attribute, value));
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The metrics are read-only!");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Map.Entry<String, Number> value : registry.snapshot().entrySet())
+            attributes.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+                    value.getKey(), true, false, false));
+        return new MBeanInfo(getClass().getName(), "The metrics of the node.",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
@@ -0,0 +1,66 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and their rate per second, like the hash attempts of the miner.
+ * The rate is the one between the last two reads at least a second apart, so
+ * nothing but the count is done when the events are marked.
+ * Threadsafe.
+ */
+public final class Meter implements Metric {
+    // The shortest time the rate is measured over, in nanoseconds.
+    private final static long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder count = new LongAdder();
+    // The count and the time of the last measure of the rate, guarded by this meter.
+    private long lastCount;
+    private long lastTime = System.nanoTime();
+    private double rate;
+
+    /**
+     * Marks an event.
+     */
+    public void mark() {
+        count.increment();
+    }
+
+    /**
+     * Marks several events.
+     *
+     * @param events The number of events.
+     */
+    public void mark(long events) {
+        count.add(events);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the number of events per second since the last measure of the rate,
+     * which is measured again if at least a second passed since then.
+     *
+     * @return The events per second.
+     */
+    public synchronized double getRate() {
+        long now = System.nanoTime();
+        long elapsed = now - lastTime;
+        if (elapsed >= RATE_INTERVAL) {
+            long count = getCount();
+            rate = (count - lastCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            lastCount = count;
+            lastTime = now;
+        }
+        return rate;
+    }
+
+    @Override
+    public void report(String name, Map<String, Number> snapshot) {
+        snapshot.put(name + ".count", getCount());
+        snapshot.put(name + ".rate", getRate());
+    }
+}
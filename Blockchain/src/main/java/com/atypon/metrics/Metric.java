@@ -0,0 +1,19 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+
+/**
+ * A metric held by a {@link MetricRegistry}, it reports its current
+ * values as numbers so every metric is read the same way, by the JMX
+ * bean of the registry and by the snapshot files alike.
+ */
+public interface Metric {
+    /**
+     * Adds the current values of the metric to a snapshot.
+     *
+     * @param name     The name the metric is registered with, the name of a single
+     *                 value or the prefix of the names of several values.
+     * @param snapshot The snapshot to add the values to.
+     */
+    void report(String name, Map<String, Number> snapshot);
+}
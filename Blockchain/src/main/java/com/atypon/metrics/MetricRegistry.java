@@ -0,0 +1,131 @@
+package com.atypon.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the metrics of the process by name, the metrics of a node are named
+ * after it (like "node.4444.pool.size") so several nodes share a process.
+ * A metric is created the first time its name is asked for, the users of a
+ * metric keep it instead of looking it up on every event.
+ * The default registry is exposed through JMX, see {@link JmxMetrics}.
+ * Threadsafe.
+ */
+public final class MetricRegistry {
+    private final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the registry of the process, registered with the platform MBean server.
+     *
+     * @return The default registry.
+     */
+    public static MetricRegistry getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Gets the counter with the given name, created if there's none.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     * @throws IllegalArgumentException if the name is used by another kind of metric.
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class, key -> new Counter());
+    }
+
+    /**
+     * Gets the meter with the given name, created if there's none.
+     *
+     * @param name The name of the meter.
+     * @return The meter.
+     * @throws IllegalArgumentException if the name is used by another kind of metric.
+     */
+    public Meter meter(String name) {
+        return get(name, Meter.class, key -> new Meter());
+    }
+
+    /**
+     * Gets the histogram with the given name, created if there's none.
+     *
+     * @param name The name of the histogram.
+     * @return The histogram.
+     * @throws IllegalArgumentException if the name is used by another kind of metric.
+     */
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class, key -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge with the given name, replacing the gauge that had it if any
+     * (like the gauge of a node that was restarted on the same port).
+     *
+     * @param name  The name of the gauge.
+     * @param value Reads the current value, it must be threadsafe.
+     * @return The gauge.
+     * @throws IllegalArgumentException if the name is used by another kind of metric.
+     */
+    public Gauge gauge(String name, LongSupplier value) {
+        Gauge gauge = new Gauge(value);
+        Metric previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException("The metric " + name + " isn't a gauge!");
+        }
+        return gauge;
+    }
+
+    /**
+     * Removes the metrics whose names start with the given prefix, like the
+     * metrics of a node that was stopped.
+     *
+     * @param prefix The prefix of the names.
+     */
+    public void removeAll(String prefix) {
+        metrics.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /**
+     * Reads the current values of all the metrics.
+     *
+     * @return The values by name, sorted by name.
+     */
+    public SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Metric> metric : metrics.entrySet())
+            metric.getValue().report(metric.getKey(), snapshot);
+        return snapshot;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private <M extends Metric> M get(String name, Class<M> kind, Function<String, M> create) {
+        Metric metric = metrics.get(name);
+        if (metric == null)
+            metric = metrics.computeIfAbsent(name, create);
+        if (!kind.isInstance(metric))
+            throw new IllegalArgumentException("The metric " + name + " isn't a " + kind.getSimpleName() + "!");
+        return kind.cast(metric);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates the default registry on first use.
+     */
+    private static final class DefaultHolder {
+        private final static MetricRegistry INSTANCE = new MetricRegistry();
+
+        static {
+            JmxMetrics.register(INSTANCE, JmxMetrics.DEFAULT_NAME);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.atypon.metrics;
+
+import com.atypon.utility.FileUtility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the snapshot of a {@link MetricRegistry} to a file periodically,
+ * a line "name=value" per value sorted by name, on a daemon thread.
+ * The file is replaced atomically, so a reader never sees half a snapshot.
+ * Threadsafe.
+ */
+public final class MetricsReporter implements AutoCloseable {
+    private final MetricRegistry registry;
+    private final Path file;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Starts writing the snapshots.
+     *
+     * @param registry The registry whose metrics are written.
+     * @param file     The file the snapshots are written to.
+     * @param period   The time between two snapshots.
+     * @param unit     The unit of the period.
+     * @throws IllegalArgumentException if the period isn't positive.
+     */
+    public MetricsReporter(MetricRegistry registry, Path file, long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Period must be positive!");
+        this.registry = registry;
+        this.file = file;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, period, period, unit);
+    }
+
+    /**
+     * Writes a snapshot now.
+     *
+     * @throws IOException if the writing fails.
+     */
+    public synchronized void write() throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append("# ").append(System.currentTimeMillis()).append('\n');
+        for (Map.Entry<String, Number> value : registry.snapshot().entrySet())
+            content.append(value.getKey()).append('=').append(value.getValue()).append('\n');
+        FileUtility.writeAtomically(file, content.toString().getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    /**
+     * Stops writing the snapshots, after writing a last one.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        report();
+    }
+
+    private void report() {
+        try {
+            write();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
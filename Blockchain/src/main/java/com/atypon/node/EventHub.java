@@ -0,0 +1,290 @@
+package com.atypon.node;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.metrics.Counter;
+import com.atypon.metrics.MetricRegistry;
+import com.atypon.userAPI.ChainListener;
+import com.atypon.userAPI.User;
+import com.atypon.utility.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns the changes of the chain of a user into notifications for its
+ * subscribers, as frames of a server-sent events stream:
+ * <pre>
+ * tip          {"height", "hash"}                                   The chain has a new last block.
+ * transaction  {"height", "hash", "id", "sender", "receiver", "amount"}  A block touching the account was added.
+ * reverted     {"height", "hash", "id"}                             A block touching the account was removed.
+ * reorg        {"forkHeight", "depth", "added", "tip"}              The chain switched to a fork.
+ * overflow     {"dropped"}                                          The subscriber was too slow and is closed.
+ * </pre>
+ * The transactions are sent to the subscribers of their sender, receiver or
+ * miner, a subscriber of no account gets none of them.
+ * The frames are made once per change, on the thread of the change, and put
+ * in the buffer of each subscriber without blocking. A subscriber whose buffer
+ * is full is dropped: its buffer is replaced by an overflow frame and it's
+ * closed, so a slow consumer neither holds back the chain nor the others, and
+ * it knows to catch up through the other endpoints before subscribing again.
+ * Threadsafe.
+ */
+public final class EventHub implements ChainListener {
+    // The default number of frames a subscriber may be behind.
+    public final static int DEFAULT_CAPACITY = 256;
+
+    private final int capacity;
+    private final CopyOnWriteArrayList<Subscription> subscriptions;
+    private final AtomicLong sequence;
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final Counter dropped;
+
+    /**
+     * Initialize a hub without subscribers, its metrics are named after the
+     * port of the user (like "node.4444.events.dropped").
+     *
+     * @param user     The user whose chain is followed, it isn't listened to by this constructor.
+     * @param capacity The number of frames a subscriber may be behind.
+     * @throws IllegalArgumentException if the capacity isn't positive.
+     */
+    public EventHub(User user, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive.");
+        this.capacity = capacity;
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.sequence = new AtomicLong();
+        this.registry = MetricRegistry.getDefault();
+        this.prefix = "node." + user.getPort() + ".events.";
+        this.dropped = registry.counter(prefix + "dropped");
+        registry.gauge(prefix + "subscribers", subscriptions::size);
+    }
+
+    /**
+     * Adds a subscriber, it gets the changes made from now on.
+     *
+     * @param account The account whose transactions are sent, null for none.
+     * @return The subscription, to be closed when done.
+     */
+    public Subscription subscribe(PublicKey account) {
+        Subscription subscription = new Subscription(account);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Gets the number of open subscriptions.
+     *
+     * @return The number of subscribers.
+     */
+    public int getSubscribers() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Gets the number of subscribers dropped for being too slow.
+     *
+     * @return The number of dropped subscribers.
+     */
+    public long getDropped() {
+        return dropped.getCount();
+    }
+
+    /**
+     * Closes every subscription and removes the gauge of the hub.
+     */
+    public void close() {
+        for (Subscription subscription : subscriptions)
+            subscription.close();
+        registry.removeAll(prefix + "subscribers");
+    }
+
+    @Override
+    public void chainChanged(User user, int forkHeight, List<Block<MinedTransaction>> removed,
+                             List<Block<MinedTransaction>> added) {
+        if (subscriptions.isEmpty())
+            return;
+        String reorg = null;
+        if (!removed.isEmpty()) {
+            reorg = frame("reorg", json -> json.beginObject()
+                    .name("forkHeight").value(forkHeight)
+                    .name("depth").value(removed.size())
+                    .name("added").value(added.size())
+                    .name("tip").value(added.isEmpty() ? null : added.get(added.size() - 1).getHash())
+                    .endObject());
+        }
+        String tip = null;
+        if (!added.isEmpty()) {
+            int height = forkHeight + added.size() - 1;
+            String hash = added.get(added.size() - 1).getHash();
+            tip = frame("tip", json -> json.beginObject()
+                    .name("height").value(height)
+                    .name("hash").value(hash)
+                    .endObject());
+        }
+
+        for (Subscription subscription : subscriptions) {
+            if (reorg != null && !subscription.offer(reorg))
+                continue;
+            if (subscription.account != null) {
+                if (!offerAccountFrames(subscription, "reverted", forkHeight, removed))
+                    continue;
+                if (!offerAccountFrames(subscription, "transaction", forkHeight, added))
+                    continue;
+            }
+            if (tip != null)
+                subscription.offer(tip);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Offers a frame for each of the blocks touching the account of the subscriber.
+     *
+     * @return false if the subscriber was dropped.
+     */
+    private boolean offerAccountFrames(Subscription subscription, String event, int forkHeight,
+                                       List<Block<MinedTransaction>> blocks) {
+        for (int i = 0; i < blocks.size(); ++i) {
+            Block<MinedTransaction> block = blocks.get(i);
+            MinedTransaction data = block.getData();
+            if (!data.getAccounts().contains(subscription.account))
+                continue;
+            int height = forkHeight + i;
+            String frame = frame(event, json -> {
+                json.beginObject()
+                        .name("height").value(height)
+                        .name("hash").value(block.getHash())
+                        .name("id").value(data.getId());
+                if (event.equals("transaction")) {
+                    json.name("sender").value(NodeController.encode(data.getSenderPublicKey()))
+                            .name("receiver").value(NodeController.encode(data.getReceiverPublicKey()))
+                            .name("amount").value(data.getAmount());
+                }
+                json.endObject();
+            });
+            if (!subscription.offer(frame))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes a server-sent events frame, numbered by the hub.
+     */
+    private String frame(String event, JsonData data) {
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter json = new JsonWriter(out);
+            data.write(json);
+            json.flush();
+        } catch (IOException e) {
+            // A StringWriter doesn't throw.
+            throw new UncheckedIOException(e);
+        }
+        return "id: " + sequence.incrementAndGet() + "\nevent: " + event + "\ndata: " + out + "\n\n";
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the data of a frame.
+     */
+    private interface JsonData {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * A subscriber of the hub, with its buffer of frames.
+     * The hub fills the buffer, a single consumer takes the frames.
+     */
+    public final class Subscription implements AutoCloseable {
+        private final PublicKey account;
+        private final ArrayBlockingQueue<String> frames;
+        private volatile boolean closed;
+
+        private Subscription(PublicKey account) {
+            this.account = account;
+            // One more place for the overflow frame.
+            this.frames = new ArrayBlockingQueue<>(capacity + 1);
+        }
+
+        /**
+         * Takes the next frame, waiting for it up to the given time.
+         * The frames left when the subscription is closed are still given.
+         *
+         * @param timeout The time to wait.
+         * @param unit    The unit of the time.
+         * @return The frame, null if there's none in time or the subscription is closed.
+         * @throws InterruptedException if interrupted while waiting.
+         */
+        public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+            String frame = frames.poll();
+            if (frame != null || closed)
+                return frame;
+            return frames.poll(timeout, unit);
+        }
+
+        /**
+         * Checks whether the subscription was closed, by its subscriber,
+         * by the hub, or for being too slow.
+         *
+         * @return true if closed, false otherwise.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Gets the account whose transactions are sent.
+         *
+         * @return The public key of the account, null for none.
+         */
+        public PublicKey getAccount() {
+            return account;
+        }
+
+        /**
+         * Stops the frames of the subscription, the frames already in its
+         * buffer are still given.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Puts a frame in the buffer, the subscriber is dropped if it's full.
+         *
+         * @return false if the subscriber was dropped or is closed.
+         */
+        private boolean offer(String frame) {
+            if (closed)
+                return false;
+            if (frames.size() < capacity && frames.offer(frame))
+                return true;
+            long count = frames.size();
+            frames.clear();
+            frames.offer(frame("overflow", json -> json.beginObject()
+                    .name("dropped").value(count + 1)
+                    .endObject()));
+            dropped.increment();
+            close();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.atypon.node;
+
+import com.atypon.factory.BlockFactory;
+import com.atypon.factory.ClientFactory;
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.User;
+import com.atypon.utility.FileUtility;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a user as a node without the Swing interface, configured by a
+ * {@link NodeConfig}: it listens to the other nodes, mines the pooled
+ * transactions with the configured threads, asks its peers for their chains
+ * and saves itself periodically, logs to the standard output in a
+ * {@link StructuredLog} and is controlled through a {@link NodeController},
+ * and queried through an {@link HttpApi} if it has an HTTP port.
+ * The saved node is loaded if there's one, otherwise a new one is made with
+ * the keys of the keys file (created with new keys if missing).
+ */
+public final class HeadlessNode implements AutoCloseable {
+    // The seconds between two checks of the pool by the miner.
+    private final static long MINING_INTERVAL = 1;
+
+    private final NodeConfig config;
+    private final StructuredLog log;
+    private final User user;
+    private final NodeController controller;
+    private final ScheduledExecutorService scheduler;
+    private volatile HttpApi httpApi;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private boolean closed;
+
+    private HeadlessNode(NodeConfig config, StructuredLog log, User user) {
+        this.config = config;
+        this.log = log;
+        this.user = user;
+        this.controller = new NodeController(user, config.getNodeDirectory(), this::close);
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "node-" + config.getPort());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a node with the settings of the command line flags, see {@link NodeConfig#parse},
+     * until it's stopped through its controller or the process is terminated.
+     *
+     * @param args The flags.
+     * @throws Exception if the node can't be started.
+     */
+    public static void main(String[] args) throws Exception {
+        HeadlessNode node = start(NodeConfig.parse(args));
+        Runtime.getRuntime().addShutdownHook(new Thread(node::close, "node-shutdown"));
+        node.awaitStop();
+    }
+
+    /**
+     * Loads or makes the user of the node and starts it.
+     *
+     * @param config The settings of the node.
+     * @return The running node.
+     * @throws IOException if the keys or the control port can't be used.
+     */
+    public static HeadlessNode start(NodeConfig config) throws IOException {
+        StructuredLog log = new StructuredLog(System.out, config.getAlias() + "@" + config.getPort());
+        HeadlessNode node = new HeadlessNode(config, log, loadUser(config, log));
+        try {
+            node.run();
+        } catch (IOException | RuntimeException e) {
+            node.close();
+            throw e;
+        }
+        return node;
+    }
+
+    private void run() throws IOException {
+        log.info("Starting " + config);
+        user.setLog(log::info);
+        for (NodeConfig.InetPeer peer : config.getPeers())
+            user.getClient().addClient(ClientFactory.getSocket(peer.getHost(), peer.getPort(), null, null));
+        if (config.isUseServer() && !user.getClient().getClientsFromServer())
+            log.warn("The main server can't be reached.");
+
+        BlockFactory.setMiningThreads(Math.max(1, config.getMiningThreads()));
+        user.setMiningOn(config.getMiningThreads() > 0);
+        user.runListener();
+
+        sync();
+        if (user.getBlockchain().length() == 0 && config.isCreateChain()) {
+            user.createChain();
+            log.info("Created the chain.");
+        }
+
+        scheduler.scheduleWithFixedDelay(this::mine, MINING_INTERVAL, MINING_INTERVAL, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::sync, config.getSyncInterval(), config.getSyncInterval(),
+                TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::save, config.getSaveInterval(), config.getSaveInterval(),
+                TimeUnit.SECONDS);
+        if (config.getControlPort() > 0) {
+            controller.listen(config.getControlPort());
+            log.info("The control API is listening on port " + config.getControlPort() + ".");
+        }
+        if (config.getHttpPort() > 0) {
+            httpApi = new HttpApi(user, controller, config.getHttpPort(), config.getHttpThreads());
+            log.info("The HTTP API is listening on port " + config.getHttpPort() + ".");
+        }
+        log.info("Started with a chain of " + user.getBlockchain().length() + " blocks.");
+    }
+
+    /**
+     * Waits until the node is stopped.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stops the node and saves it, once.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+        log.info("Stopping.");
+        if (httpApi != null)
+            httpApi.close();
+        controller.close();
+        user.setMiningOn(false);
+        if (user.getClient().isListening())
+            user.stopListener();
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(10, TimeUnit.SECONDS))
+                scheduler.shutdownNow();
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        save();
+        UserFactory.closeUser(user);
+        log.info("Stopped.");
+        stopped.countDown();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public NodeConfig getConfig() {
+        return config;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public NodeController getController() {
+        return controller;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Mines the pooled transactions, if the mining is on.
+     * The user also mines after every message it receives, this catches the
+     * transactions pooled while it was mining or made by the node itself.
+     */
+    private void mine() {
+        try {
+            if (user.isMiningOn() && !user.getTransactionPool().isEmpty())
+                user.mine();
+        } catch (RuntimeException e) {
+            log.error("The mining failed.", e);
+        }
+    }
+
+    private void sync() {
+        try {
+            if (user.getClient().syncChain())
+                log.info("Synced to a chain of " + user.getBlockchain().length() + " blocks.");
+        } catch (RuntimeException e) {
+            log.error("The sync failed.", e);
+        }
+    }
+
+    private void save() {
+        try {
+            UserFactory.writeUser(config.getNodeDirectory().toString(), user);
+        } catch (RuntimeException e) {
+            log.error("The save failed.", e);
+        }
+    }
+
+    /**
+     * Loads the saved user of the node, or makes a new one with the keys of the keys file.
+     */
+    private static User loadUser(NodeConfig config, StructuredLog log) throws IOException {
+        Path directory = config.getNodeDirectory();
+        if (Files.isDirectory(directory)) {
+            User user = UserFactory.readUser(directory.toString());
+            if (user != null) {
+                log.info("Loaded the node from " + directory + ".");
+                return user;
+            }
+            log.warn("The node saved in " + directory + " can't be loaded, starting a new one.");
+        }
+        return UserFactory.getInstance(config.getAlias(), config.getIpAddress(), config.getPort(),
+                loadKeys(config, log));
+    }
+
+    /**
+     * Reads the keys of the keys file, or makes new ones and writes them to it.
+     */
+    private static KeyPair loadKeys(NodeConfig config, StructuredLog log) throws IOException {
+        Path file = config.getKeysFile();
+        if (file != null && Files.exists(file)) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                return (KeyPair) in.readObject();
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new IOException("The keys file " + file + " is invalid.", e);
+            }
+        }
+        KeyPair keyPair;
+        try {
+            keyPair = KeyFactory.getKeyInstance(config.getScheme());
+        } catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        if (file != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(keyPair);
+            }
+            FileUtility.writeAtomically(file, bytes.toByteArray(), true);
+            try {
+                // The private key is only readable by its owner, where the file system allows it.
+                Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system.
+            }
+            log.info("Wrote new keys to " + file + ".");
+        }
+        return keyPair;
+    }
+}
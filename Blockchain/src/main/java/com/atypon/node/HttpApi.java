@@ -0,0 +1,600 @@
+package com.atypon.node;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.ChainSnapshot;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.userAPI.User;
+import com.atypon.utility.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the state of a node as JSON over HTTP on the loopback address, and
+ * takes transfers from the node, for the tools and the services next to it:
+ * <pre>
+ * GET  /status                            The state of the node.
+ * GET  /balance?account=key               The balance of an account, the node if none is given.
+ * GET  /history?account=key&amp;offset=&amp;limit=  A page of the blocks of an account, the newest first.
+ * GET  /tip                               The last block.
+ * GET  /blocks?height=n or ?hash=h        A block.
+ * GET  /blocks?from=n&amp;limit=               A page of the blocks from a height, the oldest first.
+ * GET  /mempool?offset=&amp;limit=             The number and the amount of the pooled transactions, and a page of them.
+ * POST /transactions                      Sends {"receiver": key, "amount": "1.5"} from the node.
+ * GET  /events?account=key                A server-sent events stream of the new tips, the reorgs
+ *                                         and the transactions of the account, see {@link EventHub}.
+ * </pre>
+ * The keys are Base64 of their X.509 encoding and the amounts are strings.
+ * A request reads one snapshot of the chain and is answered from its indexes
+ * (the blocks by height and hash, the blocks of each account) and from the
+ * ledger of the user, and the lists are streamed as they're written.
+ * The errors are answered with {"error": message}.
+ * The event streams are written by their own threads, so they don't hold the
+ * threads of the requests, and an idle stream is sent a comment every
+ * {@link #KEEPALIVE_INTERVAL} seconds so a closed client is found.
+ */
+public final class HttpApi implements AutoCloseable {
+    // The default and the maximum number of items of a page.
+    public final static int DEFAULT_LIMIT = 100;
+    public final static int MAX_LIMIT = 1000;
+    // The largest body of a request, in bytes.
+    private final static int MAX_BODY = 16 * 1024;
+    // The largest number of event streams served at once.
+    public final static int MAX_SUBSCRIBERS = 64;
+    // The seconds an event stream may stay silent.
+    public final static int KEEPALIVE_INTERVAL = 15;
+
+    private final User user;
+    private final NodeController controller;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final EventHub events;
+    private final ExecutorService streams;
+
+    /**
+     * Starts serving the API of a node.
+     *
+     * @param user       The user of the node.
+     * @param controller The controller of the node.
+     * @param port       The port to listen on, 0 for any free port.
+     * @param threads    The threads serving the requests.
+     * @throws IOException if the port can't be bound.
+     */
+    public HttpApi(User user, NodeController controller, int port, int threads) throws IOException {
+        this.user = user;
+        this.controller = controller;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "node-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        this.events = new EventHub(user, EventHub.DEFAULT_CAPACITY);
+        this.streams = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "node-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        user.addChainListener(events);
+        route("/status", "GET", this::status);
+        route("/balance", "GET", this::balance);
+        route("/history", "GET", this::history);
+        route("/tip", "GET", this::tip);
+        route("/blocks", "GET", this::blocks);
+        route("/mempool", "GET", this::mempool);
+        route("/transactions", "POST", this::transactions);
+        server.createContext("/events", this::subscribe);
+        server.start();
+    }
+
+    /**
+     * Gets the port the API listens on, the chosen one if it was started on port 0.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the hub of the event streams.
+     *
+     * @return The hub.
+     */
+    public EventHub getEvents() {
+        return events;
+    }
+
+    /**
+     * Stops serving, the requests being served are given a second to finish
+     * and the event streams are ended.
+     */
+    @Override
+    public void close() {
+        user.removeChainListener(events);
+        events.close();
+        server.stop(1);
+        streams.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The endpoints /////////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void status(HttpExchange exchange, Map<String, String> query) throws IOException {
+        NodeStatus status = controller.getStatus();
+        respond(exchange, 200, json -> json.beginObject()
+                .name("alias").value(status.getAlias())
+                .name("port").value(status.getPort())
+                .name("publicKey").value(status.getPublicKey())
+                .name("height").value(status.getHeight())
+                .name("tipHash").value(status.getTipHash())
+                .name("poolSize").value(status.getPoolSize())
+                .name("peers").value(status.getPeers())
+                .name("mining").value(status.isMining())
+                .name("miningThreads").value(status.getMiningThreads())
+                .name("listening").value(status.isListening())
+                .name("balance").value(status.getBalance())
+                .endObject());
+    }
+
+    private void balance(HttpExchange exchange, Map<String, String> query) throws IOException {
+        PublicKey account = getAccount(query);
+        BigDecimal balance = user.getNetWorth(account);
+        respond(exchange, 200, json -> json.beginObject()
+                .name("account").value(NodeController.encode(account))
+                .name("balance").value(balance)
+                .endObject());
+    }
+
+    private void history(HttpExchange exchange, Map<String, String> query) throws IOException {
+        PublicKey account = getAccount(query);
+        int offset = getInt(query, "offset", 0);
+        int limit = getLimit(query);
+        ChainSnapshot<MinedTransaction> blocks = user.getBlockchain().snapshot();
+        int total = blocks.accountHistorySize(account);
+        List<Integer> heights = blocks.accountHistory(account, offset, limit);
+        respond(exchange, 200, json -> {
+            json.beginObject()
+                    .name("account").value(NodeController.encode(account))
+                    .name("total").value(total)
+                    .name("offset").value(offset)
+                    .name("blocks").beginArray();
+            for (int height : heights)
+                writeBlock(json, height, blocks.get(height));
+            json.endArray().endObject();
+        });
+    }
+
+    private void tip(HttpExchange exchange, Map<String, String> query) throws IOException {
+        ChainSnapshot<MinedTransaction> blocks = user.getBlockchain().snapshot();
+        if (blocks.isEmpty())
+            throw new ApiException(404, "The chain is empty.");
+        int height = blocks.size() - 1;
+        Block<MinedTransaction> block = blocks.get(height);
+        respond(exchange, 200, json -> writeBlock(json, height, block));
+    }
+
+    private void blocks(HttpExchange exchange, Map<String, String> query) throws IOException {
+        ChainSnapshot<MinedTransaction> blocks = user.getBlockchain().snapshot();
+        int height;
+        if (query.containsKey("hash")) {
+            height = blocks.heightOfHash(query.get("hash"));
+        } else if (query.containsKey("height")) {
+            height = getInt(query, "height", 0);
+        } else {
+            int from = Math.min(getInt(query, "from", 0), blocks.size());
+            int to = (int) Math.min((long) from + getLimit(query), blocks.size());
+            respond(exchange, 200, json -> {
+                json.beginObject()
+                        .name("height").value(blocks.size())
+                        .name("from").value(from)
+                        .name("blocks").beginArray();
+                for (int i = from; i < to; ++i)
+                    writeBlock(json, i, blocks.get(i));
+                json.endArray().endObject();
+            });
+            return;
+        }
+        if (height < 0 || height >= blocks.size())
+            throw new ApiException(404, "No such block.");
+        Block<MinedTransaction> block = blocks.get(height);
+        respond(exchange, 200, json -> writeBlock(json, height, block));
+    }
+
+    private void mempool(HttpExchange exchange, Map<String, String> query) throws IOException {
+        int offset = getInt(query, "offset", 0);
+        int limit = getLimit(query);
+        // The pool is read once, its iterator doesn't block the changes.
+        Transaction[] pool = user.getTransactionPool().toArray(new Transaction[0]);
+        BigDecimal amount = BigDecimal.ZERO;
+        for (Transaction transaction : pool)
+            amount = amount.add(transaction.getAmount());
+        BigDecimal totalAmount = amount;
+        respond(exchange, 200, json -> {
+            json.beginObject()
+                    .name("size").value(pool.length)
+                    .name("totalAmount").value(totalAmount)
+                    .name("offset").value(offset)
+                    .name("transactions").beginArray();
+            for (int i = offset; i < pool.length && i - offset < limit; ++i)
+                writeTransaction(json, pool[i]);
+            json.endArray().endObject();
+        });
+    }
+
+    private void transactions(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Map<String, String> body = parseObject(readBody(exchange));
+        String receiver = body.get("receiver");
+        String amount = body.get("amount");
+        if (receiver == null || amount == null)
+            throw new ApiException(400, "The receiver and the amount are required.");
+        BigDecimal value;
+        try {
+            value = new BigDecimal(amount);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "The amount isn't a number: " + amount);
+        }
+        Transaction transaction = controller.send(NodeController.decodePublicKey(receiver), value);
+        if (transaction == null)
+            throw new ApiException(422, "The transaction was rejected.");
+        respond(exchange, 201, json -> writeTransaction(json, transaction));
+    }
+
+    /**
+     * Starts an event stream, the exchange stays open and is handed to a
+     * thread of the streams, the errors are answered like the other endpoints.
+     */
+    private void subscribe(HttpExchange exchange) {
+        EventHub.Subscription subscription;
+        try {
+            if (!exchange.getRequestURI().getPath().equals("/events"))
+                throw new ApiException(404, "No such endpoint.");
+            if (!exchange.getRequestMethod().equals("GET"))
+                throw new ApiException(405, "Use GET.");
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            // Only the tips and the reorgs without an account.
+            PublicKey account = query.containsKey("account") ? getAccount(query) : null;
+            if (events.getSubscribers() >= MAX_SUBSCRIBERS)
+                throw new ApiException(503, "Too many subscribers.");
+            subscription = events.subscribe(account);
+        } catch (ApiException e) {
+            respondError(exchange, e.status, e.getMessage());
+            exchange.close();
+            return;
+        } catch (IllegalArgumentException e) {
+            respondError(exchange, 400, e.getMessage());
+            exchange.close();
+            return;
+        }
+        try {
+            streams.execute(() -> stream(exchange, subscription));
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile.
+            subscription.close();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes the frames of a subscription until it's closed or the client disconnects.
+     */
+    private static void stream(HttpExchange exchange, EventHub.Subscription subscription) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            Writer out = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8);
+            out.write(": subscribed\n\n");
+            out.flush();
+            while (true) {
+                String frame = subscription.poll(KEEPALIVE_INTERVAL, TimeUnit.SECONDS);
+                if (frame != null)
+                    out.write(frame);
+                else if (subscription.isClosed())
+                    break;
+                else
+                    out.write(": keepalive\n\n");
+                out.flush();
+            }
+        } catch (IOException | InterruptedException e) {
+            // The client disconnected, or the API is closed.
+        } finally {
+            subscription.close();
+            exchange.close();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private void route(String path, String method, Endpoint endpoint) {
+        server.createContext(path, exchange -> {
+            try {
+                if (!exchange.getRequestURI().getPath().equals(path))
+                    throw new ApiException(404, "No such endpoint.");
+                if (!exchange.getRequestMethod().equals(method))
+                    throw new ApiException(405, "Use " + method + ".");
+                endpoint.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (ApiException e) {
+                respondError(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                respondError(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                respondError(exchange, 500, "Internal error.");
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    /**
+     * Sends the headers then streams the JSON written by the body.
+     */
+    private static void respond(HttpExchange exchange, int status, JsonBody body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // Streamed in chunks, the length isn't known in advance.
+        exchange.sendResponseHeaders(status, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(),
+                StandardCharsets.UTF_8))) {
+            JsonWriter json = new JsonWriter(out);
+            body.write(json);
+            json.flush();
+        }
+    }
+
+    private static void respondError(HttpExchange exchange, int status, String message) {
+        try {
+            respond(exchange, status, json -> json.beginObject().name("error").value(message).endObject());
+        } catch (IOException e) {
+            // The client disconnected.
+        }
+    }
+
+    private static void writeBlock(JsonWriter json, int height, Block<MinedTransaction> block) throws IOException {
+        MinedTransaction data = block.getData();
+        json.beginObject()
+                .name("height").value(height)
+                .name("hash").value(block.getHash())
+                .name("prvHash").value(block.getPrvHash())
+                .name("nonce").value(block.getNonce())
+                .name("timestamp").value(block.getTimestamp())
+                .name("target").value(block.isLegacy() ? null : block.getTarget().toString(16))
+                .name("transaction");
+        writeTransaction(json, data);
+        json.name("miner").value(NodeController.encode(data.getMinerPublicKey()))
+                .name("miningFee").value(data.getMiningFee())
+                .name("miningReward").value(data.getMiningReward())
+                .endObject();
+    }
+
+    private static void writeTransaction(JsonWriter json, Transaction transaction) throws IOException {
+        json.beginObject()
+                .name("id").value(transaction.getId())
+                .name("sender").value(NodeController.encode(transaction.getSenderPublicKey()))
+                .name("receiver").value(NodeController.encode(transaction.getReceiverPublicKey()))
+                .name("amount").value(transaction.getAmount())
+                .endObject();
+    }
+
+    private PublicKey getAccount(Map<String, String> query) {
+        String account = query.get("account");
+        return account == null ? user.getPublicKey() : NodeController.decodePublicKey(account);
+    }
+
+    private static int getLimit(Map<String, String> query) {
+        int limit = getInt(query, "limit", DEFAULT_LIMIT);
+        if (limit > MAX_LIMIT)
+            throw new IllegalArgumentException("The limit is at most " + MAX_LIMIT + ".");
+        return limit;
+    }
+
+    private static int getInt(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null)
+            return defaultValue;
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + name + " isn't a number: " + value);
+        }
+        if (number < 0)
+            throw new IllegalArgumentException("The " + name + " can't be negative.");
+        return number;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty())
+            return parameters;
+        try {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                String name = equals < 0 ? parameter : parameter.substring(0, equals);
+                String value = equals < 0 ? "" : parameter.substring(equals + 1);
+                parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                bytes.write(buffer, 0, read);
+                if (bytes.size() > MAX_BODY)
+                    throw new ApiException(413, "The body is too large.");
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a JSON object whose members are strings or numbers, like the body
+     * of a transfer, the numbers are kept as written.
+     *
+     * @param json The JSON.
+     * @return The members by name.
+     * @throws ApiException if the JSON isn't such an object.
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> members = new HashMap<>();
+        int[] position = {skipSpaces(json, 0)};
+        expect(json, position, '{');
+        if (peek(json, position) == '}') {
+            ++position[0];
+        } else {
+            while (true) {
+                String name = parseString(json, position);
+                expect(json, position, ':');
+                char c = peek(json, position);
+                String value;
+                if (c == '"') {
+                    value = parseString(json, position);
+                } else {
+                    int start = position[0];
+                    while (position[0] < json.length() && "+-.0123456789eE".indexOf(json.charAt(position[0])) >= 0)
+                        ++position[0];
+                    if (start == position[0])
+                        throw new ApiException(400, "Only strings and numbers are expected in the body.");
+                    value = json.substring(start, position[0]);
+                }
+                members.put(name, value);
+                char next = peek(json, position);
+                ++position[0];
+                if (next == '}')
+                    break;
+                if (next != ',')
+                    throw new ApiException(400, "Malformed JSON body.");
+            }
+        }
+        if (skipSpaces(json, position[0]) != json.length())
+            throw new ApiException(400, "Malformed JSON body.");
+        return members;
+    }
+
+    private static String parseString(String json, int[] position) {
+        expect(json, position, '"');
+        StringBuilder value = new StringBuilder();
+        while (position[0] < json.length()) {
+            char c = json.charAt(position[0]++);
+            if (c == '"')
+                return value.toString();
+            if (c == '\\') {
+                if (position[0] >= json.length())
+                    break;
+                char escaped = json.charAt(position[0]++);
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (position[0] + 4 > json.length())
+                            throw new ApiException(400, "Malformed JSON body.");
+                        try {
+                            value.append((char) Integer.parseInt(json.substring(position[0], position[0] + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new ApiException(400, "Malformed JSON body.");
+                        }
+                        position[0] += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new ApiException(400, "Malformed JSON body.");
+    }
+
+    private static void expect(String json, int[] position, char expected) {
+        if (peek(json, position) != expected)
+            throw new ApiException(400, "Malformed JSON body.");
+        ++position[0];
+    }
+
+    /**
+     * Skips the spaces and returns the next character, without consuming it.
+     */
+    private static char peek(String json, int[] position) {
+        position[0] = skipSpaces(json, position[0]);
+        if (position[0] >= json.length())
+            throw new ApiException(400, "Malformed JSON body.");
+        return json.charAt(position[0]);
+    }
+
+    private static int skipSpaces(String json, int position) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position)))
+            ++position;
+        return position;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Answers a request.
+     */
+    private interface Endpoint {
+        void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+    }
+
+    /**
+     * Writes the JSON of a response.
+     */
+    private interface JsonBody {
+        void write(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * A request that can't be answered, with the status of its response.
+     */
+    private final static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 6893836434547725498L;
+        private final int status;
+
+        private ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
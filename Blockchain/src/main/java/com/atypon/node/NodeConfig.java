@@ -0,0 +1,315 @@
+package com.atypon.node;
+
+import com.atypon.utility.SignatureScheme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The settings of a {@link HeadlessNode}, read from a properties file and
+ * from command line flags, the flags override the file:
+ * <pre>
+ * --config        A properties file with the settings below (without the dashes).
+ * --alias         The alias of the node.
+ * --ip            The ip address other nodes reach the node at.
+ * --port          The port the node listens on.
+ * --keys          A file holding the keys of the node, created if missing.
+ * --scheme        The signature scheme of new keys, like ED25519.
+ * --mining-threads The threads searching the nonces, 0 for a node that doesn't mine.
+ * --peers         The other nodes, as a comma separated list of host:port.
+ * --server        Whether to get the other nodes from the main server too.
+ * --storage       The directory the node is saved to, under a directory named after the port.
+ * --control-port  The port of the control API on the loopback address, 0 for none.
+ * --http-port     The port of the HTTP API on the loopback address, 0 for none.
+ * --http-threads  The threads serving the HTTP API.
+ * --create-chain  Whether to create the chain if the node has none.
+ * --sync-interval The seconds between two requests of the chains of the peers.
+ * --save-interval The seconds between two saves of the node.
+ * </pre>
+ * A flag given without a value, like "--create-chain", is true.
+ * Immutable thus threadsafe.
+ */
+public final class NodeConfig {
+    private final static String CONFIG = "config";
+    private final static String ALIAS = "alias";
+    private final static String IP_ADDRESS = "ip";
+    private final static String PORT = "port";
+    private final static String KEYS = "keys";
+    private final static String SCHEME = "scheme";
+    private final static String MINING_THREADS = "mining-threads";
+    private final static String PEERS = "peers";
+    private final static String SERVER = "server";
+    private final static String STORAGE = "storage";
+    private final static String CONTROL_PORT = "control-port";
+    private final static String HTTP_PORT = "http-port";
+    private final static String HTTP_THREADS = "http-threads";
+    private final static String CREATE_CHAIN = "create-chain";
+    private final static String SYNC_INTERVAL = "sync-interval";
+    private final static String SAVE_INTERVAL = "save-interval";
+    private final static Set<String> KNOWN = new HashSet<>(Arrays.asList(CONFIG, ALIAS, IP_ADDRESS, PORT, KEYS,
+            SCHEME, MINING_THREADS, PEERS, SERVER, STORAGE, CONTROL_PORT, HTTP_PORT, HTTP_THREADS, CREATE_CHAIN, SYNC_INTERVAL, SAVE_INTERVAL));
+
+    private final String alias;
+    private final String ipAddress;
+    private final int port;
+    private final Path keysFile;
+    private final SignatureScheme scheme;
+    private final int miningThreads;
+    private final List<InetPeer> peers;
+    private final boolean useServer;
+    private final Path storageDirectory;
+    private final int controlPort;
+    private final int httpPort;
+    private final int httpThreads;
+    private final boolean createChain;
+    private final long syncInterval;
+    private final long saveInterval;
+
+    /**
+     * Reads the settings, the missing ones take their default values.
+     *
+     * @param properties The settings by name.
+     * @throws IllegalArgumentException if a setting is unknown or out of its range.
+     */
+    public NodeConfig(Properties properties) {
+        for (String name : properties.stringPropertyNames()) {
+            if (!KNOWN.contains(name))
+                throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+        this.alias = properties.getProperty(ALIAS, "node");
+        this.ipAddress = properties.getProperty(IP_ADDRESS, "127.0.0.1");
+        this.port = getInt(properties, PORT, 4444);
+        String keys = properties.getProperty(KEYS);
+        this.keysFile = keys == null ? null : Paths.get(keys);
+        this.scheme = SignatureScheme.valueOf(properties.getProperty(SCHEME, SignatureScheme.DEFAULT.name()));
+        this.miningThreads = getInt(properties, MINING_THREADS, 0);
+        this.peers = parsePeers(properties.getProperty(PEERS, ""));
+        this.useServer = Boolean.parseBoolean(properties.getProperty(SERVER, "false"));
+        this.storageDirectory = Paths.get(properties.getProperty(STORAGE, "."));
+        this.controlPort = getInt(properties, CONTROL_PORT, 0);
+        this.httpPort = getInt(properties, HTTP_PORT, 0);
+        this.httpThreads = getInt(properties, HTTP_THREADS, Runtime.getRuntime().availableProcessors());
+        this.createChain = Boolean.parseBoolean(properties.getProperty(CREATE_CHAIN, "false"));
+        this.syncInterval = getInt(properties, SYNC_INTERVAL, 30);
+        this.saveInterval = getInt(properties, SAVE_INTERVAL, 60);
+
+        if (port <= 0 || port > 65535)
+            throw new IllegalArgumentException("The port is out of range!");
+        if (controlPort < 0 || controlPort > 65535 || controlPort == port)
+            throw new IllegalArgumentException("The control port is out of range or is the port of the node!");
+        if (httpPort < 0 || httpPort > 65535 || httpPort == port || (httpPort != 0 && httpPort == controlPort))
+            throw new IllegalArgumentException("The HTTP port is out of range or is used by the node!");
+        if (httpThreads <= 0)
+            throw new IllegalArgumentException("The number of HTTP threads must be positive!");
+        if (miningThreads < 0)
+            throw new IllegalArgumentException("The number of mining threads can't be negative!");
+        if (syncInterval <= 0 || saveInterval <= 0)
+            throw new IllegalArgumentException("The intervals must be positive!");
+    }
+
+    /**
+     * Reads the settings from the command line flags, and from the
+     * properties file given by "--config" if any.
+     *
+     * @param args The flags.
+     * @return The settings.
+     * @throws IllegalArgumentException if a flag is malformed, or a setting is unknown or out of its range.
+     * @throws IOException              if the properties file can't be read.
+     */
+    public static NodeConfig parse(String[] args) throws IOException {
+        Properties flags = new Properties();
+        for (int i = 0; i < args.length; ++i) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Expected a flag instead of: " + args[i]);
+            String flag = args[i].substring(2);
+            int equals = flag.indexOf('=');
+            if (equals >= 0)
+                flags.setProperty(flag.substring(0, equals), flag.substring(equals + 1));
+            else if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                flags.setProperty(flag, args[++i]);
+            else
+                flags.setProperty(flag, "true");
+        }
+
+        Properties properties = new Properties();
+        String file = flags.getProperty(CONFIG);
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                properties.load(in);
+            }
+        }
+        properties.putAll(flags);
+        properties.remove(CONFIG);
+        return new NodeConfig(properties);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getIpAddress() {
+        return ipAddress;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * The file holding the keys of the node.
+     *
+     * @return The file, null if the keys are only kept with the saved node.
+     */
+    public Path getKeysFile() {
+        return keysFile;
+    }
+
+    public SignatureScheme getScheme() {
+        return scheme;
+    }
+
+    public int getMiningThreads() {
+        return miningThreads;
+    }
+
+    public List<InetPeer> getPeers() {
+        return peers;
+    }
+
+    public boolean isUseServer() {
+        return useServer;
+    }
+
+    public Path getStorageDirectory() {
+        return storageDirectory;
+    }
+
+    /**
+     * The directory the node is saved to, named after its port as the saved users are.
+     *
+     * @return The directory of the node.
+     */
+    public Path getNodeDirectory() {
+        return storageDirectory.resolve(String.valueOf(port));
+    }
+
+    public int getControlPort() {
+        return controlPort;
+    }
+
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    public int getHttpThreads() {
+        return httpThreads;
+    }
+
+    public boolean isCreateChain() {
+        return createChain;
+    }
+
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    public long getSaveInterval() {
+        return saveInterval;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeConfig{" +
+                "alias=" + alias +
+                ", ipAddress=" + ipAddress +
+                ", port=" + port +
+                ", keysFile=" + keysFile +
+                ", scheme=" + scheme +
+                ", miningThreads=" + miningThreads +
+                ", peers=" + peers +
+                ", useServer=" + useServer +
+                ", storageDirectory=" + storageDirectory +
+                ", controlPort=" + controlPort +
+                ", httpPort=" + httpPort +
+                ", httpThreads=" + httpThreads +
+                ", createChain=" + createChain +
+                ", syncInterval=" + syncInterval +
+                ", saveInterval=" + saveInterval +
+                '}';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static int getInt(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The setting " + name + " isn't a number: " + value);
+        }
+    }
+
+    private static List<InetPeer> parsePeers(String value) {
+        List<InetPeer> peers = new ArrayList<>();
+        for (String peer : value.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty())
+                continue;
+            int colon = peer.lastIndexOf(':');
+            if (colon <= 0)
+                throw new IllegalArgumentException("A peer must be given as host:port: " + peer);
+            peers.add(new InetPeer(peer.substring(0, colon), getPort(peer.substring(colon + 1), peer)));
+        }
+        return Collections.unmodifiableList(peers);
+    }
+
+    private static int getPort(String value, String peer) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The port of the peer isn't a number: " + peer);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The address of a peer.
+     */
+    public final static class InetPeer {
+        private final String host;
+        private final int port;
+
+        private InetPeer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
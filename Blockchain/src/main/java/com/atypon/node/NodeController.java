@@ -0,0 +1,309 @@
+package com.atypon.node;
+
+import com.atypon.ClientSocket;
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.BlockFactory;
+import com.atypon.factory.ClientFactory;
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.User;
+import com.atypon.utility.SignatureScheme;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Controls a running node: reads its state, turns its mining on and off,
+ * adds peers, syncs, sends transactions and saves it.
+ * The same operations are served to local tools by a line based protocol on
+ * the loopback address, a command per line answered by lines starting with
+ * "OK" or "ERROR":
+ * <pre>
+ * status                   The state of the node, a "key=value" per line.
+ * mining on|off            Turns the mining on or off.
+ * peers                    The known peers, one per line.
+ * add-peer host:port       Adds a peer.
+ * sync                     Asks the peers for their chains.
+ * balance [key]            The balance of the node, or of the Base64 encoded public key.
+ * send key amount          Sends the amount to the Base64 encoded public key.
+ * save                     Saves the node.
+ * stop                     Stops the node.
+ * </pre>
+ * Threadsafe.
+ */
+public final class NodeController implements AutoCloseable {
+    private final User user;
+    private final Path directory;
+    private final Runnable stop;
+    private volatile ServerSocket serverSocket;
+    private volatile ExecutorService executor;
+
+    /**
+     * Initialize a controller of a node.
+     *
+     * @param user      The user of the node.
+     * @param directory The directory the node is saved to.
+     * @param stop      Stops the node.
+     */
+    public NodeController(User user, Path directory, Runnable stop) {
+        this.user = user;
+        this.directory = directory;
+        this.stop = stop;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The operations ////////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the state of the node.
+     *
+     * @return The state.
+     */
+    public NodeStatus getStatus() {
+        Blockchain<MinedTransaction> blockchain = user.getBlockchain().clone();
+        Block<MinedTransaction> tip = blockchain.getBlockByHeight(blockchain.length() - 1);
+        return new NodeStatus(user.getAlias(), user.getPort(), encode(user.getPublicKey()), blockchain.length(),
+                tip == null ? null : tip.getHash(), user.getTransactionPool().size(), user.getAddressBook().size(),
+                user.isMiningOn(), BlockFactory.getMiningThreads(), user.getClient().isListening(),
+                user.getNetWorth(user.getPublicKey()));
+    }
+
+    public void setMining(boolean mining) {
+        user.setMiningOn(mining);
+    }
+
+    public List<ClientSocket> getPeers() {
+        return user.getClients();
+    }
+
+    /**
+     * Adds a peer to the node, it's known by its address until it connects.
+     *
+     * @param host The host of the peer.
+     * @param port The port of the peer.
+     */
+    public void addPeer(String host, int port) {
+        user.getClient().addClient(ClientFactory.getSocket(host, port, null, null));
+    }
+
+    /**
+     * Asks the peers for their chains.
+     *
+     * @return true if the chain of the node was replaced, false otherwise.
+     */
+    public boolean sync() {
+        return user.getClient().syncChain();
+    }
+
+    public BigDecimal getBalance(PublicKey account) {
+        return user.getNetWorth(account);
+    }
+
+    /**
+     * Sends an amount from the node to an account.
+     *
+     * @param receiver The public key of the receiver.
+     * @param amount   The amount.
+     * @return The transaction, null if the node can't make it.
+     */
+    public Transaction send(PublicKey receiver, BigDecimal amount) {
+        return user.sendTransaction(receiver, amount);
+    }
+
+    public void save() {
+        UserFactory.writeUser(directory.toString(), user);
+    }
+
+    public void stop() {
+        stop.run();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The control socket ////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Starts serving the commands on the loopback address.
+     *
+     * @param port The port to listen on.
+     * @throws IOException if the port can't be bound.
+     */
+    public synchronized void listen(int port) throws IOException {
+        if (serverSocket != null)
+            throw new IllegalStateException("The controller is already listening!");
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "node-control");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ServerSocket server = serverSocket;
+        executor.execute(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    executor.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    // The socket was closed.
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops serving the commands.
+     */
+    @Override
+    public synchronized void close() {
+        if (serverSocket == null)
+            return;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        executor.shutdownNow();
+        serverSocket = null;
+    }
+
+    private void serve(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                     StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(),
+                     StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+                try {
+                    out.print(execute(line.split("\\s+")));
+                } catch (IllegalArgumentException e) {
+                    out.print("ERROR " + e.getMessage() + "\n");
+                }
+                out.flush();
+                if (line.equals("stop"))
+                    break;
+            }
+        } catch (IOException e) {
+            // The tool disconnected.
+        }
+    }
+
+    /**
+     * Executes a command of the control protocol.
+     *
+     * @param command The command and its arguments.
+     * @return The response lines.
+     * @throws IllegalArgumentException if the command or its arguments are invalid.
+     */
+    String execute(String[] command) {
+        switch (command[0]) {
+            case "status":
+                return "OK\n" + getStatus().toLines();
+            case "mining":
+                if (command.length != 2 || !(command[1].equals("on") || command[1].equals("off")))
+                    throw new IllegalArgumentException("Usage: mining on|off");
+                setMining(command[1].equals("on"));
+                return "OK\n";
+            case "peers":
+                StringBuilder peers = new StringBuilder("OK\n");
+                for (ClientSocket peer : getPeers())
+                    peers.append(peer.getIpAddress()).append(':').append(peer.getPort()).append('\n');
+                return peers.toString();
+            case "add-peer":
+                int colon = command.length == 2 ? command[1].lastIndexOf(':') : -1;
+                if (colon <= 0)
+                    throw new IllegalArgumentException("Usage: add-peer host:port");
+                addPeer(command[1].substring(0, colon), parsePort(command[1].substring(colon + 1)));
+                return "OK\n";
+            case "sync":
+                return "OK " + (sync() ? "replaced" : "unchanged") + "\n";
+            case "balance":
+                PublicKey account = command.length > 1 ? decodePublicKey(command[1]) : user.getPublicKey();
+                return "OK " + getBalance(account).toPlainString() + "\n";
+            case "send":
+                if (command.length != 3)
+                    throw new IllegalArgumentException("Usage: send key amount");
+                Transaction transaction = send(decodePublicKey(command[1]), parseAmount(command[2]));
+                if (transaction == null)
+                    return "ERROR The transaction was rejected.\n";
+                return "OK " + transaction.getId() + "\n";
+            case "save":
+                save();
+                return "OK\n";
+            case "stop":
+                // The node is stopped after the response.
+                new Thread(this::stop, "node-stop").start();
+                return "OK\n";
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command[0]);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Encodes a public key as Base64 of its X.509 encoding.
+     */
+    public static String encode(PublicKey key) {
+        return Base64.getEncoder().encodeToString(key.getEncoded());
+    }
+
+    /**
+     * Decodes a public key from Base64 of its X.509 encoding, of any supported scheme.
+     *
+     * @param encoded The encoded key.
+     * @return The key.
+     * @throws IllegalArgumentException if the key isn't valid.
+     */
+    public static PublicKey decodePublicKey(String encoded) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The key isn't valid Base64.");
+        }
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+            try {
+                return scheme.decodePublicKey(bytes);
+            } catch (GeneralSecurityException e) {
+                // Try the next scheme.
+            }
+        }
+        throw new IllegalArgumentException("The key doesn't belong to a supported scheme.");
+    }
+
+    private static int parsePort(String port) {
+        try {
+            return Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The port isn't a number: " + port);
+        }
+    }
+
+    private static BigDecimal parseAmount(String amount) {
+        try {
+            return new BigDecimal(amount);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The amount isn't a number: " + amount);
+        }
+    }
+}
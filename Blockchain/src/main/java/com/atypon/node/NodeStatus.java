@@ -0,0 +1,123 @@
+package com.atypon.node;
+
+import java.math.BigDecimal;
+
+/**
+ * The state of a node at a moment, as reported by its {@link NodeController}.
+ * Immutable thus threadsafe.
+ */
+public final class NodeStatus {
+    private final String alias;
+    private final int port;
+    private final String publicKey;
+    private final int height;
+    private final String tipHash;
+    private final int poolSize;
+    private final int peers;
+    private final boolean mining;
+    private final int miningThreads;
+    private final boolean listening;
+    private final BigDecimal balance;
+
+    /**
+     * Initialize the state.
+     *
+     * @param alias         The alias of the node.
+     * @param port          The port of the node.
+     * @param publicKey     The public key of the node, Base64 of its X.509 encoding.
+     * @param height        The length of the chain.
+     * @param tipHash       The hash of the last block, null if the chain is empty.
+     * @param poolSize      The number of transactions waiting to be mined.
+     * @param peers         The number of known peers, the node included.
+     * @param mining        Whether the node mines.
+     * @param miningThreads The threads searching the nonces.
+     * @param listening     Whether the node accepts connections.
+     * @param balance       The balance of the node.
+     */
+    public NodeStatus(String alias, int port, String publicKey, int height, String tipHash, int poolSize,
+                      int peers, boolean mining, int miningThreads, boolean listening, BigDecimal balance) {
+        this.alias = alias;
+        this.port = port;
+        this.publicKey = publicKey;
+        this.height = height;
+        this.tipHash = tipHash;
+        this.poolSize = poolSize;
+        this.peers = peers;
+        this.mining = mining;
+        this.miningThreads = miningThreads;
+        this.listening = listening;
+        this.balance = balance;
+    }
+
+    /**
+     * Writes the state as a "key=value" per line.
+     *
+     * @return The lines.
+     */
+    public String toLines() {
+        return "alias=" + alias + '\n' +
+                "port=" + port + '\n' +
+                "publicKey=" + publicKey + '\n' +
+                "height=" + height + '\n' +
+                "tipHash=" + (tipHash == null ? "" : tipHash) + '\n' +
+                "poolSize=" + poolSize + '\n' +
+                "peers=" + peers + '\n' +
+                "mining=" + mining + '\n' +
+                "miningThreads=" + miningThreads + '\n' +
+                "listening=" + listening + '\n' +
+                "balance=" + balance.toPlainString() + '\n';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPublicKey() {
+        return publicKey;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getTipHash() {
+        return tipHash;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getPeers() {
+        return peers;
+    }
+
+    public boolean isMining() {
+        return mining;
+    }
+
+    public int getMiningThreads() {
+        return miningThreads;
+    }
+
+    public boolean isListening() {
+        return listening;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    @Override
+    public String toString() {
+        return "NodeStatus{" + toLines().trim().replace('\n', ',') + '}';
+    }
+}
@@ -0,0 +1,71 @@
+package com.atypon.node;
+
+import java.io.PrintStream;
+import java.time.Instant;
+
+/**
+ * Writes the log of a node as one line per message of key=value pairs
+ * (logfmt), like:
+ * <pre>
+ * time=2020-01-01T00:00:00.000Z level=INFO node=4444 msg="Received a blockchain."
+ * </pre>
+ * so the logs of many nodes are merged, filtered and parsed by the usual tools.
+ * Threadsafe, a line is written at once.
+ */
+public final class StructuredLog {
+    private final PrintStream out;
+    private final String node;
+
+    /**
+     * Initialize a log.
+     *
+     * @param out  The stream the lines are written to.
+     * @param node The name of the node in every line.
+     */
+    public StructuredLog(PrintStream out, String node) {
+        this.out = out;
+        this.node = node;
+    }
+
+    public void info(String message) {
+        write("INFO", message);
+    }
+
+    public void warn(String message) {
+        write("WARN", message);
+    }
+
+    /**
+     * Logs an error with the exception that caused it.
+     *
+     * @param message The message.
+     * @param cause   The exception, its class and message are added to the line.
+     */
+    public void error(String message, Throwable cause) {
+        write("ERROR", cause == null ? message : message + " " + cause);
+    }
+
+    private void write(String level, String message) {
+        String line = "time=" + Instant.now() + " level=" + level + " node=" + quote(node) + " msg=" + quote(message);
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * Quotes a value if it has spaces, quotes or line breaks, which are escaped.
+     */
+    private static String quote(String value) {
+        if (value == null)
+            return "\"\"";
+        boolean plain = !value.isEmpty();
+        for (int i = 0; i < value.length() && plain; ++i) {
+            char c = value.charAt(i);
+            plain = c > ' ' && c != '"' && c != '=' && c != '\\';
+        }
+        if (plain)
+            return value;
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r") + '"';
+    }
+}
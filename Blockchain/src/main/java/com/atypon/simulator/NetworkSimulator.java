@@ -0,0 +1,290 @@
+package com.atypon.simulator;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.ChainListener;
+import com.atypon.userAPI.TrafficCounter;
+import com.atypon.userAPI.User;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a network of users in one JVM and loads it with transactions, to
+ * measure how changes to the users, their connections and the mining behave
+ * without a real cluster. The users talk to each other over real sockets on
+ * localhost, the way they do on a real network.
+ * The first node creates the chain, then at the configured rate a random node
+ * with enough balance sends a small amount to another random node. After the
+ * configured duration the network is given time to settle (every node holds
+ * the same chain and the miners have nothing left to mine).
+ * A transaction is confirmed once the chain of every node holds it, its
+ * latency is the time from the moment it was due to that moment.
+ * The changes of the chains are followed through {@link ChainListener}s and
+ * the traffic through the {@link TrafficCounter} of each user.
+ */
+public final class NetworkSimulator {
+    private final static String IP_ADDRESS = "127.0.0.1";
+    private final static String ALIAS_PREFIX = "node-";
+    private final static BigDecimal AMOUNT = new BigDecimal("0.001");
+    // How often the state of the network is checked while waiting, in milliseconds.
+    private final static long POLL_INTERVAL = 50;
+    // How long the nodes are given to start listening and to receive the first block, in milliseconds.
+    private final static long STARTUP_TIME = 30_000;
+
+    private final SimulationConfig config;
+    private final Random random;
+    private final List<User> nodes;
+    // The time each transaction was due, by ID, from System.nanoTime().
+    private final ConcurrentHashMap<String, Long> dueTimes;
+    // The nodes whose chain holds each transaction, by ID.
+    private final ConcurrentHashMap<String, Set<Integer>> holders;
+    // The time the chain of the last node took each transaction, by ID, for the ones held by every node.
+    private final ConcurrentHashMap<String, Long> confirmationTimes;
+    private final Set<String> blocksSeen;
+    private final AtomicIntegerArray reorganizations;
+    private final AtomicInteger rejected;
+
+    /**
+     * Initialize the simulator, nothing is started until it's run.
+     *
+     * @param config The settings of the run.
+     */
+    public NetworkSimulator(SimulationConfig config) {
+        this.config = config;
+        this.random = new Random(config.getSeed());
+        this.nodes = new ArrayList<>(config.getNumberOfNodes());
+        this.dueTimes = new ConcurrentHashMap<>();
+        this.holders = new ConcurrentHashMap<>();
+        this.confirmationTimes = new ConcurrentHashMap<>();
+        this.blocksSeen = ConcurrentHashMap.newKeySet();
+        this.reorganizations = new AtomicIntegerArray(config.getNumberOfNodes());
+        this.rejected = new AtomicInteger();
+    }
+
+    /**
+     * Runs the simulation with the settings given as command line arguments,
+     * see {@link SimulationConfig#parse(String[])}, and prints its report.
+     *
+     * @param args The settings of the run.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println(new NetworkSimulator(SimulationConfig.parse(args)).run());
+        System.exit(0);
+    }
+
+    /**
+     * Starts the nodes, loads them with transactions, waits for them to
+     * settle, then stops them. A simulator is run once.
+     *
+     * @return The report of the run.
+     * @throws InterruptedException  if interrupted while running.
+     * @throws IllegalStateException if the simulator was already run, or the network didn't start.
+     */
+    public SimulationReport run() throws InterruptedException {
+        if (!nodes.isEmpty())
+            throw new IllegalStateException("The simulator was already run!");
+        startNodes();
+        try {
+            if (!await(() -> nodes.stream().allMatch(node -> node.getClient().isListening()), STARTUP_TIME))
+                throw new IllegalStateException("The nodes didn't start listening!");
+            nodes.get(0).createChain();
+            if (!await(() -> nodes.stream().allMatch(node -> node.getBlockchain().length() > 0), STARTUP_TIME))
+                throw new IllegalStateException("The first block didn't reach every node!");
+
+            long start = System.nanoTime();
+            int submitted = generateLoad();
+            boolean converged = await(this::isSettled, config.getSettleTime());
+            long end = System.nanoTime();
+            return report(start, end, submitted, converged);
+        } finally {
+            stopNodes();
+        }
+    }
+
+    /**
+     * Makes the users, connects each of them to all the others and starts them.
+     */
+    private void startNodes() {
+        for (int i = 0; i < config.getNumberOfNodes(); ++i) {
+            User node = UserFactory.getInstance(ALIAS_PREFIX + i, IP_ADDRESS, config.getBasePort() + i);
+            node.addChainListener(new NodeTracker(i));
+            nodes.add(node);
+        }
+        for (User node : nodes) {
+            for (User other : nodes)
+                node.getClient().addClient(other.getClientSocket());
+        }
+        for (int i = 0; i < nodes.size(); ++i) {
+            nodes.get(i).setMiningOn(i < config.getNumberOfMiners());
+            nodes.get(i).runListener();
+        }
+    }
+
+    private void stopNodes() {
+        for (User node : nodes) {
+            node.setMiningOn(false);
+            if (node.getClient().isListening())
+                node.stopListener();
+        }
+    }
+
+    /**
+     * Makes the transactions at the configured rate for the configured duration,
+     * each is made by a worker so a slow sender doesn't hold back the others.
+     *
+     * @return The number of transactions that were due.
+     */
+    private int generateLoad() throws InterruptedException {
+        long interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / config.getTransactionsPerSecond()));
+        long count = Math.max(1, TimeUnit.MILLISECONDS.toNanos(config.getDuration()) / interval);
+        ExecutorService workers = Executors.newFixedThreadPool(nodes.size());
+        long start = System.nanoTime();
+        try {
+            for (long i = 0; i < count; ++i) {
+                long due = start + i * interval;
+                long wait = due - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                submit(workers, due);
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(config.getSettleTime(), TimeUnit.MILLISECONDS);
+        }
+        return (int) count;
+    }
+
+    /**
+     * Chooses a sender with enough balance and a receiver, and has a worker make the transaction.
+     */
+    private void submit(ExecutorService workers, long due) {
+        List<User> senders = new ArrayList<>();
+        for (User node : nodes) {
+            if (node.getNetWorth(node.getPublicKey()).compareTo(AMOUNT) >= 0)
+                senders.add(node);
+        }
+        if (senders.isEmpty()) {
+            rejected.incrementAndGet();
+            return;
+        }
+        User sender = senders.get(random.nextInt(senders.size()));
+        // Any node but the sender.
+        int receiverIndex = random.nextInt(nodes.size() - 1);
+        if (receiverIndex >= nodes.indexOf(sender))
+            ++receiverIndex;
+        User receiver = nodes.get(receiverIndex);
+        workers.execute(() -> {
+            Transaction transaction = sender.sendTransaction(receiver.getPublicKey(), AMOUNT);
+            if (transaction == null)
+                rejected.incrementAndGet();
+            else
+                dueTimes.put(transaction.getId(), due);
+        });
+    }
+
+    /**
+     * Checks whether every node holds the same chain and the miners have nothing left to mine.
+     */
+    private boolean isSettled() {
+        String tip = nodes.get(0).getBlockchain().lastBlock().getHash();
+        for (int i = 0; i < nodes.size(); ++i) {
+            User node = nodes.get(i);
+            if (!node.getBlockchain().lastBlock().getHash().equals(tip))
+                return false;
+            if (i < config.getNumberOfMiners() && !node.getTransactionPool().isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    private SimulationReport report(long start, long end, int submitted, boolean converged) {
+        double elapsedSeconds = (end - start) / 1e9;
+        List<Long> latencies = new ArrayList<>();
+        for (Map.Entry<String, Long> confirmation : confirmationTimes.entrySet()) {
+            Long due = dueTimes.get(confirmation.getKey());
+            if (due != null)
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(Math.max(0, confirmation.getValue() - due)));
+        }
+        long[] sorted = new long[latencies.size()];
+        for (int i = 0; i < sorted.length; ++i)
+            sorted[i] = latencies.get(i);
+
+        List<SimulationReport.NodeReport> nodeReports = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); ++i) {
+            User node = nodes.get(i);
+            TrafficCounter traffic = node.getTraffic();
+            nodeReports.add(new SimulationReport.NodeReport(node.getAlias(), i < config.getNumberOfMiners(),
+                    node.getBlockchain().length(), reorganizations.get(i), traffic.getMessagesSent(),
+                    traffic.getMessagesReceived(), traffic.getBytesSent(), traffic.getBytesReceived(),
+                    elapsedSeconds));
+        }
+        return new SimulationReport(config, elapsedSeconds, submitted, rejected.get(), sorted,
+                blocksSeen.size(), nodes.get(0).getBlockchain().length(), converged, nodeReports);
+    }
+
+    /**
+     * Waits until the condition holds or the time is up.
+     *
+     * @return true if the condition holds, false if the time is up.
+     */
+    private static boolean await(BooleanSupplier condition, long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline >= 0)
+                return false;
+            Thread.sleep(POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Follows the chain of a node: the blocks it sees, the forks it switches
+     * to and the transactions it holds.
+     */
+    private final class NodeTracker implements ChainListener {
+        private final int index;
+
+        private NodeTracker(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void chainChanged(User user, int forkHeight, List<Block<MinedTransaction>> removed,
+                                 List<Block<MinedTransaction>> added) {
+            long now = System.nanoTime();
+            if (!removed.isEmpty())
+                reorganizations.incrementAndGet(index);
+            for (Block<MinedTransaction> block : removed) {
+                String id = block.getDataId();
+                Set<Integer> nodes = holders.get(id);
+                if (nodes == null)
+                    continue;
+                synchronized (nodes) {
+                    nodes.remove(index);
+                    confirmationTimes.remove(id);
+                }
+            }
+            for (Block<MinedTransaction> block : added) {
+                blocksSeen.add(block.getHash());
+                String id = block.getDataId();
+                Set<Integer> nodes = holders.computeIfAbsent(id, key -> new HashSet<>());
+                synchronized (nodes) {
+                    if (nodes.add(index) && nodes.size() == config.getNumberOfNodes())
+                        confirmationTimes.put(id, now);
+                }
+            }
+        }
+    }
+}
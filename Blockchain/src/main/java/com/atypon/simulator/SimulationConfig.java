@@ -0,0 +1,137 @@
+package com.atypon.simulator;
+
+/**
+ * The settings of a run of the {@link NetworkSimulator}: the number of nodes
+ * and how many of them mine, the rate the transactions are made at, how long
+ * they're made for and how long the network is given to settle afterwards.
+ * The random choices of the senders and receivers follow the seed, so two runs
+ * with the same settings make the same choices.
+ * Immutable thus threadsafe.
+ */
+public final class SimulationConfig {
+    public final static int DEFAULT_NUMBER_OF_NODES = 4;
+    public final static int DEFAULT_NUMBER_OF_MINERS = 2;
+    public final static double DEFAULT_TRANSACTIONS_PER_SECOND = 2;
+    public final static long DEFAULT_DURATION = 10_000;
+    public final static long DEFAULT_SETTLE_TIME = 30_000;
+    public final static int DEFAULT_BASE_PORT = 7000;
+    public final static long DEFAULT_SEED = 42;
+
+    private final int numberOfNodes;
+    private final int numberOfMiners;
+    private final double transactionsPerSecond;
+    private final long duration;
+    private final long settleTime;
+    private final int basePort;
+    private final long seed;
+
+    /**
+     * Initialize the settings.
+     *
+     * @param numberOfNodes         The number of nodes, at least two.
+     * @param numberOfMiners        The number of nodes that mine, the first nodes mine.
+     * @param transactionsPerSecond The rate the transactions are made at.
+     * @param duration              How long the transactions are made for, in milliseconds.
+     * @param settleTime            How long the network is given to settle afterwards, in milliseconds.
+     * @param basePort              The port of the first node, the others take the next ports.
+     * @param seed                  The seed of the random choices.
+     * @throws IllegalArgumentException if a setting is out of its range.
+     */
+    public SimulationConfig(int numberOfNodes, int numberOfMiners, double transactionsPerSecond,
+                            long duration, long settleTime, int basePort, long seed) {
+        if (numberOfNodes < 2)
+            throw new IllegalArgumentException("At least two nodes are needed!");
+        if (numberOfMiners < 1 || numberOfMiners > numberOfNodes)
+            throw new IllegalArgumentException("The number of miners must be between 1 and the number of nodes!");
+        if (!(transactionsPerSecond > 0))
+            throw new IllegalArgumentException("The transaction rate must be positive!");
+        if (duration <= 0 || settleTime < 0)
+            throw new IllegalArgumentException("The duration must be positive and the settle time not negative!");
+        if (basePort <= 0 || basePort + numberOfNodes > 65536)
+            throw new IllegalArgumentException("The ports of the nodes are out of range!");
+        this.numberOfNodes = numberOfNodes;
+        this.numberOfMiners = numberOfMiners;
+        this.transactionsPerSecond = transactionsPerSecond;
+        this.duration = duration;
+        this.settleTime = settleTime;
+        this.basePort = basePort;
+        this.seed = seed;
+    }
+
+    /**
+     * Initialize the default settings.
+     */
+    public SimulationConfig() {
+        this(DEFAULT_NUMBER_OF_NODES, DEFAULT_NUMBER_OF_MINERS, DEFAULT_TRANSACTIONS_PER_SECOND,
+                DEFAULT_DURATION, DEFAULT_SETTLE_TIME, DEFAULT_BASE_PORT, DEFAULT_SEED);
+    }
+
+    /**
+     * Reads the settings from the command line arguments, in the order:
+     * nodes, miners, transactions per second, duration in seconds, base port
+     * and seed. The missing arguments take their default values.
+     *
+     * @param args The arguments.
+     * @return The settings.
+     * @throws IllegalArgumentException if an argument isn't a valid number or setting.
+     */
+    public static SimulationConfig parse(String[] args) {
+        return new SimulationConfig(
+                args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUMBER_OF_NODES,
+                args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUMBER_OF_MINERS,
+                args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TRANSACTIONS_PER_SECOND,
+                args.length > 3 ? Math.round(Double.parseDouble(args[3]) * 1000) : DEFAULT_DURATION,
+                DEFAULT_SETTLE_TIME,
+                args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_BASE_PORT,
+                args.length > 5 ? Long.parseLong(args[5]) : DEFAULT_SEED);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getNumberOfNodes() {
+        return numberOfNodes;
+    }
+
+    public int getNumberOfMiners() {
+        return numberOfMiners;
+    }
+
+    public double getTransactionsPerSecond() {
+        return transactionsPerSecond;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getSettleTime() {
+        return settleTime;
+    }
+
+    public int getBasePort() {
+        return basePort;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "SimulationConfig{" +
+                "numberOfNodes=" + numberOfNodes +
+                ", numberOfMiners=" + numberOfMiners +
+                ", transactionsPerSecond=" + transactionsPerSecond +
+                ", duration=" + duration +
+                ", settleTime=" + settleTime +
+                ", basePort=" + basePort +
+                ", seed=" + seed +
+                '}';
+    }
+}
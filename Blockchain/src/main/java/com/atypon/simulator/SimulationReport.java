@@ -0,0 +1,249 @@
+package com.atypon.simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a run of the {@link NetworkSimulator}: how many transactions
+ * were made and confirmed (held by the chain of every node), the confirmation
+ * latencies, the blocks that were mined but left out of the final chain, and
+ * the traffic of each node.
+ * Immutable thus threadsafe.
+ */
+public final class SimulationReport {
+    private final SimulationConfig config;
+    // The time from the first transaction to the end of the run, in seconds.
+    private final double elapsedSeconds;
+    private final int submitted;
+    private final int rejected;
+    // The confirmation latencies in milliseconds, sorted.
+    private final long[] latencies;
+    private final int distinctBlocks;
+    private final int chainLength;
+    private final boolean converged;
+    private final List<NodeReport> nodes;
+
+    /**
+     * Initialize the report.
+     *
+     * @param config         The settings of the run.
+     * @param elapsedSeconds The time from the first transaction to the end of the run, in seconds.
+     * @param submitted      The number of transactions made.
+     * @param rejected       The number of transactions the senders refused to make.
+     * @param latencies      The confirmation latencies of the confirmed transactions, in milliseconds.
+     * @param distinctBlocks The number of different blocks seen by the nodes.
+     * @param chainLength    The length of the final chain of the first node.
+     * @param converged      Whether all nodes ended with the same chain.
+     * @param nodes          The reports of the nodes.
+     */
+    public SimulationReport(SimulationConfig config, double elapsedSeconds, int submitted, int rejected,
+                            long[] latencies, int distinctBlocks, int chainLength, boolean converged,
+                            List<NodeReport> nodes) {
+        this.config = config;
+        this.elapsedSeconds = elapsedSeconds;
+        this.submitted = submitted;
+        this.rejected = rejected;
+        this.latencies = latencies.clone();
+        Arrays.sort(this.latencies);
+        this.distinctBlocks = distinctBlocks;
+        this.chainLength = chainLength;
+        this.converged = converged;
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    }
+
+    /**
+     * Get the confirmed transactions per second over the run.
+     *
+     * @return The throughput.
+     */
+    public double getThroughput() {
+        return elapsedSeconds > 0 ? latencies.length / elapsedSeconds : 0;
+    }
+
+    /**
+     * Get a percentile of the confirmation latencies, by the nearest rank.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in milliseconds, -1 if no transaction was confirmed.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100!");
+        if (latencies.length == 0)
+            return -1;
+        int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+        return latencies[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Get the part of the mined blocks that were left out of the final chain,
+     * because another block was chained at their height.
+     *
+     * @return The fork rate, between 0 and 1.
+     */
+    public double getForkRate() {
+        return distinctBlocks == 0 ? 0 : (double) (distinctBlocks - chainLength) / distinctBlocks;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public SimulationConfig getConfig() {
+        return config;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedSeconds;
+    }
+
+    public int getSubmitted() {
+        return submitted;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public int getConfirmed() {
+        return latencies.length;
+    }
+
+    public int getDistinctBlocks() {
+        return distinctBlocks;
+    }
+
+    public int getChainLength() {
+        return chainLength;
+    }
+
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public List<NodeReport> getNodes() {
+        return nodes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        StringBuilder ret = new StringBuilder();
+        ret.append(config).append('\n');
+        ret.append(String.format("elapsed            : %.1f s%n", elapsedSeconds));
+        ret.append(String.format("transactions       : %d submitted, %d rejected, %d confirmed%n",
+                submitted, rejected, getConfirmed()));
+        ret.append(String.format("throughput         : %.2f tx/s%n", getThroughput()));
+        ret.append(String.format("latency (ms)       : p50=%d p90=%d p99=%d max=%d%n", getLatencyPercentile(50),
+                getLatencyPercentile(90), getLatencyPercentile(99), getLatencyPercentile(100)));
+        ret.append(String.format("blocks             : %d in the chain, %d mined, fork rate %.3f%n",
+                chainLength, distinctBlocks, getForkRate()));
+        ret.append(String.format("converged          : %b%n", converged));
+        for (NodeReport node : nodes)
+            ret.append(node).append('\n');
+        return ret.toString();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The results of a single node: its chain, the forks it switched to and its traffic.
+     * Immutable thus threadsafe.
+     */
+    public final static class NodeReport {
+        private final String alias;
+        private final boolean miner;
+        private final int chainLength;
+        private final int reorganizations;
+        private final long messagesSent, messagesReceived;
+        private final long bytesSent, bytesReceived;
+        private final double elapsedSeconds;
+
+        /**
+         * Initialize the report of a node.
+         *
+         * @param alias            The alias of the node.
+         * @param miner            Whether the node mines.
+         * @param chainLength      The length of the final chain of the node.
+         * @param reorganizations  The number of times the node switched to a fork of its chain.
+         * @param messagesSent     The number of messages the node sent.
+         * @param messagesReceived The number of messages the node received.
+         * @param bytesSent        The number of bytes the node sent.
+         * @param bytesReceived    The number of bytes the node received.
+         * @param elapsedSeconds   The duration of the run, in seconds.
+         */
+        public NodeReport(String alias, boolean miner, int chainLength, int reorganizations,
+                          long messagesSent, long messagesReceived, long bytesSent, long bytesReceived,
+                          double elapsedSeconds) {
+            this.alias = alias;
+            this.miner = miner;
+            this.chainLength = chainLength;
+            this.reorganizations = reorganizations;
+            this.messagesSent = messagesSent;
+            this.messagesReceived = messagesReceived;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.elapsedSeconds = elapsedSeconds;
+        }
+
+        /**
+         * Get the bytes sent and received per second over the run.
+         *
+         * @return The bandwidth in bytes per second.
+         */
+        public double getBandwidth() {
+            return elapsedSeconds > 0 ? (bytesSent + bytesReceived) / elapsedSeconds : 0;
+        }
+
+        ////////////////////////////////////////////////////////////////////////////////
+        //////////////////// Setters and Getters ///////////////////////////////////////
+        ////////////////////////////////////////////////////////////////////////////////
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public boolean isMiner() {
+            return miner;
+        }
+
+        public int getChainLength() {
+            return chainLength;
+        }
+
+        public int getReorganizations() {
+            return reorganizations;
+        }
+
+        public long getMessagesSent() {
+            return messagesSent;
+        }
+
+        public long getMessagesReceived() {
+            return messagesReceived;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %-6s chain=%d reorganizations=%d sent=%d msg/%d B received=%d msg/%d B " +
+                            "bandwidth=%.0f B/s", alias, miner ? "miner" : "", chainLength, reorganizations,
+                    messagesSent, bytesSent, messagesReceived, bytesReceived, getBandwidth());
+        }
+    }
+}
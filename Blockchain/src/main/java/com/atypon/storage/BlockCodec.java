@@ -0,0 +1,159 @@
+package com.atypon.storage;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.utility.SignatureScheme;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A utility class that converts a {@link Block} of {@link MinedTransaction}
+ * to a compact binary form and back, the form used by the {@link BlockStore}.
+ * The first byte of the form is its version so the format can evolve:
+ * version 1 is a legacy block, version 2 adds the timestamp and the target
+ * after the nonce, so the stored legacy blocks are read as they were.
+ */
+public final class BlockCodec {
+    private final static byte LEGACY_VERSION = 1;
+    private final static byte VERSION = 2;
+    // The same accounts appear in many blocks, so the decoded keys are reused.
+    private final static int KEY_CACHE_CAPACITY = 4096;
+    private final static ConcurrentHashMap<ByteBuffer, PublicKey> KEY_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Encode the block into its binary form.
+     *
+     * @param block The block to encode.
+     * @return The bytes of the block.
+     */
+    public static byte[] encode(Block<MinedTransaction> block) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            MinedTransaction transaction = block.getData();
+            out.writeByte(block.isLegacy() ? LEGACY_VERSION : VERSION);
+            out.writeUTF(block.getPrvHash());
+            out.writeLong(block.getNonce());
+            if (!block.isLegacy()) {
+                out.writeLong(block.getTimestamp());
+                writeBytes(out, block.getTarget().toByteArray());
+            }
+
+            out.writeUTF(transaction.getId());
+            writeKey(out, transaction.getSenderPublicKey());
+            writeKey(out, transaction.getReceiverPublicKey());
+            writeDecimal(out, transaction.getAmount());
+            out.writeUTF(transaction.getSignatureScheme().name());
+            writeBytes(out, transaction.getSignature());
+
+            writeKey(out, transaction.getMinerPublicKey());
+            writeDecimal(out, transaction.getMiningFee());
+            writeDecimal(out, transaction.getMiningReward());
+        } catch (IOException e) {
+            // Writing to memory doesn't fail.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a block from its binary form.
+     *
+     * @param data The bytes of the block.
+     * @return The decoded block.
+     * @throws IOException if the bytes aren't a valid encoded block.
+     */
+    public static Block<MinedTransaction> decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION && version != LEGACY_VERSION)
+                throw new IOException("Unknown block format version: " + version);
+            String prvHash = in.readUTF();
+            long nonce = in.readLong();
+            long timestamp = 0;
+            BigInteger target = null;
+            if (version == VERSION) {
+                timestamp = in.readLong();
+                target = new BigInteger(readBytes(in));
+            }
+
+            String id = in.readUTF();
+            PublicKey sender = readKey(in);
+            PublicKey receiver = readKey(in);
+            BigDecimal amount = readDecimal(in);
+            SignatureScheme scheme = SignatureScheme.valueOf(in.readUTF());
+            byte[] signature = readBytes(in);
+            Transaction transaction = new Transaction(id, sender, receiver, amount, signature, scheme);
+
+            PublicKey miner = readKey(in);
+            BigDecimal miningFee = readDecimal(in);
+            BigDecimal miningReward = readDecimal(in);
+            MinedTransaction minedTransaction = new MinedTransaction(transaction, miner, miningFee, miningReward);
+            if (target == null)
+                return new Block<>(prvHash, minedTransaction, nonce);
+            return new Block<>(prvHash, minedTransaction, nonce, timestamp, target);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid target.", e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown signature scheme.", e);
+        }
+    }
+
+    static void writeKey(DataOutputStream out, PublicKey key) throws IOException {
+        out.writeUTF(SignatureScheme.of(key).name());
+        writeBytes(out, key.getEncoded());
+    }
+
+    static PublicKey readKey(DataInputStream in) throws IOException {
+        SignatureScheme scheme = SignatureScheme.valueOf(in.readUTF());
+        ByteBuffer encoded = ByteBuffer.wrap(readBytes(in));
+        PublicKey key = KEY_CACHE.get(encoded);
+        if (key != null)
+            return key;
+        try {
+            key = scheme.decodePublicKey(encoded.array());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Invalid public key.", e);
+        }
+        if (KEY_CACHE.size() >= KEY_CACHE_CAPACITY)
+            KEY_CACHE.clear();
+        KEY_CACHE.put(encoded, key);
+        return key;
+    }
+
+    static void writeDecimal(DataOutputStream out, BigDecimal decimal) throws IOException {
+        out.writeInt(decimal.scale());
+        writeBytes(out, decimal.unscaledValue().toByteArray());
+    }
+
+    static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        return new BigDecimal(new BigInteger(readBytes(in)), scale);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available())
+            throw new IOException("Invalid length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * A private constructor to enforce non-instantiability.
+     */
+    private BlockCodec() {
+    }
+}
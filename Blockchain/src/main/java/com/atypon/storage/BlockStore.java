@@ -0,0 +1,934 @@
+package com.atypon.storage;
+
+import com.atypon.blockchain.AccountIndexedList;
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.BlockIndexedList;
+import com.atypon.blockchain.Difficulty;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.utility.BitManipulation;
+import com.atypon.utility.IntList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only, on-disk log of the blocks of a chain.
+ * The blocks are written one after the other into segment files of a bounded
+ * size, each record is the length of the block, a CRC32 checksum and the block
+ * encoded by {@link BlockCodec}. A separate index file holds a fixed-size entry
+ * for each height (segment, offset, length, the cumulative work of the blocks up
+ * to it, the digest of the data ID and the block hash), so appending a block,
+ * finding a block by its height and weighing the chain are all O(1).
+ * Blocks are only removed from the end (when the chain is replaced by a fork).
+ * The index is written after the segment, so after a crash the store is opened
+ * at the last block whose record was completely written.
+ * The reads go through memory-mapped views of the files, so opening the store
+ * reads nothing but the last entries of the index files and the last block,
+ * and {@link #asList()} gives the blocks as a list that decodes each block
+ * only when it's accessed. The views are unmapped before a file is shrunk or
+ * deleted, since some systems (Windows) refuse to change a mapped file.
+ * A hash to height index is built from the index file the first time a block is
+ * looked up by its hash, and kept up to date afterwards, the same goes for the
+ * data IDs. So the list of the store finds its blocks by hash and by data ID,
+ * and sums their work, without decoding any of them.
+ * An accounts file holds an entry (height and digest of the public key) for
+ * each account of each block, in the order of the heights, so the history of
+ * an account is loaded from it without decoding the blocks. It's written after
+ * the index file, so when the store is opened, the blocks it misses (and the
+ * last block it holds, which may be partially written) are indexed again.
+ * Threadsafe.
+ */
+public final class BlockStore implements Closeable {
+    public final static long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    private final static String INDEX_FILE_NAME = "blocks.idx";
+    private final static String ACCOUNTS_FILE_NAME = "accounts.idx";
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".log";
+    // Segment number (int), offset (long), length (int), the cumulative work (40 bytes),
+    // the SHA-256 digest of the data ID (32 bytes) and the block hash (32 bytes).
+    private final static int HASH_SIZE = 32;
+    // The work of a block is at most 2^256, so the sum of 2^31 blocks fits in 40 bytes.
+    private final static int WORK_SIZE = 40;
+    private final static int WORK_OFFSET = 4 + 8 + 4;
+    private final static int ID_OFFSET = WORK_OFFSET + WORK_SIZE;
+    private final static int HASH_OFFSET = ID_OFFSET + HASH_SIZE;
+    private final static int INDEX_ENTRY_SIZE = HASH_OFFSET + HASH_SIZE;
+    // The index is mapped in chunks of this many entries, a mapping can't be larger than 2GB.
+    private final static int INDEX_CHUNK_ENTRIES = 1 << 20;
+    // The height (int) and the SHA-256 digest of the public key (32 bytes) of an account.
+    private final static int ACCOUNT_ENTRY_SIZE = 4 + HASH_SIZE;
+    private final static String KEY_DIGEST_ALGORITHM = "SHA-256";
+    // The length (int) and the checksum (int) of the record.
+    private final static int RECORD_HEADER_SIZE = 8;
+    // The number of decoded blocks kept in memory.
+    private final static int DECODED_CACHE_CAPACITY = 1024;
+    // Releases a mapping right away instead of when it's garbage collected,
+    // null if the JVM doesn't allow it.
+    private final static Object UNSAFE;
+    private final static Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final long segmentSize;
+    private final FileChannel index;
+    private final FileChannel accounts;
+    private final ArrayList<FileChannel> segments;
+    // The number of blocks in the store.
+    private int height;
+    // The cumulative work of the blocks in the store.
+    private BigInteger work;
+    // Where the next record will be written.
+    private int lastSegment;
+    private long segmentEnd;
+    // The read-only mappings of the files, re-mapped when the files grow.
+    // They are only read under the lock, so they can be unmapped under it.
+    private final ArrayList<MappedByteBuffer> indexMaps;
+    private final ArrayList<MappedByteBuffer> segmentMaps;
+    // The height the store was truncated to by each truncation, lists made
+    // before a truncation can't read the blocks that it removed.
+    private final ArrayList<Integer> truncations;
+    // Built on the first lookup by hash or by data ID, null until then.
+    private HashIndex hashIndex;
+    private HashIndex idIndex;
+    // The number of entries in the accounts file.
+    private long accountEntries;
+    // The heights of the blocks of each account by the digest of its key,
+    // loaded on the first history lookup, null until then.
+    private HashMap<ByteBuffer, IntList> accountIndex;
+    // The blocks decoded most recently by the lists, by height.
+    private final LinkedHashMap<Integer, Block<MinedTransaction>> decodedBlocks;
+
+    private BlockStore(Path directory, FsyncPolicy fsyncPolicy, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.index = FileChannel.open(directory.resolve(INDEX_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.accounts = FileChannel.open(directory.resolve(ACCOUNTS_FILE_NAME),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.accountEntries = accounts.size() / ACCOUNT_ENTRY_SIZE;
+        this.segments = new ArrayList<>();
+        this.indexMaps = new ArrayList<>();
+        this.segmentMaps = new ArrayList<>();
+        this.truncations = new ArrayList<>();
+        this.decodedBlocks = new LinkedHashMap<Integer, Block<MinedTransaction>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Block<MinedTransaction>> eldest) {
+                return size() > DECODED_CACHE_CAPACITY;
+            }
+        };
+        for (int i = 0; Files.exists(segmentPath(i)); ++i)
+            segments.add(openSegment(i));
+        if (segments.isEmpty())
+            segments.add(openSegment(0));
+        for (int i = 0; i < segments.size(); ++i)
+            segmentMaps.add(null);
+        recover();
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it doesn't exist.
+     *
+     * @param directory   The directory of the store.
+     * @param fsyncPolicy When the written data is forced to the disk.
+     * @return The opened store.
+     * @throws IOException if the files can't be opened.
+     */
+    public static BlockStore open(Path directory, FsyncPolicy fsyncPolicy) throws IOException {
+        return open(directory, fsyncPolicy, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it doesn't exist.
+     *
+     * @param directory   The directory of the store.
+     * @param fsyncPolicy When the written data is forced to the disk.
+     * @param segmentSize The size after which a new segment file is started.
+     * @return The opened store.
+     * @throws IOException if the files can't be opened.
+     */
+    public static BlockStore open(Path directory, FsyncPolicy fsyncPolicy, long segmentSize) throws IOException {
+        return new BlockStore(directory, fsyncPolicy, segmentSize);
+    }
+
+    /**
+     * Drops whatever was partially written by an interrupted append, so the
+     * index and the segments end at the same complete record.
+     */
+    private void recover() throws IOException {
+        height = (int) (index.size() / INDEX_ENTRY_SIZE);
+        // Step back over the entries whose record isn't completely in the segment.
+        while (height > 0) {
+            ByteBuffer entry = readEntry(height - 1);
+            int segment = entry.getInt(0);
+            long end = entry.getLong(4) + RECORD_HEADER_SIZE + entry.getInt(12);
+            if (segment < segments.size() && end <= segments.get(segment).size())
+                break;
+            --height;
+        }
+        truncate(height, true);
+
+        // Index again the last indexed block and the blocks after it.
+        int indexed = accountEntries == 0 ? 0 : readAccountHeight(accountEntries - 1);
+        truncateAccounts(indexed);
+        for (int i = indexed; i < height; ++i)
+            appendAccounts(read(i), i);
+        accounts.force(false);
+    }
+
+    /**
+     * Appends a block to the end of the store.
+     *
+     * @param block The block to append.
+     * @throws IOException if the writing fails.
+     */
+    public synchronized void append(Block<MinedTransaction> block) throws IOException {
+        byte[] data = BlockCodec.encode(block);
+        int recordSize = RECORD_HEADER_SIZE + data.length;
+
+        // Start a new segment if this one is full.
+        if (segmentEnd > 0 && segmentEnd + recordSize > segmentSize) {
+            if (fsyncPolicy != FsyncPolicy.NEVER)
+                segments.get(lastSegment).force(false);
+            ++lastSegment;
+            segments.add(openSegment(lastSegment));
+            segmentMaps.add(null);
+            segmentEnd = 0;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(data.length).putInt((int) crc.getValue()).put(data);
+        record.flip();
+        FileChannel segment = segments.get(lastSegment);
+        writeFully(segment, record, segmentEnd);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS)
+            segment.force(false);
+
+        BigInteger work = this.work.add(Difficulty.work(block));
+        byte[] workBytes = work.toByteArray();
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.putInt(lastSegment).putLong(segmentEnd).putInt(data.length)
+                .put(new byte[WORK_SIZE - workBytes.length]).put(workBytes)
+                .put(idDigest(block.getDataId()))
+                .put(BitManipulation.stringToByteArray(block.getHash()));
+        entry.flip();
+        writeFully(index, entry, (long) height * INDEX_ENTRY_SIZE);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS)
+            index.force(false);
+
+        segmentEnd += recordSize;
+        this.work = work;
+        if (hashIndex != null)
+            hashIndex.put(entry, height);
+        if (idIndex != null)
+            idIndex.put(entry, height);
+        appendAccounts(block, height);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS)
+            accounts.force(false);
+        ++height;
+    }
+
+    /**
+     * Reads the block at the given height.
+     *
+     * @param height The height of the block, starting from 0.
+     * @return The block.
+     * @throws IOException               if the reading fails or the record is corrupted.
+     * @throws IndexOutOfBoundsException if there's no block at this height.
+     */
+    public Block<MinedTransaction> read(int height) throws IOException {
+        int checksum;
+        byte[] data;
+        synchronized (this) {
+            checkHeight(height);
+            ByteBuffer entry = readEntry(height);
+            int segment = entry.getInt(0);
+            long offset = entry.getLong(4);
+            int size = RECORD_HEADER_SIZE + entry.getInt(12);
+            // Copy under the lock, a truncation must not shrink the file while it's read.
+            ByteBuffer record = mappedSegment(segment, offset + size).duplicate();
+            record.position((int) offset);
+            data = new byte[record.getInt()];
+            checksum = record.getInt();
+            record.get(data);
+        }
+        // Check and decode outside the lock.
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if ((int) crc.getValue() != checksum)
+            throw new IOException("Corrupted block at height " + height + '.');
+        return BlockCodec.decode(data);
+    }
+
+    /**
+     * Gives the blocks currently in the store as a read-only list that
+     * decodes each block when it's first accessed, recently decoded blocks
+     * are kept in memory. Blocks appended afterwards aren't a part of the list.
+     *
+     * @return The list of blocks.
+     */
+    public synchronized List<Block<MinedTransaction>> asList() {
+        return new StoredBlockList(height, truncations.size());
+    }
+
+    /**
+     * Finds the height of the block with the given hash.
+     *
+     * @param hash The hash of the block.
+     * @return The height of the block, or -1 if it's not in the store.
+     * @throws IOException if the reading fails.
+     */
+    public synchronized int getHeight(String hash) throws IOException {
+        if (hash == null || hash.length() != HASH_SIZE * 2)
+            return -1;
+        if (hashIndex == null)
+            hashIndex = buildIndex(HASH_OFFSET);
+        return find(hashIndex, BitManipulation.stringToByteArray(hash));
+    }
+
+    /**
+     * Finds the height of the first block with the given data ID, without reading the blocks.
+     *
+     * @param id The ID of the data.
+     * @return The height of the block, or -1 if it's not in the store.
+     * @throws IOException if the reading fails.
+     */
+    public synchronized int getDataIdHeight(String id) throws IOException {
+        if (id == null)
+            return -1;
+        if (idIndex == null)
+            idIndex = buildIndex(ID_OFFSET);
+        return find(idIndex, idDigest(id));
+    }
+
+    /**
+     * Gets the cumulative work of the blocks below a height without reading the blocks.
+     *
+     * @param height The number of blocks, from the first.
+     * @return The sum of the work of the blocks (see {@link Difficulty#work}), 0 for no blocks.
+     * @throws IOException               if the reading fails.
+     * @throws IndexOutOfBoundsException if the height is negative or above the height of the store.
+     */
+    public synchronized BigInteger getWorkBelow(int height) throws IOException {
+        if (height < 0 || height > this.height)
+            throw new IndexOutOfBoundsException("Height: " + height + ", Size: " + this.height);
+        return height == 0 ? BigInteger.ZERO : readWork(readEntry(height - 1));
+    }
+
+    /**
+     * Finds a page of the heights of the blocks whose data concerns the given
+     * account, as sender, receiver or miner, the newest first.
+     *
+     * @param account The public key of the account.
+     * @param offset  The number of the newest blocks of the account to skip.
+     * @param limit   The maximum number of heights to return.
+     * @return The heights of the blocks, the highest first.
+     * @throws IOException              if the reading fails.
+     * @throws IllegalArgumentException if the offset or the limit is negative.
+     */
+    public synchronized List<Integer> getAccountHistory(PublicKey account, int offset, int limit)
+            throws IOException {
+        if (offset < 0 || limit < 0)
+            throw new IllegalArgumentException("The offset and the limit must not be negative!");
+        IntList heights = account == null ? null : getAccountIndex().get(keyDigest(account));
+        if (heights == null)
+            return Collections.emptyList();
+        List<Integer> page = new ArrayList<>();
+        for (int i = heights.size() - 1 - offset; i >= 0 && page.size() < limit; --i)
+            page.add(heights.get(i));
+        return page;
+    }
+
+    /**
+     * Counts the blocks whose data concerns the given account.
+     *
+     * @param account The public key of the account.
+     * @return The number of blocks of the account.
+     * @throws IOException if the reading fails.
+     */
+    public synchronized int getAccountHistorySize(PublicKey account) throws IOException {
+        IntList heights = account == null ? null : getAccountIndex().get(keyDigest(account));
+        return heights == null ? 0 : heights.size();
+    }
+
+    /**
+     * Gets the hash of the block at the given height without reading the block.
+     *
+     * @param height The height of the block, starting from 0.
+     * @return The hash of the block.
+     * @throws IOException               if the reading fails.
+     * @throws IndexOutOfBoundsException if there's no block at this height.
+     */
+    public synchronized String getHash(int height) throws IOException {
+        checkHeight(height);
+        ByteBuffer entry = readEntry(height);
+        byte[] hash = new byte[HASH_SIZE];
+        entry.position(HASH_OFFSET);
+        entry.get(hash);
+        return BitManipulation.byteArrayToString(hash);
+    }
+
+    /**
+     * Removes the blocks above the given height.
+     *
+     * @param height The number of blocks to keep.
+     * @throws IOException if the files can't be changed.
+     */
+    public synchronized void truncate(int height) throws IOException {
+        if (height < 0 || height >= this.height)
+            return;
+        truncations.add(height);
+        truncate(height, fsyncPolicy == FsyncPolicy.ALWAYS);
+    }
+
+    private void truncate(int height, boolean force) throws IOException {
+        int segment = 0;
+        long end = 0;
+        BigInteger work = BigInteger.ZERO;
+        if (height > 0) {
+            ByteBuffer entry = readEntry(height - 1);
+            segment = entry.getInt(0);
+            end = entry.getLong(4) + RECORD_HEADER_SIZE + entry.getInt(12);
+            work = readWork(entry);
+        }
+        // Unmap the files before they shrink under the mappings.
+        unmapAll();
+        hashIndex = null;
+        idIndex = null;
+        decodedBlocks.clear();
+        truncateAccounts(height);
+        // Delete the segments after the last kept block.
+        while (segments.size() - 1 > segment) {
+            int last = segments.size() - 1;
+            segments.remove(last).close();
+            Files.deleteIfExists(segmentPath(last));
+        }
+        for (int i = 0; i < segments.size(); ++i)
+            segmentMaps.add(null);
+        segments.get(segment).truncate(end);
+        index.truncate((long) height * INDEX_ENTRY_SIZE);
+        if (force) {
+            segments.get(segment).force(false);
+            index.force(false);
+            accounts.force(false);
+        }
+        this.height = height;
+        this.work = work;
+        this.lastSegment = segment;
+        this.segmentEnd = end;
+    }
+
+    /**
+     * Forces the written data to the disk, unless the policy is {@link FsyncPolicy#NEVER}.
+     *
+     * @throws IOException if the forcing fails.
+     */
+    public synchronized void sync() throws IOException {
+        if (fsyncPolicy == FsyncPolicy.NEVER)
+            return;
+        segments.get(lastSegment).force(false);
+        index.force(false);
+        accounts.force(false);
+    }
+
+    /**
+     * Syncs then closes the files of the store.
+     *
+     * @throws IOException if the closing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            unmapAll();
+            for (FileChannel segment : segments)
+                segment.close();
+            index.close();
+            accounts.close();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private ByteBuffer readEntry(int height) throws IOException {
+        int chunk = height / INDEX_CHUNK_ENTRIES;
+        int position = (height % INDEX_CHUNK_ENTRIES) * INDEX_ENTRY_SIZE;
+        while (indexMaps.size() <= chunk)
+            indexMaps.add(null);
+        MappedByteBuffer map = indexMaps.get(chunk);
+        if (map == null || map.capacity() < position + INDEX_ENTRY_SIZE) {
+            long start = (long) chunk * INDEX_CHUNK_ENTRIES * INDEX_ENTRY_SIZE;
+            long size = Math.min((long) INDEX_CHUNK_ENTRIES * INDEX_ENTRY_SIZE, index.size() - start);
+            unmap(map);
+            map = index.map(FileChannel.MapMode.READ_ONLY, start, size);
+            indexMaps.set(chunk, map);
+        }
+        ByteBuffer entry = map.duplicate();
+        entry.position(position);
+        entry.limit(position + INDEX_ENTRY_SIZE);
+        return entry.slice();
+    }
+
+    private static BigInteger readWork(ByteBuffer entry) {
+        byte[] work = new byte[WORK_SIZE];
+        entry.position(WORK_OFFSET);
+        entry.get(work);
+        return new BigInteger(1, work);
+    }
+
+    /**
+     * Builds the index of the hashes (or the data ID digests) at the given
+     * offset of the entries, from the index file.
+     */
+    private HashIndex buildIndex(int offset) throws IOException {
+        HashIndex built = new HashIndex(Math.max(height, 16), offset);
+        for (int i = 0; i < height; ++i)
+            built.put(readEntry(i), i);
+        return built;
+    }
+
+    /**
+     * Finds the lowest height whose entry holds the given key, the candidates
+     * of the index are checked against the full key.
+     */
+    private int find(HashIndex hashIndex, byte[] key) throws IOException {
+        int found = -1;
+        for (int candidate : hashIndex.get(key)) {
+            if (found >= 0 && candidate > found)
+                continue;
+            ByteBuffer entry = readEntry(candidate);
+            entry.position(hashIndex.offset);
+            entry.limit(hashIndex.offset + HASH_SIZE);
+            if (entry.slice().equals(ByteBuffer.wrap(key)))
+                found = candidate;
+        }
+        return found;
+    }
+
+    /**
+     * Writes the entries of the accounts of the block, and adds them to the
+     * account index if it's loaded.
+     */
+    private void appendAccounts(Block<MinedTransaction> block, int height) throws IOException {
+        Collection<PublicKey> keys = block.getData().getAccounts();
+        ByteBuffer entries = ByteBuffer.allocate(keys.size() * ACCOUNT_ENTRY_SIZE);
+        for (PublicKey key : keys) {
+            ByteBuffer digest = keyDigest(key);
+            entries.putInt(height).put(digest.duplicate());
+            if (accountIndex != null)
+                accountIndex.computeIfAbsent(digest, k -> new IntList()).add(height);
+        }
+        entries.flip();
+        writeFully(accounts, entries, accountEntries * ACCOUNT_ENTRY_SIZE);
+        accountEntries += keys.size();
+    }
+
+    /**
+     * Removes the entries of the accounts of the blocks from the given height,
+     * the entries are in the order of the heights so the first of them is
+     * found by a binary search.
+     */
+    private void truncateAccounts(int height) throws IOException {
+        long low = 0, high = accountEntries;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (readAccountHeight(middle) < height)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        accountEntries = low;
+        accounts.truncate(accountEntries * ACCOUNT_ENTRY_SIZE);
+        accountIndex = null;
+    }
+
+    private int readAccountHeight(long entry) throws IOException {
+        ByteBuffer height = ByteBuffer.allocate(4);
+        long position = entry * ACCOUNT_ENTRY_SIZE;
+        while (height.hasRemaining())
+            if (accounts.read(height, position + height.position()) < 0)
+                throw new IOException("Truncated accounts file.");
+        return height.getInt(0);
+    }
+
+    private Map<ByteBuffer, IntList> getAccountIndex() throws IOException {
+        if (accountIndex == null) {
+            HashMap<ByteBuffer, IntList> loaded = new HashMap<>();
+            MappedByteBuffer entries = accounts.map(FileChannel.MapMode.READ_ONLY, 0, accountEntries * ACCOUNT_ENTRY_SIZE);
+            try {
+                for (long i = 0; i < accountEntries; ++i) {
+                    int height = entries.getInt();
+                    byte[] digest = new byte[HASH_SIZE];
+                    entries.get(digest);
+                    loaded.computeIfAbsent(ByteBuffer.wrap(digest), k -> new IntList()).add(height);
+                }
+            } finally {
+                // The accounts file is truncated with the blocks.
+                unmap(entries);
+            }
+            accountIndex = loaded;
+        }
+        return accountIndex;
+    }
+
+    private static ByteBuffer keyDigest(PublicKey key) {
+        return ByteBuffer.wrap(digest(key.getEncoded()));
+    }
+
+    private static byte[] idDigest(String id) {
+        return digest(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance(KEY_DIGEST_ALGORITHM).digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the mapping of a segment that covers at least the given end.
+     */
+    private MappedByteBuffer mappedSegment(int segment, long end) throws IOException {
+        MappedByteBuffer map = segmentMaps.get(segment);
+        if (map == null || map.capacity() < end) {
+            FileChannel channel = segments.get(segment);
+            unmap(map);
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            segmentMaps.set(segment, map);
+        }
+        return map;
+    }
+
+    /**
+     * Unmaps all the files, they are mapped again when read.
+     */
+    private void unmapAll() {
+        for (MappedByteBuffer map : indexMaps)
+            unmap(map);
+        indexMaps.clear();
+        for (MappedByteBuffer map : segmentMaps)
+            unmap(map);
+        segmentMaps.clear();
+    }
+
+    /**
+     * Releases a mapping, it must not be read afterwards. When the JVM doesn't
+     * allow it, the mapping is released once it's garbage collected.
+     */
+    private static void unmap(MappedByteBuffer map) {
+        if (map == null || INVOKE_CLEANER == null)
+            return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, map);
+        } catch (ReflectiveOperationException e) {
+            // Left to the garbage collector.
+        }
+    }
+
+    /**
+     * Checks that no truncation since the given one removed the given height.
+     */
+    private boolean isIntact(int truncation, int height) {
+        for (int i = truncation; i < truncations.size(); ++i)
+            if (truncations.get(i) <= height)
+                return false;
+        return true;
+    }
+
+    private void checkHeight(int height) {
+        if (height < 0 || height >= this.height)
+            throw new IndexOutOfBoundsException("No block at height " + height + '.');
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Get the number of blocks in the store.
+     *
+     * @return The number of blocks.
+     */
+    public synchronized int height() {
+        return height;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A read-only list of the blocks that were in the store when it was made,
+     * each block is decoded on access. The history of an account, the blocks
+     * by hash and by data ID and the work are found through the indexes of the
+     * store.
+     */
+    private final class StoredBlockList extends AbstractList<Block<MinedTransaction>>
+            implements RandomAccess, AccountIndexedList, BlockIndexedList {
+        private final int size;
+        private final int truncation;
+
+        private StoredBlockList(int size, int truncation) {
+            this.size = size;
+            this.truncation = truncation;
+        }
+
+        @Override
+        public Block<MinedTransaction> get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            synchronized (BlockStore.this) {
+                if (!isIntact(truncation, index))
+                    throw new ConcurrentModificationException("Block " + index + " was removed from the store.");
+                Block<MinedTransaction> block = decodedBlocks.get(index);
+                if (block != null)
+                    return block;
+            }
+            try {
+                Block<MinedTransaction> block = read(index);
+                synchronized (BlockStore.this) {
+                    // Only keep it if the store didn't change while decoding.
+                    if (isIntact(truncation, index))
+                        decodedBlocks.put(index, block);
+                }
+                return block;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int countAccountBlocks(PublicKey account, int height) {
+            height = Math.min(height, size);
+            if (height <= 0)
+                return 0;
+            synchronized (BlockStore.this) {
+                checkIntact(height);
+                IntList heights = loadAccountIndex().get(keyDigest(account));
+                return heights == null ? 0 : heights.countBelow(height);
+            }
+        }
+
+        @Override
+        public int getAccountBlock(PublicKey account, int index) {
+            synchronized (BlockStore.this) {
+                int height = loadAccountIndex().get(keyDigest(account)).get(index);
+                if (height >= size || !isIntact(truncation, height))
+                    throw new ConcurrentModificationException("Block " + height + " was removed from the store.");
+                return height;
+            }
+        }
+
+        @Override
+        public String getHash(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            try {
+                synchronized (BlockStore.this) {
+                    if (!isIntact(truncation, index))
+                        throw new ConcurrentModificationException("Block " + index + " was removed from the store.");
+                    return BlockStore.this.getHash(index);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int heightOfHash(String hash, int height) {
+            try {
+                synchronized (BlockStore.this) {
+                    return below(getHeight(hash), height);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int heightOfDataId(String id, int height) {
+            try {
+                synchronized (BlockStore.this) {
+                    return below(getDataIdHeight(id), height);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public BigInteger workBelow(int height) {
+            if (height < 0 || height > size)
+                throw new IndexOutOfBoundsException("Height: " + height + ", Size: " + size);
+            try {
+                synchronized (BlockStore.this) {
+                    checkIntact(height);
+                    return getWorkBelow(height);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Keeps a height found in the store if it's below the given height of
+         * this list. The blocks below it are the same in the store and in this
+         * list, so the first block found in the store is the first in the list,
+         * whatever replaced the blocks of the list above it.
+         */
+        private int below(int found, int height) {
+            height = Math.min(height, size);
+            checkIntact(height);
+            return found >= 0 && found < height ? found : -1;
+        }
+
+        /**
+         * Checks that the blocks of this list below the given height are still
+         * in the store, the blocks above it may have been truncated.
+         */
+        private void checkIntact(int height) {
+            if (height > 0 && !isIntact(truncation, height - 1))
+                throw new ConcurrentModificationException("Blocks below " + height + " were removed from the store.");
+        }
+
+        private Map<ByteBuffer, IntList> loadAccountIndex() {
+            try {
+                return getAccountIndex();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * An open-addressing table from the first 8 bytes of a block hash (or of a
+     * data ID digest) to the heights having that prefix, a match is confirmed
+     * against the full hash.
+     */
+    private final static class HashIndex {
+        // Where the hash is in the index entries.
+        private final int offset;
+        private long[] keys;
+        private int[] heights;
+        private int size;
+
+        private HashIndex(int expected, int offset) {
+            this.offset = offset;
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            keys = new long[capacity];
+            heights = new int[capacity];
+            Arrays.fill(heights, -1);
+        }
+
+        private void put(ByteBuffer entry, int height) {
+            if ((size + 1) * 2 > keys.length)
+                grow();
+            insert(entry.getLong(offset), height);
+        }
+
+        private void insert(long key, int height) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (heights[slot] != -1)
+                slot = (slot + 1) & mask;
+            keys[slot] = key;
+            heights[slot] = height;
+            ++size;
+        }
+
+        private List<Integer> get(byte[] hash) {
+            long key = ByteBuffer.wrap(hash).getLong();
+            int mask = keys.length - 1;
+            List<Integer> candidates = new ArrayList<>(1);
+            for (int slot = mix(key) & mask; heights[slot] != -1; slot = (slot + 1) & mask)
+                if (keys[slot] == key)
+                    candidates.add(heights[slot]);
+            return candidates;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldHeights = heights;
+            keys = new long[oldKeys.length * 2];
+            heights = new int[oldHeights.length * 2];
+            Arrays.fill(heights, -1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; ++i)
+                if (oldHeights[i] != -1)
+                    insert(oldKeys[i], oldHeights[i]);
+        }
+
+        private static int mix(long key) {
+            return (int) (key ^ (key >>> 32));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.atypon.storage;
+
+/**
+ * Decides when the data written by the {@link BlockStore}
+ * is forced from the operating system buffers to the disk.
+ */
+public enum FsyncPolicy {
+    // Force the data after every appended block, the safest and slowest option.
+    ALWAYS,
+    // Force the data only when the store is explicitly synced (once per save).
+    ON_SYNC,
+    // Never force the data, leave it to the operating system.
+    NEVER
+}
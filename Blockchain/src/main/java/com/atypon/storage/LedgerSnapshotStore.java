@@ -0,0 +1,196 @@
+package com.atypon.storage;
+
+import com.atypon.userAPI.Checkpoint;
+import com.atypon.utility.BitManipulation;
+import com.atypon.utility.FileUtility;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the ledger snapshots of a node on the disk. Each snapshot is a
+ * {@link Checkpoint} (a height, the block hash at that height and the balances
+ * of the accounts) written in a compact binary form to its own file, named
+ * after its height and block hash. A file is written to a temporary file then
+ * moved in place, so it's never seen partially written, and it ends with a
+ * CRC32 checksum. Only the newest snapshots are kept.
+ */
+public final class LedgerSnapshotStore {
+    private final static byte VERSION = 1;
+    private final static String FILE_PREFIX = "ledger-";
+    private final static String FILE_SUFFIX = ".snap";
+    // The number of hexadecimal digits of the block hash used in the file names.
+    private final static int HASH_PREFIX_LENGTH = 16;
+
+    private final Path directory;
+    private final int capacity;
+    private final boolean force;
+
+    /**
+     * Initialize the store, the directory is created on the first write.
+     *
+     * @param directory The directory of the snapshot files.
+     * @param capacity  The number of snapshots to keep.
+     * @param force     Whether a snapshot is forced to the disk before it's moved in place.
+     * @throws IllegalArgumentException if the capacity isn't positive.
+     */
+    public LedgerSnapshotStore(Path directory, int capacity, boolean force) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive!");
+        this.directory = directory;
+        this.capacity = capacity;
+        this.force = force;
+    }
+
+    /**
+     * Writes the snapshot unless it's already on the disk, then deletes the
+     * oldest snapshots beyond the capacity.
+     *
+     * @param checkpoint The snapshot to write.
+     * @throws IOException if the writing fails.
+     */
+    public void write(Checkpoint checkpoint) throws IOException {
+        Path file = directory.resolve(fileName(checkpoint));
+        // The balances at a block are the same whenever they're computed.
+        if (!Files.exists(file))
+            FileUtility.writeAtomically(file, encode(checkpoint), force);
+
+        List<Path> files = listFiles();
+        for (int i = capacity; i < files.size(); ++i)
+            Files.deleteIfExists(files.get(i));
+    }
+
+    /**
+     * Reads the snapshots on the disk, the corrupted ones are skipped.
+     *
+     * @return The snapshots, the newest first.
+     * @throws IOException if the directory can't be listed.
+     */
+    public List<Checkpoint> readAll() throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for (Path file : listFiles()) {
+            try {
+                checkpoints.add(decode(Files.readAllBytes(file)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Encode the snapshot into its binary form.
+     *
+     * @param checkpoint The snapshot to encode.
+     * @return The bytes of the snapshot.
+     */
+    static byte[] encode(Checkpoint checkpoint) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(checkpoint.getHeight());
+            out.write(BitManipulation.stringToByteArray(checkpoint.getBlockHash()));
+            out.write(BitManipulation.stringToByteArray(checkpoint.getLedgerDigest()));
+            Map<PublicKey, BigDecimal> balances = checkpoint.getBalances();
+            out.writeInt(balances.size());
+            for (Map.Entry<PublicKey, BigDecimal> balance : balances.entrySet()) {
+                BlockCodec.writeKey(out, balance.getKey());
+                BlockCodec.writeDecimal(out, balance.getValue());
+            }
+            out.flush();
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray(), 0, bytes.size());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // Writing to memory doesn't fail.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a snapshot from its binary form.
+     *
+     * @param data The bytes of the snapshot.
+     * @return The decoded snapshot.
+     * @throws IOException if the bytes aren't a valid snapshot.
+     */
+    static Checkpoint decode(byte[] data) throws IOException {
+        if (data.length < 4)
+            throw new IOException("Truncated ledger snapshot.");
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(data.length - 4);
+        if (in.readInt() != (int) crc.getValue())
+            throw new IOException("Corrupted ledger snapshot.");
+
+        in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        byte version = in.readByte();
+        if (version != VERSION)
+            throw new IOException("Unknown ledger snapshot version: " + version);
+        int height = in.readInt();
+        String blockHash = readHash(in);
+        String ledgerDigest = readHash(in);
+        int size = in.readInt();
+        if (height <= 0 || size < 0)
+            throw new IOException("Invalid ledger snapshot.");
+        HashMap<PublicKey, BigDecimal> balances = new HashMap<>();
+        for (int i = 0; i < size; ++i)
+            balances.put(BlockCodec.readKey(in), BlockCodec.readDecimal(in));
+
+        Checkpoint checkpoint = new Checkpoint(height, blockHash, balances);
+        if (!checkpoint.getLedgerDigest().equals(ledgerDigest))
+            throw new IOException("The balances of the ledger snapshot don't match its digest.");
+        return checkpoint;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static String readHash(DataInputStream in) throws IOException {
+        byte[] hash = new byte[32];
+        in.readFully(hash);
+        return BitManipulation.byteArrayToString(hash);
+    }
+
+    private static String fileName(Checkpoint checkpoint) {
+        return String.format("%s%010d-%s%s", FILE_PREFIX, checkpoint.getHeight(),
+                checkpoint.getBlockHash().substring(0, HASH_PREFIX_LENGTH), FILE_SUFFIX);
+    }
+
+    /**
+     * Lists the snapshot files, the highest first.
+     */
+    private List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return files;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stream)
+                files.add(file);
+        }
+        // The height is zero padded, so the names sort by height.
+        files.sort(Comparator.comparing((Path file) -> file.getFileName().toString()).reversed());
+        return files;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
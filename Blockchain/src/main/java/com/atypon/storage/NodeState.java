@@ -0,0 +1,69 @@
+package com.atypon.storage;
+
+import com.atypon.ClientSocket;
+import com.atypon.blockchain.content.Transaction;
+
+import java.io.Serializable;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a node that isn't a part of the chain: its keys, its peers,
+ * its transaction pool and whether it mines. It's small, so it's written as
+ * a whole next to the {@link BlockStore} which holds the chain itself.
+ * Immutable thus threadsafe.
+ */
+public final class NodeState implements Serializable {
+    // The version the saved node states were written with.
+    private static final long serialVersionUID = -8418309243646856704L;
+    private final ClientSocket clientSocket;
+    private final PrivateKey privateKey;
+    private final ArrayList<ClientSocket> clients;
+    private final ArrayList<Transaction> transactionPool;
+    private final boolean isMiningOn;
+
+    /**
+     * Initialize the node state.
+     *
+     * @param clientSocket    The ip address, port, alias and public key of the node.
+     * @param privateKey      The private key of the node.
+     * @param clients         The peers known by the node.
+     * @param transactionPool The transactions that weren't mined yet.
+     * @param isMiningOn      Whether the node mines.
+     */
+    public NodeState(ClientSocket clientSocket, PrivateKey privateKey, Collection<ClientSocket> clients,
+                     Collection<Transaction> transactionPool, boolean isMiningOn) {
+        this.clientSocket = clientSocket;
+        this.privateKey = privateKey;
+        this.clients = new ArrayList<>(clients);
+        this.transactionPool = new ArrayList<>(transactionPool);
+        this.isMiningOn = isMiningOn;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public ClientSocket getClientSocket() {
+        return clientSocket;
+    }
+
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public List<ClientSocket> getClients() {
+        return Collections.unmodifiableList(clients);
+    }
+
+    public List<Transaction> getTransactionPool() {
+        return Collections.unmodifiableList(transactionPool);
+    }
+
+    public boolean isMiningOn() {
+        return isMiningOn;
+    }
+}
@@ -0,0 +1,141 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+
+import java.io.Serializable;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The users known by a user, indexed by their address (IP address and port)
+ * and by their public key, so finding a user, or checking that the sender of
+ * a message is already known, is O(1) however many users there are.
+ * The users are also kept in the order they were added, in a copy-on-write
+ * list: iterating, for example for a broadcast, doesn't copy nor lock them.
+ * Adding and removing a user copies the list, but they're rare next to the
+ * lookups, the sender of every message being looked up.
+ * Threadsafe.
+ */
+public final class AddressBook implements Iterable<ClientSocket>, Serializable {
+    // Saved with the node state, kept so the saved peers stay readable.
+    private static final long serialVersionUID = -1391489587875448019L;
+    private final CopyOnWriteArrayList<ClientSocket> clients;
+    private final ConcurrentHashMap<String, ClientSocket> byAddress;
+    private final ConcurrentHashMap<PublicKey, ClientSocket> byPublicKey;
+
+    /**
+     * Initialize an empty address book.
+     */
+    public AddressBook() {
+        this.clients = new CopyOnWriteArrayList<>();
+        this.byAddress = new ConcurrentHashMap<>();
+        this.byPublicKey = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds a user unless a user with the same address is known.
+     *
+     * @param client The user.
+     * @return true if the user was added, false if its address is already known.
+     */
+    public boolean add(ClientSocket client) {
+        String address = addressOf(client);
+        if (byAddress.containsKey(address))
+            return false;
+        synchronized (this) {
+            if (byAddress.putIfAbsent(address, client) != null)
+                return false;
+            clients.add(client);
+            if (client.getPublicKey() != null)
+                byPublicKey.putIfAbsent(client.getPublicKey(), client);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the user with the address of the given user.
+     *
+     * @param client The user.
+     * @return true if the user was removed, false if its address isn't known.
+     */
+    public synchronized boolean remove(ClientSocket client) {
+        ClientSocket removed = byAddress.remove(addressOf(client));
+        if (removed == null)
+            return false;
+        clients.remove(removed);
+        if (removed.getPublicKey() != null && byPublicKey.remove(removed.getPublicKey(), removed)) {
+            // Another address of the same key takes its place.
+            for (ClientSocket other : clients) {
+                if (removed.getPublicKey().equals(other.getPublicKey())) {
+                    byPublicKey.putIfAbsent(other.getPublicKey(), other);
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds a user by its address.
+     *
+     * @param ipAddress The IP address of the user.
+     * @param port      The port of the user.
+     * @return The user, null if none has the address.
+     */
+    public ClientSocket get(String ipAddress, int port) {
+        return byAddress.get(ipAddress + ":" + port);
+    }
+
+    /**
+     * Checks whether a user with the address of the given user is known.
+     *
+     * @param client The user.
+     * @return true if the address is known, false otherwise.
+     */
+    public boolean contains(ClientSocket client) {
+        return byAddress.containsKey(addressOf(client));
+    }
+
+    /**
+     * Finds a user by its public key, the first one added if several addresses share it.
+     *
+     * @param publicKey The public key of the user.
+     * @return The user, null if none has the key.
+     */
+    public ClientSocket findByPublicKey(PublicKey publicKey) {
+        return publicKey == null ? null : byPublicKey.get(publicKey);
+    }
+
+    /**
+     * Gets the users in the order they were added, without copying them.
+     *
+     * @return An unmodifiable view of the users, its iterators see the users
+     * at the time they were made.
+     */
+    public List<ClientSocket> asList() {
+        return Collections.unmodifiableList(clients);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    @Override
+    public Iterator<ClientSocket> iterator() {
+        return asList().iterator();
+    }
+
+    /**
+     * Gets the address of a user, as the key of the address index.
+     *
+     * @param client The user.
+     * @return The IP address and the port of the user, like "127.0.0.1:4444".
+     */
+    static String addressOf(ClientSocket client) {
+        return client.getIpAddress() + ":" + client.getPort();
+    }
+}
@@ -0,0 +1,37 @@
+package com.atypon.userAPI;
+
+import java.io.Serializable;
+
+/**
+ * A message asking another node for a block of its chain by hash, sent for
+ * the missing parent of a block held in the {@link OrphanPool}, so a gap is
+ * filled a block at a time instead of by a whole chain.
+ * The node responds with the block if its chain holds it, with nothing otherwise.
+ * Immutable thus threadsafe.
+ */
+public final class BlockRequest implements Serializable {
+    private static final long serialVersionUID = 8760130553653581654L;
+    private final String hash;
+
+    /**
+     * Initialize the request.
+     *
+     * @param hash The hash of the block.
+     */
+    public BlockRequest(String hash) {
+        this.hash = hash;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getHash() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockRequest{hash=" + hash + '}';
+    }
+}
@@ -0,0 +1,27 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+
+import java.util.List;
+
+/**
+ * Listens to the changes of the chain of a {@link User}: a block mined by the
+ * user, or a longer chain received from another user. When the new chain
+ * forks from the old one, the blocks of the old chain above the fork are
+ * given as removed.
+ * Called after the change, from the thread that made it, so it must be quick.
+ */
+public interface ChainListener {
+    /**
+     * Called after the chain of the user changed.
+     *
+     * @param user       The user whose chain changed.
+     * @param forkHeight The height of the first removed and the first added block, the
+     *                   number of blocks the old and the new chain have in common.
+     * @param removed    The blocks of the old chain that aren't in the new one, in order.
+     * @param added      The blocks of the new chain that weren't in the old one, in order.
+     */
+    void chainChanged(User user, int forkHeight, List<Block<MinedTransaction>> removed,
+                      List<Block<MinedTransaction>> added);
+}
@@ -0,0 +1,55 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Blockchain;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * A message asking another node for its blockchain, the node responds with
+ * a copy of its chain if it's preferred over the chain of the sender by
+ * {@link Blockchain#compareForks}, so a node that joins or lagged behind
+ * catches up without waiting for the next mined block.
+ * The nodes that don't know it respond with nothing.
+ * Immutable thus threadsafe.
+ */
+public final class ChainRequest implements Serializable {
+    private static final long serialVersionUID = -3093224791537683453L;
+    private final int height;
+    private final BigInteger work;
+    private final String tip;
+
+    /**
+     * Initialize the request.
+     *
+     * @param height The length of the chain of the sender.
+     * @param work   The cumulative work of the chain of the sender.
+     * @param tip    The hash of the last block of the chain of the sender, null if it's empty.
+     */
+    public ChainRequest(int height, BigInteger work, String tip) {
+        this.height = height;
+        this.work = work;
+        this.tip = tip;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getHeight() {
+        return height;
+    }
+
+    public BigInteger getWork() {
+        return work;
+    }
+
+    public String getTip() {
+        return tip;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainRequest{height=" + height + ", work=" + work + ", tip='" + tip + "'}";
+    }
+}
@@ -0,0 +1,150 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.ChainSnapshot;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.utility.BitManipulation;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * A point of a chain that the user fully verified: the number of blocks
+ * verified, the hash of the last of them and the balances of the accounts
+ * after them, with a digest of those balances.
+ * A chain that has the same block at the checkpoint height has the same blocks
+ * below it (each block holds the hash of the one before), so only the blocks
+ * above the checkpoint need to be verified again.
+ * Immutable thus threadsafe.
+ */
+public final class Checkpoint implements Serializable {
+    // Kept so the ledger snapshots written so far stay readable.
+    private static final long serialVersionUID = -5248865083021452966L;
+    private final static String DIGEST_ALGORITHM = "SHA-256";
+
+    private final int height;
+    private final String blockHash;
+    private final HashMap<PublicKey, BigDecimal> balances;
+    private final String ledgerDigest;
+
+    /**
+     * Initialize the checkpoint.
+     *
+     * @param height    The number of blocks verified.
+     * @param blockHash The hash of the last verified block.
+     * @param balances  The balances of the accounts after the verified blocks.
+     * @throws IllegalArgumentException if the height isn't positive.
+     */
+    public Checkpoint(int height, String blockHash, Map<PublicKey, BigDecimal> balances) {
+        if (height <= 0)
+            throw new IllegalArgumentException("The height of a checkpoint must be positive!");
+        this.height = height;
+        this.blockHash = blockHash;
+        this.balances = new HashMap<>(balances);
+        this.ledgerDigest = digest(this.balances);
+    }
+
+    /**
+     * Checks whether the chain holds the checkpoint block at the checkpoint height,
+     * which means the blocks up to it are the verified ones.
+     *
+     * @param blockchain The chain to check.
+     * @return true if the checkpoint applies to the chain, false otherwise.
+     */
+    public boolean matches(Blockchain<MinedTransaction> blockchain) {
+        ChainSnapshot<MinedTransaction> blocks = blockchain.snapshot();
+        return blocks.size() >= height && blocks.hashAt(height - 1).equals(blockHash);
+    }
+
+    /**
+     * Computes the digest of the balances, independent of the order of the accounts
+     * and of the scale of the amounts, so the same ledger always has the same digest.
+     *
+     * @param balances The balances of the accounts.
+     * @return The digest in a hexadecimal string form.
+     */
+    public static String digest(Map<PublicKey, BigDecimal> balances) {
+        TreeMap<String, BigDecimal> sorted = new TreeMap<>();
+        for (Map.Entry<PublicKey, BigDecimal> balance : balances.entrySet())
+            sorted.put(BitManipulation.byteArrayToString(balance.getKey().getEncoded()), balance.getValue());
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            for (Map.Entry<String, BigDecimal> balance : sorted.entrySet()) {
+                String entry = balance.getKey() + ':' + balance.getValue().stripTrailingZeros().toPlainString() + ';';
+                digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            }
+            return BitManipulation.byteArrayToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+
+    public Map<PublicKey, BigDecimal> getBalances() {
+        return Collections.unmodifiableMap(balances);
+    }
+
+    public String getLedgerDigest() {
+        return ledgerDigest;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Checkpoint)) return false;
+        Checkpoint checkpoint = (Checkpoint) o;
+        return height == checkpoint.height &&
+                blockHash.equals(checkpoint.blockHash) &&
+                ledgerDigest.equals(checkpoint.ledgerDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(height, blockHash, ledgerDigest);
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{" +
+                "height=" + height +
+                ", blockHash='" + blockHash + '\'' +
+                ", ledgerDigest='" + ledgerDigest + '\'' +
+                '}';
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Serialization /////////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Rejects a checkpoint whose balances don't match its digest, it was changed on the disk.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (height <= 0 || blockHash == null || balances == null || !digest(balances).equals(ledgerDigest))
+            throw new IOException("Corrupted checkpoint.");
+    }
+}
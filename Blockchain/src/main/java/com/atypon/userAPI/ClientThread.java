@@ -1,8 +1,12 @@
 package com.atypon.userAPI;
 
+import com.atypon.ClientSocket;
+import com.atypon.blockchain.Block;
 import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.ChainSnapshot;
 import com.atypon.blockchain.content.MinedTransaction;
 import com.atypon.blockchain.content.Transaction;
+import com.atypon.events.MessageReceiveEvent;
 
 import java.io.*;
 import java.net.Socket;
@@ -10,15 +14,23 @@ import java.util.Vector;
 
 /**
  * A class that handles an incoming connection.
- * Receives the message and responds to it.
+ * Receives the message and responds to it: the requests are answered right
+ * away, the other messages are handed to the {@link InboundPipeline} of the
+ * user, which validates them later, so a connection never waits for a chain
+ * to be verified. A message larger than {@link #MAX_MESSAGE_SIZE} isn't read.
  */
 public class ClientThread implements Runnable {
+    // The largest number of bytes read from a connection, a whole chain included.
+    public final static int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
     private final Socket socket;
     private final User user;
+    private final InboundPipeline pipeline;
 
-    public ClientThread(Socket socket, User user) {
+    public ClientThread(Socket socket, User user, InboundPipeline pipeline) {
         this.socket = socket;
         this.user = user;
+        this.pipeline = pipeline;
     }
 
     /**
@@ -26,37 +38,140 @@ public class ClientThread implements Runnable {
      */
     @Override
     public void run() {
-        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
-             ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()))) {
+        TrafficCounter traffic = user.getTraffic();
+        MessageReceiveEvent event = new MessageReceiveEvent();
+        event.begin();
+        Object clientSocketObject = null;
+        Object receivedObject = null;
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                traffic.countBytes(socket.getOutputStream())));
+             ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new LimitedInputStream(
+                     traffic.countReceived(socket.getInputStream()), MAX_MESSAGE_SIZE)))) {
 
             // Receive the client socket of the sender.
-            Object clientSocketObject = in.readObject();
+            long decodeStart = System.nanoTime();
+            clientSocketObject = in.readObject();
             // Add the client socket to the clients list.
             user.getClient().addClient(clientSocketObject);
+            if (clientSocketObject instanceof ClientSocket)
+                user.getClient().recordSeen((ClientSocket) clientSocketObject);
 
             // Receive the message from the sender
-            Object receivedObject = in.readObject();
+            receivedObject = in.readObject();
+            event.decodeTime = System.nanoTime() - decodeStart;
 
-            System.out.println("Received an object.");
+            user.log("Received an object.");
 
-            if (receivedObject instanceof Blockchain) {
+            if (receivedObject instanceof Block) {
+                user.printOnWindow("Received a block.");
+                user.getMetrics().getBlocksReceived().increment();
+            } else if (receivedObject instanceof Blockchain) {
                 user.printOnWindow("Received a blockchain.");
-                user.replaceChain((Blockchain<MinedTransaction>) receivedObject);
+                user.getMetrics().getBlockchainsReceived().increment();
             } else if (receivedObject instanceof Transaction) {
                 user.printOnWindow("The object is a Transaction.");
-                user.addTransaction((Transaction) receivedObject);
+                user.getMetrics().getTransactionsReceived().increment();
+            } else if (receivedObject instanceof TransactionBatch) {
+                TransactionBatch batch = (TransactionBatch) receivedObject;
+                user.printOnWindow("Received a batch of " + batch.size() + " transactions.");
+                user.getMetrics().getTransactionsReceived().add(batch.size());
+            }
+            // Validated later by the pipeline, the requests aren't taken by it.
+            pipeline.submit(receivedObject,
+                    clientSocketObject instanceof ClientSocket ? (ClientSocket) clientSocketObject : null);
+            Vector<Object> response = new Vector<>();
+            if (receivedObject instanceof ChainRequest) {
+                // Respond with the chain if it's preferred over the one of the sender.
+                ChainRequest request = (ChainRequest) receivedObject;
+                Blockchain<MinedTransaction> blockchain = user.getBlockchain().clone();
+                ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+                if (Blockchain.compareForks(snapshot.totalWork(), snapshot.isEmpty() ? null : snapshot.last().getHash(),
+                        request.getWork(), request.getTip()) > 0)
+                    response.add(blockchain);
+            } else if (receivedObject instanceof BlockRequest) {
+                // Respond with the block if the chain holds it.
+                Block<MinedTransaction> block = user.getBlockchain().getBlockByHash(
+                        ((BlockRequest) receivedObject).getHash());
+                if (block != null)
+                    response.add(block);
             }
-            // No response, send empty Vector.
-            out.writeObject(new Vector<>());
+            // No response unless asked for the chain or a block, send empty Vector.
+            out.writeObject(response);
             out.flush();
 
+        } catch (MessageTooLargeException e) {
+            pipeline.getOversized().increment();
+            user.log(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.port = user.getPort();
+            if (clientSocketObject instanceof ClientSocket) {
+                ClientSocket sender = (ClientSocket) clientSocketObject;
+                event.sender = sender.getIpAddress() + ":" + sender.getPort();
+            }
+            event.messageType = receivedObject == null ? null : receivedObject.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Thrown when a connection sends more than the bytes allowed.
+     */
+    private final static class MessageTooLargeException extends IOException {
+        private static final long serialVersionUID = -740728861887153250L;
+
+        private MessageTooLargeException(long limit) {
+            super("The message is larger than " + limit + " bytes.");
+        }
+    }
+
+    /**
+     * A stream that fails once more than a number of bytes were read from it.
+     */
+    private final static class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        private LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                count(read);
+            return read;
+        }
 
-        // After receiving an item, if mining is on, go mine.
-        if (user.isMiningOn())
-            user.mine();
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws MessageTooLargeException {
+            count += bytes;
+            if (count > limit)
+                throw new MessageTooLargeException(limit);
+        }
     }
 
 }
@@ -0,0 +1,367 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.metrics.Counter;
+import com.atypon.metrics.MetricRegistry;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The stages a message from another user goes through once a {@link ClientThread}
+ * decoded it: cheap checks are made on the connection thread (they don't need
+ * the state of the user, but for the work of a chain compared with the one of
+ * the user), then the message waits in a bounded queue of its kind
+ * until a worker of the pipeline validates it against the chain and the pool.
+ * The workers take the blocks first, then the chains, then the transactions,
+ * so a burst of transactions doesn't hold back the blocks, and a burst of whole
+ * chains can't take more than the few places of their queue.
+ * A message is never waited for: one that fails the checks is rejected and one
+ * whose queue is full is dropped, both are counted (like
+ * "node.4444.inbound.dropped.chain") so the sender's excess is visible, and
+ * the connection is answered right away either way. The blocks and the chains
+ * that are dropped are asked for again through the orphan pool and the chain
+ * requests, the transactions are broadcast again by their makers.
+ * After a message changes the user, the user mines on a thread of its own if
+ * mining is on, so the workers never wait for a block to be mined.
+ * Threadsafe.
+ */
+public final class InboundPipeline {
+    // The number of threads validating the queued messages.
+    public final static int DEFAULT_WORKERS = 2;
+    // The number of queued messages of each kind.
+    public final static int BLOCK_QUEUE_CAPACITY = 256;
+    public final static int CHAIN_QUEUE_CAPACITY = 4;
+    public final static int TRANSACTION_QUEUE_CAPACITY = 1024;
+
+    private final User user;
+    private final int workers;
+    // The messages of all the kinds, ordered by the priority of their kind then by arrival.
+    private final PriorityBlockingQueue<Message> queue;
+    // The free places of the queue of each kind, by the ordinal of the kind.
+    private final Semaphore[] room;
+    private final int[] capacities;
+    private final AtomicLong sequence;
+    private final AtomicBoolean miningScheduled;
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final Counter[] dropped;
+    private final Counter rejected;
+    private final Counter oversized;
+    private volatile ExecutorService executor;
+    private volatile ExecutorService miner;
+
+    /**
+     * Initialize a pipeline with the default capacities, its metrics are named
+     * after the port of the user. The workers start with {@link #start()}.
+     *
+     * @param user    The user that receives the messages.
+     * @param workers The number of threads validating the queued messages.
+     * @throws IllegalArgumentException if the number of workers isn't positive.
+     */
+    public InboundPipeline(User user, int workers) {
+        this(user, workers, BLOCK_QUEUE_CAPACITY, CHAIN_QUEUE_CAPACITY, TRANSACTION_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Initialize a pipeline with the given capacities.
+     *
+     * @throws IllegalArgumentException if the number of workers or a capacity isn't positive.
+     */
+    InboundPipeline(User user, int workers, int blockCapacity, int chainCapacity, int transactionCapacity) {
+        if (workers <= 0 || blockCapacity <= 0 || chainCapacity <= 0 || transactionCapacity <= 0)
+            throw new IllegalArgumentException("The number of workers and the capacities must be positive.");
+        this.user = user;
+        this.workers = workers;
+        this.queue = new PriorityBlockingQueue<>();
+        this.capacities = new int[]{blockCapacity, chainCapacity, transactionCapacity};
+        this.room = new Semaphore[Kind.values().length];
+        this.dropped = new Counter[Kind.values().length];
+        this.sequence = new AtomicLong();
+        this.miningScheduled = new AtomicBoolean();
+        this.registry = MetricRegistry.getDefault();
+        this.prefix = "node." + user.getPort() + ".inbound.";
+        for (Kind kind : Kind.values()) {
+            int i = kind.ordinal();
+            room[i] = new Semaphore(capacities[i]);
+            dropped[i] = registry.counter(prefix + "dropped." + kind.getName());
+            registry.gauge(prefix + "queued." + kind.getName(), () -> getQueued(kind));
+        }
+        this.rejected = registry.counter(prefix + "rejected");
+        this.oversized = registry.counter(prefix + "oversized");
+    }
+
+    /**
+     * Starts the workers, the messages queued before are validated then.
+     */
+    public synchronized void start() {
+        if (executor != null)
+            return;
+        String name = "user-inbound-" + user.getPort();
+        executor = Executors.newFixedThreadPool(workers, daemonThreadFactory(name));
+        miner = Executors.newSingleThreadExecutor(daemonThreadFactory(name + "-miner"));
+        for (int i = 0; i < workers; ++i)
+            executor.execute(this::work);
+    }
+
+    /**
+     * Stops the workers and the mining, the queued messages are dropped
+     * without being counted, and removes the gauges of the pipeline.
+     */
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            miner.shutdownNow();
+        }
+        queue.clear();
+        registry.removeAll(prefix + "queued.");
+    }
+
+    /**
+     * Checks a decoded message and queues it for the workers.
+     *
+     * @param message The message.
+     * @param sender  The user that sent the message, null if unknown.
+     * @return true if the message was queued, false if it was rejected or dropped
+     * or isn't a message the pipeline takes.
+     */
+    public boolean submit(Object message, ClientSocket sender) {
+        Kind kind = Kind.of(message);
+        if (kind == null)
+            return false;
+        if (!check(message)) {
+            rejected.increment();
+            return false;
+        }
+        if (!room[kind.ordinal()].tryAcquire()) {
+            dropped[kind.ordinal()].increment();
+            return false;
+        }
+        queue.add(new Message(kind, sequence.getAndIncrement(), message, sender));
+        return true;
+    }
+
+    /**
+     * Takes the next queued message, the one the workers would validate next.
+     *
+     * @return The message, null if none is queued.
+     */
+    Object poll() {
+        Message message = queue.poll();
+        if (message == null)
+            return null;
+        room[message.kind.ordinal()].release();
+        return message.message;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Gets the number of queued messages of a kind.
+     *
+     * @param kind The kind of the messages.
+     * @return The number of messages waiting for a worker.
+     */
+    public int getQueued(Kind kind) {
+        return capacities[kind.ordinal()] - room[kind.ordinal()].availablePermits();
+    }
+
+    /**
+     * The number of messages of a kind dropped because their queue was full.
+     *
+     * @param kind The kind of the messages.
+     * @return The counter of the kind.
+     */
+    public Counter getDropped(Kind kind) {
+        return dropped[kind.ordinal()];
+    }
+
+    /**
+     * The number of messages that failed the checks made before the queues.
+     */
+    public Counter getRejected() {
+        return rejected;
+    }
+
+    /**
+     * The number of messages larger than {@link ClientThread#MAX_MESSAGE_SIZE}, counted by the connections.
+     */
+    public Counter getOversized() {
+        return oversized;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The cheap checks of a message, made before it takes a place in its queue:
+     * the fields of a transaction, the proof of work of a block (a single hash),
+     * and whether a chain is preferred over the one of the user, by its work.
+     *
+     * @return true if the message may be queued, false otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean check(Object message) {
+        if (message instanceof Block) {
+            Block<?> block = (Block<?>) message;
+            return block.getPrvHash() != null && block.getData() instanceof MinedTransaction &&
+                    isWellFormed((Transaction) block.getData()) && block.verifyProofOfWork();
+        }
+        if (message instanceof Blockchain) {
+            Blockchain<MinedTransaction> chain = (Blockchain<MinedTransaction>) message;
+            return chain.length() > 0 &&
+                    Blockchain.compareForks(chain.snapshot(), user.getBlockchain().snapshot()) > 0;
+        }
+        if (message instanceof Transaction)
+            return isWellFormed((Transaction) message);
+        TransactionBatch batch = (TransactionBatch) message;
+        if (batch.size() == 0 || batch.size() > TransactionBatch.MAX_SIZE)
+            return false;
+        for (Transaction transaction : batch.getTransactions())
+            if (!isWellFormed(transaction))
+                return false;
+        return true;
+    }
+
+    private static boolean isWellFormed(Transaction transaction) {
+        return transaction != null && transaction.getId() != null && transaction.getSignature() != null &&
+                transaction.getSenderPublicKey() != null && transaction.getReceiverPublicKey() != null &&
+                transaction.getAmount() != null && transaction.getAmount().signum() >= 0;
+    }
+
+    /**
+     * The loop of a worker: validates the queued messages until the pipeline is closed.
+     */
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Message message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            room[message.kind.ordinal()].release();
+            try {
+                process(message);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            if (user.isMiningOn())
+                scheduleMining();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(Message message) {
+        switch (message.kind) {
+            case BLOCK:
+                user.receiveBlock((Block<MinedTransaction>) message.message, message.sender);
+                break;
+            case CHAIN:
+                user.replaceChain((Blockchain<MinedTransaction>) message.message);
+                break;
+            case TRANSACTION:
+                if (message.message instanceof TransactionBatch)
+                    user.addTransactions(((TransactionBatch) message.message).getTransactions());
+                else
+                    user.addTransaction((Transaction) message.message);
+                break;
+        }
+    }
+
+    /**
+     * Mines on the mining thread, unless it's about to mine already: the user
+     * mines until its pool has nothing left to mine, so the messages that come
+     * meanwhile are mined by the same run.
+     */
+    private void scheduleMining() {
+        if (!miningScheduled.compareAndSet(false, true))
+            return;
+        try {
+            miner.execute(() -> {
+                miningScheduled.set(false);
+                user.mine();
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed.
+            miningScheduled.set(false);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * The kinds of the queued messages, in the order the workers take them.
+     */
+    public enum Kind {
+        BLOCK("block"), CHAIN("chain"), TRANSACTION("transaction");
+
+        private final String name;
+
+        Kind(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Finds the kind of a message.
+         *
+         * @param message The message.
+         * @return The kind, null if the message isn't queued by the pipeline.
+         */
+        public static Kind of(Object message) {
+            if (message instanceof Block)
+                return BLOCK;
+            if (message instanceof Blockchain)
+                return CHAIN;
+            if (message instanceof Transaction || message instanceof TransactionBatch)
+                return TRANSACTION;
+            return null;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * A queued message, with its sender.
+     */
+    private final static class Message implements Comparable<Message> {
+        private final Kind kind;
+        private final long sequence;
+        private final Object message;
+        private final ClientSocket sender;
+
+        private Message(Kind kind, long sequence, Object message, ClientSocket sender) {
+            this.kind = kind;
+            this.sequence = sequence;
+            this.message = message;
+            this.sender = sender;
+        }
+
+        @Override
+        public int compareTo(Message other) {
+            if (kind != other.kind)
+                return kind.compareTo(other.kind);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+
+import java.math.BigDecimal;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The balances of the accounts after the first blocks of a chain, kept up to
+ * date by applying the blocks one after the other, so the balance of an
+ * account is found without replaying the chain.
+ * It can be started from a {@link Checkpoint} and turned into one.
+ * It's not thread safe.
+ */
+public final class Ledger {
+    private final HashMap<PublicKey, BigDecimal> balances;
+    // The number of blocks applied and the hash of the last of them.
+    private int height;
+    private String blockHash;
+
+    /**
+     * Initialize the ledger of an empty chain.
+     */
+    public Ledger() {
+        this.balances = new HashMap<>();
+        this.height = 0;
+        this.blockHash = null;
+    }
+
+    /**
+     * Initialize the ledger with the balances of a checkpoint.
+     *
+     * @param checkpoint The checkpoint to start from.
+     */
+    public Ledger(Checkpoint checkpoint) {
+        this.balances = new HashMap<>(checkpoint.getBalances());
+        this.height = checkpoint.getHeight();
+        this.blockHash = checkpoint.getBlockHash();
+    }
+
+    /**
+     * Applies the transaction of the block that comes after the applied ones:
+     * the sender pays the amount, the receiver gets the amount minus the
+     * mining fee and the miner gets the mining fee and the mining reward.
+     *
+     * @param block The next block of the chain.
+     */
+    public void apply(Block<MinedTransaction> block) {
+        MinedTransaction transaction = block.getData();
+        add(transaction.getSenderPublicKey(), transaction.getAmount().negate());
+        add(transaction.getReceiverPublicKey(), transaction.getAmount().subtract(transaction.getMiningFee()));
+        add(transaction.getMinerPublicKey(), transaction.getMiningFee().add(transaction.getMiningReward()));
+        ++height;
+        blockHash = block.getHash();
+    }
+
+    private void add(PublicKey account, BigDecimal amount) {
+        BigDecimal balance = balances.get(account);
+        balances.put(account, balance == null ? amount : balance.add(amount));
+    }
+
+    /**
+     * Checks whether the ledger is the one of the given block, the last applied block.
+     *
+     * @param block The block, or null for an empty chain.
+     * @return true if the ledger ends at the block, false otherwise.
+     */
+    public boolean endsAt(Block<MinedTransaction> block) {
+        if (block == null)
+            return height == 0;
+        return height > 0 && blockHash.equals(block.getHash());
+    }
+
+    /**
+     * Records the current state of the ledger.
+     *
+     * @return The checkpoint of the applied blocks.
+     * @throws IllegalStateException if no block was applied.
+     */
+    public Checkpoint toCheckpoint() {
+        if (height == 0)
+            throw new IllegalStateException("An empty ledger has no checkpoint!");
+        return new Checkpoint(height, blockHash, balances);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Get the balance of an account.
+     *
+     * @param account The public key of the account.
+     * @return The balance of the account, zero if it never appeared in the chain.
+     */
+    public BigDecimal getBalance(PublicKey account) {
+        BigDecimal balance = balances.get(account);
+        return balance == null ? BigDecimal.ZERO : balance;
+    }
+
+    public Map<PublicKey, BigDecimal> getBalances() {
+        return Collections.unmodifiableMap(balances);
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getBlockHash() {
+        return blockHash;
+    }
+}
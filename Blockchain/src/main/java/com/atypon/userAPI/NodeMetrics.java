@@ -0,0 +1,85 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+import com.atypon.metrics.Counter;
+import com.atypon.metrics.Histogram;
+import com.atypon.metrics.MetricRegistry;
+
+/**
+ * The metrics of a user in the default {@link MetricRegistry}, named after
+ * its port (like "node.4444.received.transactions") so several users share
+ * a process. The durations are in microseconds.
+ * The gauges read the user when they're reported, the counters and the
+ * histograms are kept here so counting doesn't look them up.
+ */
+public final class NodeMetrics {
+    private final MetricRegistry registry;
+    private final String prefix;
+    private final Counter blockchainsReceived;
+    private final Counter blocksReceived;
+    private final Counter transactionsReceived;
+    private final Histogram replaceTime;
+
+    /**
+     * Registers the metrics of a user.
+     *
+     * @param user The user.
+     */
+    NodeMetrics(User user) {
+        this.registry = MetricRegistry.getDefault();
+        this.prefix = "node." + user.getPort() + ".";
+        this.blockchainsReceived = registry.counter(prefix + "received.blockchains");
+        this.blocksReceived = registry.counter(prefix + "received.blocks");
+        this.transactionsReceived = registry.counter(prefix + "received.transactions");
+        this.replaceTime = registry.histogram(prefix + "chain.replace.micros");
+
+        TrafficCounter traffic = user.getTraffic();
+        registry.gauge(prefix + "pool.size", () -> user.getTransactionPool().size());
+        registry.gauge(prefix + "chain.length", () -> user.getBlockchain().length());
+        registry.gauge(prefix + "orphans.size", () -> user.getOrphans().size());
+        registry.gauge(prefix + "peers.known", () -> user.getAddressBook().size());
+        registry.gauge(prefix + "peers.demoted", () -> user.getClient().getPeers().getDemoted());
+        registry.gauge(prefix + "messages.sent", traffic::getMessagesSent);
+        registry.gauge(prefix + "messages.received", traffic::getMessagesReceived);
+        registry.gauge(prefix + "bytes.sent", traffic::getBytesSent);
+        registry.gauge(prefix + "bytes.received", traffic::getBytesReceived);
+    }
+
+    /**
+     * The number of blockchains received from the other users.
+     */
+    public Counter getBlockchainsReceived() {
+        return blockchainsReceived;
+    }
+
+    /**
+     * The number of blocks received from the other users, one by one.
+     */
+    public Counter getBlocksReceived() {
+        return blocksReceived;
+    }
+
+    /**
+     * The number of transactions received from the other users, alone or in batches.
+     */
+    public Counter getTransactionsReceived() {
+        return transactionsReceived;
+    }
+
+    /**
+     * The durations of the replacements of the chain by a received one, verification included.
+     */
+    public Histogram getReplaceTime() {
+        return replaceTime;
+    }
+
+    /**
+     * The durations of the messages sent to a user, from the connection to the response.
+     *
+     * @param peer The receiving user.
+     * @return The histogram of the peer.
+     */
+    public Histogram getBroadcastLatency(ClientSocket peer) {
+        return registry.histogram(prefix + "broadcast." + peer.getIpAddress() + ":" + peer.getPort() + ".micros");
+    }
+}
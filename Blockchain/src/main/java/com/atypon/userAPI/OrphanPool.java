@@ -0,0 +1,153 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+
+import java.util.*;
+
+/**
+ * Holds the blocks received before their parents, by their hashes and by the
+ * hashes of their parents, so they're connected to the chain as soon as
+ * their parents arrive instead of asking for the whole chain.
+ * The pool is bounded: a block older than the maximum age is dropped, and when
+ * the pool is full the oldest block makes room for the new one, so a peer
+ * sending blocks that never connect can't fill the memory.
+ * Threadsafe.
+ */
+public final class OrphanPool {
+    private final int capacity;
+    private final long maxAge;
+    // The blocks by hash, the oldest first.
+    private final LinkedHashMap<String, Orphan> byHash;
+    // The hashes of the blocks by the hash of their parent.
+    private final HashMap<String, List<String>> byParent;
+
+    /**
+     * Initialize an empty pool.
+     *
+     * @param capacity The largest number of blocks held.
+     * @param maxAge   The time a block is held, in milliseconds.
+     * @throws IllegalArgumentException if the capacity or the maximum age isn't positive.
+     */
+    public OrphanPool(int capacity, long maxAge) {
+        if (capacity <= 0 || maxAge <= 0)
+            throw new IllegalArgumentException("The capacity and the maximum age must be positive.");
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+        this.byHash = new LinkedHashMap<>();
+        this.byParent = new HashMap<>();
+    }
+
+    /**
+     * Adds a block whose parent is missing, the expired blocks are dropped
+     * and the oldest block is dropped if the pool is full.
+     *
+     * @param block The block.
+     * @param now   The current time, in milliseconds.
+     * @return true if the block was added, false if it's already held.
+     */
+    public synchronized boolean add(Block<MinedTransaction> block, long now) {
+        String hash = block.getHash();
+        if (byHash.containsKey(hash))
+            return false;
+        expire(now);
+        if (byHash.size() >= capacity)
+            remove(byHash.keySet().iterator().next());
+        byHash.put(hash, new Orphan(block, now));
+        byParent.computeIfAbsent(block.getPrvHash(), parent -> new ArrayList<>(1)).add(hash);
+        return true;
+    }
+
+    /**
+     * Takes a block waiting for the given parent out of the pool, the oldest
+     * one if several are waiting for it.
+     *
+     * @param parentHash The hash of the parent.
+     * @return The block, null if none is waiting for the parent.
+     */
+    public synchronized Block<MinedTransaction> takeChild(String parentHash) {
+        List<String> children = byParent.get(parentHash);
+        if (children == null)
+            return null;
+        return remove(children.get(0));
+    }
+
+    /**
+     * Removes a block from the pool.
+     *
+     * @param hash The hash of the block.
+     * @return The block, null if it isn't held.
+     */
+    public synchronized Block<MinedTransaction> remove(String hash) {
+        Orphan orphan = byHash.remove(hash);
+        if (orphan == null)
+            return null;
+        String parentHash = orphan.block.getPrvHash();
+        List<String> siblings = byParent.get(parentHash);
+        siblings.remove(hash);
+        if (siblings.isEmpty())
+            byParent.remove(parentHash);
+        return orphan.block;
+    }
+
+    /**
+     * Drops the blocks held longer than the maximum age.
+     *
+     * @param now The current time, in milliseconds.
+     * @return The number of dropped blocks.
+     */
+    public synchronized int expire(long now) {
+        int expired = 0;
+        // The oldest come first, so the expired ones are at the start.
+        Iterator<Orphan> iterator = byHash.values().iterator();
+        while (iterator.hasNext()) {
+            Orphan orphan = iterator.next();
+            if (now - orphan.time < maxAge)
+                break;
+            iterator.remove();
+            String parentHash = orphan.block.getPrvHash();
+            List<String> siblings = byParent.get(parentHash);
+            siblings.remove(orphan.block.getHash());
+            if (siblings.isEmpty())
+                byParent.remove(parentHash);
+            ++expired;
+        }
+        return expired;
+    }
+
+    /**
+     * Checks whether a block is held.
+     *
+     * @param hash The hash of the block.
+     * @return true if the block is held, false otherwise.
+     */
+    public synchronized boolean contains(String hash) {
+        return byHash.containsKey(hash);
+    }
+
+    public synchronized int size() {
+        return byHash.size();
+    }
+
+    public synchronized void clear() {
+        byHash.clear();
+        byParent.clear();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A block with the time it was added.
+     */
+    private final static class Orphan {
+        private final Block<MinedTransaction> block;
+        private final long time;
+
+        private Orphan(Block<MinedTransaction> block, long time) {
+            this.block = block;
+            this.time = time;
+        }
+    }
+}
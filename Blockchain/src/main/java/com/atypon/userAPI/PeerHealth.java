@@ -0,0 +1,184 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The health of another user as seen by this one: how fast it answers (an
+ * exponentially weighted moving average of its latencies), how often it
+ * failed in a row and in total, when it was last heard from, and how many
+ * bytes it served.
+ * A peer that fails {@link #DEMOTION_FAILURES} times in a row is demoted: it's
+ * skipped until a backoff, doubled with each further failure, is over, then
+ * tried once again. A demoted peer not heard from for {@link #EVICTION_AGE}
+ * is evicted. Any answer, or any message received from the peer, restores it.
+ * Threadsafe.
+ */
+public final class PeerHealth {
+    // The weight of the newest latency in the average.
+    public final static double LATENCY_WEIGHT = 0.2;
+    // The latency assumed for a peer that never answered, in milliseconds.
+    public final static double DEFAULT_LATENCY = 100;
+    // The number of failures in a row that demote a peer.
+    public final static int DEMOTION_FAILURES = 3;
+    // The backoff after the demotion and the longest one, in milliseconds.
+    public final static long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+    public final static long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+    // The time a demoted peer may go unheard before it's evicted, in milliseconds.
+    public final static long EVICTION_AGE = TimeUnit.HOURS.toMillis(1);
+    // The latency added to the score for each failure in a row, in milliseconds.
+    private final static double FAILURE_PENALTY = 1000;
+
+    private final ClientSocket peer;
+    private double latency;
+    private boolean measured;
+    private int consecutiveFailures;
+    private long failures;
+    private long successes;
+    private long lastSeen;
+    private long retryAt;
+    private long bytesServed;
+
+    /**
+     * Initialize the health of a peer that wasn't contacted yet.
+     *
+     * @param peer The peer.
+     * @param now  The current time, in milliseconds, the peer counts as seen then.
+     */
+    public PeerHealth(ClientSocket peer, long now) {
+        this.peer = peer;
+        this.latency = DEFAULT_LATENCY;
+        this.lastSeen = now;
+    }
+
+    /**
+     * Records an answer of the peer.
+     *
+     * @param latency The time the exchange took, in milliseconds.
+     * @param bytes   The number of bytes the peer sent.
+     * @param now     The current time, in milliseconds.
+     */
+    public synchronized void recordSuccess(double latency, long bytes, long now) {
+        this.latency = measured ? this.latency + LATENCY_WEIGHT * (latency - this.latency) : latency;
+        measured = true;
+        consecutiveFailures = 0;
+        retryAt = 0;
+        ++successes;
+        bytesServed += bytes;
+        lastSeen = now;
+    }
+
+    /**
+     * Records a failed exchange with the peer, it's demoted after too many in a row.
+     *
+     * @param now The current time, in milliseconds.
+     */
+    public synchronized void recordFailure(long now) {
+        ++consecutiveFailures;
+        ++failures;
+        if (consecutiveFailures >= DEMOTION_FAILURES) {
+            int doublings = Math.min(consecutiveFailures - DEMOTION_FAILURES, 30);
+            retryAt = now + Math.min(MAX_BACKOFF, MIN_BACKOFF << doublings);
+        }
+    }
+
+    /**
+     * Records a message received from the peer, which proves it's alive.
+     *
+     * @param now The current time, in milliseconds.
+     */
+    public synchronized void recordSeen(long now) {
+        consecutiveFailures = 0;
+        retryAt = 0;
+        lastSeen = now;
+    }
+
+    /**
+     * Checks whether the peer may be contacted: it isn't demoted, or its backoff is over.
+     *
+     * @param now The current time, in milliseconds.
+     * @return true if the peer may be contacted, false if it's to be skipped.
+     */
+    public synchronized boolean isAvailable(long now) {
+        return now >= retryAt;
+    }
+
+    /**
+     * Checks whether the peer is demoted, it failed too many times in a row.
+     *
+     * @return true if demoted, false otherwise.
+     */
+    public synchronized boolean isDemoted() {
+        return consecutiveFailures >= DEMOTION_FAILURES;
+    }
+
+    /**
+     * Checks whether the peer is to be forgotten: demoted and unheard of for too long.
+     *
+     * @param now The current time, in milliseconds.
+     * @return true if the peer is to be evicted, false otherwise.
+     */
+    public synchronized boolean isEvictable(long now) {
+        return isDemoted() && now - lastSeen >= EVICTION_AGE;
+    }
+
+    /**
+     * Gets the score of the peer, the lower the better: its average latency,
+     * plus a penalty for each failure in a row.
+     *
+     * @return The score, in milliseconds.
+     */
+    public synchronized double getScore() {
+        return latency + FAILURE_PENALTY * consecutiveFailures;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public ClientSocket getPeer() {
+        return peer;
+    }
+
+    public synchronized double getLatency() {
+        return latency;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getSuccesses() {
+        return successes;
+    }
+
+    public synchronized long getLastSeen() {
+        return lastSeen;
+    }
+
+    public synchronized long getBytesServed() {
+        return bytesServed;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public synchronized String toString() {
+        return "PeerHealth{" +
+                "peer=" + peer.getIpAddress() + ':' + peer.getPort() +
+                ", latency=" + latency +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", failures=" + failures +
+                ", successes=" + successes +
+                ", lastSeen=" + lastSeen +
+                ", bytesServed=" + bytesServed +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the {@link PeerHealth} of the other users, by address, and chooses
+ * the ones a user talks to: the active set is the peers that may be contacted
+ * (not demoted, or done with their backoff), the best scores first, at most
+ * the maximum number of them. The peers left out still reach the user, and
+ * they take the place of the active ones that get demoted.
+ * Threadsafe.
+ */
+public final class PeerSelector {
+    // The default largest number of peers a message is sent to.
+    public final static int MAX_ACTIVE_PEERS = 32;
+
+    private final int maxActive;
+    private final ConcurrentHashMap<String, PeerHealth> health;
+
+    /**
+     * Initialize a selector that knows no peer.
+     *
+     * @param maxActive The largest number of active peers.
+     * @throws IllegalArgumentException if the largest number isn't positive.
+     */
+    public PeerSelector(int maxActive) {
+        if (maxActive <= 0)
+            throw new IllegalArgumentException("The number of active peers must be positive.");
+        this.maxActive = maxActive;
+        this.health = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the health of a peer, a peer met for the first time counts as seen now.
+     *
+     * @param peer The peer.
+     * @param now  The current time, in milliseconds.
+     * @return The health of the peer.
+     */
+    public PeerHealth get(ClientSocket peer, long now) {
+        return health.computeIfAbsent(AddressBook.addressOf(peer), address -> new PeerHealth(peer, now));
+    }
+
+    /**
+     * Gets the health of a peer, if it's known.
+     *
+     * @param peer The peer.
+     * @return The health of the peer, null if it's unknown.
+     */
+    public PeerHealth find(ClientSocket peer) {
+        return health.get(AddressBook.addressOf(peer));
+    }
+
+    /**
+     * Chooses the active peers out of the candidates.
+     *
+     * @param candidates The peers known by the user.
+     * @param now        The current time, in milliseconds.
+     * @return The peers that may be contacted, the best first, at most the maximum number.
+     */
+    public List<ClientSocket> select(Collection<ClientSocket> candidates, long now) {
+        // The scores are read once, they may change while sorting.
+        List<Candidate> available = new ArrayList<>(candidates.size());
+        for (ClientSocket candidate : candidates) {
+            PeerHealth peer = get(candidate, now);
+            if (peer.isAvailable(now))
+                available.add(new Candidate(candidate, peer.getScore(), peer.getLastSeen()));
+        }
+        available.sort(null);
+        List<ClientSocket> selected = new ArrayList<>(Math.min(maxActive, available.size()));
+        for (int i = 0; i < available.size() && i < maxActive; ++i)
+            selected.add(available.get(i).peer);
+        return selected;
+    }
+
+    /**
+     * Finds the candidates to evict and forgets their health.
+     *
+     * @param candidates The peers known by the user.
+     * @param now        The current time, in milliseconds.
+     * @return The peers to evict, demoted and unheard of for too long.
+     */
+    public List<ClientSocket> evict(Collection<ClientSocket> candidates, long now) {
+        List<ClientSocket> evicted = new ArrayList<>();
+        for (ClientSocket candidate : candidates) {
+            PeerHealth peer = health.get(AddressBook.addressOf(candidate));
+            if (peer != null && peer.isEvictable(now)) {
+                health.remove(AddressBook.addressOf(candidate), peer);
+                evicted.add(candidate);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the number of demoted peers.
+     *
+     * @return The number of peers that failed too many times in a row.
+     */
+    public int getDemoted() {
+        int demoted = 0;
+        for (PeerHealth peer : health.values())
+            if (peer.isDemoted())
+                ++demoted;
+        return demoted;
+    }
+
+    /**
+     * Gets the health of every known peer.
+     *
+     * @return A copy of the health of the peers.
+     */
+    public List<PeerHealth> getAll() {
+        return new ArrayList<>(health.values());
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A peer with its score when chosen, the lower score first, then the last seen.
+     */
+    private final static class Candidate implements Comparable<Candidate> {
+        private final ClientSocket peer;
+        private final double score;
+        private final long lastSeen;
+
+        private Candidate(ClientSocket peer, double score, long lastSeen) {
+            this.peer = peer;
+            this.score = score;
+            this.lastSeen = lastSeen;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byScore = Double.compare(score, other.score);
+            return byScore != 0 ? byScore : Long.compare(other.lastSeen, lastSeen);
+        }
+    }
+}
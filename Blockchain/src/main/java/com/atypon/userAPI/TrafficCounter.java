@@ -0,0 +1,141 @@
+package com.atypon.userAPI;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages and the bytes a user sends to and receives from the
+ * other users, the streams of the connections are wrapped so every byte
+ * going through them is counted.
+ * Threadsafe.
+ */
+public final class TrafficCounter implements Serializable {
+    // Serialized with the user, kept so the saved users stay readable.
+    private static final long serialVersionUID = 2539997848046025615L;
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * Counts a sent message, and wraps the stream it's written to.
+     *
+     * @param out The output stream of the connection.
+     * @return A stream counting the bytes written to it as sent.
+     */
+    public OutputStream countSent(OutputStream out) {
+        messagesSent.incrementAndGet();
+        return countBytes(out);
+    }
+
+    /**
+     * Counts a received message, and wraps the stream it's read from.
+     *
+     * @param in The input stream of the connection.
+     * @return A stream counting the bytes read from it as received.
+     */
+    public InputStream countReceived(InputStream in) {
+        messagesReceived.incrementAndGet();
+        return countBytes(in);
+    }
+
+    /**
+     * Wraps a stream the bytes of a response are written to, without counting a message.
+     *
+     * @param out The output stream of the connection.
+     * @return A stream counting the bytes written to it as sent.
+     */
+    public OutputStream countBytes(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesSent.incrementAndGet();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesSent.addAndGet(len);
+            }
+        };
+    }
+
+    /**
+     * Wraps a stream the bytes of a response are read from, without counting a message.
+     *
+     * @param in The input stream of the connection.
+     * @return A stream counting the bytes read from it as received.
+     */
+    public InputStream countBytes(InputStream in) {
+        return countBytes(in, null);
+    }
+
+    /**
+     * Wraps a stream the bytes of a response are read from, without counting
+     * a message, the bytes are also counted by the given counter.
+     *
+     * @param in      The input stream of the connection.
+     * @param counter The counter of the bytes of this stream, null for none.
+     * @return A stream counting the bytes read from it as received.
+     */
+    public InputStream countBytes(InputStream in, AtomicLong counter) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0)
+                    count(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0)
+                    count(read);
+                return read;
+            }
+
+            private void count(int bytes) {
+                bytesReceived.addAndGet(bytes);
+                if (counter != null)
+                    counter.addAndGet(bytes);
+            }
+        };
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public long getMessagesSent() {
+        return messagesSent.get();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "TrafficCounter{" +
+                "messagesSent=" + messagesSent +
+                ", messagesReceived=" + messagesReceived +
+                ", bytesSent=" + bytesSent +
+                ", bytesReceived=" + bytesReceived +
+                '}';
+    }
+}
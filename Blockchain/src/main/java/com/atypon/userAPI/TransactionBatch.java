@@ -0,0 +1,51 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.content.Transaction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message that carries many transactions to another node at once,
+ * so a batch costs one connection per peer instead of one per transaction.
+ * Immutable thus threadsafe.
+ */
+public final class TransactionBatch implements Serializable {
+    private static final long serialVersionUID = 8794710646958508727L;
+    // The largest number of transactions in a batch, a larger batch is rejected by the receivers.
+    public final static int MAX_SIZE = 4096;
+
+    private final ArrayList<Transaction> transactions;
+
+    /**
+     * Initialize the batch.
+     *
+     * @param transactions The transactions to send.
+     * @throws IllegalArgumentException if there are more than {@link #MAX_SIZE} transactions.
+     */
+    public TransactionBatch(Collection<Transaction> transactions) {
+        if (transactions.size() > MAX_SIZE)
+            throw new IllegalArgumentException("A batch holds at most " + MAX_SIZE + " transactions.");
+        this.transactions = new ArrayList<>(transactions);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public List<Transaction> getTransactions() {
+        return Collections.unmodifiableList(transactions);
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionBatch{size=" + transactions.size() + '}';
+    }
+}
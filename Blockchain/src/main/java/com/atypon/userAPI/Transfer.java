@@ -0,0 +1,61 @@
+package com.atypon.userAPI;
+
+import java.math.BigDecimal;
+import java.security.PublicKey;
+import java.util.Objects;
+
+/**
+ * A single transfer requested as a part of a batch,
+ * holds the receiver and the amount to send them.
+ * Immutable thus threadsafe.
+ */
+public final class Transfer {
+    private final PublicKey receiver;
+    private final BigDecimal amount;
+
+    /**
+     * Initialize the transfer.
+     *
+     * @param receiver The receiver public key.
+     * @param amount   The amount to transfer.
+     */
+    public Transfer(PublicKey receiver, BigDecimal amount) {
+        this.receiver = receiver;
+        this.amount = amount;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public PublicKey getReceiver() {
+        return receiver;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Transfer)) return false;
+        Transfer transfer = (Transfer) o;
+        return Objects.equals(getReceiver(), transfer.getReceiver()) &&
+                Objects.equals(getAmount(), transfer.getAmount());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getReceiver(), getAmount());
+    }
+
+    @Override
+    public String toString() {
+        return "Transfer{amount=" + amount + '}';
+    }
+}
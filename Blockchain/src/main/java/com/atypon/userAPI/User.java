@@ -3,22 +3,38 @@ package com.atypon.userAPI;
 import com.atypon.ClientSocket;
 import com.atypon.blockchain.Block;
 import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.ChainSnapshot;
 import com.atypon.blockchain.content.MinedTransaction;
 import com.atypon.blockchain.content.Transaction;
 import com.atypon.factory.*;
+import com.atypon.events.ChainReplacementEvent;
+import com.atypon.events.ChainValidationEvent;
+import com.atypon.events.MessageSendEvent;
 import com.atypon.gui.Window;
+import com.atypon.metrics.Histogram;
+import com.atypon.metrics.MetricRegistry;
+import com.atypon.storage.BlockStore;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * An API that uses the blockchain to create a crypto-currency where the creator of
@@ -26,14 +42,45 @@ import java.util.concurrent.TimeUnit;
  * block is harder to create) and the mining fees are fixed to {@link #FEES_PERCENTAGE}%,
  * and the mining rewards starts with {@link #INIT_REWARD) per block and it is halved
  * every {@link #NUMBER_OF_BLOCKS_FOR_REDUCTION} blocks.
+ * Every {@link #CHECKPOINT_INTERVAL} blocks of a verified chain are recorded in a
+ * {@link Checkpoint}, a chain holding the checkpoint block is only verified above it.
+ * The balances are kept in a {@link Ledger} that is rebuilt from the nearest
+ * checkpoint when the chain is replaced.
  * Has an inner class {@link Client} which handles the communication with other users.
  * Designed to be thread safe, the blocks that may cause concurrency problems were synchronized.
+ * The chain and its ledger are changed under a {@link ReentrantLock}, an incoming chain
+ * is verified before the lock is taken, and the readers take no lock at all: they use a
+ * snapshot of the chain and the ledger published with it, so they never wait for a
+ * verification nor a change.
+ * The changes of the chain are reported to the registered {@link ChainListener}s and
+ * the traffic with the other users is counted by a {@link TrafficCounter}.
+ * The mined blocks are sent to the other users one by one, a block received before its
+ * parent waits in an {@link OrphanPool} while the parent is asked from its sender, and
+ * is connected as soon as the parent arrives, so a reordered or lost message costs a
+ * block, not a chain. A gap deeper than {@link #MAX_BLOCK_REQUESTS} blocks is filled by
+ * asking the sender for its chain instead.
  */
 public class User implements Serializable {
     public final static BigDecimal CREATOR_STARTING_BALANCE = BigDecimal.valueOf(500);
     public final static BigDecimal FEES_PERCENTAGE = BigDecimal.valueOf(2.0 / 100.0);
     public final static BigDecimal INIT_REWARD = BigDecimal.valueOf(50);
     public final static int NUMBER_OF_BLOCKS_FOR_REDUCTION = 5;
+    public final static int CHECKPOINT_INTERVAL = 10;
+    // The number of checkpoints kept, the older ones are used after a fork.
+    public final static int CHECKPOINTS_KEPT = 3;
+    // The bounds of the blocks waiting for their parents, see OrphanPool.
+    public final static int MAX_ORPHANS = 256;
+    public final static long ORPHAN_EXPIRY = TimeUnit.MINUTES.toMillis(10);
+    // The parents asked for one after the other before asking for the whole chain.
+    public final static int MAX_BLOCK_REQUESTS = 32;
+    // Signs the transactions of a batch in parallel.
+    private final static ExecutorService SIGNING_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), daemonThreadFactory("transaction-signer"));
+    // The durations of the verifications of chains by the users, in microseconds.
+    private final static Histogram VERIFY_TIME = MetricRegistry.getDefault().histogram("chain.verify.micros");
+    // Broadcasts the batches and mines after them, away from the signing threads.
+    private final static ExecutorService BACKGROUND_EXECUTOR =
+            Executors.newCachedThreadPool(daemonThreadFactory("user-background"));
 
     // The blockchain copy held by the user.
     private final Blockchain<MinedTransaction> blockchain;
@@ -49,6 +96,27 @@ public class User implements Serializable {
     private boolean isMiningOn;
     // A reference to the Window interface to add the log to it.
     transient private Window window;
+    // Where the log is written, the standard output if null.
+    transient private volatile Consumer<String> log;
+    // The on-disk store the chain is saved to, opened by UserFactory.
+    transient private BlockStore blockStore;
+    // The last checkpoints of the chain this user verified, the newest first, null if none.
+    transient private volatile List<Checkpoint> checkpoints;
+    // Guards the changes of the chain, the ledger and the checkpoints.
+    private final ReentrantLock chainLock = new ReentrantLock();
+    // The balances at the end of the chain with the snapshot they belong to, set under the
+    // write lock or, by a reader that rebuilt them, by a CAS. A published ledger is never changed.
+    transient private final AtomicReference<LedgerState> ledgerState = new AtomicReference<>();
+    // Told about the changes of the chain, null until the first one is added.
+    transient private volatile CopyOnWriteArrayList<ChainListener> chainListeners;
+    // The messages and bytes sent to and received from the other users.
+    private final TrafficCounter traffic = new TrafficCounter();
+    // The blocks received before their parents.
+    transient private final OrphanPool orphans = new OrphanPool(MAX_ORPHANS, ORPHAN_EXPIRY);
+    // The hashes of the parents being asked for, so each is asked once at a time.
+    transient private final Set<String> requestedBlocks = ConcurrentHashMap.newKeySet();
+    // The counters and the durations of this user, see NodeMetrics.
+    transient private final NodeMetrics metrics;
 
     /**
      * Parameterized constructor that initializes a user.
@@ -64,6 +132,31 @@ public class User implements Serializable {
         this.transactionPool = new LinkedBlockingQueue<>();
         this.isMiningOn = false;
         this.window = null;
+        this.metrics = new NodeMetrics(this);
+    }
+
+    /**
+     * Parameterized constructor that restores a saved user.
+     *
+     * @param clientSocket    The clientSocket for this user.
+     * @param privateKey      The private key of this user.
+     * @param blockchain      The blockchain copy held by the user.
+     * @param clients         The other users known by this user.
+     * @param transactionPool The transactions that weren't mined yet.
+     * @param isMiningOn      Whether the user mines.
+     */
+    public User(ClientSocket clientSocket, PrivateKey privateKey, Blockchain<MinedTransaction> blockchain,
+                Collection<ClientSocket> clients, Collection<Transaction> transactionPool, boolean isMiningOn) {
+        this.blockchain = blockchain;
+        this.clientSocket = clientSocket;
+        this.privateKey = privateKey;
+        this.client = new Client();
+        for (ClientSocket client : clients)
+            this.client.addClient(client);
+        this.transactionPool = new LinkedBlockingQueue<>(transactionPool);
+        this.isMiningOn = isMiningOn;
+        this.window = null;
+        this.metrics = new NodeMetrics(this);
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -76,10 +169,8 @@ public class User implements Serializable {
         MinedTransaction minedTransaction = TransactionFactory.getMinedInstance(transaction, getPublicKey(),
                 FEES_PERCENTAGE, CREATOR_STARTING_BALANCE);
         Block<MinedTransaction> block = BlockFactory.getFirstMinedInstance(minedTransaction);
-        addBlock(block);
-        synchronized (this.blockchain) {
-            client.broadcast(blockchain);
-        }
+        if (addBlock(block))
+            client.broadcast(block);
     }
 
     /**
@@ -88,10 +179,49 @@ public class User implements Serializable {
      * @param blockchain The new blockchain.
      */
     public void replaceChain(Blockchain<MinedTransaction> blockchain) {
-        synchronized (this.blockchain) {
-            if (verifyChain(blockchain))
-                this.blockchain.replaceChain(blockchain);
+        // Work on a snapshot of the new chain, so it doesn't change while it's verified.
+        Blockchain<MinedTransaction> candidate = blockchain.clone();
+        // Compared by work before the verification, a chain that isn't preferred costs nothing.
+        if (Blockchain.compareForks(candidate.snapshot(), this.blockchain.snapshot()) <= 0)
+            return;
+        long start = System.nanoTime();
+        ChainReplacementEvent event = new ChainReplacementEvent();
+        event.begin();
+        ChainSnapshot<MinedTransaction> oldSnapshot = null;
+        boolean replaced = false;
+        try {
+            // The new chain doesn't depend on the current one, so it's verified without the lock,
+            // only above the fork, the blocks it has in common with the current one were verified.
+            int verifiedHeight = candidate.snapshot().commonHeight(this.blockchain.snapshot());
+            Ledger ledger = verifyLedger(candidate, getCheckpoint(candidate), verifiedHeight);
+            if (ledger == null)
+                return;
+            chainLock.lock();
+            try {
+                oldSnapshot = this.blockchain.snapshot();
+                // It was verified as a whole above, so it's trusted by the replacement.
+                if (!this.blockchain.replaceChain(candidate, candidate.length()))
+                    return;
+                publish(ledger);
+                replaced = true;
+            } finally {
+                chainLock.unlock();
+            }
+        } finally {
+            metrics.getReplaceTime().updateSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                if (oldSnapshot == null)
+                    oldSnapshot = this.blockchain.snapshot();
+                event.port = getPort();
+                event.oldHeight = oldSnapshot.size();
+                event.newHeight = candidate.length();
+                event.forkDepth = replaced ? oldSnapshot.size() - oldSnapshot.commonHeight(candidate.snapshot()) : 0;
+                event.replaced = replaced;
+                event.commit();
+            }
         }
+        notifyChainChanged(oldSnapshot, candidate.snapshot());
     }
 
     /**
@@ -102,16 +232,185 @@ public class User implements Serializable {
      * @return true if the block is added, false otherwise.
      */
     private boolean addBlock(Block<MinedTransaction> block) {
-        synchronized (this.blockchain) {
-            if (blockchain.addBlock(block)) {
-                if (verifyChain(blockchain))
-                    return true;
-                blockchain.removeLastBlock();
+        while (true) {
+            // Verify the chain with the block without the lock.
+            ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+            Blockchain<MinedTransaction> candidate = new Blockchain<>(snapshot);
+            if (!candidate.addBlock(block))
+                return false;
+            // Only the block is new, the rest of the candidate is the verified chain.
+            Ledger ledger = verifyLedger(candidate, getCheckpoint(candidate), snapshot.size());
+            if (ledger == null)
+                return false;
+
+            chainLock.lock();
+            try {
+                // Only taken if the chain didn't change since the verification.
+                if (blockchain.snapshot() != snapshot || !blockchain.replaceChain(candidate, candidate.length()))
+                    continue;
+                publish(ledger);
+            } finally {
+                chainLock.unlock();
             }
+            notifyChainChanged(snapshot, candidate.snapshot());
+            return true;
+        }
+    }
+
+    /**
+     * Takes a block sent by another user: a block extending the chain, or a fork
+     * of it, is connected with the orphans waiting for it, and the branch replaces
+     * the chain if it's preferred by {@link Blockchain#compareForks}. A block whose parent is unknown is held in the
+     * orphan pool while its parent is asked from the sender.
+     *
+     * @param block  The block.
+     * @param sender The user that sent the block, null if the parent can't be asked for.
+     * @return true if the chain of this user changed, false otherwise.
+     */
+    public boolean receiveBlock(Block<MinedTransaction> block, ClientSocket sender) {
+        return receiveBlock(block, sender, 0);
+    }
+
+    /**
+     * Takes a block like {@link #receiveBlock(Block, ClientSocket)}.
+     *
+     * @param requests The number of parents asked for in a row before this block.
+     */
+    private boolean receiveBlock(Block<MinedTransaction> block, ClientSocket sender, int requests) {
+        if (block == null || blockchain.getHeight(block.getHash()) >= 0)
+            return false;
+        ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+        if (block.getPrvHash() == null || block.getPrvHash().isEmpty()) {
+            // A first block, without a previous hash, only starts an empty chain.
+            return snapshot.isEmpty() && connect(snapshot, -1, block);
         }
+        int parentHeight = snapshot.heightOfHash(block.getPrvHash());
+        if (parentHeight >= 0)
+            return connect(snapshot, parentHeight, block);
+
+        // The proof of work is checked before the block is held, so junk doesn't fill the pool.
+        if (!block.verifyBlock() || !orphans.add(block, System.currentTimeMillis()))
+            return false;
+        // The parent may have been connected meanwhile, after its orphans were taken.
+        if (blockchain.getHeight(block.getPrvHash()) >= 0 && orphans.remove(block.getHash()) != null)
+            return receiveBlock(block, sender, requests);
+        if (sender != null)
+            requestParent(block.getPrvHash(), sender, requests + 1);
         return false;
     }
 
+    /**
+     * Connects a block whose parent is in the chain, followed by the orphans
+     * waiting for it, the branch replaces the chain if it has more work.
+     *
+     * @param snapshot     The chain the parent was found in.
+     * @param parentHeight The height of the parent, -1 for a first block.
+     * @param block        The block.
+     * @return true if the chain of this user changed, false otherwise.
+     */
+    private boolean connect(ChainSnapshot<MinedTransaction> snapshot, int parentHeight,
+                            Block<MinedTransaction> block) {
+        ChainSnapshot<MinedTransaction> branch = snapshot;
+        while (branch.size() > parentHeight + 1)
+            branch = branch.removeLast();
+        Blockchain<MinedTransaction> candidate = new Blockchain<>(branch);
+        if (!candidate.addBlock(block))
+            return false;
+        // Each orphan waiting for the tip of the branch is tried once, an invalid one is dropped.
+        List<Block<MinedTransaction>> taken = new ArrayList<>();
+        Block<MinedTransaction> child;
+        while ((child = orphans.takeChild(candidate.lastBlock().getHash())) != null) {
+            if (candidate.addBlock(child))
+                taken.add(child);
+        }
+
+        String tip = candidate.lastBlock().getHash();
+        replaceChain(candidate);
+        if (blockchain.getHeight(tip) < 0) {
+            // Not preferred over the chain, the orphans wait for a branch with more work.
+            long now = System.currentTimeMillis();
+            for (Block<MinedTransaction> orphan : taken)
+                orphans.add(orphan, now);
+            return false;
+        }
+        // An orphan added while the branch was replacing the chain.
+        Block<MinedTransaction> late = orphans.takeChild(tip);
+        if (late != null)
+            receiveBlock(late, null);
+        return true;
+    }
+
+    /**
+     * Asks the sender of an orphan for its parent, in the background. The
+     * whole chain of the sender is asked for instead if the sender doesn't
+     * have the parent, or after too many parents in a row.
+     *
+     * @param hash     The hash of the parent.
+     * @param sender   The user that sent the orphan.
+     * @param requests The number of parents asked for in a row, this one included.
+     */
+    @SuppressWarnings("unchecked")
+    private void requestParent(String hash, ClientSocket sender, int requests) {
+        if (!requestedBlocks.add(hash))
+            return;
+        BACKGROUND_EXECUTOR.execute(() -> {
+            try {
+                if (requests > MAX_BLOCK_REQUESTS) {
+                    client.requestChain(sender);
+                    return;
+                }
+                Vector<Object> response = client.sendMessage(sender, new BlockRequest(hash));
+                Block<MinedTransaction> parent = null;
+                if (response != null) {
+                    for (Object object : response) {
+                        if (object instanceof Block && ((Block<?>) object).getHash().equals(hash))
+                            parent = (Block<MinedTransaction>) object;
+                    }
+                }
+                if (parent == null)
+                    client.requestChain(sender);
+                else
+                    receiveBlock(parent, sender, requests);
+            } finally {
+                requestedBlocks.remove(hash);
+            }
+        });
+    }
+
+    /**
+     * Publishes the ledger of the current chain and updates the checkpoints.
+     * Must be called while holding the write lock, right after the chain was changed.
+     *
+     * @param ledger The ledger of the current chain.
+     */
+    private void publish(Ledger ledger) {
+        ledgerState.set(new LedgerState(ledger, blockchain.snapshot()));
+        updateCheckpoints();
+    }
+
+    /**
+     * Tells the listeners about a change of the chain, outside the lock.
+     *
+     * @param oldSnapshot The chain before the change.
+     * @param newSnapshot The chain after the change.
+     */
+    private void notifyChainChanged(ChainSnapshot<MinedTransaction> oldSnapshot,
+                                    ChainSnapshot<MinedTransaction> newSnapshot) {
+        List<ChainListener> listeners = this.chainListeners;
+        if (listeners == null || listeners.isEmpty())
+            return;
+        int common = oldSnapshot.commonHeight(newSnapshot);
+        List<Block<MinedTransaction>> removed = oldSnapshot.subList(common, oldSnapshot.size());
+        List<Block<MinedTransaction>> added = newSnapshot.subList(common, newSnapshot.size());
+        for (ChainListener listener : listeners) {
+            try {
+                listener.chainChanged(this, common, removed, added);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Make a new transaction to a specific user.
      *
@@ -120,20 +419,97 @@ public class User implements Serializable {
      * @return true if the transaction was made and broadcast, false otherwise.
      */
     public boolean makeTransaction(PublicKey receiver, BigDecimal amount) {
+        return sendTransaction(receiver, amount) != null;
+    }
+
+    /**
+     * Make a new transaction to a specific user like {@link #makeTransaction},
+     * but give the transaction that was made, so it can be followed in the chain.
+     *
+     * @param receiver The receiver public key.
+     * @param amount   The amount of the transaction.
+     * @return The transaction that was made and broadcast, null if none was made.
+     */
+    public Transaction sendTransaction(PublicKey receiver, BigDecimal amount) {
         // Insure the sender isn't the same user as the receiver.
         if (receiver.equals(getPublicKey()))
-            return false;
+            return null;
         // Insure the user has the balance to make this transaction.
         if (getNetWorth(this.getPublicKey()).compareTo(amount) < 0)
-            return false;
+            return null;
         // Broadcast the signed transaction so miners would mine it.
         Transaction transaction = TransactionFactory.getInstance(getPublicKey(), receiver, amount, getPrivateKey());
         client.broadcast(transaction);
         addTransaction(transaction);
-        System.out.println(isMiningOn);
+        log("Mining is " + (isMiningOn ? "on." : "off."));
         if (isMiningOn())
             mine();
-        return true;
+        return transaction;
+    }
+
+    /**
+     * Make many transactions at once, the balance is checked once for the whole
+     * batch, the transactions are signed in parallel, added to the transaction pool
+     * in a single operation and sent to every peer in a single message.
+     * The transfers are accepted in order while the balance covers them, a transfer
+     * to the user itself or with a negative amount is rejected.
+     *
+     * @param transfers The transfers to make.
+     * @return A future for each transfer, in the same order, that completes with true
+     * once the transaction is in the pool, or with false if the transfer was rejected.
+     */
+    public List<CompletableFuture<Boolean>> makeTransactions(List<Transfer> transfers) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(transfers.size());
+        List<CompletableFuture<Transaction>> signing = new ArrayList<>(transfers.size());
+
+        // Insure the user has the balance to make the accepted transactions combined.
+        BigDecimal remaining = getNetWorth(this.getPublicKey());
+        for (Transfer transfer : transfers) {
+            BigDecimal amount = transfer.getAmount();
+            if (transfer.getReceiver() == null || transfer.getReceiver().equals(getPublicKey()) ||
+                    amount == null || amount.compareTo(BigDecimal.ZERO) < 0 || remaining.compareTo(amount) < 0) {
+                results.add(CompletableFuture.completedFuture(false));
+                signing.add(null);
+                continue;
+            }
+            remaining = remaining.subtract(amount);
+            results.add(new CompletableFuture<>());
+            signing.add(CompletableFuture.supplyAsync(() -> TransactionFactory.getInstance(getPublicKey(),
+                    transfer.getReceiver(), amount, getPrivateKey()), SIGNING_EXECUTOR));
+        }
+
+        List<CompletableFuture<Transaction>> pending = new ArrayList<>();
+        for (CompletableFuture<Transaction> future : signing)
+            if (future != null)
+                pending.add(future);
+
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).whenCompleteAsync((ignored, error) -> {
+            // Collect the signed transactions, a failed signing fails its own transfer only.
+            List<Transaction> signed = new ArrayList<>(pending.size());
+            for (CompletableFuture<Transaction> future : pending) {
+                if (!future.isCompletedExceptionally())
+                    signed.add(future.join());
+            }
+            Set<Transaction> added = new HashSet<>(addTransactions(signed));
+
+            for (int i = 0; i < signing.size(); ++i) {
+                CompletableFuture<Transaction> future = signing.get(i);
+                if (future != null)
+                    results.get(i).complete(!future.isCompletedExceptionally() && added.contains(future.join()));
+            }
+
+            if (added.isEmpty())
+                return;
+            printOnWindow("Added a batch of " + added.size() + " transactions to the pool.");
+            List<Transaction> batch = new ArrayList<>(added);
+            for (int i = 0; i < batch.size(); i += TransactionBatch.MAX_SIZE)
+                client.broadcast(new TransactionBatch(batch.subList(i, Math.min(batch.size(),
+                        i + TransactionBatch.MAX_SIZE))));
+            if (isMiningOn())
+                mine();
+        }, BACKGROUND_EXECUTOR);
+
+        return results;
     }
 
     /**
@@ -170,34 +546,24 @@ public class User implements Serializable {
         if (transaction == null)
             return false;
 
-        int n;
-        synchronized (this.blockchain) {
-            n = blockchain.length() + 1;
-        }
+        // The length and the last block are taken from the same snapshot.
+        ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+        int n = snapshot.size() + 1;
 
         // Create the mined transaction with the additional mining info.
         MinedTransaction minedTransaction = TransactionFactory.getMinedInstance(transaction,
                 getPublicKey(), FEES_PERCENTAGE, getReward(n));
 
-        Block<MinedTransaction> lastBlock;
-        synchronized (this.blockchain) {
-            lastBlock = blockchain.lastBlock();
-        }
-
-        // Mine the block with the transaction.
+        // Mine the block with the transaction, at the target of the chain.
         Block<MinedTransaction> block =
-                BlockFactory.getMinedInstance(lastBlock, minedTransaction);
+                BlockFactory.getNextMinedInstance(snapshot, minedTransaction);
 
         // If the mining was interrupted then the block is null.
         if (block == null)
             return false;
         // Add the block to the blockchain, if it is successfully added then broadcast the change.
         if (addBlock(block)) {
-            Blockchain<MinedTransaction> clone;
-            synchronized (this.blockchain) {
-                clone = blockchain.clone();
-            }
-            client.broadcast(clone);
+            client.broadcast(block);
             if (isMiningOn())
                 mine();
             return true;
@@ -211,7 +577,7 @@ public class User implements Serializable {
      * @param n The index of the block in the blockchain.
      * @return The reward for the nth block.
      */
-    private BigDecimal getReward(int n) {
+    private static BigDecimal getReward(int n) {
         BigDecimal reward = INIT_REWARD;
         while (n > NUMBER_OF_BLOCKS_FOR_REDUCTION) {
             n -= NUMBER_OF_BLOCKS_FOR_REDUCTION;
@@ -232,6 +598,33 @@ public class User implements Serializable {
         }
     }
 
+    /**
+     * Add many transactions to the transaction pool in a single operation,
+     * the transactions that are already in the blockchain or in the pool are skipped.
+     *
+     * @param transactions The transactions to add.
+     * @return The transactions that were added.
+     */
+    public List<Transaction> addTransactions(Collection<Transaction> transactions) {
+        // The IDs in the blockchain are looked up in its index, the ones in the pool are collected.
+        ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+        HashSet<String> usedIds = new HashSet<>();
+
+        List<Transaction> added = new ArrayList<>(transactions.size());
+        synchronized (this.transactionPool) {
+            for (Transaction transaction : transactionPool)
+                usedIds.add(transaction.getId());
+            for (Transaction transaction : transactions) {
+                if (transaction != null && snapshot.heightOfDataId(transaction.getId()) < 0 &&
+                        usedIds.add(transaction.getId())) {
+                    transactionPool.add(transaction);
+                    added.add(transaction);
+                }
+            }
+        }
+        return added;
+    }
+
     /**
      * Checks whether a transaction exists in the blockchain or not.
      *
@@ -241,14 +634,7 @@ public class User implements Serializable {
     private boolean notExists(Transaction transaction) {
         if (transaction == null)
             return false;
-        String id = transaction.getId();
-        synchronized (this.blockchain) {
-            for (Block<MinedTransaction> block : blockchain.getBlocks()) {
-                if (block.getData().getId().equals(id))
-                    return false;
-            }
-        }
-        return true;
+        return !blockchain.containsDataId(transaction.getId());
     }
 
     /**
@@ -260,18 +646,128 @@ public class User implements Serializable {
      * @return true if the blockchain is valid, false otherwise.
      */
     public static boolean verifyChain(Blockchain<MinedTransaction> blockchain) {
-        // Make sure all balances are positive.
-        HashMap<PublicKey, BigDecimal> accounts = getAllNetWorth(blockchain);
-        for (Map.Entry<PublicKey, BigDecimal> account : accounts.entrySet()) {
+        return verifyChain(blockchain, null);
+    }
 
-            if (account.getValue().compareTo(BigDecimal.ZERO) < 0)
+    /**
+     * Verifies the blockchain like {@link #verifyChain(Blockchain)}, but if the
+     * blockchain holds the checkpoint block then only the blocks above the
+     * checkpoint are verified, starting from the balances of the checkpoint.
+     *
+     * @param blockchain The blockchain to verify.
+     * @param checkpoint A checkpoint verified by this user, or null to verify the whole chain.
+     * @return true if the blockchain is valid, false otherwise.
+     */
+    public static boolean verifyChain(Blockchain<MinedTransaction> blockchain, Checkpoint checkpoint) {
+        return verifyLedger(blockchain, checkpoint) != null;
+    }
+
+    /**
+     * Verifies the blockchain of this user from the nearest checkpoint and rebuilds
+     * its balances, used once the user is loaded.
+     *
+     * @return true if the blockchain is valid, false otherwise.
+     */
+    public boolean verifyBlockchain() {
+        chainLock.lock();
+        try {
+            Ledger ledger = verifyLedger(blockchain, getCheckpoint(blockchain));
+            if (ledger == null)
                 return false;
+            ledgerState.set(new LedgerState(ledger, blockchain.snapshot()));
+            return true;
+        } finally {
+            chainLock.unlock();
         }
+    }
 
+    /**
+     * Verifies the blockchain like {@link #verifyChain(Blockchain, Checkpoint)}.
+     *
+     * @param blockchain The blockchain to verify.
+     * @param checkpoint A checkpoint verified by this user, or null to verify the whole chain.
+     * @return The ledger at the end of the blockchain, null if the blockchain isn't valid.
+     */
+    private static Ledger verifyLedger(Blockchain<MinedTransaction> blockchain, Checkpoint checkpoint) {
+        return verifyLedger(blockchain, checkpoint, 0);
+    }
+
+    /**
+     * Verifies the blockchain like {@link #verifyLedger(Blockchain, Checkpoint)},
+     * but the blocks below the given height are only replayed, their rules and
+     * proofs of work aren't verified again.
+     *
+     * @param verifiedHeight The number of blocks, from the first, already verified
+     *                       by this user, like the ones the chain has in common with its own.
+     */
+    private static Ledger verifyLedger(Blockchain<MinedTransaction> blockchain, Checkpoint checkpoint,
+                                       int verifiedHeight) {
+        long start = System.nanoTime();
+        ChainValidationEvent event = new ChainValidationEvent();
+        event.begin();
+        Ledger ledger = null;
+        try {
+            ledger = replayAndVerify(blockchain, checkpoint, verifiedHeight, event);
+            return ledger;
+        } finally {
+            VERIFY_TIME.updateSince(start);
+            event.valid = ledger != null;
+            event.commit();
+        }
+    }
+
+    private static Ledger replayAndVerify(Blockchain<MinedTransaction> blockchain, Checkpoint checkpoint,
+                                          int verifiedHeight, ChainValidationEvent event) {
+        if (checkpoint != null && !checkpoint.matches(blockchain))
+            checkpoint = null;
+        int trustedHeight = Math.max(checkpoint == null ? 0 : checkpoint.getHeight(),
+                Math.min(verifiedHeight, blockchain.length()));
+        event.height = blockchain.length();
+        event.trustedHeight = trustedHeight;
+
+        // Make sure all balances are positive.
+        long phase = System.nanoTime();
+        Ledger ledger = replay(blockchain, checkpoint, blockchain.length());
+        boolean valid = true;
+        for (BigDecimal balance : ledger.getBalances().values()) {
+
+            if (balance.compareTo(BigDecimal.ZERO) < 0) {
+                valid = false;
+                break;
+            }
+        }
+        event.replayTime = System.nanoTime() - phase;
+        if (!valid)
+            return null;
+
+        // Make sure the fees and the rewards are correct.
+        phase = System.nanoTime();
+        valid = verifyRules(blockchain.getBlocks(), trustedHeight);
+        event.rulesTime = System.nanoTime() - phase;
+        if (!valid)
+            return null;
+
+        // Make sure the chain is correct
+        phase = System.nanoTime();
+        valid = blockchain.verifyChain(trustedHeight);
+        event.blocksTime = System.nanoTime() - phase;
+        return valid ? ledger : null;
+    }
+
+    /**
+     * Verifies the mining fees and rewards of the blocks above the trusted height,
+     * and that no sender sends to himself.
+     *
+     * @param blocks        The blocks of the chain.
+     * @param trustedHeight The number of blocks, from the first, that were already verified.
+     * @return true if the blocks follow the rules, false otherwise.
+     */
+    private static boolean verifyRules(List<Block<MinedTransaction>> blocks, int trustedHeight) {
         MinedTransaction transaction;
-        BigDecimal miningReward = INIT_REWARD;
-        int blockCounter = 0;
-        for (Block<MinedTransaction> block : blockchain.getBlocks()) {
+        BigDecimal miningReward = getReward(trustedHeight + 1);
+        int blockCounter = trustedHeight;
+        for (int i = trustedHeight; i < blocks.size(); ++i) {
+            Block<MinedTransaction> block = blocks.get(i);
             transaction = block.getData();
             // Check mining fee
             if (transaction.getMiningFee().compareTo(transaction.getAmount().multiply(FEES_PERCENTAGE)) != 0)
@@ -298,45 +794,81 @@ public class User implements Serializable {
                 miningReward = miningReward.multiply(BigDecimal.valueOf(0.5));
 
         }
+        return true;
+    }
 
-        // Make sure the chain is correct
-        return blockchain.verifyChain();
+    /**
+     * Records a checkpoint at the last multiple of {@link #CHECKPOINT_INTERVAL} blocks,
+     * if it's above the newest checkpoint, and drops the checkpoints the chain doesn't
+     * hold anymore. Must be called while holding the write lock, right after the
+     * chain was verified.
+     */
+    private void updateCheckpoints() {
+        List<Checkpoint> kept = new ArrayList<>(CHECKPOINTS_KEPT);
+        for (Checkpoint checkpoint : getCheckpoints()) {
+            if (checkpoint.matches(blockchain))
+                kept.add(checkpoint);
+        }
+        int height = blockchain.length() / CHECKPOINT_INTERVAL * CHECKPOINT_INTERVAL;
+        if (height > 0 && (kept.isEmpty() || kept.get(0).getHeight() < height)) {
+            // The balances are carried on from the newest checkpoint.
+            Checkpoint newest = kept.isEmpty() ? null : kept.get(0);
+            kept.add(0, replay(blockchain, newest, height).toCheckpoint());
+            if (kept.size() > CHECKPOINTS_KEPT)
+                kept.remove(kept.size() - 1);
+        }
+        checkpoints = Collections.unmodifiableList(kept);
     }
 
     /**
-     * Calculate the net worth of all the users.
+     * Gets the newest checkpoint the given blockchain holds.
      *
-     * @return A hash map containing the net worth of all the users.
+     * @param blockchain The blockchain.
+     * @return The checkpoint, null if the blockchain holds none of the checkpoints.
      */
-    private static HashMap<PublicKey, BigDecimal> getAllNetWorth(Blockchain<MinedTransaction> blockchain) {
-
-        HashMap<PublicKey, BigDecimal> accounts = new HashMap<>();
-        for (Block<MinedTransaction> block : blockchain.getBlocks()) {
-
-            MinedTransaction transaction = block.getData();
-
-            // Get & change sender account.
-            PublicKey senderPublicKey = transaction.getSenderPublicKey();
-            BigDecimal senderNetWorth = accounts.get(senderPublicKey);
-            if (senderNetWorth == null) senderNetWorth = BigDecimal.ZERO;
-            accounts.put(senderPublicKey, senderNetWorth.subtract(transaction.getAmount()));
-
-            // Get & change receiver account.
-            PublicKey receiverPublicKey = transaction.getReceiverPublicKey();
-            BigDecimal receiverNetWorth = accounts.get(receiverPublicKey);
-            if (receiverNetWorth == null) receiverNetWorth = BigDecimal.ZERO;
-            accounts.put(receiverPublicKey, receiverNetWorth.add(transaction.getAmount()
-                    .subtract(transaction.getMiningFee())));
+    private Checkpoint getCheckpoint(Blockchain<MinedTransaction> blockchain) {
+        for (Checkpoint checkpoint : getCheckpoints()) {
+            if (checkpoint.matches(blockchain))
+                return checkpoint;
+        }
+        return null;
+    }
 
-            // Get & change miner account.
-            PublicKey minerPublicKey = transaction.getMinerPublicKey();
-            BigDecimal minerNetWorth = accounts.get(minerPublicKey);
-            if (minerNetWorth == null) minerNetWorth = BigDecimal.ZERO;
-            accounts.put(minerPublicKey, minerNetWorth.add(transaction.getMiningFee()
-                    .add(transaction.getMiningReward())));
+    /**
+     * Calculate the net worth of all the users after the first blocks of the chain.
+     *
+     * @param blockchain The blockchain.
+     * @param checkpoint A checkpoint of the blockchain to start from, or null to start from the first block.
+     * @param height     The number of blocks to account for.
+     * @return The ledger holding the net worth of all the users.
+     */
+    private static Ledger replay(Blockchain<MinedTransaction> blockchain, Checkpoint checkpoint, int height) {
+        Ledger ledger = checkpoint == null ? new Ledger() : new Ledger(checkpoint);
+        List<Block<MinedTransaction>> blocks = blockchain.getBlocks();
+        for (int i = ledger.getHeight(); i < height; ++i)
+            ledger.apply(blocks.get(i));
+        return ledger;
+    }
 
-        }
-        return accounts;
+    /**
+     * Gets the ledger at the end of the chain, it's rebuilt from the nearest
+     * checkpoint if the chain was changed without it (from outside this user).
+     * The ledger is rebuilt from the immutable snapshot without any lock, so
+     * the readers never hold back the changes of the chain.
+     *
+     * @return The ledger of the chain.
+     */
+    private Ledger getLedger() {
+        ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+        LedgerState state = ledgerState.get();
+        if (state != null && state.snapshot == snapshot)
+            return state.ledger;
+
+        Blockchain<MinedTransaction> chain = new Blockchain<>(snapshot);
+        Ledger ledger = replay(chain, getCheckpoint(chain), snapshot.size());
+        // Kept for the next readers, unless a ledger was published meanwhile.
+        ledgerState.compareAndSet(state, new LedgerState(ledger, snapshot));
+        return ledger;
     }
 
     /**
@@ -346,25 +878,22 @@ public class User implements Serializable {
      * @return AThe net worth the user.
      */
     public BigDecimal getNetWorth(PublicKey account) {
-        BigDecimal netWorth = BigDecimal.ZERO;
-        Blockchain<MinedTransaction> blockchain;
-        synchronized (this.blockchain) {
-            blockchain = this.blockchain.clone();
-        }
-
-        for (Block<MinedTransaction> block : blockchain.getBlocks()) {
-            MinedTransaction transaction = block.getData();
-
-            if (transaction.getSenderPublicKey().equals(account))
-                netWorth = netWorth.subtract(transaction.getAmount());
-
-            if (transaction.getReceiverPublicKey().equals(account))
-                netWorth = netWorth.add(transaction.getAmount().subtract(transaction.getMiningFee()));
+        return getLedger().getBalance(account);
+    }
 
-            if (transaction.getMinerPublicKey().equals(account))
-                netWorth = netWorth.add(transaction.getMiningFee().add(transaction.getMiningReward()));
-        }
-        return netWorth;
+    /**
+     * Creates a thread factory for daemon threads, so the shared
+     * executors never keep the application from exiting.
+     *
+     * @param name The name given to the threads.
+     * @return The thread factory.
+     */
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     ////////////////////////////////////////////////////////////////////////////////
@@ -375,6 +904,39 @@ public class User implements Serializable {
         return blockchain;
     }
 
+    /**
+     * Get the newest checkpoint verified by this user.
+     *
+     * @return The newest checkpoint, null if there's none.
+     */
+    public Checkpoint getCheckpoint() {
+        List<Checkpoint> checkpoints = getCheckpoints();
+        return checkpoints.isEmpty() ? null : checkpoints.get(0);
+    }
+
+    /**
+     * Get the checkpoints verified by this user.
+     *
+     * @return The checkpoints, the newest first.
+     */
+    public List<Checkpoint> getCheckpoints() {
+        List<Checkpoint> checkpoints = this.checkpoints;
+        return checkpoints == null ? Collections.<Checkpoint>emptyList() : checkpoints;
+    }
+
+    /**
+     * Set the checkpoints to trust, they must have been verified by this user.
+     * Only the newest {@value #CHECKPOINTS_KEPT} are kept.
+     *
+     * @param checkpoints The checkpoints, in any order.
+     */
+    public void setCheckpoints(Collection<Checkpoint> checkpoints) {
+        List<Checkpoint> sorted = new ArrayList<>(checkpoints);
+        sorted.sort(Comparator.comparingInt(Checkpoint::getHeight).reversed());
+        this.checkpoints = Collections.unmodifiableList(
+                new ArrayList<>(sorted.subList(0, Math.min(CHECKPOINTS_KEPT, sorted.size()))));
+    }
+
     public String getAlias() {
         return clientSocket.getAlias();
     }
@@ -386,17 +948,26 @@ public class User implements Serializable {
      * @return The alias of the public key.
      */
     public String getAlias(PublicKey publicKey) {
-        for (ClientSocket clientSocket : getClients()) {
-            if (clientSocket.getPublicKey().equals(publicKey))
-                return clientSocket.getAlias();
-        }
-        return "";
+        ClientSocket known = client.clients.findByPublicKey(publicKey);
+        return known == null ? "" : known.getAlias();
     }
 
+    /**
+     * Gets the other users known by this user.
+     *
+     * @return A copy of the users, in the order they became known.
+     */
     public Vector<ClientSocket> getClients() {
-        synchronized (this.client) {
-            return client.clients;
-        }
+        return new Vector<>(client.clients.asList());
+    }
+
+    /**
+     * Gets the address book of the other users known by this user.
+     *
+     * @return The address book, it isn't copied.
+     */
+    public AddressBook getAddressBook() {
+        return client.clients;
     }
 
     public String getIpAddress() {
@@ -425,6 +996,47 @@ public class User implements Serializable {
         }
     }
 
+    /**
+     * Registers a listener to be told about the changes of the chain.
+     *
+     * @param listener The listener to add.
+     */
+    public synchronized void addChainListener(ChainListener listener) {
+        if (chainListeners == null)
+            chainListeners = new CopyOnWriteArrayList<>();
+        chainListeners.add(listener);
+    }
+
+    /**
+     * Stops telling a listener about the changes of the chain.
+     *
+     * @param listener The listener to remove.
+     */
+    public synchronized void removeChainListener(ChainListener listener) {
+        if (chainListeners != null)
+            chainListeners.remove(listener);
+    }
+
+    public TrafficCounter getTraffic() {
+        return traffic;
+    }
+
+    public NodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    public OrphanPool getOrphans() {
+        return orphans;
+    }
+
+    public BlockStore getBlockStore() {
+        return blockStore;
+    }
+
+    public void setBlockStore(BlockStore blockStore) {
+        this.blockStore = blockStore;
+    }
+
     public LinkedBlockingQueue<Transaction> getTransactionPool() {
         synchronized (transactionPool) {
             return transactionPool;
@@ -509,12 +1121,52 @@ public class User implements Serializable {
         this.window = window;
     }
 
+    /**
+     * Sets where the log of this user is written instead of the standard output,
+     * like a structured log of a node without a window.
+     *
+     * @param log Writes a message of the log, null for the standard output.
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log;
+    }
+
+    /**
+     * Writes a message to the log of this user only, not to its window.
+     *
+     * @param message The message.
+     */
+    public void log(String message) {
+        Consumer<String> log = this.log;
+        if (log == null)
+            System.out.println(message);
+        else
+            log.accept(message);
+    }
+
     public void printOnWindow(String message) {
-        System.out.println(message);
+        log(message);
         if (window != null)
             window.updateLog(message);
     }
 
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A ledger with the snapshot of the chain it was built for.
+     */
+    private final static class LedgerState {
+        private final Ledger ledger;
+        private final ChainSnapshot<MinedTransaction> snapshot;
+
+        private LedgerState(Ledger ledger, ChainSnapshot<MinedTransaction> snapshot) {
+            this.ledger = ledger;
+            this.snapshot = snapshot;
+        }
+    }
+
     ////////////////////////////////////////////////////////////////////////////////
     //////////////////// The inner class Client ////////////////////////////////////
     ////////////////////////////////////////////////////////////////////////////////
@@ -532,10 +1184,17 @@ public class User implements Serializable {
         // Information about the server.
         private final static String SERVER_IP_ADDRESS = "127.0.0.1";
         private final static int SERVER_PORT = 2000;
+        // The time given to a connection to a node and to its response, in milliseconds.
+        private final static int CONNECT_TIMEOUT = 2000;
+        private final static int READ_TIMEOUT = 30000;
         // Information of the other clients in the network.
-        private final Vector<ClientSocket> clients;
+        private final AddressBook clients;
+        // The health of the other clients, which chooses the ones messages are sent to.
+        transient private final PeerSelector peers;
         // A global reference to stop the listener
-        transient private ServerSocket serverSocket;
+        transient private volatile ServerSocket serverSocket;
+        // Validates the messages received while listening, null when not listening.
+        transient private volatile InboundPipeline inbound;
 
         /**
          * A default constructor that initialize Client object
@@ -543,10 +1202,43 @@ public class User implements Serializable {
          * server to get the list of all other users on the network.
          */
         public Client() {
-            clients = new Vector<>();
+            clients = new AddressBook();
+            peers = new PeerSelector(PeerSelector.MAX_ACTIVE_PEERS);
             addClient(clientSocket);
         }
 
+        /**
+         * Asks the other users for their chains, a chain preferred over the one
+         * of this user by {@link Blockchain#compareForks} replaces it if it's valid.
+         *
+         * @return true if the chain of this user was replaced, false otherwise.
+         */
+        public boolean syncChain() {
+            ChainSnapshot<MinedTransaction> before = blockchain.snapshot();
+            for (ClientSocket client : activePeers())
+                requestChain(client);
+            return blockchain.snapshot() != before;
+        }
+
+        /**
+         * Asks another user for its chain, it replaces the chain of this user
+         * if it's preferred and valid.
+         *
+         * @param client The other user.
+         */
+        @SuppressWarnings("unchecked")
+        private void requestChain(ClientSocket client) {
+            ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+            Vector<Object> response = sendMessage(client, new ChainRequest(snapshot.size(), snapshot.totalWork(),
+                    snapshot.isEmpty() ? null : snapshot.last().getHash()));
+            if (response == null)
+                return;
+            for (Object object : response) {
+                if (object instanceof Blockchain)
+                    replaceChain((Blockchain<MinedTransaction>) object);
+            }
+        }
+
         /**
          * Connects to the server and gets a list of all users on the network.
          */
@@ -571,17 +1263,22 @@ public class User implements Serializable {
         @Override
         public void run() {
             ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_THREADS);
+            InboundPipeline pipeline = new InboundPipeline(User.this, InboundPipeline.DEFAULT_WORKERS);
+            pipeline.start();
+            inbound = pipeline;
             try (ServerSocket serverSocketLocal = new ServerSocket(getPort())) {
                 serverSocket = serverSocketLocal;
                 while (true) {
                     printOnWindow("Client is listening on port: " + getPort() + ".");
                     // Listen on the socket in a new thread
-                    executor.submit(new ClientThread(serverSocketLocal.accept(), User.this));
+                    executor.submit(new ClientThread(serverSocketLocal.accept(), User.this, pipeline));
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
             // Shutdown all threads
+            inbound = null;
+            pipeline.close();
             executor.shutdown();
             try {
                 if (!executor.awaitTermination(SHUTDOWN_WAITING_TIME, TimeUnit.SECONDS))
@@ -591,6 +1288,25 @@ public class User implements Serializable {
             }
         }
 
+        /**
+         * Gets the pipeline validating the messages received by the listener.
+         *
+         * @return The pipeline, null if the listener isn't running.
+         */
+        public InboundPipeline getInbound() {
+            return inbound;
+        }
+
+        /**
+         * Checks whether the listener accepts connections from other users.
+         *
+         * @return true if the listener is running, false otherwise.
+         */
+        public boolean isListening() {
+            ServerSocket serverSocket = this.serverSocket;
+            return serverSocket != null && serverSocket.isBound() && !serverSocket.isClosed();
+        }
+
         /**
          * Terminate the thread running on the client listener.
          */
@@ -603,19 +1319,43 @@ public class User implements Serializable {
         }
 
         /**
-         * Broadcasts an object to all other nodes on the network.
+         * Broadcasts an object to the active nodes on the network, the fastest first.
          *
          * @param message The object to send.
          */
         private void broadcast(Serializable message) {
+            for (ClientSocket client : activePeers()) {
+                sendMessage(client, message);
+            }
+        }
 
-            Vector<ClientSocket> clone;
-            synchronized (clients) {
-                clone = new Vector<>(clients);
+        /**
+         * Chooses the nodes the messages are sent to, see {@link PeerSelector},
+         * after dropping the nodes that are dead for too long.
+         *
+         * @return The active nodes, the best first.
+         */
+        private List<ClientSocket> activePeers() {
+            long now = System.currentTimeMillis();
+            for (ClientSocket evicted : peers.evict(clients.asList(), now)) {
+                clients.remove(evicted);
+                log("Evicted the peer " + evicted.getIpAddress() + ":" + evicted.getPort() + ".");
             }
-            for (ClientSocket client : clone) {
-                sendMessage(client, message);
+            List<ClientSocket> others = new ArrayList<>(clients.size());
+            for (ClientSocket client : clients) {
+                if (!client.getIpAddress().equals(getIpAddress()) || client.getPort() != getPort())
+                    others.add(client);
             }
+            return peers.select(others, now);
+        }
+
+        /**
+         * Records that a node sent a message, so it's alive.
+         *
+         * @param client The node.
+         */
+        public void recordSeen(ClientSocket client) {
+            peers.get(client, System.currentTimeMillis()).recordSeen(System.currentTimeMillis());
         }
 
         /**
@@ -628,8 +1368,42 @@ public class User implements Serializable {
         private Vector<Object> sendMessage(ClientSocket receiver, Serializable message) {
             if (receiver.getIpAddress().equals(getIpAddress()) && receiver.getPort() == getPort())
                 return new Vector<>();
-            try (Socket socket = new Socket(receiver.getIpAddress(), receiver.getPort());
-                 ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            MessageSendEvent event = new MessageSendEvent();
+            event.begin();
+            long start = System.nanoTime();
+            AtomicLong served = new AtomicLong();
+            Vector<Object> response = null;
+            try {
+                response = exchange(receiver, message, served);
+                return response;
+            } finally {
+                PeerHealth health = peers.get(receiver, System.currentTimeMillis());
+                if (response != null)
+                    health.recordSuccess((System.nanoTime() - start) / 1e6, served.get(), System.currentTimeMillis());
+                else
+                    health.recordFailure(System.currentTimeMillis());
+                event.end();
+                if (event.shouldCommit()) {
+                    event.port = getPort();
+                    event.receiver = receiver.getIpAddress() + ":" + receiver.getPort();
+                    event.messageType = message == null ? null : message.getClass().getSimpleName();
+                    event.delivered = response != null;
+                    event.commit();
+                }
+            }
+        }
+
+        /**
+         * Sends an object to a node and reads its response, see {@link #sendMessage}.
+         *
+         * @param served Counts the bytes of the response.
+         * @return The response of the server, null if the exchange failed.
+         */
+        private Vector<Object> exchange(ClientSocket receiver, Serializable message, AtomicLong served) {
+            long start = System.nanoTime();
+            try (Socket socket = connect(receiver);
+                 ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                         traffic.countSent(socket.getOutputStream())))) {
 
                 // Send the clientSocket so the receiver save it.
                 out.writeObject(clientSocket);
@@ -637,9 +1411,12 @@ public class User implements Serializable {
                 out.writeObject(message);
                 out.flush();
                 // Receive the response.
-                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                        traffic.countBytes(socket.getInputStream(), served)))) {
                     // Receive response.
-                    return (Vector<Object>) in.readObject();
+                    Vector<Object> response = (Vector<Object>) in.readObject();
+                    metrics.getBroadcastLatency(receiver).updateSince(start);
+                    return response;
                 } catch (Exception e) {
                     e.printStackTrace();
                     return null;
@@ -652,29 +1429,39 @@ public class User implements Serializable {
         }
 
         /**
-         * Add a client to the list of clients.
-         *
-         * @param object The client to add (referenced as {@link Object}).
+         * Connects to a node, a node that doesn't accept or respond in time fails the exchange.
          */
-        public void addClient(Object object) {
+        private Socket connect(ClientSocket receiver) throws IOException {
+            Socket socket = new Socket();
             try {
-                if (object != null) {
-                    ClientSocket client = (ClientSocket) object;
-                    synchronized (clients) {
-                        // Insure that the client doesn't already exist.
-                        for (ClientSocket thatClient : clients) {
-                            if (client.getIpAddress().equals(thatClient.getIpAddress())
-                                    && client.getPort() == thatClient.getPort())
-                                return;
-                        }
-                        clients.add(client);
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
+                socket.connect(new InetSocketAddress(receiver.getIpAddress(), receiver.getPort()), CONNECT_TIMEOUT);
+                socket.setSoTimeout(READ_TIMEOUT);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
             }
         }
 
+        /**
+         * Gets the health of the other nodes.
+         *
+         * @return The selector holding the health of the nodes.
+         */
+        public PeerSelector getPeers() {
+            return peers;
+        }
+
+        /**
+         * Add a client to the list of clients, unless a client with its address is known.
+         *
+         * @param object The client to add (referenced as {@link Object}), ignored if it isn't a client.
+         */
+        public void addClient(Object object) {
+            if (object instanceof ClientSocket)
+                clients.add((ClientSocket) object);
+        }
+
     }
 
 }
@@ -0,0 +1,47 @@
+package com.atypon.utility;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * A utility class to help with writing files safely.
+ */
+public final class FileUtility {
+
+    /**
+     * Writes the data to a temporary file next to the target then moves it over
+     * the target, so a reader sees either the old or the new content, never a
+     * partially written file.
+     *
+     * @param target The file to write.
+     * @param data   The content of the file.
+     * @param force  Whether to force the content to the disk before the move.
+     * @throws IOException if the writing or the moving fails.
+     */
+    public static void writeAtomically(Path target, byte[] data, boolean force) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            if (force)
+                channel.force(true);
+        }
+        try {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * A private constructor to enforce non-instantiability.
+     */
+    private FileUtility() {
+    }
+}
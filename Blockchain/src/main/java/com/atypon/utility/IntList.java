@@ -0,0 +1,86 @@
+package com.atypon.utility;
+
+import java.util.Arrays;
+
+/**
+ * A growing list of ints, kept in ascending order by its users (like the
+ * heights of the blocks of an account), so the number of values below a
+ * bound is found by a binary search.
+ * A single thread adds the values, the other threads may read meanwhile:
+ * a value is published by the size, so a reader sees the values added
+ * before the size it read.
+ * Removing values isn't safe while others read.
+ */
+public final class IntList {
+    private volatile int[] values;
+    private volatile int size;
+
+    /**
+     * Initialize an empty list.
+     */
+    public IntList() {
+        this.values = new int[4];
+    }
+
+    /**
+     * Adds a value to the end of the list.
+     *
+     * @param value The value, not less than the last value.
+     */
+    public void add(int value) {
+        int[] values = this.values;
+        if (size == values.length)
+            this.values = values = Arrays.copyOf(values, values.length * 2);
+        values[size] = value;
+        // Publishes the value.
+        size = size + 1;
+    }
+
+    /**
+     * Gets the value at the given index.
+     *
+     * @param index The index of the value.
+     * @return The value.
+     * @throws IndexOutOfBoundsException if the list has no value at the index.
+     */
+    public int get(int index) {
+        // The size is read first, the array read afterwards holds its values.
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return values[index];
+    }
+
+    /**
+     * Counts the values less than the given bound.
+     *
+     * @param bound The bound.
+     * @return The number of values less than the bound.
+     */
+    public int countBelow(int bound) {
+        int size = this.size;
+        int[] values = this.values;
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < bound)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Removes the values from the given index to the end.
+     *
+     * @param size The number of values to keep.
+     */
+    public void truncate(int size) {
+        if (size < this.size)
+            this.size = Math.max(size, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,167 @@
+package com.atypon.utility;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+/**
+ * Writes JSON to a stream as it's produced, so a long list is sent without
+ * building it in memory first. The commas between the members and the
+ * elements are added by the writer, the caller only opens and closes the
+ * objects and the arrays in order.
+ * Not threadsafe.
+ */
+public final class JsonWriter implements Flushable {
+    private final Writer out;
+    // Whether the current object or array (one bit per level, the deepest last) has a member yet.
+    private long hasMember;
+    private int depth;
+    // Whether a name was written and its value is expected.
+    private boolean afterName;
+
+    /**
+     * Initialize a writer.
+     *
+     * @param out The stream the JSON is written to.
+     */
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name The name.
+     * @return This writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null)
+            out.write("null");
+        else
+            writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes an amount as a string, so its digits survive the parsers that read numbers as doubles.
+     *
+     * @param value The amount.
+     * @return This writer.
+     * @throws IOException if the writing fails.
+     */
+    public JsonWriter value(BigDecimal value) throws IOException {
+        return value(value == null ? null : value.toPlainString());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private JsonWriter open(char bracket) throws IOException {
+        separate();
+        if (depth == Long.SIZE)
+            throw new IllegalStateException("JSON nested too deep!");
+        out.write(bracket);
+        hasMember &= ~(1L << depth);
+        ++depth;
+        return this;
+    }
+
+    private JsonWriter close(char bracket) throws IOException {
+        if (depth == 0)
+            throw new IllegalStateException("No object or array to close!");
+        --depth;
+        out.write(bracket);
+        return this;
+    }
+
+    /**
+     * Writes the comma before a member or an element that isn't the first one.
+     */
+    private void separate() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth == 0)
+            return;
+        long bit = 1L << (depth - 1);
+        if ((hasMember & bit) != 0)
+            out.write(',');
+        hasMember |= bit;
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20)
+                        out.write(String.format("\\u%04x", (int) c));
+                    else
+                        out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,139 @@
+package com.atypon.utility;
+
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * The signature schemes that can be used to sign and verify the data
+ * on the blockchain, each scheme knows its key algorithm and its key size.
+ * The scheme is stored with every signature so a chain that holds
+ * signatures made by different schemes stays verifiable.
+ * Immutable thus threadsafe.
+ */
+public enum SignatureScheme {
+    // The original scheme, 1024-bit RSA keys with SHA-1 digests.
+    SHA1_WITH_RSA("SHA1WithRSA", "RSA", 1024),
+    // Edwards-curve signatures, small keys and signatures (needs Java 15+).
+    ED25519("Ed25519", "Ed25519", 255);
+
+    // The scheme used when none is specified.
+    public final static SignatureScheme DEFAULT = SHA1_WITH_RSA;
+
+    private final String signatureAlgorithm;
+    private final String keyAlgorithm;
+    private final int keySize;
+
+    /**
+     * Initialize the scheme.
+     *
+     * @param signatureAlgorithm The name of the algorithm used by {@link Signature}.
+     * @param keyAlgorithm       The name of the algorithm used by {@link KeyPairGenerator}.
+     * @param keySize            The size of the key in bits.
+     */
+    SignatureScheme(String signatureAlgorithm, String keyAlgorithm, int keySize) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.keyAlgorithm = keyAlgorithm;
+        this.keySize = keySize;
+    }
+
+    /**
+     * Creates a key pair generator for this scheme.
+     *
+     * @return A key pair generator initialized with the scheme key size.
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported by the running JVM.
+     */
+    public KeyPairGenerator createKeyPairGenerator() throws NoSuchAlgorithmException {
+        KeyPairGenerator instance = KeyPairGenerator.getInstance(keyAlgorithm);
+        instance.initialize(keySize);
+        return instance;
+    }
+
+    /**
+     * Signs the data with the given private key.
+     *
+     * @param privateKey The key to sign with.
+     * @param data       The data to sign.
+     * @return The raw bytes of the signature.
+     * @throws GeneralSecurityException if the key doesn't belong to this scheme.
+     */
+    public byte[] sign(PrivateKey privateKey, byte[] data) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(signatureAlgorithm);
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    /**
+     * Verifies that the data were signed with the private key associated with the public key.
+     *
+     * @param publicKey The key to verify with.
+     * @param data      The signed data.
+     * @param signature The raw bytes of the signature.
+     * @return true if the signature is correct, false otherwise (including malformed signatures).
+     * @throws GeneralSecurityException if the key doesn't belong to this scheme.
+     */
+    public boolean verify(PublicKey publicKey, byte[] data, byte[] signature) throws GeneralSecurityException {
+        Signature verifier = Signature.getInstance(signatureAlgorithm);
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        try {
+            return verifier.verify(signature);
+        } catch (SignatureException e) {
+            // The signature couldn't even be decoded, so it's not a valid one.
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether a key was generated for this scheme.
+     *
+     * @param key The key to check.
+     * @return true if the key can be used with this scheme, false otherwise.
+     */
+    public boolean supports(Key key) {
+        return key != null && this == of(key);
+    }
+
+    /**
+     * Find the scheme a key belongs to.
+     *
+     * @param key The public or private key.
+     * @return The scheme of the key, or null if no scheme uses the key algorithm.
+     */
+    public static SignatureScheme of(Key key) {
+        String algorithm = key.getAlgorithm();
+        if (SHA1_WITH_RSA.keyAlgorithm.equalsIgnoreCase(algorithm))
+            return SHA1_WITH_RSA;
+        // The JDK reports Ed25519 keys under the family name 'EdDSA'.
+        if (ED25519.keyAlgorithm.equalsIgnoreCase(algorithm) || "EdDSA".equalsIgnoreCase(algorithm))
+            return ED25519;
+        return null;
+    }
+
+    /**
+     * Decodes a public key of this scheme from its X.509 encoding.
+     *
+     * @param encoded The encoded key, as returned by {@link PublicKey#getEncoded()}.
+     * @return The decoded public key.
+     * @throws GeneralSecurityException if the encoding doesn't belong to this scheme.
+     */
+    public PublicKey decodePublicKey(byte[] encoded) throws GeneralSecurityException {
+        return KeyFactory.getInstance(keyAlgorithm).generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public int getKeySize() {
+        return keySize;
+    }
+}
@@ -44,6 +44,20 @@ public class BlockTest {
 
     }
 
+    @Test
+    public void parallelMiningTest() {
+        BlockFactory.setMiningThreads(4);
+        try {
+            firstBlock = BlockFactory.getFirstMinedInstance(tranWithMiner);
+            secondBlock = BlockFactory.getMinedInstance(firstBlock, tranWithMiner);
+        } finally {
+            BlockFactory.setMiningThreads(1);
+        }
+        assertTrue(firstBlock.verifyFirstBlock());
+        assertTrue(secondBlock.verifyBlock());
+        previousHashTest();
+    }
+
     private void blockCreationTest() {
         assertTrue(firstBlock.verifyBlock());
         assertTrue(secondBlock.verifyBlock());
@@ -11,8 +11,14 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.*;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.junit.Assert.*;
 
@@ -92,10 +98,10 @@ public class BlockchainTest {
     private void addBlock() {
         Block<MinedTransaction> block = BlockFactory.getMinedInstance(blockchain.firstBlock(), tranWithMiner1);
         blockchain.addBlock(block);
-        assertEquals(block, blockchain.getBlocks().elementAt(1));
+        assertEquals(block, blockchain.getBlocks().get(1));
 
         assertTrue(blockchain.addBlock(tranWithMiner2));
-        assertEquals(tranWithMiner2, blockchain.getBlocks().elementAt(2).getData());
+        assertEquals(tranWithMiner2, blockchain.getBlocks().get(2).getData());
 
         blockchain.removeLastBlock();
         blockchain.removeLastBlock();
@@ -150,4 +156,125 @@ public class BlockchainTest {
         blockchain.removeLastBlock();
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void forkChoiceTest() {
+        Blockchain<MinedTransaction> first = blockchain.clone();
+        assertTrue(first.addBlock(tranWithMiner1));
+        Blockchain<MinedTransaction> second = blockchain.clone();
+        assertTrue(second.addBlock(tranWithMiner2));
+        assertEquals(first.snapshot().totalWork(), second.snapshot().totalWork());
+
+        // Same work: the lower hash of the last block wins, whichever chain is asked.
+        boolean firstWins = first.lastBlock().getHash().compareTo(second.lastBlock().getHash()) < 0;
+        Blockchain<MinedTransaction> winner = firstWins ? first : second;
+        Blockchain<MinedTransaction> loser = firstWins ? second : first;
+        assertTrue(Blockchain.compareForks(winner.snapshot(), loser.snapshot()) > 0);
+        assertFalse(winner.replaceChain(loser));
+        assertTrue(loser.replaceChain(winner));
+        assertEquals(winner, loser);
+        assertEquals(0, Blockchain.compareForks(winner.snapshot(), loser.snapshot()));
+
+        // More work wins over more blocks.
+        BigInteger work = Difficulty.work(blockchain.firstBlock());
+        assertTrue(Blockchain.compareForks(work.add(BigInteger.ONE), "b", work, "a") > 0);
+        assertTrue(Blockchain.compareForks(BigInteger.ZERO, null, work, "a") < 0);
+    }
+
+    @Test
+    public void serializeTest() throws Exception {
+        assertTrue(blockchain.addBlock(tranWithMiner1));
+        assertEquals(blockchain, read(write(blockchain)));
+
+        // A forged number of blocks isn't allocated for, the read fails at the missing blocks.
+        byte[] forged = write(new Blockchain<MinedTransaction>());
+        forged[forged.length - 5] = 0x7f;
+        forged[forged.length - 4] = forged[forged.length - 3] = forged[forged.length - 2] = (byte) 0xff;
+        try {
+            read(forged);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void indexTest() {
+        Block<MinedTransaction> first = blockchain.firstBlock();
+        assertTrue(blockchain.addBlock(tranWithMiner1));
+        Block<MinedTransaction> second = blockchain.lastBlock();
+
+        assertSame(first, blockchain.getBlockByHeight(0));
+        assertSame(second, blockchain.getBlockByHeight(1));
+        assertNull(blockchain.getBlockByHeight(2));
+        assertSame(second, blockchain.getBlockByHash(second.getHash()));
+        assertEquals(0, blockchain.getHeight(first.getHash()));
+        assertTrue(blockchain.containsDataId(tranWithMiner1.getId()));
+        assertFalse(blockchain.containsDataId(tranWithMiner2.getId()));
+
+        // A fork from a clone doesn't show in the original and the other way around.
+        Blockchain<MinedTransaction> fork = blockchain.clone();
+        blockchain.removeLastBlock();
+        assertNull(blockchain.getBlockByHash(second.getHash()));
+        assertFalse(blockchain.containsDataId(tranWithMiner1.getId()));
+        assertTrue(blockchain.addBlock(tranWithMiner2));
+        assertFalse(fork.containsDataId(tranWithMiner2.getId()));
+        assertSame(second, fork.getBlockByHash(second.getHash()));
+
+        // The same data at another height is found at its new height.
+        assertTrue(blockchain.addBlock(tranWithMiner1));
+        assertEquals(2, blockchain.getHeight(blockchain.lastBlock().getHash()));
+        assertTrue(blockchain.containsDataId(tranWithMiner1.getId()));
+        assertTrue(blockchain.verifyChain());
+
+        // The indexes follow a replacement.
+        assertTrue(fork.replaceChain(blockchain));
+        assertTrue(fork.containsDataId(tranWithMiner2.getId()));
+        assertNull(fork.getBlockByHash(second.getHash()));
+    }
+
+    @Test
+    public void accountHistoryTest() {
+        PublicKey sender = tranWithMiner1.getSenderPublicKey();
+        PublicKey miner = tranWithMiner1.getMinerPublicKey();
+        assertTrue(blockchain.addBlock(tranWithMiner1));
+        assertTrue(blockchain.addBlock(tranWithMiner2));
+
+        assertEquals(3, blockchain.getAccountHistorySize(sender));
+        assertEquals(3, blockchain.getAccountHistorySize(miner));
+        assertEquals(0, blockchain.getAccountHistorySize(KeyFactory.getKeyInstance().getPublic()));
+        assertEquals(Arrays.asList(blockchain.getBlockByHeight(2), blockchain.getBlockByHeight(1)),
+                blockchain.getAccountHistory(sender, 0, 2));
+        assertEquals(Collections.singletonList(blockchain.firstBlock()), blockchain.getAccountHistory(sender, 2, 2));
+        assertTrue(blockchain.getAccountHistory(sender, 3, 2).isEmpty());
+
+        // A rollback doesn't show in a clone and the other way around.
+        Blockchain<MinedTransaction> fork = blockchain.clone();
+        blockchain.removeLastBlock();
+        assertEquals(2, blockchain.getAccountHistorySize(sender));
+        assertEquals(3, fork.getAccountHistorySize(sender));
+        assertEquals(blockchain.lastBlock(), blockchain.getAccountHistory(miner, 0, 1).get(0));
+
+        // The history of a chain built on a list is indexed from the list.
+        Blockchain<MinedTransaction> loaded = BlockchainFactory.getInstance(new ArrayList<>(fork.getBlocks()));
+        assertEquals(fork.getAccountHistory(sender, 1, 5), loaded.getAccountHistory(sender, 1, 5));
+        loaded.removeLastBlock();
+        assertTrue(loaded.addBlock(tranWithMiner2));
+        assertEquals(fork.getAccountHistorySize(sender), loaded.getAccountHistorySize(sender));
+    }
+
+    private static byte[] write(Blockchain<MinedTransaction> blockchain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(blockchain);
+        }
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Blockchain<MinedTransaction> read(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Blockchain<MinedTransaction>) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.atypon.blockchain;
+
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.TransactionFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChainSnapshotTest {
+    private final static int NUMBER_OF_BLOCKS = 40;
+    private List<Block<MinedTransaction>> blocks;
+
+    @Before
+    public void setUp() {
+        KeyPair keyPair = KeyFactory.getKeyInstance();
+        Transaction transaction = TransactionFactory.getInstance(keyPair.getPublic(), keyPair.getPublic(),
+                BigDecimal.ONE, keyPair.getPrivate());
+        MinedTransaction data = TransactionFactory.getMinedInstance(transaction, keyPair.getPublic(),
+                BigDecimal.ZERO, BigDecimal.ZERO);
+        // The snapshots don't verify the blocks, so only the nonces differ.
+        blocks = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_BLOCKS; ++i)
+            blocks.add(new Block<>("", data, (long) i));
+    }
+
+    @Test
+    public void appendSharesTheOlderVersionsTest() {
+        ChainSnapshot<MinedTransaction> empty = ChainSnapshot.empty();
+        ChainSnapshot<MinedTransaction> snapshot = empty;
+        List<ChainSnapshot<MinedTransaction>> versions = new ArrayList<>();
+        for (Block<MinedTransaction> block : blocks) {
+            versions.add(snapshot);
+            snapshot = snapshot.append(block);
+        }
+        assertEquals(blocks, snapshot);
+        // Every older version still holds its own blocks.
+        for (int i = 0; i < versions.size(); ++i)
+            assertEquals(blocks.subList(0, i), versions.get(i));
+        assertTrue(empty.isEmpty());
+    }
+
+    @Test
+    public void divergingVersionsTest() {
+        ChainSnapshot<MinedTransaction> base = ChainSnapshot.<MinedTransaction>empty()
+                .append(blocks.get(0)).append(blocks.get(1));
+        ChainSnapshot<MinedTransaction> first = base.append(blocks.get(2));
+        // The slot after the base is taken, so the second branch gets its own copy.
+        ChainSnapshot<MinedTransaction> second = base.append(blocks.get(3));
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(1), blocks.get(2)), first);
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(1), blocks.get(3)), second);
+
+        ChainSnapshot<MinedTransaction> removed = first.removeLast();
+        assertEquals(base, removed);
+        assertEquals(blocks.get(4), removed.append(blocks.get(4)).last());
+        assertEquals(blocks.get(2), first.last());
+    }
+
+    @Test
+    public void droppedVersionTest() {
+        ChainSnapshot<MinedTransaction> tip = ChainSnapshot.<MinedTransaction>empty()
+                .append(blocks.get(0)).append(blocks.get(1));
+        // A candidate that is dropped doesn't keep the slot after the tip.
+        ChainSnapshot<MinedTransaction> dropped = tip.append(blocks.get(2));
+        ChainSnapshot<MinedTransaction> next = tip.append(blocks.get(3)).append(blocks.get(4));
+        assertTrue(next.sharesStorage(tip));
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(1), blocks.get(3), blocks.get(4)), next);
+        assertEquals(2, next.heightOfHash(blocks.get(3).getHash()));
+        assertEquals(3, next.heightOfHash(blocks.get(4).getHash()));
+        assertEquals(-1, next.heightOfHash(blocks.get(2).getHash()));
+        assertEquals(next.size(), next.accountHistorySize(blocks.get(0).getData().getSenderPublicKey()));
+        assertEquals(Arrays.asList(3, 2), next.accountHistory(blocks.get(0).getData().getSenderPublicKey(), 0, 2));
+
+        // The dropped version still holds its own blocks, and copies them once built upon.
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(1), blocks.get(2)), dropped);
+        assertEquals(2, dropped.heightOfHash(blocks.get(2).getHash()));
+        ChainSnapshot<MinedTransaction> fork = dropped.append(blocks.get(5)).append(blocks.get(6));
+        assertFalse(fork.sharesStorage(tip));
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(1), blocks.get(2), blocks.get(5), blocks.get(6)), fork);
+        assertEquals(blocks.get(4), next.last());
+    }
+
+    @Test
+    public void baseListTest() {
+        ChainSnapshot<MinedTransaction> snapshot = ChainSnapshot.of(blocks.subList(0, 3));
+        assertSame(snapshot, ChainSnapshot.of(snapshot));
+        ChainSnapshot<MinedTransaction> shorter = snapshot.removeLast().removeLast();
+        assertEquals(blocks.subList(0, 1), shorter);
+        assertEquals(Arrays.asList(blocks.get(0), blocks.get(5)), shorter.append(blocks.get(5)));
+        assertEquals(blocks.subList(0, 3), snapshot);
+    }
+
+    @Test
+    public void workTest() {
+        MinedTransaction data = blocks.get(0).getData();
+        BigInteger target = Difficulty.INITIAL_TARGET;
+        Block<MinedTransaction> first = new Block<>("", data, 0L, 0, Difficulty.FIRST_BLOCK_TARGET);
+        Block<MinedTransaction> easy = new Block<>(first.getHash(), data, 1L, 1, target);
+        Block<MinedTransaction> hard = new Block<>(first.getHash(), data, 2L, 1, target.shiftRight(2));
+        assertEquals(Difficulty.work(easy).shiftLeft(2), Difficulty.work(hard));
+        assertEquals(BigInteger.ONE.shiftLeft(Block.FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS), Difficulty.work(first));
+        // A legacy block counts as its leading zeros.
+        assertEquals(Difficulty.work(easy), Difficulty.work(new Block<>(first.getHash(), data, 3L)));
+
+        ChainSnapshot<MinedTransaction> base = ChainSnapshot.of(Arrays.asList(first, easy));
+        ChainSnapshot<MinedTransaction> longer = base.append(easy).append(easy);
+        assertEquals(Difficulty.work(first).add(Difficulty.work(easy).multiply(BigInteger.valueOf(3))),
+                longer.totalWork());
+        assertEquals(Difficulty.work(first), longer.workBelow(1));
+        assertEquals(base.totalWork(), longer.removeLast().removeLast().totalWork());
+
+        // A shorter fork with more work is preferred.
+        ChainSnapshot<MinedTransaction> heavier = base.removeLast().append(hard);
+        assertEquals(1, heavier.commonHeight(longer));
+        assertTrue(heavier.totalWork().compareTo(longer.totalWork()) > 0);
+        assertTrue(Blockchain.compareForks(heavier, longer) > 0);
+        assertEquals(BigInteger.ZERO, ChainSnapshot.empty().totalWork());
+    }
+
+    @Test
+    public void indexedBaseTest() {
+        List<Block<MinedTransaction>> base = new IndexedList(blocks);
+        ChainSnapshot<MinedTransaction> snapshot = ChainSnapshot.of(base);
+        assertEquals(5, snapshot.heightOfHash(blocks.get(5).getHash()));
+        // The blocks share their data, so the first one has the data ID.
+        assertEquals(0, snapshot.heightOfDataId(blocks.get(5).getDataId()));
+        assertEquals(ChainSnapshot.of(blocks).totalWork(), snapshot.totalWork());
+        assertEquals(blocks.get(3).getHash(), snapshot.hashAt(3));
+        // A chain trusted as a whole is verified without decoding its blocks.
+        assertTrue(new Blockchain<>(base).verifyChain(NUMBER_OF_BLOCKS));
+
+        // The appended blocks are found above the base.
+        Block<MinedTransaction> block = new Block<>("", blocks.get(0).getData(), (long) NUMBER_OF_BLOCKS);
+        ChainSnapshot<MinedTransaction> longer = snapshot.append(block);
+        assertEquals(NUMBER_OF_BLOCKS, longer.heightOfHash(block.getHash()));
+        assertEquals(block.getHash(), longer.hashAt(NUMBER_OF_BLOCKS));
+        assertEquals(snapshot.totalWork().add(Difficulty.work(block)), longer.totalWork());
+        assertEquals(-1, longer.removeLast().removeLast().heightOfHash(blocks.get(NUMBER_OF_BLOCKS - 1).getHash()));
+    }
+
+    @Test
+    public void blockchainSnapshotTest() {
+        Blockchain<MinedTransaction> blockchain = new Blockchain<>(blocks.subList(0, 2));
+        ChainSnapshot<MinedTransaction> snapshot = blockchain.snapshot();
+        Blockchain<MinedTransaction> clone = blockchain.clone();
+        assertSame(snapshot, clone.snapshot());
+
+        blockchain.removeLastBlock();
+        // The snapshot and the clone don't see the change.
+        assertEquals(2, snapshot.size());
+        assertEquals(2, clone.length());
+        assertEquals(1, blockchain.length());
+    }
+
+    /**
+     * A base that knows the hashes, the data IDs and the work of its blocks,
+     * and fails if one of its blocks is decoded.
+     */
+    private final static class IndexedList extends AbstractList<Block<MinedTransaction>> implements BlockIndexedList {
+        private final List<Block<MinedTransaction>> blocks;
+
+        private IndexedList(List<Block<MinedTransaction>> blocks) {
+            this.blocks = blocks;
+        }
+
+        @Override
+        public Block<MinedTransaction> get(int index) {
+            throw new AssertionError("Block " + index + " was decoded.");
+        }
+
+        @Override
+        public int size() {
+            return blocks.size();
+        }
+
+        @Override
+        public String getHash(int index) {
+            return blocks.get(index).getHash();
+        }
+
+        @Override
+        public int heightOfHash(String hash, int height) {
+            for (int i = 0; i < height; ++i)
+                if (blocks.get(i).getHash().equals(hash))
+                    return i;
+            return -1;
+        }
+
+        @Override
+        public int heightOfDataId(String id, int height) {
+            for (int i = 0; i < height; ++i)
+                if (blocks.get(i).getDataId().equals(id))
+                    return i;
+            return -1;
+        }
+
+        @Override
+        public BigInteger workBelow(int height) {
+            BigInteger work = BigInteger.ZERO;
+            for (int i = 0; i < height; ++i)
+                work = work.add(Difficulty.work(blocks.get(i)));
+            return work;
+        }
+    }
+}
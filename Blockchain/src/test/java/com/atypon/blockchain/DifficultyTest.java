@@ -0,0 +1,127 @@
+package com.atypon.blockchain;
+
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.BlockFactory;
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.TransactionFactory;
+import com.atypon.storage.BlockCodec;
+import com.atypon.utility.Hash;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DifficultyTest {
+    private MinedTransaction data;
+
+    @Before
+    public void setUp() {
+        KeyPair sender = KeyFactory.getKeyInstance();
+        KeyPair receiver = KeyFactory.getKeyInstance();
+        Transaction transaction = TransactionFactory.getInstance(sender.getPublic(), receiver.getPublic(),
+                BigDecimal.ONE, sender.getPrivate());
+        data = TransactionFactory.getMinedInstance(transaction, receiver.getPublic(),
+                BigDecimal.valueOf(0.02), BigDecimal.TEN);
+    }
+
+    @Test
+    public void legacyBlockTest() throws Exception {
+        Block<MinedTransaction> legacy = new Block<>("abc", data, 42L);
+        assertTrue(legacy.isLegacy());
+        // Hashed as before the timestamps.
+        assertEquals(Hash.hash("abc", "42", data.hash()), legacy.getHash());
+        Block<MinedTransaction> decoded = BlockCodec.decode(BlockCodec.encode(legacy));
+        assertEquals(legacy, decoded);
+        assertTrue(decoded.isLegacy());
+
+        Block<MinedTransaction> timestamped = new Block<>("abc", data, 42L, 1000, Difficulty.INITIAL_TARGET);
+        assertNotEquals(legacy.getHash(), timestamped.getHash());
+        assertEquals(timestamped, BlockCodec.decode(BlockCodec.encode(timestamped)));
+
+        // A legacy block may only follow legacy blocks.
+        assertTrue(Difficulty.verifyHeader(Collections.singletonList(legacy), legacy, 0));
+        assertFalse(Difficulty.verifyHeader(Collections.singletonList(timestamped), legacy, 0));
+    }
+
+    @Test
+    public void targetTest() {
+        assertEquals(Difficulty.INITIAL_TARGET, Difficulty.targetOf(Block.NUMBER_OF_LEADING_ZEROS));
+        assertTrue(Difficulty.meetsTarget("03ff" + repeat('f', 60), Difficulty.INITIAL_TARGET));
+        assertFalse(Difficulty.meetsTarget("0400" + repeat('0', 60), Difficulty.INITIAL_TARGET));
+        assertFalse(Difficulty.isValidTarget(Difficulty.INITIAL_TARGET.add(BigInteger.ONE)));
+        assertFalse(Difficulty.isValidTarget(BigInteger.ZERO));
+
+        Block<MinedTransaction> first = BlockFactory.getFirstMinedInstance(data);
+        assertTrue(first.verifyFirstBlock());
+        Block<MinedTransaction> second = BlockFactory.getNextMinedInstance(Collections.singletonList(first), data);
+        assertEquals(Difficulty.INITIAL_TARGET, second.getTarget());
+        assertTrue(second.verifyBlock());
+        assertFalse(second.verifyFirstBlock());
+    }
+
+    @Test
+    public void retargetTest() {
+        long interval = Difficulty.TARGET_INTERVAL;
+        // On time: unchanged.
+        assertEquals(Difficulty.INITIAL_TARGET.shiftRight(2), Difficulty.nextTarget(
+                chain(Difficulty.RETARGET_WINDOW, interval, Difficulty.INITIAL_TARGET.shiftRight(2))));
+        // Twice as fast: twice as hard.
+        BigInteger target = Difficulty.INITIAL_TARGET.shiftRight(2);
+        assertEquals(target.divide(BigInteger.valueOf(2)), Difficulty.nextTarget(
+                chain(Difficulty.RETARGET_WINDOW, interval / 2, target)));
+        // Much faster: at most MAX_ADJUSTMENT times as hard.
+        assertEquals(target.divide(BigInteger.valueOf(Difficulty.MAX_ADJUSTMENT)), Difficulty.nextTarget(
+                chain(Difficulty.RETARGET_WINDOW, 0, target)));
+        // Much slower: at most MAX_ADJUSTMENT times as easy, never easier than the initial target.
+        assertEquals(target.multiply(BigInteger.valueOf(Difficulty.MAX_ADJUSTMENT)), Difficulty.nextTarget(
+                chain(Difficulty.RETARGET_WINDOW, interval * 100, target)));
+        assertEquals(Difficulty.INITIAL_TARGET, Difficulty.nextTarget(
+                chain(Difficulty.RETARGET_WINDOW, interval * 100, Difficulty.INITIAL_TARGET.shiftRight(1))));
+        // Between the retargets, the target of the parent.
+        assertEquals(target, Difficulty.nextTarget(chain(Difficulty.RETARGET_WINDOW + 1, 0, target)));
+        // After the first block, the initial target.
+        assertEquals(Difficulty.INITIAL_TARGET, Difficulty.nextTarget(chain(1, 0, target)));
+    }
+
+    @Test
+    public void timestampTest() {
+        List<Block<MinedTransaction>> blocks = chain(5, 1000, Difficulty.INITIAL_TARGET);
+        // The median of 0, 1000, ..., 4000.
+        assertEquals(2001, Difficulty.minimumTimestamp(blocks));
+        BigInteger target = Difficulty.nextTarget(blocks);
+        assertTrue(Difficulty.verifyHeader(blocks, new Block<>("", data, 0L, 2001, target), 5000));
+        assertFalse(Difficulty.verifyHeader(blocks, new Block<>("", data, 0L, 2000, target), 5000));
+        // Too far ahead of the clock.
+        assertFalse(Difficulty.verifyHeader(blocks, new Block<>("", data, 0L,
+                5001 + Difficulty.MAX_FUTURE_DRIFT, target), 5000));
+        // Not the expected target.
+        assertFalse(Difficulty.verifyHeader(blocks, new Block<>("", data, 0L, 3000,
+                target.subtract(BigInteger.ONE)), 5000));
+    }
+
+    /**
+     * Makes the headers of a chain, spaced by the given interval, mined at the given target.
+     */
+    private List<Block<MinedTransaction>> chain(int size, long interval, BigInteger target) {
+        List<Block<MinedTransaction>> blocks = new ArrayList<>();
+        blocks.add(new Block<>("", data, 0L, 0, Difficulty.FIRST_BLOCK_TARGET));
+        for (int i = 1; i < size; ++i)
+            blocks.add(new Block<>("", data, 0L, i * interval, target));
+        return blocks;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder string = new StringBuilder();
+        for (int i = 0; i < count; ++i)
+            string.append(c);
+        return string.toString();
+    }
+}
@@ -3,9 +3,11 @@ package com.atypon.blockchain.content;
 import com.atypon.factory.KeyFactory;
 import com.atypon.factory.TransactionFactory;
 import com.atypon.utility.Randomize;
+import com.atypon.utility.SignatureScheme;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ObjectInputStream;
 import java.math.BigDecimal;
 import java.security.KeyPair;
 
@@ -52,6 +54,28 @@ public class TransactionTest {
         assertEquals(this.transaction.getAmount(), amount);
     }
 
+    @Test
+    public void signatureSchemesTest() {
+        KeyPair ed25519KeyPair = KeyFactory.getKeyInstance(SignatureScheme.ED25519);
+        Transaction transaction = TransactionFactory.getInstance(ed25519KeyPair.getPublic(),
+                receiverKeyPair.getPublic(), amount, ed25519KeyPair.getPrivate());
+        assertEquals(SignatureScheme.ED25519, transaction.getSignatureScheme());
+        assertTrue(transaction.verifySignature());
+        assertEquals(SignatureScheme.SHA1_WITH_RSA, this.transaction.getSignatureScheme());
+
+        // A signature tagged with another scheme than the sender's key is rejected.
+        Transaction mistagged = new Transaction(transaction.getId(), transaction.getSenderPublicKey(),
+                transaction.getReceiverPublicKey(), amount, transaction.getSignature(), SignatureScheme.SHA1_WITH_RSA);
+        assertFalse(mistagged.verifySignature());
+
+        // A signature that was changed is rejected.
+        byte[] signature = transaction.getSignature();
+        signature[0] ^= 1;
+        Transaction forged = new Transaction(transaction.getId(), transaction.getSenderPublicKey(),
+                transaction.getReceiverPublicKey(), amount, signature, transaction.getSignatureScheme());
+        assertFalse(forged.verifySignature());
+    }
+
     @Test
     public void hashConsistencyTest() {
         assertEquals(transaction.hash(), transaction.hash());
@@ -94,5 +118,19 @@ public class TransactionTest {
         assertNotEquals(minedTransaction.hash(), transaction.hash());
     }
 
+    @Test
+    public void readLegacyTransactionTest() throws Exception {
+        // Written by the version before the signature schemes, with a hexadecimal signature.
+        try (ObjectInputStream in = new ObjectInputStream(getClass().getResourceAsStream("legacy-transactions.ser"))) {
+            Transaction legacy = (Transaction) in.readObject();
+            MinedTransaction legacyMined = (MinedTransaction) in.readObject();
+            assertEquals(SignatureScheme.SHA1_WITH_RSA, legacy.getSignatureScheme());
+            assertTrue(legacy.verifySignature());
+            assertEquals(legacy.getSignatureString(), legacyMined.getSignatureString());
+            assertTrue(legacyMined.verifySignature());
+            assertEquals(legacy.hash(), legacyMined.getHash());
+        }
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.atypon.blockchain.content;
+
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.TransactionFactory;
+import com.atypon.utility.Randomize;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.security.KeyPair;
+
+import static org.junit.Assert.*;
+
+public class VerificationCacheTest {
+
+    @Test
+    public void hitAndMissTest() {
+        VerificationCache cache = new VerificationCache(10);
+        byte[] signature = {1, 2, 3};
+
+        assertFalse(cache.isVerified("hash", signature));
+        cache.recordVerified("hash", signature);
+        assertTrue(cache.isVerified("hash", new byte[]{1, 2, 3}));
+
+        // A different signature for the same hash is a different entry.
+        assertFalse(cache.isVerified("hash", new byte[]{1, 2, 4}));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvictionTest() {
+        VerificationCache cache = new VerificationCache(2, 1);
+        byte[] signature = {0};
+
+        cache.recordVerified("a", signature);
+        cache.recordVerified("b", signature);
+        // Use 'a' so 'b' becomes the least recently used.
+        assertTrue(cache.isVerified("a", signature));
+        cache.recordVerified("c", signature);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.isVerified("a", signature));
+        assertFalse(cache.isVerified("b", signature));
+        assertTrue(cache.isVerified("c", signature));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void transactionVerificationTest() {
+        KeyPair sender = KeyFactory.getKeyInstance();
+        KeyPair receiver = KeyFactory.getKeyInstance();
+        Transaction transaction = TransactionFactory.getInstance(sender.getPublic(), receiver.getPublic(),
+                BigDecimal.valueOf(Randomize.randDouble()), sender.getPrivate());
+
+        // The factory verified the transaction, so verifying it again is a hit.
+        VerificationCache cache = Transaction.getVerificationCache();
+        long hits = cache.getHits();
+        assertTrue(transaction.verifySignature());
+        assertTrue(TransactionFactory.getMinedInstance(transaction, receiver.getPublic(),
+                BigDecimal.ZERO, BigDecimal.ZERO).verifySignature());
+        assertTrue(cache.getHits() >= hits + 2);
+
+        // A forged signature is never served from the cache.
+        byte[] signature = transaction.getSignature();
+        signature[signature.length - 1] ^= 1;
+        assertFalse(new Transaction(transaction.getId(), transaction.getSenderPublicKey(),
+                transaction.getReceiverPublicKey(), transaction.getAmount(), signature,
+                transaction.getSignatureScheme()).verifySignature());
+    }
+}
@@ -0,0 +1,55 @@
+package com.atypon.events;
+
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.User;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventsTest {
+
+    @Test
+    public void recordingTest() throws Exception {
+        Path file = Files.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{"BlockTemplate", "NonceSearch", "ChainValidation"})
+                recording.enable("com.atypon." + name);
+            recording.start();
+
+            User user = UserFactory.getInstance("Recorded", 4545);
+            user.createChain();
+            assertTrue(User.verifyChain(user.getBlockchain()));
+
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+            RecordedEvent template = find(events, "com.atypon.BlockTemplate");
+            assertTrue(template.getBoolean("validSignature"));
+            RecordedEvent search = find(events, "com.atypon.NonceSearch");
+            assertTrue(search.getBoolean("found"));
+            assertTrue(search.getLong("attempts") > 0);
+            RecordedEvent validation = find(events, "com.atypon.ChainValidation");
+            assertTrue(validation.getBoolean("valid"));
+            assertEquals(1, validation.getInt("height"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name))
+                return event;
+        }
+        fail("No " + name + " event was recorded.");
+        return null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.atypon.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsTest() {
+        // Each value falls in a bucket whose highest value is within 1/16 above it.
+        for (long value : new long[]{0, 1, 15, 16, 31, 32, 33, 1000, 123456789, Long.MAX_VALUE}) {
+            long highest = Histogram.highestValueOf(Histogram.bucketOf(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 16);
+        }
+        for (int value = 0; value < 32; ++value)
+            assertEquals(value, Histogram.highestValueOf(Histogram.bucketOf(value)));
+    }
+
+    @Test
+    public void percentileTest() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; ++i)
+            histogram.update(i);
+        histogram.update(-5);
+
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500500 / 1001.0, histogram.getMean(), 1e-9);
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(1000, histogram.getPercentile(100));
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 500 && median <= 500 + 500 / 16);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPercentileTest() {
+        new Histogram().getPercentile(101);
+    }
+}
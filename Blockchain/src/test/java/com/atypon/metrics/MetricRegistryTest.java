@@ -0,0 +1,82 @@
+package com.atypon.metrics;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricRegistryTest {
+
+    @Test
+    public void snapshotTest() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("test.counter").add(3);
+        registry.counter("test.counter").increment();
+        registry.meter("test.meter").mark(5);
+        registry.histogram("test.histogram").update(7);
+        AtomicLong value = new AtomicLong(9);
+        registry.gauge("test.gauge", value::get);
+        value.set(10);
+
+        SortedMap<String, Number> snapshot = registry.snapshot();
+        assertEquals(4L, snapshot.get("test.counter"));
+        assertEquals(5L, snapshot.get("test.meter.count"));
+        assertEquals(1L, snapshot.get("test.histogram.count"));
+        assertEquals(7L, snapshot.get("test.histogram.p99"));
+        assertEquals(10L, snapshot.get("test.gauge"));
+
+        registry.removeAll("test.h");
+        assertFalse(registry.snapshot().containsKey("test.histogram.count"));
+        assertTrue(registry.snapshot().containsKey("test.counter"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void kindMismatchTest() {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("test.metric");
+        registry.histogram("test.metric");
+    }
+
+    @Test
+    public void jmxTest() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("test.counter").add(2);
+        String name = "com.atypon.blockchain:type=Metrics,name=test";
+        assertTrue(JmxMetrics.register(registry, name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(2L, server.getAttribute(new ObjectName(name), "test.counter"));
+            // A metric created later is seen without registering again.
+            registry.counter("test.later").increment();
+            assertEquals(1L, server.getAttribute(new ObjectName(name), "test.later"));
+        } finally {
+            server.unregisterMBean(new ObjectName(name));
+        }
+    }
+
+    @Test
+    public void reporterTest() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.counter("test.counter").add(6);
+        Path directory = Files.createTempDirectory("metrics");
+        Path file = directory.resolve("metrics.txt");
+        try {
+            new MetricsReporter(registry, file, 1, TimeUnit.HOURS).close();
+            List<String> lines = Files.readAllLines(file);
+            assertTrue(lines.get(0).startsWith("#"));
+            assertTrue(lines.contains("test.counter=6"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
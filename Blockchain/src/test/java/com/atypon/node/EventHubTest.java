@@ -0,0 +1,84 @@
+package com.atypon.node;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.User;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventHubTest {
+
+    @Test
+    public void notificationsTest() throws Exception {
+        User user = UserFactory.getInstance("Events", 4640);
+        User receiver = UserFactory.getInstance("Receiver", 4641);
+        User other = UserFactory.getInstance("Other", 4642);
+        user.createChain();
+        EventHub hub = new EventHub(user, EventHub.DEFAULT_CAPACITY);
+        user.addChainListener(hub);
+        EventHub.Subscription all = hub.subscribe(null);
+        EventHub.Subscription mine = hub.subscribe(receiver.getPublicKey());
+        EventHub.Subscription others = hub.subscribe(other.getPublicKey());
+        assertEquals(3, hub.getSubscribers());
+
+        assertNotNull(user.sendTransaction(receiver.getPublicKey(), BigDecimal.TEN));
+        user.mine();
+        String hash = user.getBlockchain().lastBlock().getHash();
+
+        String transaction = mine.poll(1, TimeUnit.SECONDS);
+        assertTrue(transaction, transaction.contains("event: transaction\n"));
+        assertTrue(transaction.contains("\"height\":1"));
+        assertTrue(transaction.contains("\"amount\":\"10\""));
+        String tip = mine.poll(1, TimeUnit.SECONDS);
+        assertTrue(tip.contains("event: tip\n"));
+        assertTrue(tip.contains(hash));
+        assertEquals(tip, all.poll(1, TimeUnit.SECONDS));
+        assertEquals(tip, others.poll(1, TimeUnit.SECONDS));
+        assertNull(others.poll(10, TimeUnit.MILLISECONDS));
+
+        // The mined block is given up.
+        List<Block<MinedTransaction>> removed = user.getBlockchain().snapshot().subList(1, 2);
+        hub.chainChanged(user, 1, removed, Collections.<Block<MinedTransaction>>emptyList());
+        String reorg = mine.poll(1, TimeUnit.SECONDS);
+        assertTrue(reorg.contains("event: reorg\n"));
+        assertTrue(reorg.contains("\"depth\":1"));
+        assertTrue(mine.poll(1, TimeUnit.SECONDS).contains("event: reverted\n"));
+        assertTrue(all.poll(1, TimeUnit.SECONDS).contains("event: reorg\n"));
+        assertNull(all.poll(10, TimeUnit.MILLISECONDS));
+
+        all.close();
+        assertTrue(all.isClosed());
+        assertEquals(2, hub.getSubscribers());
+        hub.close();
+        assertEquals(0, hub.getSubscribers());
+        user.removeChainListener(hub);
+    }
+
+    @Test
+    public void slowConsumerTest() throws Exception {
+        User user = UserFactory.getInstance("Slow", 4643);
+        user.createChain();
+        EventHub hub = new EventHub(user, 2);
+        EventHub.Subscription slow = hub.subscribe(null);
+        List<Block<MinedTransaction>> added = user.getBlockchain().snapshot().subList(0, 1);
+        for (int i = 0; i < 3; ++i)
+            hub.chainChanged(user, 0, Collections.<Block<MinedTransaction>>emptyList(), added);
+
+        assertTrue(slow.isClosed());
+        assertEquals(1, hub.getDropped());
+        assertEquals(0, hub.getSubscribers());
+        // The buffer is replaced by the overflow, then the stream ends.
+        String overflow = slow.poll(1, TimeUnit.SECONDS);
+        assertTrue(overflow, overflow.contains("event: overflow\n"));
+        assertTrue(overflow.contains("\"dropped\":3"));
+        assertNull(slow.poll(1, TimeUnit.SECONDS));
+        hub.close();
+    }
+}
@@ -0,0 +1,88 @@
+package com.atypon.node;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HeadlessNodeTest {
+
+    @Test
+    public void runNodesTest() throws Exception {
+        Path storage = Files.createTempDirectory("nodes");
+        try {
+            String keys = storage.resolve("miner.keys").toString();
+            String[] minerFlags = {"--alias", "miner", "--port", "4610", "--mining-threads", "2", "--keys", keys,
+                    "--storage", storage.toString(), "--control-port", "4620", "--create-chain"};
+            String minerKey;
+            try (HeadlessNode miner = HeadlessNode.start(NodeConfig.parse(minerFlags))) {
+                assertEquals(1, miner.getUser().getBlockchain().length());
+                minerKey = miner.getController().getStatus().getPublicKey();
+
+                // A node that joins takes the chain of its peer.
+                try (HeadlessNode reader = HeadlessNode.start(NodeConfig.parse(new String[]{"--alias", "reader",
+                        "--port", "4611", "--peers", "127.0.0.1:4610", "--storage", storage.toString()}))) {
+                    assertEquals(1, reader.getUser().getBlockchain().length());
+                    String readerKey = reader.getController().getStatus().getPublicKey();
+
+                    List<String> responses = control(4620, "status", "send " + readerKey + " 10", "balance "
+                            + readerKey, "mining maybe");
+                    assertEquals("OK", responses.get(0));
+                    assertTrue(responses.contains("height=1"));
+                    assertTrue(responses.get(responses.size() - 3).startsWith("OK "));
+                    assertTrue(responses.get(responses.size() - 1).startsWith("ERROR"));
+                    // The miner mined the transaction and sent the chain to the reader.
+                    assertEquals(2, miner.getUser().getBlockchain().length());
+                    assertEquals(2, reader.getUser().getBlockchain().length());
+                    assertTrue(reader.getController().getBalance(
+                            NodeController.decodePublicKey(readerKey)).signum() > 0);
+                }
+            }
+
+            // The node is loaded from the storage with the same keys.
+            try (HeadlessNode miner = HeadlessNode.start(NodeConfig.parse(minerFlags))) {
+                assertEquals(2, miner.getUser().getBlockchain().length());
+                assertEquals(minerKey, miner.getController().getStatus().getPublicKey());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(storage)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Sends commands to the control API and reads the response lines.
+     */
+    private static List<String> control(int port, String... commands) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            for (String command : commands) {
+                out.println(command);
+                String line = in.readLine();
+                lines.add(line);
+                // The status is followed by its lines, up to the balance.
+                if (command.equals("status")) {
+                    do {
+                        line = in.readLine();
+                        lines.add(line);
+                    } while (!line.startsWith("balance="));
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,130 @@
+package com.atypon.node;
+
+import com.atypon.factory.UserFactory;
+import com.atypon.userAPI.User;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HttpApiTest {
+
+    @Test
+    public void endpointsTest() throws Exception {
+        User user = UserFactory.getInstance("Http", 4630);
+        User receiver = UserFactory.getInstance("Receiver", 4631);
+        user.createChain();
+        NodeController controller = new NodeController(user, Paths.get("4630"), () -> {
+        });
+        try (HttpApi api = new HttpApi(user, controller, 0, 2)) {
+            String base = "http://127.0.0.1:" + api.getPort();
+            String receiverKey = URLEncoder.encode(NodeController.encode(receiver.getPublicKey()), "UTF-8");
+
+            assertTrue(get(base + "/status", 200).contains("\"height\":1"));
+            String balance = get(base + "/balance", 200);
+            assertTrue(balance, balance.contains("\"balance\":\"500.00\""));
+            String tip = get(base + "/tip", 200);
+            assertTrue(tip.contains("\"height\":0"));
+            String hash = user.getBlockchain().lastBlock().getHash();
+            assertTrue(tip.contains(hash));
+            assertEquals(tip, get(base + "/blocks?hash=" + hash, 200));
+            assertEquals(tip, get(base + "/blocks?height=0", 200));
+            get(base + "/blocks?height=1", 404);
+            get(base + "/blocks?limit=5000", 400);
+            get(base + "/transactions", 405);
+
+            // The user doesn't mine, so the transaction waits in the pool.
+            String created = post(base + "/transactions", "{\"receiver\": \"" +
+                    NodeController.encode(receiver.getPublicKey()) + "\", \"amount\": \"12.5\"}", 201);
+            assertTrue(created.contains("\"amount\":\"12.5\""));
+            post(base + "/transactions", "{\"receiver\": \"" +
+                    NodeController.encode(receiver.getPublicKey()) + "\", \"amount\": \"100000\"}", 422);
+            post(base + "/transactions", "{\"receiver\": [1]}", 400);
+            String mempool = get(base + "/mempool", 200);
+            assertTrue(mempool.contains("\"size\":1"));
+            assertTrue(mempool.contains("\"totalAmount\":\"12.5\""));
+
+            user.mine();
+            String history = get(base + "/history?account=" + receiverKey, 200);
+            assertTrue(history.contains("\"total\":1"));
+            assertTrue(history.contains("\"height\":1"));
+            String page = get(base + "/blocks?from=1&limit=1", 200);
+            assertTrue(page.contains("\"from\":1"));
+            assertFalse(page.contains("\"height\":0,"));
+        }
+    }
+
+    @Test
+    public void eventsTest() throws Exception {
+        User user = UserFactory.getInstance("Stream", 4632);
+        user.createChain();
+        NodeController controller = new NodeController(user, Paths.get("4632"), () -> {
+        });
+        try (HttpApi api = new HttpApi(user, controller, 0, 2)) {
+            String base = "http://127.0.0.1:" + api.getPort();
+            get(base + "/events?account=x", 400);
+            HttpURLConnection connection = (HttpURLConnection) new URL(base + "/events").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/event-stream"));
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                assertEquals(": subscribed", in.readLine());
+                assertEquals("", in.readLine());
+                user.mine();
+                user.sendTransaction(UserFactory.getInstance("Other", 4633).getPublicKey(), BigDecimal.ONE);
+                user.mine();
+                assertTrue(in.readLine().startsWith("id: "));
+                assertEquals("event: tip", in.readLine());
+                String data = in.readLine();
+                assertTrue(data, data.contains(user.getBlockchain().lastBlock().getHash()));
+            }
+        }
+    }
+
+    @Test
+    public void parseObjectTest() {
+        Map<String, String> members = HttpApi.parseObject(" {\"a\": \"x\\\"y\", \"b\" : -1.5e3 } ");
+        assertEquals("x\"y", members.get("a"));
+        assertEquals("-1.5e3", members.get("b"));
+        assertTrue(HttpApi.parseObject("{}").isEmpty());
+    }
+
+    private static String get(String url, int status) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        return read(connection, status);
+    }
+
+    private static String post(String url, String body, int status) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return read(connection, status);
+    }
+
+    private static String read(HttpURLConnection connection, int status) throws Exception {
+        assertEquals(status, connection.getResponseCode());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0)
+                bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+package com.atypon.node;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class NodeConfigTest {
+
+    @Test
+    public void parseTest() throws Exception {
+        Path file = Files.createTempFile("node", ".properties");
+        try {
+            Files.write(file, Arrays.asList("alias=file", "port=5000", "mining-threads=2", "peers=a:1, b:2"));
+            NodeConfig config = NodeConfig.parse(new String[]{"--config", file.toString(), "--port=6000",
+                    "--create-chain", "--storage", "nodes"});
+
+            // The flags override the file.
+            assertEquals("file", config.getAlias());
+            assertEquals(6000, config.getPort());
+            assertEquals(2, config.getMiningThreads());
+            assertTrue(config.isCreateChain());
+            assertEquals(2, config.getPeers().size());
+            assertEquals("b", config.getPeers().get(1).getHost());
+            assertEquals(2, config.getPeers().get(1).getPort());
+            assertEquals(file.getFileSystem().getPath("nodes", "6000"), config.getNodeDirectory());
+            assertEquals(0, config.getControlPort());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSettingTest() throws Exception {
+        NodeConfig.parse(new String[]{"--colour", "blue"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPeerTest() throws Exception {
+        NodeConfig.parse(new String[]{"--peers", "localhost"});
+    }
+}
@@ -0,0 +1,30 @@
+package com.atypon.simulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NetworkSimulatorTest {
+
+    @Test
+    public void runTest() throws InterruptedException {
+        SimulationConfig config = new SimulationConfig(3, 1, 4, 3000, 30000, 4440, 7);
+        SimulationReport report = new NetworkSimulator(config).run();
+
+        assertTrue(report.isConverged());
+        assertTrue(report.getSubmitted() > 0);
+        assertTrue(report.getConfirmed() > 0);
+        assertTrue(report.getConfirmed() <= report.getSubmitted() - report.getRejected());
+        assertTrue(report.getLatencyPercentile(50) <= report.getLatencyPercentile(99));
+        assertEquals(3, report.getNodes().size());
+        for (SimulationReport.NodeReport node : report.getNodes()) {
+            assertEquals(report.getChainLength(), node.getChainLength());
+            assertTrue(node.getBytesSent() > 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidConfigTest() {
+        new SimulationConfig(3, 4, 4, 3000, 30000, 4440, 7);
+    }
+}
@@ -0,0 +1,228 @@
+package com.atypon.storage;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.ChainSnapshot;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.BlockFactory;
+import com.atypon.factory.BlockchainFactory;
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.TransactionFactory;
+import com.atypon.utility.Randomize;
+import com.atypon.utility.SignatureScheme;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class BlockStoreTest {
+    private final static int NUMBER_OF_BLOCKS = 4;
+    private Path directory;
+    private Blockchain<MinedTransaction> blockchain;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("block-store-test");
+        blockchain = BlockchainFactory.getFirstInstance(createTransaction(SignatureScheme.SHA1_WITH_RSA));
+        for (int i = 1; i < NUMBER_OF_BLOCKS; ++i)
+            assertTrue(blockchain.addBlock(createTransaction(i % 2 == 0 ?
+                    SignatureScheme.SHA1_WITH_RSA : SignatureScheme.ED25519)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private MinedTransaction createTransaction(SignatureScheme scheme) {
+        KeyPair sender = KeyFactory.getKeyInstance(scheme);
+        KeyPair receiver = KeyFactory.getKeyInstance();
+        Transaction transaction = TransactionFactory.getInstance(sender.getPublic(), receiver.getPublic(),
+                BigDecimal.valueOf(Randomize.randDouble()), sender.getPrivate());
+        return TransactionFactory.getMinedInstance(transaction, receiver.getPublic(),
+                BigDecimal.valueOf(Randomize.randRatio()), BigDecimal.valueOf(Randomize.randDouble()));
+    }
+
+    private void appendAll(BlockStore blockStore) throws IOException {
+        for (Block<MinedTransaction> block : blockchain.getBlocks())
+            blockStore.append(block);
+    }
+
+    private void assertStoreHolds(BlockStore blockStore, int height) throws IOException {
+        assertEquals(height, blockStore.height());
+        for (int i = 0; i < height; ++i) {
+            Block<MinedTransaction> block = blockchain.getBlocks().get(i);
+            assertEquals(block, blockStore.read(i));
+            assertEquals(block.getHash(), blockStore.getHash(i));
+            assertEquals(i, blockStore.getDataIdHeight(block.getDataId()));
+            assertEquals(blockchain.snapshot().workBelow(i + 1), blockStore.getWorkBelow(i + 1));
+        }
+    }
+
+    @Test
+    public void codecTest() throws IOException {
+        for (Block<MinedTransaction> block : blockchain.getBlocks()) {
+            Block<MinedTransaction> decoded = BlockCodec.decode(BlockCodec.encode(block));
+            assertEquals(block, decoded);
+            assertEquals(block.getHash(), decoded.getHash());
+            assertTrue(decoded.verifyBlock());
+        }
+    }
+
+    @Test
+    public void appendAndReopenTest() throws IOException {
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.ALWAYS)) {
+            appendAll(blockStore);
+            assertStoreHolds(blockStore, NUMBER_OF_BLOCKS);
+        }
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.ON_SYNC)) {
+            assertStoreHolds(blockStore, NUMBER_OF_BLOCKS);
+        }
+    }
+
+    @Test
+    public void truncateTest() throws IOException {
+        // A tiny segment size puts every block in its own segment.
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER, 1)) {
+            appendAll(blockStore);
+            blockStore.truncate(2);
+            assertStoreHolds(blockStore, 2);
+            assertFalse(Files.exists(directory.resolve("segment-00003.log")));
+
+            blockStore.append(blockchain.getBlocks().get(2));
+            assertStoreHolds(blockStore, 3);
+        }
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER, 1)) {
+            assertStoreHolds(blockStore, 3);
+            blockStore.truncate(0);
+            assertEquals(0, blockStore.height());
+        }
+    }
+
+    @Test
+    public void recoveryTest() throws IOException {
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.ON_SYNC)) {
+            appendAll(blockStore);
+        }
+        // A partially written index entry is dropped.
+        try (RandomAccessFile index = new RandomAccessFile(directory.resolve("blocks.idx").toFile(), "rw")) {
+            index.seek(index.length());
+            index.write(new byte[]{1, 2, 3});
+        }
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.ON_SYNC)) {
+            assertStoreHolds(blockStore, NUMBER_OF_BLOCKS);
+        }
+        // A block whose record was cut short is dropped.
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve("segment-00000.log").toFile(), "rw")) {
+            segment.setLength(segment.length() - 1);
+        }
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.ON_SYNC)) {
+            assertStoreHolds(blockStore, NUMBER_OF_BLOCKS - 1);
+            blockStore.append(BlockFactory.getMinedInstance(blockStore.read(NUMBER_OF_BLOCKS - 2),
+                    createTransaction(SignatureScheme.SHA1_WITH_RSA)));
+            assertEquals(NUMBER_OF_BLOCKS, blockStore.height());
+        }
+    }
+
+    @Test
+    public void lazyListAndHashLookupTest() throws IOException {
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER, 1)) {
+            appendAll(blockStore);
+            List<Block<MinedTransaction>> blocks = blockStore.asList();
+            assertEquals(blockchain.getBlocks(), blocks);
+            assertTrue(BlockchainFactory.getInstance(blocks).verifyChain());
+            // A chain on top of the list finds its blocks and its work in the index.
+            ChainSnapshot<MinedTransaction> snapshot = BlockchainFactory.getInstance(blocks).snapshot();
+            assertEquals(blockchain.snapshot().totalWork(), snapshot.totalWork());
+            assertEquals(NUMBER_OF_BLOCKS - 1, snapshot.heightOfDataId(blockchain.lastBlock().getDataId()));
+            assertEquals(1, snapshot.heightOfHash(blockchain.getBlocks().get(1).getHash()));
+            assertEquals(-1, snapshot.heightOfDataId("unknown"));
+
+            for (int i = 0; i < NUMBER_OF_BLOCKS; ++i)
+                assertEquals(i, blockStore.getHeight(blockchain.getBlocks().get(i).getHash()));
+            assertEquals(-1, blockStore.getHeight(blockchain.getBlocks().get(0).getPrvHash()));
+
+            // The index follows the truncations and the appends.
+            String lastHash = blockchain.lastBlock().getHash();
+            blockStore.truncate(1);
+            assertEquals(-1, blockStore.getHeight(lastHash));
+            assertEquals(blockchain.firstBlock(), blocks.get(0));
+            // A version of the chain without the truncated blocks still finds the kept ones.
+            ChainSnapshot<MinedTransaction> kept = snapshot.removeLast().removeLast().removeLast();
+            assertEquals(0, kept.heightOfHash(blockchain.firstBlock().getHash()));
+            assertEquals(-1, kept.heightOfHash(lastHash));
+            assertEquals(-1, kept.heightOfDataId("unknown"));
+            assertEquals(1, kept.accountHistorySize(blockchain.firstBlock().getData().getMinerPublicKey()));
+            try {
+                blocks.get(NUMBER_OF_BLOCKS - 1);
+                fail("A truncated block was read.");
+            } catch (ConcurrentModificationException e) {
+                // expected
+            }
+            blockStore.append(blockchain.getBlocks().get(1));
+            assertEquals(1, blockStore.getHeight(blockchain.getBlocks().get(1).getHash()));
+            assertEquals(2, blockStore.asList().size());
+        }
+    }
+
+    @Test
+    public void accountHistoryTest() throws IOException {
+        KeyPair account = KeyFactory.getKeyInstance();
+        PublicKey receiver = blockchain.lastBlock().getData().getReceiverPublicKey();
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER)) {
+            appendAll(blockStore);
+            // Two more blocks sent by the same account.
+            for (int i = 0; i < 2; ++i) {
+                Transaction transaction = TransactionFactory.getInstance(account.getPublic(), receiver,
+                        BigDecimal.ONE, account.getPrivate());
+                blockStore.append(BlockFactory.getMinedInstance(blockStore.read(blockStore.height() - 1),
+                        TransactionFactory.getMinedInstance(transaction, receiver, BigDecimal.ZERO, BigDecimal.ONE)));
+            }
+            assertEquals(Arrays.asList(NUMBER_OF_BLOCKS + 1, NUMBER_OF_BLOCKS),
+                    blockStore.getAccountHistory(account.getPublic(), 0, 5));
+            assertEquals(Arrays.asList(NUMBER_OF_BLOCKS + 1, NUMBER_OF_BLOCKS, NUMBER_OF_BLOCKS - 1),
+                    blockStore.getAccountHistory(receiver, 0, 5));
+            assertEquals(Collections.singletonList(NUMBER_OF_BLOCKS), blockStore.getAccountHistory(receiver, 1, 1));
+
+            // The index follows the truncations.
+            blockStore.truncate(NUMBER_OF_BLOCKS + 1);
+            assertEquals(1, blockStore.getAccountHistorySize(account.getPublic()));
+        }
+        // The index is read back, and rebuilt from the blocks if it's lost.
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER)) {
+            assertEquals(Collections.singletonList(NUMBER_OF_BLOCKS), blockStore.getAccountHistory(account.getPublic(), 0, 5));
+        }
+        Files.delete(directory.resolve("accounts.idx"));
+        try (BlockStore blockStore = BlockStore.open(directory, FsyncPolicy.NEVER)) {
+            assertEquals(2, blockStore.getAccountHistorySize(receiver));
+            for (int i = 0; i < NUMBER_OF_BLOCKS; ++i) {
+                PublicKey sender = blockchain.getBlocks().get(i).getData().getSenderPublicKey();
+                assertEquals(Collections.singletonList(i), blockStore.getAccountHistory(sender, 0, 5));
+            }
+
+            // A chain on the lazy list finds the history through the store.
+            Blockchain<MinedTransaction> loaded = BlockchainFactory.getInstance(blockStore.asList());
+            assertEquals(Collections.singletonList(blockStore.read(NUMBER_OF_BLOCKS)),
+                    loaded.getAccountHistory(account.getPublic(), 0, 5));
+            assertEquals(2, loaded.getAccountHistorySize(receiver));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.atypon.storage;
+
+import com.atypon.factory.KeyFactory;
+import com.atypon.userAPI.Checkpoint;
+import com.atypon.utility.Hash;
+import com.atypon.utility.SignatureScheme;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LedgerSnapshotStoreTest {
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ledger-snapshot-test");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private Checkpoint createCheckpoint(int height) {
+        HashMap<PublicKey, BigDecimal> balances = new HashMap<>();
+        balances.put(KeyFactory.getKeyInstance().getPublic(), BigDecimal.valueOf(height, 2));
+        balances.put(KeyFactory.getKeyInstance(SignatureScheme.ED25519).getPublic(), BigDecimal.valueOf(-height));
+        return new Checkpoint(height, Hash.hash("block " + height), balances);
+    }
+
+    @Test
+    public void codecTest() throws IOException {
+        Checkpoint checkpoint = createCheckpoint(10);
+        Checkpoint decoded = LedgerSnapshotStore.decode(LedgerSnapshotStore.encode(checkpoint));
+        assertEquals(checkpoint, decoded);
+        assertEquals(checkpoint.getBalances(), decoded.getBalances());
+
+        byte[] corrupted = LedgerSnapshotStore.encode(checkpoint);
+        corrupted[corrupted.length / 2] ^= 1;
+        try {
+            LedgerSnapshotStore.decode(corrupted);
+            fail("A corrupted snapshot was decoded.");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void writeAndReadTest() throws IOException {
+        LedgerSnapshotStore store = new LedgerSnapshotStore(directory, 2, false);
+        assertTrue(store.readAll().isEmpty());
+        Checkpoint first = createCheckpoint(10);
+        Checkpoint second = createCheckpoint(20);
+        Checkpoint third = createCheckpoint(30);
+        store.write(first);
+        store.write(third);
+        store.write(second);
+
+        // Only the newest snapshots are kept.
+        List<Checkpoint> checkpoints = store.readAll();
+        assertEquals(2, checkpoints.size());
+        assertEquals(third, checkpoints.get(0));
+        assertEquals(second, checkpoints.get(1));
+    }
+}
@@ -0,0 +1,47 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+import com.atypon.factory.KeyFactory;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class AddressBookTest {
+
+    @Test
+    public void indexTest() {
+        PublicKey key = KeyFactory.getKeyInstance().getPublic();
+        ClientSocket first = new ClientSocket("127.0.0.1", 4680, "First", key);
+        ClientSocket second = new ClientSocket("127.0.0.1", 4681, "Second", KeyFactory.getKeyInstance().getPublic());
+        // Another address of the first user.
+        ClientSocket moved = new ClientSocket("127.0.0.2", 4680, "Moved", key);
+
+        AddressBook book = new AddressBook();
+        assertTrue(book.add(first));
+        assertTrue(book.add(second));
+        assertTrue(book.add(moved));
+        // Known by the address, whatever the rest.
+        assertFalse(book.add(new ClientSocket("127.0.0.1", 4680, "Other", second.getPublicKey())));
+        assertEquals(Arrays.asList(first, second, moved), book.asList());
+
+        assertSame(second, book.get("127.0.0.1", 4681));
+        assertNull(book.get("127.0.0.1", 4682));
+        assertSame(first, book.findByPublicKey(key));
+        assertSame(second, book.findByPublicKey(second.getPublicKey()));
+
+        // The iterators see the users at the time they were made.
+        Iterator<ClientSocket> iterator = book.iterator();
+        assertTrue(book.remove(first));
+        assertFalse(book.remove(first));
+        assertSame(first, iterator.next());
+        assertEquals(Arrays.asList(second, moved), book.asList());
+        assertFalse(book.contains(first));
+        // The other address of the key takes its place.
+        assertSame(moved, book.findByPublicKey(key));
+        assertEquals(2, book.size());
+    }
+}
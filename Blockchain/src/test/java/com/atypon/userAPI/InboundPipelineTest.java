@@ -0,0 +1,79 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.TransactionFactory;
+import com.atypon.factory.UserFactory;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class InboundPipelineTest {
+
+    @Test
+    public void priorityAndDropsTest() {
+        User user = UserFactory.getInstance("Inbound", 4660);
+        User other = UserFactory.getInstance("Other", 4661);
+        other.createChain();
+        assertTrue(other.makeTransaction(user.getPublicKey(), BigDecimal.ONE));
+        assertTrue(other.mine());
+        Blockchain<MinedTransaction> chain = other.getBlockchain().clone();
+        Block<MinedTransaction> block = chain.lastBlock();
+        Transaction first = TransactionFactory.getInstance(other.getPublicKey(), user.getPublicKey(),
+                BigDecimal.ONE, other.getPrivateKey());
+        Transaction second = TransactionFactory.getInstance(other.getPublicKey(), user.getPublicKey(),
+                BigDecimal.ONE, other.getPrivateKey());
+
+        // Not started, so the messages stay queued.
+        InboundPipeline pipeline = new InboundPipeline(user, 1, 1, 1, 2);
+        try {
+            assertTrue(pipeline.submit(first, null));
+            assertTrue(pipeline.submit(new TransactionBatch(Collections.singletonList(second)), null));
+            assertTrue(pipeline.submit(chain, null));
+            assertTrue(pipeline.submit(block, null));
+
+            // Each queue is full.
+            assertFalse(pipeline.submit(second, null));
+            assertFalse(pipeline.submit(chain, null));
+            assertFalse(pipeline.submit(block, null));
+            assertEquals(1, pipeline.getDropped(InboundPipeline.Kind.TRANSACTION).getCount());
+            assertEquals(1, pipeline.getDropped(InboundPipeline.Kind.CHAIN).getCount());
+            assertEquals(1, pipeline.getDropped(InboundPipeline.Kind.BLOCK).getCount());
+            assertEquals(2, pipeline.getQueued(InboundPipeline.Kind.TRANSACTION));
+
+            // The blocks first, then the chains, then the transactions in order.
+            assertSame(block, pipeline.poll());
+            assertSame(chain, pipeline.poll());
+            assertSame(first, pipeline.poll());
+            assertTrue(pipeline.poll() instanceof TransactionBatch);
+            assertNull(pipeline.poll());
+            assertEquals(0, pipeline.getQueued(InboundPipeline.Kind.BLOCK));
+
+            // Rejected before the queues: a chain that isn't preferred, a block without its proof of work.
+            assertFalse(pipeline.submit(user.getBlockchain().clone(), null));
+            assertFalse(pipeline.submit(new Block<>(block.getPrvHash(), block.getData(), block.getNonce() + 1,
+                    block.getTimestamp(), block.getTarget().shiftRight(200)), null));
+            assertFalse(pipeline.submit(new TransactionBatch(Collections.<Transaction>emptyList()), null));
+            assertEquals(3, pipeline.getRejected().getCount());
+            // Not taken by the pipeline.
+            assertFalse(pipeline.submit(new BlockRequest(block.getHash()), null));
+            assertEquals(3, pipeline.getRejected().getCount());
+
+            // Once started, the messages reach the user.
+            pipeline.start();
+            assertTrue(pipeline.submit(new TransactionBatch(Arrays.asList(first, second)), null));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (user.getTransactionPool().size() < 2 && System.currentTimeMillis() < deadline)
+                Thread.yield();
+            assertEquals(2, user.getTransactionPool().size());
+        } finally {
+            pipeline.close();
+        }
+    }
+}
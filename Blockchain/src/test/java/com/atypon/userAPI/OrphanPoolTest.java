@@ -0,0 +1,45 @@
+package com.atypon.userAPI;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.factory.UserFactory;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrphanPoolTest {
+
+    @Test
+    public void boundsTest() {
+        User user = UserFactory.getInstance("Orphans", 4650);
+        User receiver = UserFactory.getInstance("Receiver", 4651);
+        user.createChain();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(user.makeTransaction(receiver.getPublicKey(), BigDecimal.ONE));
+            assertTrue(user.mine());
+        }
+        List<Block<MinedTransaction>> blocks = user.getBlockchain().getBlocks();
+
+        OrphanPool pool = new OrphanPool(2, 1000);
+        assertTrue(pool.add(blocks.get(1), 0));
+        assertFalse(pool.add(blocks.get(1), 0));
+        assertTrue(pool.add(blocks.get(2), 10));
+        // Full, the oldest makes room.
+        assertTrue(pool.add(blocks.get(3), 20));
+        assertEquals(2, pool.size());
+        assertFalse(pool.contains(blocks.get(1).getHash()));
+        assertNull(pool.takeChild(blocks.get(0).getHash()));
+
+        assertEquals(blocks.get(2), pool.takeChild(blocks.get(1).getHash()));
+        assertNull(pool.takeChild(blocks.get(1).getHash()));
+        assertEquals(1, pool.size());
+
+        // Expired after the maximum age.
+        assertEquals(0, pool.expire(1019));
+        assertEquals(1, pool.expire(1020));
+        assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.atypon.userAPI;
+
+import com.atypon.ClientSocket;
+import com.atypon.factory.KeyFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PeerSelectorTest {
+
+    @Test
+    public void healthTest() {
+        PeerHealth health = new PeerHealth(peer(4670), 0);
+        assertEquals(PeerHealth.DEFAULT_LATENCY, health.getScore(), 0);
+        // The first latency is taken as it is, then averaged.
+        health.recordSuccess(50, 100, 10);
+        assertEquals(50, health.getLatency(), 1e-9);
+        health.recordSuccess(150, 100, 20);
+        assertEquals(50 + PeerHealth.LATENCY_WEIGHT * 100, health.getLatency(), 1e-9);
+        assertEquals(200, health.getBytesServed());
+        assertEquals(20, health.getLastSeen());
+
+        // Demoted after too many failures in a row, with a doubling backoff.
+        for (int i = 0; i < PeerHealth.DEMOTION_FAILURES; ++i) {
+            assertFalse(health.isDemoted());
+            health.recordFailure(1000);
+        }
+        assertTrue(health.isDemoted());
+        assertFalse(health.isAvailable(1000 + PeerHealth.MIN_BACKOFF - 1));
+        assertTrue(health.isAvailable(1000 + PeerHealth.MIN_BACKOFF));
+        health.recordFailure(2000);
+        assertFalse(health.isAvailable(2000 + PeerHealth.MIN_BACKOFF));
+        assertTrue(health.isAvailable(2000 + 2 * PeerHealth.MIN_BACKOFF));
+
+        // Evicted once unheard of for too long, unless it's heard from.
+        assertFalse(health.isEvictable(20 + PeerHealth.EVICTION_AGE - 1));
+        assertTrue(health.isEvictable(20 + PeerHealth.EVICTION_AGE));
+        health.recordSeen(3000);
+        assertFalse(health.isDemoted());
+        assertFalse(health.isEvictable(20 + PeerHealth.EVICTION_AGE));
+        assertEquals(PeerHealth.DEMOTION_FAILURES + 1, health.getFailures());
+    }
+
+    @Test
+    public void selectTest() {
+        ClientSocket fast = peer(4671);
+        ClientSocket slow = peer(4672);
+        ClientSocket dead = peer(4673);
+        ClientSocket unknown = peer(4674);
+        List<ClientSocket> peers = Arrays.asList(dead, slow, unknown, fast);
+
+        PeerSelector selector = new PeerSelector(4);
+        selector.get(fast, 0).recordSuccess(10, 0, 0);
+        selector.get(slow, 0).recordSuccess(500, 0, 0);
+        for (int i = 0; i < PeerHealth.DEMOTION_FAILURES; ++i)
+            selector.get(dead, 0).recordFailure(0);
+        assertEquals(1, selector.getDemoted());
+
+        // The never contacted one is ranked by the default latency, the dead one is skipped.
+        assertEquals(Arrays.asList(fast, unknown, slow), selector.select(peers, 1));
+        // Tried again, last, once its backoff is over.
+        assertEquals(Arrays.asList(fast, unknown, slow, dead), selector.select(peers, PeerHealth.MIN_BACKOFF));
+
+        // At most the maximum number of peers.
+        PeerSelector bounded = new PeerSelector(2);
+        bounded.get(fast, 0).recordSuccess(10, 0, 0);
+        assertEquals(Arrays.asList(fast, slow), bounded.select(Arrays.asList(slow, fast), 0));
+        assertEquals(2, bounded.select(peers, 0).size());
+        assertEquals(fast, bounded.select(peers, 0).get(0));
+
+        // Evicted once unheard of for too long.
+        assertEquals(Collections.emptyList(), selector.evict(peers, PeerHealth.EVICTION_AGE - 1));
+        assertEquals(Collections.singletonList(dead), selector.evict(peers, PeerHealth.EVICTION_AGE));
+        assertNull(selector.find(dead));
+        assertEquals(0, selector.getDemoted());
+    }
+
+    private static ClientSocket peer(int port) {
+        return new ClientSocket("127.0.0.1", port, "Peer" + port, KeyFactory.getKeyInstance().getPublic());
+    }
+}
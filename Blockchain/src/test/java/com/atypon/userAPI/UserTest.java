@@ -1,9 +1,29 @@
 package com.atypon.userAPI;
 
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.factory.TransactionFactory;
 import com.atypon.factory.UserFactory;
 import org.junit.Test;
 
+import java.io.File;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -15,6 +35,277 @@ public class UserTest {
             runTest(i);
     }
 
+    @Test
+    public void makeTransactionsTest() throws Exception {
+        User sender = UserFactory.getInstance("Sender", 4444);
+        User receiver = UserFactory.getInstance("Receiver", 5555);
+        sender.createChain();
+
+        List<CompletableFuture<Boolean>> results = sender.makeTransactions(Arrays.asList(
+                new Transfer(receiver.getPublicKey(), BigDecimal.valueOf(100)),
+                new Transfer(sender.getPublicKey(), BigDecimal.valueOf(1)),
+                new Transfer(receiver.getPublicKey(), BigDecimal.valueOf(-1)),
+                new Transfer(receiver.getPublicKey(), BigDecimal.valueOf(400)),
+                new Transfer(receiver.getPublicKey(), BigDecimal.valueOf(1))));
+
+        // Only the transfers covered by the starting balance are accepted.
+        boolean[] expected = {true, false, false, true, false};
+        for (int i = 0; i < expected.length; ++i)
+            assertEquals(expected[i], results.get(i).get());
+        assertEquals(2, sender.getTransactionPool().size());
+
+        // Adding the same transactions again changes nothing.
+        assertTrue(sender.addTransactions(sender.getTransactionPool()).isEmpty());
+        assertEquals(2, sender.getTransactionPool().size());
+    }
+
+    @Test
+    public void writeAndReadUserTest() throws Exception {
+        Path directory = Files.createTempDirectory("user-test");
+        String file = directory.resolve("6666").toString();
+        try {
+            User user = UserFactory.getInstance("Writer", 6666);
+            user.createChain();
+            User receiver = UserFactory.getInstance("Reader", 7777);
+            user.getClient().addClient(receiver.getClientSocket());
+            assertTrue(user.makeTransaction(receiver.getPublicKey(), BigDecimal.ONE));
+            UserFactory.writeUser(file, user);
+            assertTrue(user.mine());
+            // The second save only appends the new block.
+            UserFactory.writeUser(file, user);
+            UserFactory.closeUser(user);
+
+            User loaded = UserFactory.readUser(file);
+            assertNotNull(loaded);
+            assertEquals(user.getBlockchain(), loaded.getBlockchain());
+            assertEquals(user.getClientSocket(), loaded.getClientSocket());
+            assertEquals(user.getPrivateKey(), loaded.getPrivateKey());
+            assertEquals(2, loaded.getClients().size());
+            assertEquals(0, loaded.getNetWorth(receiver.getPublicKey()).compareTo(
+                    user.getNetWorth(receiver.getPublicKey())));
+            UserFactory.closeUser(loaded);
+
+            // A user saved under another port isn't loaded.
+            assertNull(UserFactory.readUser(directory.resolve("7777").toString()));
+            // Nor a user serialized whole by older versions.
+            assertNull(UserFactory.readUser("1234"));
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    public void checkpointTest() throws Exception {
+        User user = UserFactory.getInstance("Miner", 8888);
+        User receiver = UserFactory.getInstance("Receiver", 9999);
+        user.createChain();
+        for (int i = 1; i < User.CHECKPOINT_INTERVAL; ++i) {
+            assertTrue(user.makeTransaction(receiver.getPublicKey(), BigDecimal.ONE));
+            assertTrue(user.mine());
+        }
+
+        Blockchain<MinedTransaction> blockchain = user.getBlockchain().clone();
+        Checkpoint checkpoint = user.getCheckpoint();
+        assertNotNull(checkpoint);
+        assertEquals(User.CHECKPOINT_INTERVAL, checkpoint.getHeight());
+        assertEquals(blockchain.lastBlock().getHash(), checkpoint.getBlockHash());
+        assertEquals(0, checkpoint.getBalances().get(receiver.getPublicKey())
+                .compareTo(user.getNetWorth(receiver.getPublicKey())));
+        assertEquals(Checkpoint.digest(checkpoint.getBalances()), checkpoint.getLedgerDigest());
+        assertTrue(User.verifyChain(blockchain, checkpoint));
+
+        // The blocks below a matching checkpoint are trusted, so its balances are used.
+        HashMap<PublicKey, BigDecimal> balances = new HashMap<>(checkpoint.getBalances());
+        balances.put(receiver.getPublicKey(), BigDecimal.valueOf(-1));
+        Checkpoint negative = new Checkpoint(checkpoint.getHeight(), checkpoint.getBlockHash(), balances);
+        assertFalse(User.verifyChain(blockchain, negative));
+
+        // A checkpoint of another chain doesn't apply, the whole chain is verified.
+        Checkpoint other = new Checkpoint(checkpoint.getHeight(), blockchain.firstBlock().getHash(), balances);
+        assertFalse(other.matches(blockchain));
+        assertTrue(User.verifyChain(blockchain, other));
+
+        // The checkpoint is saved as a ledger snapshot and the balances are recovered from it.
+        Path directory = Files.createTempDirectory("checkpoint-test");
+        String file = directory.resolve("8888").toString();
+        try {
+            UserFactory.writeUser(file, user);
+            UserFactory.closeUser(user);
+            User loaded = UserFactory.readUser(file);
+            assertNotNull(loaded);
+            assertEquals(user.getCheckpoints(), loaded.getCheckpoints());
+            assertEquals(0, loaded.getNetWorth(receiver.getPublicKey())
+                    .compareTo(user.getNetWorth(receiver.getPublicKey())));
+            UserFactory.closeUser(loaded);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    public void reorgAfterLoadTest() throws Exception {
+        Path directory = Files.createTempDirectory("reorg-test");
+        String file = directory.resolve("2020").toString();
+        try {
+            User user = UserFactory.getInstance("Writer", 2020);
+            User other = UserFactory.getInstance("Other", 2121);
+            user.createChain();
+            other.replaceChain(user.getBlockchain());
+            for (int i = 0; i < 3; ++i) {
+                assertTrue(user.makeTransaction(other.getPublicKey(), BigDecimal.ONE));
+                assertTrue(user.mine());
+            }
+            UserFactory.writeUser(file, user);
+            UserFactory.closeUser(user);
+            User loaded = UserFactory.readUser(file);
+            assertNotNull(loaded);
+
+            // A heavier fork of the first block replaces the three blocks above it.
+            for (int i = 0; i < 4; ++i) {
+                other.addTransaction(TransactionFactory.getInstance(loaded.getPublicKey(), other.getPublicKey(),
+                        BigDecimal.ONE, loaded.getPrivateKey()));
+                assertTrue(other.mine());
+            }
+            // The fork waits as orphans until its first block arrives.
+            List<Block<MinedTransaction>> fork = other.getBlockchain().getBlocks();
+            for (int i = fork.size() - 1; i > 0; --i)
+                loaded.receiveBlock(fork.get(i), null);
+            assertEquals(other.getBlockchain(), loaded.getBlockchain());
+
+            // Saving truncates the store the chain is still read from.
+            UserFactory.writeUser(file, loaded);
+            assertTrue(loaded.makeTransaction(other.getPublicKey(), BigDecimal.ONE));
+            assertFalse(loaded.getBlockchain().containsDataId("unknown"));
+            assertEquals(-1, loaded.getBlockchain().snapshot().heightOfHash(user.getBlockchain().lastBlock().getHash()));
+            assertEquals(4, loaded.getBlockchain().snapshot().accountHistorySize(other.getPublicKey()));
+            assertEquals(Arrays.asList(4, 3, 2, 1),
+                    loaded.getBlockchain().snapshot().accountHistory(other.getPublicKey(), 0, 10));
+            UserFactory.closeUser(loaded);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    @Test
+    public void replaceChainWhileReadingTest() throws Exception {
+        User miner = UserFactory.getInstance("Miner", 1212);
+        User reader = UserFactory.getInstance("Reader", 1313);
+        miner.createChain();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(miner.makeTransaction(reader.getPublicKey(), BigDecimal.ONE));
+            assertTrue(miner.mine());
+        }
+
+        // The balances are read while the chain is verified and replaced.
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicInteger reads = new AtomicInteger();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            results.add(readers.submit(() -> {
+                while (!done.get()) {
+                    BigDecimal balance = reader.getNetWorth(reader.getPublicKey());
+                    // Either the empty chain or the whole new chain is seen.
+                    assertTrue(balance.signum() == 0 || balance.compareTo(miner.getNetWorth(reader.getPublicKey())) == 0);
+                    reads.incrementAndGet();
+                }
+            }));
+        }
+        reader.replaceChain(miner.getBlockchain());
+        done.set(true);
+        for (Future<?> result : results)
+            result.get();
+        readers.shutdown();
+
+        assertTrue(reads.get() > 0);
+        assertEquals(miner.getBlockchain(), reader.getBlockchain());
+        assertEquals(0, reader.getNetWorth(reader.getPublicKey()).compareTo(
+                miner.getNetWorth(reader.getPublicKey())));
+
+        // A chain that isn't longer doesn't replace it.
+        Blockchain<MinedTransaction> shorter = miner.getBlockchain().clone();
+        shorter.removeLastBlock();
+        reader.replaceChain(shorter);
+        assertEquals(miner.getBlockchain(), reader.getBlockchain());
+    }
+
+    @Test
+    public void receiveBlocksOutOfOrderTest() {
+        User miner = UserFactory.getInstance("Miner", 1414);
+        User follower = UserFactory.getInstance("Follower", 1515);
+        miner.createChain();
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(miner.makeTransaction(follower.getPublicKey(), BigDecimal.ONE));
+            assertTrue(miner.mine());
+        }
+        List<Block<MinedTransaction>> blocks = miner.getBlockchain().getBlocks();
+
+        // The blocks wait for their parents, then connect at once.
+        assertFalse(follower.receiveBlock(blocks.get(4), null));
+        assertFalse(follower.receiveBlock(blocks.get(2), null));
+        assertFalse(follower.receiveBlock(blocks.get(3), null));
+        assertEquals(3, follower.getOrphans().size());
+        assertTrue(follower.receiveBlock(blocks.get(0), null));
+        assertEquals(1, follower.getBlockchain().length());
+        assertTrue(follower.receiveBlock(blocks.get(1), null));
+        assertEquals(miner.getBlockchain(), follower.getBlockchain());
+        assertEquals(0, follower.getOrphans().size());
+        assertEquals(0, follower.getNetWorth(follower.getPublicKey()).compareTo(
+                miner.getNetWorth(follower.getPublicKey())));
+        // A known block changes nothing.
+        assertFalse(follower.receiveBlock(blocks.get(2), null));
+    }
+
+    @Test
+    public void receiveLongerForkTest() {
+        User miner = UserFactory.getInstance("Miner", 1616);
+        User other = UserFactory.getInstance("Other", 1717);
+        miner.createChain();
+        other.replaceChain(miner.getBlockchain());
+
+        // The other user mines a block of its own on the first block.
+        assertTrue(miner.makeTransaction(other.getPublicKey(), BigDecimal.TEN));
+        other.addTransaction(miner.getTransactionPool().peek());
+        assertTrue(other.mine());
+        // The miner mines two blocks on the first block.
+        assertTrue(miner.mine());
+        assertTrue(miner.makeTransaction(other.getPublicKey(), BigDecimal.ONE));
+        assertTrue(miner.mine());
+        List<Block<MinedTransaction>> blocks = miner.getBlockchain().getBlocks();
+
+        // A fork as long as the chain doesn't replace it, a longer one does.
+        assertFalse(other.receiveBlock(blocks.get(2), null));
+        assertEquals(2, other.getBlockchain().length());
+        assertTrue(other.receiveBlock(blocks.get(1), null));
+        assertEquals(miner.getBlockchain(), other.getBlockchain());
+    }
+
+    @Test
+    public void requestMissingParentsTest() throws InterruptedException {
+        User miner = UserFactory.getInstance("Miner", 1818);
+        User follower = UserFactory.getInstance("Follower", 1919);
+        miner.runListener();
+        miner.createChain();
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(miner.makeTransaction(follower.getPublicKey(), BigDecimal.ONE));
+            assertTrue(miner.mine());
+        }
+
+        // Only the last block arrives, its parents are asked from the miner one by one.
+        follower.receiveBlock(miner.getBlockchain().lastBlock(), miner.getClientSocket());
+        for (int i = 0; i < 100 && follower.getBlockchain().length() < 4; ++i)
+            Thread.sleep(50);
+        miner.stopListener();
+        assertEquals(miner.getBlockchain(), follower.getBlockchain());
+        assertEquals(0, follower.getOrphans().size());
+    }
+
     private void runTest(int n) throws InterruptedException {
         User user1 = UserFactory.getInstance("Mohammad", 1111);
         //user1.setMiningOn(true);
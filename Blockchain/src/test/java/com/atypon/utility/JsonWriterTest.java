@@ -0,0 +1,31 @@
+package com.atypon.utility;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class JsonWriterTest {
+
+    @Test
+    public void writeTest() throws Exception {
+        StringWriter out = new StringWriter();
+        new JsonWriter(out).beginObject()
+                .name("text").value("a\"b\\c\n\u0001")
+                .name("number").value(-3)
+                .name("amount").value(new BigDecimal("1.50"))
+                .name("none").value((String) null)
+                .name("list").beginArray().value(true).beginObject().endObject().beginArray().endArray().endArray()
+                .endObject()
+                .flush();
+        assertEquals("{\"text\":\"a\\\"b\\\\c\\n\\u0001\",\"number\":-3,\"amount\":\"1.50\",\"none\":null," +
+                "\"list\":[true,{},[]]}", out.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unbalancedTest() throws Exception {
+        new JsonWriter(new StringWriter()).endObject();
+    }
+}
@@ -0,0 +1,58 @@
+package com.atypon.utility;
+
+import com.atypon.factory.KeyFactory;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+
+import static org.junit.Assert.*;
+
+public class SignatureSchemeTest {
+    private final static byte[] DATA = BitManipulation.stringToByteArray(Hash.hash("data"));
+
+    @Test
+    public void signAndVerifyTest() throws GeneralSecurityException {
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+            KeyPair keyPair = KeyFactory.getKeyInstance(scheme);
+            assertNotNull(keyPair);
+            assertEquals(scheme, SignatureScheme.of(keyPair.getPublic()));
+            assertEquals(scheme, SignatureScheme.of(keyPair.getPrivate()));
+
+            byte[] signature = scheme.sign(keyPair.getPrivate(), DATA);
+            assertTrue(scheme.verify(keyPair.getPublic(), DATA, signature));
+
+            // A changed signature is rejected.
+            signature[0] ^= 1;
+            assertFalse(scheme.verify(keyPair.getPublic(), DATA, signature));
+        }
+    }
+
+    @Test
+    public void decodePublicKeyTest() throws GeneralSecurityException {
+        for (SignatureScheme scheme : SignatureScheme.values()) {
+            KeyPair keyPair = KeyFactory.getKeyInstance(scheme);
+            assertEquals(keyPair.getPublic(), scheme.decodePublicKey(keyPair.getPublic().getEncoded()));
+        }
+    }
+
+    @Test
+    public void supportsTest() {
+        KeyPair rsa = KeyFactory.getKeyInstance(SignatureScheme.SHA1_WITH_RSA);
+        KeyPair ed25519 = KeyFactory.getKeyInstance(SignatureScheme.ED25519);
+        assertTrue(SignatureScheme.SHA1_WITH_RSA.supports(rsa.getPublic()));
+        assertFalse(SignatureScheme.SHA1_WITH_RSA.supports(ed25519.getPublic()));
+        assertTrue(SignatureScheme.ED25519.supports(ed25519.getPublic()));
+        assertFalse(SignatureScheme.ED25519.supports(rsa.getPublic()));
+        assertFalse(SignatureScheme.ED25519.supports(null));
+    }
+
+    @Test
+    public void sizeTest() throws GeneralSecurityException {
+        // The verification throughput is measured by TransactionBenchmark.
+        assertEquals(128, SignatureScheme.SHA1_WITH_RSA.sign(
+                KeyFactory.getKeyInstance(SignatureScheme.SHA1_WITH_RSA).getPrivate(), DATA).length);
+        assertEquals(64, SignatureScheme.ED25519.sign(
+                KeyFactory.getKeyInstance(SignatureScheme.ED25519).getPrivate(), DATA).length);
+    }
+}
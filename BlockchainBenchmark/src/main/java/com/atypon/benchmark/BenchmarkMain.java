@@ -0,0 +1,45 @@
+package com.atypon.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks like the JMH launcher does, taking the same command line
+ * options, but the results are written as JSON to '{@value #DEFAULT_RESULT_FILE}'
+ * unless another format or file is given, so every run leaves a result that
+ * can be compared with the results of earlier runs.
+ */
+public final class BenchmarkMain {
+    public final static String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+    public static void main(String[] args) throws CommandLineOptionException, IOException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if (commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!commandLine.getResult().hasValue())
+            options.result(DEFAULT_RESULT_FILE);
+        new Runner(options.build()).run();
+    }
+
+    /**
+     * A private constructor to enforce non-instantiability.
+     */
+    private BenchmarkMain() {
+    }
+}
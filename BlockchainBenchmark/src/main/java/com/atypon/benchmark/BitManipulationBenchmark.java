@@ -0,0 +1,59 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.Block;
+import com.atypon.utility.BitManipulation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversions of {@link BitManipulation} between byte arrays,
+ * hexadecimal strings and bit strings, on data made from a fixed seed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitManipulationBenchmark {
+    private final static long SEED = 42;
+
+    // The number of bytes converted, the size of a hash and of a public key.
+    @Param({"32", "162"})
+    public int size;
+
+    private byte[] bytes;
+    private String hex;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(SEED).nextBytes(bytes);
+        hex = BitManipulation.byteArrayToString(bytes);
+    }
+
+    @Benchmark
+    public String byteArrayToString() {
+        return BitManipulation.byteArrayToString(bytes);
+    }
+
+    @Benchmark
+    public byte[] stringToByteArray() {
+        return BitManipulation.stringToByteArray(hex);
+    }
+
+    /**
+     * Takes the bits checked by the proof of work of the first block.
+     */
+    @Benchmark
+    public String getFirstBits() {
+        return BitManipulation.getFirstBits(Block.FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS, hex);
+    }
+
+    @Benchmark
+    public String getLeadingZeros() {
+        return BitManipulation.getLeadingZeros(Block.FIRST_BLOCK_NUMBER_OF_LEADING_ZEROS);
+    }
+}
@@ -0,0 +1,51 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.factory.BlockFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures checking the proof of work of a block and mining a block at a
+ * fixed difficulty. Mining starts from a random nonce, so its time varies
+ * from one block to the other, the average over many blocks is what counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockBenchmark {
+    // The number of leading zero bits of a mined block, not less than the one of the chain.
+    @Param({"6", "8", "10"})
+    public int difficulty;
+
+    private Block<MinedTransaction> block;
+    private MinedTransaction transaction;
+
+    @Setup
+    public void setUp() {
+        List<KeyPair> accounts = Chains.accounts();
+        block = Chains.build(accounts, 1).lastBlock();
+        transaction = Chains.transaction(accounts, 1);
+    }
+
+    /**
+     * Hashes the block with its nonce and checks the leading zeros, the hash
+     * cached by the block isn't used.
+     */
+    @Benchmark
+    public boolean verifyProofOfWork() {
+        return block.verifyProofOfWork(block.getNonce(), difficulty);
+    }
+
+    @Benchmark
+    public Block<MinedTransaction> getMinedInstance() {
+        return BlockFactory.getMinedInstance(block, transaction, difficulty);
+    }
+}
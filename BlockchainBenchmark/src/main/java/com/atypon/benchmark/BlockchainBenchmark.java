@@ -0,0 +1,61 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures verifying a whole chain of the given length, once on a chain
+ * whose blocks were already verified (the hashes and the signatures are
+ * cached) and once on a fresh copy with an empty verification cache, the
+ * way a chain received from a peer is verified.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockchainBenchmark {
+    @Param({"10", "100", "1000"})
+    public int length;
+
+    private Blockchain<MinedTransaction> blockchain;
+
+    @Setup
+    public void setUp() {
+        blockchain = Chains.build(Chains.accounts(), length);
+    }
+
+    @Benchmark
+    public boolean verifyChain() {
+        return blockchain.verifyChain();
+    }
+
+    @Benchmark
+    public boolean verifyChainCold(ColdChain cold) {
+        return cold.blockchain.verifyChain();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A copy of the chain with no cached hash, made before each verification
+     * along with clearing the verification cache.
+     */
+    @State(Scope.Thread)
+    public static class ColdChain {
+        private Blockchain<MinedTransaction> blockchain;
+
+        @Setup(Level.Invocation)
+        public void setUp(BlockchainBenchmark benchmark) {
+            blockchain = Chains.copy(benchmark.blockchain);
+            Transaction.getVerificationCache().clear();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.Block;
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.BlockchainFactory;
+import com.atypon.factory.KeyFactory;
+import com.atypon.factory.TransactionFactory;
+
+import java.math.BigDecimal;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the chains used by the benchmarks. The blocks are mined at the
+ * difficulty of the chain, the transactions move fixed amounts between a
+ * fixed number of accounts, so only the keys and the nonces differ between
+ * two chains of the same length.
+ */
+final class Chains {
+    // The number of accounts the transactions move money between.
+    final static int NUMBER_OF_ACCOUNTS = 4;
+    private final static BigDecimal AMOUNT = BigDecimal.ONE;
+    private final static BigDecimal MINING_FEE_PERCENTAGE = new BigDecimal("0.01");
+    private final static BigDecimal MINING_REWARD = BigDecimal.TEN;
+
+    /**
+     * Makes the accounts of a chain.
+     *
+     * @return The key pairs of the accounts.
+     */
+    static List<KeyPair> accounts() {
+        List<KeyPair> accounts = new ArrayList<>(NUMBER_OF_ACCOUNTS);
+        for (int i = 0; i < NUMBER_OF_ACCOUNTS; ++i)
+            accounts.add(KeyFactory.getKeyInstance());
+        return accounts;
+    }
+
+    /**
+     * Makes a signed transaction from an account to the next one, mined by the account after them.
+     *
+     * @param accounts The accounts of the chain.
+     * @param index    The index of the transaction in the chain.
+     * @return The mined transaction.
+     */
+    static MinedTransaction transaction(List<KeyPair> accounts, int index) {
+        KeyPair sender = accounts.get(index % accounts.size());
+        KeyPair receiver = accounts.get((index + 1) % accounts.size());
+        KeyPair miner = accounts.get((index + 2) % accounts.size());
+        Transaction transaction = TransactionFactory.getInstance(sender.getPublic(), receiver.getPublic(),
+                AMOUNT, sender.getPrivate());
+        return TransactionFactory.getMinedInstance(transaction, miner.getPublic(), MINING_FEE_PERCENTAGE,
+                MINING_REWARD);
+    }
+
+    /**
+     * Mines a chain of the given length.
+     *
+     * @param accounts The accounts of the chain.
+     * @param length   The number of blocks, at least one.
+     * @return The chain.
+     */
+    static Blockchain<MinedTransaction> build(List<KeyPair> accounts, int length) {
+        Blockchain<MinedTransaction> blockchain = BlockchainFactory.getFirstInstance(transaction(accounts, 0));
+        for (int i = 1; i < length; ++i)
+            if (!blockchain.addBlock(transaction(accounts, i)))
+                throw new IllegalStateException("Block " + i + " wasn't added!");
+        return blockchain;
+    }
+
+    /**
+     * Copies the blocks of the chain, so the copies hold no cached hash.
+     *
+     * @param blockchain The chain to copy.
+     * @return The copy.
+     */
+    static Blockchain<MinedTransaction> copy(Blockchain<MinedTransaction> blockchain) {
+        List<Block<MinedTransaction>> blocks = new ArrayList<>(blockchain.length());
+        for (Block<MinedTransaction> block : blockchain.getBlocks()) {
+            if (block.isLegacy())
+                blocks.add(new Block<>(block.getPrvHash(), block.getData(), block.getNonce()));
+            else
+                blocks.add(new Block<>(block.getPrvHash(), block.getData(), block.getNonce(),
+                        block.getTimestamp(), block.getTarget()));
+        }
+        return BlockchainFactory.getInstance(blocks);
+    }
+
+    private Chains() {
+    }
+}
@@ -0,0 +1,55 @@
+package com.atypon.benchmark;
+
+import com.atypon.utility.BitManipulation;
+import com.atypon.utility.Hash;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Hash#hash(String)} and {@link Hash#hash(String...)} on
+ * hexadecimal strings of the given number of bytes, the strings are made from
+ * a fixed seed so every run hashes the same data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+    private final static long SEED = 42;
+
+    // The number of bytes of each hashed string, the size of a hash and of a public key.
+    @Param({"32", "162"})
+    public int size;
+
+    private String data;
+    private String[] parts;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        parts = new String[3];
+        for (int i = 0; i < parts.length; ++i) {
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            parts[i] = BitManipulation.byteArrayToString(bytes);
+        }
+        data = parts[0];
+    }
+
+    @Benchmark
+    public String hash() {
+        return Hash.hash(data);
+    }
+
+    /**
+     * Hashes three strings the way a block is hashed (previous hash, nonce and data hash).
+     */
+    @Benchmark
+    public String hashAndCombine() {
+        return Hash.hash(parts);
+    }
+}
@@ -0,0 +1,67 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.content.Transaction;
+import com.atypon.factory.KeyFactory;
+import com.atypon.utility.BitManipulation;
+import com.atypon.utility.SignatureScheme;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures signing and verifying a transaction with each signature scheme.
+ * A verification is measured both without the {@link Transaction#getVerificationCache()
+ * verification cache} (the signature itself is checked) and through it (the
+ * transaction was already verified).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+    private final static String ID = "benchmark-transaction";
+    private final static BigDecimal AMOUNT = BigDecimal.ONE;
+
+    @Param({"SHA1_WITH_RSA", "ED25519"})
+    public SignatureScheme scheme;
+
+    private KeyPair sender;
+    private KeyPair receiver;
+    private Transaction transaction;
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        sender = KeyFactory.getKeyInstance(scheme);
+        if (sender == null)
+            throw new IllegalStateException("Signature scheme " + scheme + " is not supported!");
+        receiver = KeyFactory.getKeyInstance(scheme);
+        transaction = new Transaction(ID, sender.getPublic(), receiver.getPublic(), AMOUNT, sender.getPrivate());
+        if (!transaction.verifySignature())
+            throw new IllegalStateException("The transaction signature is invalid!");
+        data = BitManipulation.stringToByteArray(transaction.hash());
+    }
+
+    /**
+     * Makes a new transaction, which hashes its data and signs the hash.
+     */
+    @Benchmark
+    public Transaction sign() {
+        return new Transaction(ID, sender.getPublic(), receiver.getPublic(), AMOUNT, sender.getPrivate());
+    }
+
+    @Benchmark
+    public boolean verify() throws GeneralSecurityException {
+        return scheme.verify(sender.getPublic(), data, transaction.getSignature());
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        return transaction.verifySignature();
+    }
+}
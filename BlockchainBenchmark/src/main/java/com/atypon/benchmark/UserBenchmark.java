@@ -0,0 +1,79 @@
+package com.atypon.benchmark;
+
+import com.atypon.blockchain.Blockchain;
+import com.atypon.blockchain.content.MinedTransaction;
+import com.atypon.factory.ClientFactory;
+import com.atypon.userAPI.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link User#getNetWorth(PublicKey)} on a chain of the given length,
+ * once when the user already holds the ledger of the chain and once for a user
+ * that was just restored with the chain, so the ledger is replayed.
+ * The users aren't connected to the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+    private final static String ALIAS = "benchmark";
+    private final static int PORT = 8888;
+
+    @Param({"100", "1000"})
+    public int length;
+
+    private KeyPair owner;
+    private Blockchain<MinedTransaction> blockchain;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        List<KeyPair> accounts = Chains.accounts();
+        owner = accounts.get(0);
+        blockchain = Chains.build(accounts, length);
+        user = restoreUser(owner, blockchain);
+        user.getNetWorth(owner.getPublic());
+    }
+
+    private static User restoreUser(KeyPair owner, Blockchain<MinedTransaction> blockchain) {
+        return new User(ClientFactory.getSocket("127.0.0.1", PORT, ALIAS, owner.getPublic()), owner.getPrivate(),
+                blockchain.clone(), Collections.emptyList(), Collections.emptyList(), false);
+    }
+
+    @Benchmark
+    public BigDecimal getNetWorth() {
+        return user.getNetWorth(owner.getPublic());
+    }
+
+    @Benchmark
+    public BigDecimal getNetWorthReplayed(RestoredUser restored) {
+        return restored.user.getNetWorth(owner.getPublic());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * A user restored with the chain before each call, so it holds no ledger.
+     */
+    @State(Scope.Thread)
+    public static class RestoredUser {
+        private User user;
+
+        @Setup(Level.Invocation)
+        public void setUp(UserBenchmark benchmark) {
+            user = restoreUser(benchmark.owner, benchmark.blockchain);
+        }
+    }
+}
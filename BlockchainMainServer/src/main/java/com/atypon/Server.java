@@ -118,6 +118,7 @@ public class Server extends Thread {
             isRunning = false;
             if (wasRunning) {
                 this.printOnWindow("Database connection closed.");
+                this.printOnWindow("Database connection pool: " + DatabaseUtility.getConnectionPool());
                 this.printOnWindow("Server has stopped.");
             }
         } catch (IOException e) {
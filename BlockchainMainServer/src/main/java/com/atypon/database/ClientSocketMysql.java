@@ -14,6 +14,9 @@ import java.util.Vector;
  * for more detailed documentation: {@see ClientSocketDAO}.
  */
 public class ClientSocketMysql implements ClientSocketDAO {
+    // The key algorithms clients may use, tried in order when decoding a key.
+    private final static String[] KEY_ALGORITHMS = {"RSA", "Ed25519"};
+
     /**
      * Retrieve a list of ClientSockets using for the given SQL statement.
      *
@@ -63,14 +66,17 @@ public class ClientSocketMysql implements ClientSocketDAO {
     }
 
     private PublicKey stringToPublicKey(String key) {
-        try {
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(BitManipulation.stringToByteArray(key));
-            return keyFactory.generatePublic(publicKeySpec);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(BitManipulation.stringToByteArray(key));
+        for (String algorithm : KEY_ALGORITHMS) {
+            try {
+                KeyFactory keyFactory = KeyFactory.getInstance(algorithm);
+                return keyFactory.generatePublic(publicKeySpec);
+            } catch (Exception e) {
+                // Not a key of this algorithm, try the next one.
+            }
         }
+        System.out.println("Couldn't decode the public key: " + key);
+        return null;
     }
 
 }
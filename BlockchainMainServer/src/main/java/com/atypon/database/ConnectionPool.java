@@ -0,0 +1,350 @@
+package com.atypon.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of database connections.
+ * At most {@link #getMaxTotal()} connections are open at once, a thread that
+ * wants one more waits for one to be returned, up to the acquire timeout.
+ * A connection is lent to a single thread at a time, and checked to be alive
+ * before it's lent. A connection kept longer than the leak timeout is taken
+ * back (closed) and reported with the place it was borrowed from, and idle
+ * connections unused for longer than the idle timeout are closed.
+ * The most recently returned connection is lent first, so the idle ones that
+ * are left over are the ones evicted.
+ * Threadsafe.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    // The time a connection has to answer the check before it's lent, in seconds.
+    private final static int VALIDATION_TIMEOUT = 2;
+    // The time between two searches for leaked and idle connections, in milliseconds.
+    private final static long MAINTENANCE_PERIOD = TimeUnit.SECONDS.toMillis(10);
+
+    private final ConnectionFactory factory;
+    private final int maxTotal;
+    private final long acquireTimeout;
+    private final long leakTimeout;
+    private final long idleTimeout;
+    // A permit for each connection that may be lent, so the lent ones are bounded.
+    private final Semaphore permits;
+    // The idle connections, the most recently returned first.
+    private final ConcurrentLinkedDeque<Idle> idle;
+    private final ConcurrentHashMap<Connection, Lease> leases;
+    private final ScheduledExecutorService maintenance;
+    // Connections opened before the last reset are closed instead of reused.
+    private volatile int generation;
+    private volatile boolean isClosed;
+
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * Initialize an empty pool, the connections are opened when needed.
+     *
+     * @param factory        Opens the connections.
+     * @param maxTotal       The largest number of open connections.
+     * @param acquireTimeout The longest wait for a connection, in milliseconds.
+     * @param leakTimeout    The longest time a connection may be kept, in milliseconds.
+     * @param idleTimeout    The longest time a connection may stay idle, in milliseconds.
+     * @throws IllegalArgumentException if the largest number of connections isn't positive.
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxTotal, long acquireTimeout, long leakTimeout, long idleTimeout) {
+        if (maxTotal <= 0)
+            throw new IllegalArgumentException("The number of connections must be positive.");
+        this.factory = factory;
+        this.maxTotal = maxTotal;
+        this.acquireTimeout = acquireTimeout;
+        this.leakTimeout = leakTimeout;
+        this.idleTimeout = idleTimeout;
+        this.permits = new Semaphore(maxTotal, true);
+        this.idle = new ConcurrentLinkedDeque<>();
+        this.leases = new ConcurrentHashMap<>();
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "connection-pool-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.maintenance.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain(System.currentTimeMillis());
+            }
+        }, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection: an idle one that is still alive, or a new one.
+     * It must be given back to {@link #release(Connection)} once done with.
+     *
+     * @return A connection lent to the calling thread only.
+     * @throws SQLTimeoutException  If no connection was returned within the acquire timeout.
+     * @throws SQLException         If the pool is closed or a new connection fails to open.
+     * @throws InterruptedException If interrupted while waiting for a connection.
+     */
+    public Connection borrow() throws SQLException, InterruptedException {
+        if (isClosed)
+            throw new SQLException("The connection pool is closed.");
+        if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("No database connection was available within " + acquireTimeout + " ms.");
+        }
+        boolean isLent = false;
+        try {
+            Connection connection = null;
+            Idle entry;
+            while (connection == null && (entry = idle.pollFirst()) != null) {
+                if (entry.generation == generation && isValid(entry.connection))
+                    connection = entry.connection;
+                else {
+                    if (entry.generation == generation)
+                        invalid.incrementAndGet();
+                    destroy(entry.connection);
+                }
+            }
+            if (connection == null) {
+                connection = factory.create();
+                open.incrementAndGet();
+                created.incrementAndGet();
+            }
+            leases.put(connection, new Lease(generation, System.currentTimeMillis()));
+            borrowed.incrementAndGet();
+            isLent = true;
+            return connection;
+        } finally {
+            if (!isLent)
+                permits.release();
+        }
+    }
+
+    /**
+     * Gives back a borrowed connection, it's kept for the next borrower unless
+     * the pool was reset or closed since it was borrowed. Never blocks.
+     *
+     * @param connection The borrowed connection.
+     * @return true if the connection was lent by the pool, false if it wasn't,
+     * or if it was already given back or taken back as a leak.
+     */
+    public boolean release(Connection connection) {
+        Lease lease = connection == null ? null : leases.remove(connection);
+        if (lease == null)
+            return false;
+        try {
+            if (isClosed || lease.generation != generation || connection.isClosed())
+                destroy(connection);
+            else {
+                idle.offerFirst(new Idle(connection, lease.generation, System.currentTimeMillis()));
+                // The pool may have been closed meanwhile.
+                if (isClosed)
+                    closeIdle();
+            }
+        } catch (SQLException e) {
+            destroy(connection);
+        } finally {
+            // Released after the connection is idle, so a new one is only opened
+            // when all the open ones are lent, which keeps the bound.
+            permits.release();
+        }
+        return true;
+    }
+
+    /**
+     * Closes the idle connections, and the lent ones when they are given back,
+     * the next borrowers get new connections. The pool stays usable.
+     */
+    public synchronized void reset() {
+        ++generation;
+        closeIdle();
+    }
+
+    /**
+     * Takes back the connections kept longer than the leak timeout and
+     * closes the ones idle for longer than the idle timeout.
+     *
+     * @param now The current time, in milliseconds.
+     */
+    void maintain(long now) {
+        for (Idle entry : idle) {
+            if (now - entry.since >= idleTimeout && idle.remove(entry)) {
+                evicted.incrementAndGet();
+                destroy(entry.connection);
+            }
+        }
+        for (Map.Entry<Connection, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (now - lease.borrowedAt >= leakTimeout && leases.remove(entry.getKey(), lease)) {
+                leaked.incrementAndGet();
+                System.out.println("A database connection was kept for " + (now - lease.borrowedAt) + " ms, closing it.");
+                lease.borrower.printStackTrace();
+                destroy(entry.getKey());
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Closes the pool and its idle connections, the lent ones are closed when given back.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        maintenance.shutdownNow();
+        closeIdle();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Setters and Getters ///////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getOpen() {
+        return open.get();
+    }
+
+    public int getActive() {
+        return leases.size();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getDestroyed() {
+        return destroyed.get();
+    }
+
+    public long getBorrowed() {
+        return borrowed.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getInvalid() {
+        return invalid.get();
+    }
+
+    public long getLeaked() {
+        return leaked.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// The inner classes /////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Opens the connections of a pool.
+     */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /**
+     * An idle connection, with the time it was given back.
+     */
+    private final static class Idle {
+        private final Connection connection;
+        private final int generation;
+        private final long since;
+
+        private Idle(Connection connection, int generation, long since) {
+            this.connection = connection;
+            this.generation = generation;
+            this.since = since;
+        }
+    }
+
+    /**
+     * A lent connection: when and where it was borrowed.
+     */
+    private final static class Lease {
+        private final int generation;
+        private final long borrowedAt;
+        private final Throwable borrower;
+
+        private Lease(int generation, long borrowedAt) {
+            this.generation = generation;
+            this.borrowedAt = borrowedAt;
+            this.borrower = new Throwable("The database connection was borrowed here.");
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Helper functions //////////////////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void closeIdle() {
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null)
+            destroy(entry.connection);
+    }
+
+    private void destroy(Connection connection) {
+        open.decrementAndGet();
+        destroyed.incrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Cannot close connection: " + e.getMessage());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////
+    //////////////////// Overridden 'Object' methods ///////////////////////////////
+    ////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "maxTotal=" + maxTotal +
+                ", open=" + getOpen() +
+                ", active=" + getActive() +
+                ", idle=" + getIdle() +
+                ", created=" + getCreated() +
+                ", destroyed=" + getDestroyed() +
+                ", borrowed=" + getBorrowed() +
+                ", timeouts=" + getTimeouts() +
+                ", invalid=" + getInvalid() +
+                ", leaked=" + getLeaked() +
+                ", evicted=" + getEvicted() +
+                '}';
+    }
+}
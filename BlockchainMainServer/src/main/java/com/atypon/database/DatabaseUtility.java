@@ -1,7 +1,10 @@
 package com.atypon.database;
 
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
 import java.sql.*;
-import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Utility class to simplify work with MySQL and handling
@@ -9,62 +12,58 @@ import java.util.concurrent.*;
  */
 public abstract class DatabaseUtility {
 
+    private final static String DRIVER = "com.mysql.cj.jdbc.Driver";
     private final static String USERNAME = "root";
     private final static String PASSWORD = "";
     private final static String HOST = "localhost";
-    private final static int TRIES_LIMIT = 10;
+    // The largest number of connections open at once, the server threads beyond it wait.
     private final static int CONNECTION_CAPACITY = 10;
-    private static String databaseName = "";
-    // Uses BlockingQueue to avoid concurrency issues if multi-threading is used.
-    private static BlockingQueue<Connection> connectionPool = new LinkedBlockingQueue<>(CONNECTION_CAPACITY);
+    // The longest wait for a connection, in milliseconds.
+    private final static long ACQUIRE_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+    // The longest time a connection may be kept before it's taken back, in milliseconds.
+    private final static long LEAK_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    // The longest time a connection may stay idle before it's closed, in milliseconds.
+    private final static long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    private static volatile String databaseName = "";
+    private static RowSetFactory rowSetFactory;
+    private final static ConnectionPool connectionPool = new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+        @Override
+        public Connection create() throws SQLException {
+            return DriverManager.getConnection("jdbc:mysql://" + HOST + "/" + databaseName, USERNAME, PASSWORD);
+        }
+    }, CONNECTION_CAPACITY, ACQUIRE_TIMEOUT, LEAK_TIMEOUT, IDLE_TIMEOUT);
+
+    static {
+        // Load the driver once, for all the connections.
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+    }
 
     /**
-     * Creates a connection with the database if the limit
-     * {@link #CONNECTION_CAPACITY} isn't reached, otherwise
-     * gets a connection from the connection pool.
+     * Borrows a connection from the connection pool, at most
+     * {@link #CONNECTION_CAPACITY} connections are open at once.
+     * It must be returned through {@link #returnConnection(Connection)}.
      *
-     * @return A connection.
-     * @throws ClassNotFoundException If the driver fails to load.
-     * @throws SQLException           If the Driver fails to connect to the database.
-     * @throws InterruptedException   If the queue fails to retrieve a connection.
+     * @return A connection, used by the calling thread only.
+     * @throws SQLException         If the Driver fails to connect to the database,
+     *                              or no connection was available in time.
+     * @throws InterruptedException If interrupted while waiting for a connection.
      */
-    public static Connection getConnection() throws ClassNotFoundException, SQLException, InterruptedException {
-        Class.forName("com.mysql.cj.jdbc.Driver");
-        if (connectionPool.size() < CONNECTION_CAPACITY)
-            return DriverManager.getConnection("jdbc:mysql://" + HOST + "/" + databaseName, USERNAME, PASSWORD);
-        else
-            return connectionPool.take();
+    public static Connection getConnection() throws SQLException, InterruptedException {
+        return connectionPool.borrow();
     }
 
     /**
-     * Returns the connection to the connection pool.
+     * Returns the connection to the connection pool, never blocks.
      *
      * @param connection The connection to be returned.
+     * @return true if the connection was borrowed from the pool, false otherwise.
      */
     public static boolean returnConnection(Connection connection) {
-        boolean isAdded = false;
-        int tries = 0;
-        // While the connection isn't added back, try to add it.
-        while (!isAdded) {
-            try {
-                connectionPool.put(connection);
-                isAdded = true;
-
-            } catch (Exception e) {
-                System.out.println("Cannot add connection!");
-                ++tries;
-                // If the tries reach the limit, break the loop to avoid an infinite loop.
-                if (tries == TRIES_LIMIT) {
-                    try {
-                        connection.close();
-                    } catch (SQLException e1) {
-                        System.out.println("Connection not added not closed!");
-                    }
-                    return false;
-                }
-            }
-        }
-        return true;
+        return connectionPool.release(connection);
     }
 
 
@@ -112,9 +111,11 @@ public abstract class DatabaseUtility {
      */
     public static boolean createDatabase(String databaseName) {
         DatabaseUtility.databaseName = databaseName;
-        try {
-            Connection connection = DriverManager.getConnection("jdbc:mysql://" + HOST, USERNAME, PASSWORD);
-            connection.createStatement().executeUpdate("CREATE DATABASE " + DatabaseUtility.databaseName);
+        // The pooled connections use the previous database.
+        connectionPool.reset();
+        try (Connection connection = DriverManager.getConnection("jdbc:mysql://" + HOST, USERNAME, PASSWORD);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE DATABASE " + DatabaseUtility.databaseName);
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -141,6 +142,8 @@ public abstract class DatabaseUtility {
 
     /**
      * Execute a MySQL query.
+     * The rows are read before the connection is returned to the pool,
+     * so the result doesn't hold the connection while it's being read.
      *
      * @param sqlStatement The SQL statement.
      * @return The ResultSet containing the result of the query.
@@ -149,9 +152,11 @@ public abstract class DatabaseUtility {
         Connection connection = null;
         try {
             connection = DatabaseUtility.getConnection();
-            if (connection != null) {
-                Statement statement = connection.createStatement();
-                return statement.executeQuery(sqlStatement);
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(sqlStatement)) {
+                CachedRowSet rows = getRowSetFactory().createCachedRowSet();
+                rows.populate(resultSet);
+                return rows;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -172,8 +177,7 @@ public abstract class DatabaseUtility {
         Connection connection = null;
         try {
             connection = DatabaseUtility.getConnection();
-            if (connection != null) {
-                Statement statement = connection.createStatement();
+            try (Statement statement = connection.createStatement()) {
                 return statement.executeUpdate(sqlStatement);
             }
         } catch (Exception e) {
@@ -186,27 +190,41 @@ public abstract class DatabaseUtility {
     }
 
     /**
-     * Close connections in the connection pool.
+     * Close connections in the connection pool, the ones in use
+     * are closed when returned. The pool opens new ones when needed.
      */
     public static void closeConnections() {
-        try {
-            while (!connectionPool.isEmpty()) {
-                Connection connection = connectionPool.take();
-                connection.close();
-            }
-        } catch (Exception e) {
-            connectionPool.clear();
-            e.printStackTrace();
-        }
+        connectionPool.reset();
     }
 
     /**
      * The number of connections available in the connection pool.
      *
-     * @return size of the connection pool.
+     * @return The number of idle connections in the connection pool.
      */
     public static int getConnectionCount() {
-        return connectionPool.size();
+        return connectionPool.getIdle();
+    }
+
+    /**
+     * Gets the connection pool, with its statistics.
+     *
+     * @return The connection pool.
+     */
+    public static ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Gets the factory of the results of the queries, created once.
+     *
+     * @return The row set factory.
+     * @throws SQLException If no row set implementation is found.
+     */
+    private static synchronized RowSetFactory getRowSetFactory() throws SQLException {
+        if (rowSetFactory == null)
+            rowSetFactory = RowSetProvider.newFactory();
+        return rowSetFactory;
     }
 
 }
@@ -0,0 +1,123 @@
+package com.atypon.database;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+    private final static long TIMEOUT = 100;
+    private final static long LEAK_TIMEOUT = 60000;
+    private final static long IDLE_TIMEOUT = 30000;
+
+    @Test
+    public void borrowReleaseTest() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(new FakeFactory(), 2, TIMEOUT, LEAK_TIMEOUT, IDLE_TIMEOUT)) {
+            Connection first = pool.borrow();
+            Connection second = pool.borrow();
+            assertNotSame(first, second);
+
+            // Bounded, the next borrower waits then gives up.
+            try {
+                pool.borrow();
+                fail();
+            } catch (SQLTimeoutException e) {
+                assertEquals(1, pool.getTimeouts());
+            }
+
+            // A returned connection is reused, once only.
+            assertTrue(pool.release(first));
+            assertFalse(pool.release(first));
+            assertSame(first, pool.borrow());
+            assertEquals(2, pool.getCreated());
+
+            // A dead connection isn't lent again.
+            assertTrue(pool.release(second));
+            ((FakeHandler) Proxy.getInvocationHandler(second)).isValid = false;
+            Connection third = pool.borrow();
+            assertNotSame(second, third);
+            assertTrue(second.isClosed());
+            assertEquals(1, pool.getInvalid());
+            assertEquals(2, pool.getOpen());
+
+            // After a reset, the connections in use are closed once returned.
+            pool.reset();
+            assertTrue(pool.release(third));
+            assertTrue(third.isClosed());
+            assertEquals(0, pool.getIdle());
+            assertEquals(1, pool.getActive());
+        }
+    }
+
+    @Test
+    public void maintainTest() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(new FakeFactory(), 2, TIMEOUT, LEAK_TIMEOUT, IDLE_TIMEOUT)) {
+            Connection leaked = pool.borrow();
+            Connection returned = pool.borrow();
+            assertTrue(pool.release(returned));
+            long now = System.currentTimeMillis();
+
+            // Nothing is taken back too early.
+            pool.maintain(now);
+            assertEquals(1, pool.getIdle());
+            assertEquals(1, pool.getActive());
+
+            // The idle one is closed, then the one kept too long is taken back.
+            pool.maintain(now + IDLE_TIMEOUT);
+            assertTrue(returned.isClosed());
+            assertEquals(1, pool.getEvicted());
+            assertFalse(leaked.isClosed());
+            pool.maintain(now + LEAK_TIMEOUT);
+            assertTrue(leaked.isClosed());
+            assertEquals(1, pool.getLeaked());
+            assertFalse(pool.release(leaked));
+
+            // Its place is free again.
+            assertEquals(0, pool.getOpen());
+            pool.borrow();
+            pool.borrow();
+            assertEquals(4, pool.getCreated());
+        }
+    }
+
+    /**
+     * Opens fake connections that only know whether they're valid and closed.
+     */
+    private static class FakeFactory implements ConnectionPool.ConnectionFactory {
+        @Override
+        public Connection create() throws SQLException {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new FakeHandler());
+        }
+    }
+
+    private static class FakeHandler implements InvocationHandler {
+        private volatile boolean isValid = true;
+        private volatile boolean isClosed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "isValid":
+                    return isValid && !isClosed;
+                case "isClosed":
+                    return isClosed;
+                case "close":
+                    isClosed = true;
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}